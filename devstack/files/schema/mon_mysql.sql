@@ -85,6 +85,9 @@ CREATE TABLE `alarm_definition` (
   PRIMARY KEY (`id`),
   KEY `tenant_id` (`tenant_id`),
   KEY `deleted_at` (`deleted_at`),
+  KEY `tenant_id_name` (`tenant_id`,`deleted_at`,`name`),
+  KEY `tenant_id_created_at` (`tenant_id`,`deleted_at`,`created_at`),
+  KEY `tenant_id_updated_at` (`tenant_id`,`deleted_at`,`updated_at`),
   CONSTRAINT `fk_alarm_definition_severity` FOREIGN KEY (`severity`) REFERENCES `alarm_definition_severity` (`name`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
@@ -184,6 +187,18 @@ CREATE TABLE `sub_alarm` (
   CONSTRAINT `fk_sub_alarm_expr` FOREIGN KEY (`sub_expression_id`) REFERENCES `sub_alarm_definition` (`id`)
 );
 
+CREATE TABLE `event_outbox` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `topic` varchar(255) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `message_key` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `payload` longtext COLLATE utf8mb4_unicode_ci NOT NULL,
+  `created_at` datetime NOT NULL,
+  `claimed_by` varchar(36) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `claimed_at` datetime DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  KEY `claimed_by` (`claimed_by`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
 CREATE TABLE `schema_migrations` (
   `version` varchar(255) NOT NULL,
   UNIQUE KEY `unique_schema_migrations` (`version`)
@@ -0,0 +1,33 @@
+/*
+* (C) Copyright 2016 Hewlett Packard Enterprise Development Company LP
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+* implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+/*
+ * Event outbox of the hibernate (PostgreSQL) schema, written with the changes of alarms and alarm
+ * definitions when outbox.enabled is set, and emptied by the outbox relays.
+ */
+CREATE TABLE event_outbox (
+  id bigserial NOT NULL,
+  topic varchar(255) NOT NULL,
+  message_key varchar(255) DEFAULT NULL,
+  payload text NOT NULL,
+  created_at timestamp NOT NULL,
+  claimed_by varchar(36) DEFAULT NULL,
+  claimed_at timestamp DEFAULT NULL,
+  PRIMARY KEY (id)
+);
+
+CREATE INDEX event_outbox_claimed_by ON event_outbox (claimed_by);
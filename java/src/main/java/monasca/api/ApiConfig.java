@@ -15,8 +15,19 @@ package monasca.api;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import monasca.common.hibernate.configuration.HibernateDbConfiguration;
+import monasca.api.app.MetricQueryConfiguration;
 import monasca.common.messaging.kafka.KafkaConfiguration;
+import monasca.api.infrastructure.messaging.OutboxConfiguration;
 import monasca.api.infrastructure.middleware.MiddlewareConfiguration;
+import monasca.api.infrastructure.persistence.AlarmDefinitionCacheConfiguration;
+import monasca.api.infrastructure.persistence.AlarmIdIndexConfiguration;
+import monasca.api.infrastructure.persistence.AlarmIndexConfiguration;
+import monasca.api.infrastructure.persistence.MeasurementExportConfiguration;
+import monasca.api.infrastructure.persistence.StatisticsCacheConfiguration;
+import monasca.api.infrastructure.persistence.StatisticsConfiguration;
+import monasca.api.infrastructure.persistence.hibernate.OrmCacheConfiguration;
+import monasca.api.infrastructure.servlet.BulkheadConfiguration;
+import monasca.api.infrastructure.servlet.ResponseSizeConfiguration;
 import monasca.common.configuration.DatabaseConfiguration;
 
 import monasca.common.configuration.InfluxDbConfiguration;
@@ -26,6 +37,7 @@ import io.dropwizard.db.DataSourceFactory;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 
@@ -42,6 +54,20 @@ public class ApiConfig extends Configuration {
   public int maxQueryLimit;
   @NotEmpty
   public String alarmStateTransitionsTopic = "alarm-state-transitions";
+  /** Maximum number of alarm ids inlined into a single alarm state history query. */
+  @Min(1)
+  public int alarmIdChunkSize = 1000;
+  /** Number of threads used to query alarm state history chunks in parallel. */
+  @Min(1)
+  public int alarmStateHistoryThreads = 4;
+  /**
+   * Number of alarms read per page, and events sent or written to the outbox per batch, when
+   * deleting an alarm definition.
+   */
+  @Min(1)
+  public int alarmDeletionBatchSize = 1000;
+  /** Kafka consumer group for reading the events topic, defaults to one per host. */
+  public String eventsConsumerGroupId;
 
   @Valid
   @NotNull
@@ -62,4 +88,38 @@ public class ApiConfig extends Configuration {
   public DatabaseConfiguration databaseConfiguration;
   @Valid
   public HibernateDbConfiguration hibernate;
+  @Valid
+  @NotNull
+  public BulkheadConfiguration bulkheads = new BulkheadConfiguration();
+  @Valid
+  @NotNull
+  public ResponseSizeConfiguration responseSize = new ResponseSizeConfiguration();
+  @Valid
+  @NotNull
+  public AlarmIdIndexConfiguration alarmIdIndex = new AlarmIdIndexConfiguration();
+  @Valid
+  @NotNull
+  public AlarmIndexConfiguration alarmIndex = new AlarmIndexConfiguration();
+  @Valid
+  @NotNull
+  public AlarmDefinitionCacheConfiguration alarmDefinitionCache =
+      new AlarmDefinitionCacheConfiguration();
+  @Valid
+  @NotNull
+  public OutboxConfiguration outbox = new OutboxConfiguration();
+  @Valid
+  @NotNull
+  public OrmCacheConfiguration ormCache = new OrmCacheConfiguration();
+  @Valid
+  @NotNull
+  public MeasurementExportConfiguration measurementExport = new MeasurementExportConfiguration();
+  @Valid
+  @NotNull
+  public MetricQueryConfiguration metricQuery = new MetricQueryConfiguration();
+  @Valid
+  @NotNull
+  public StatisticsConfiguration statistics = new StatisticsConfiguration();
+  @Valid
+  @NotNull
+  public StatisticsCacheConfiguration statisticsCache = new StatisticsCacheConfiguration();
 }
@@ -32,13 +32,23 @@ import io.dropwizard.Application;
 import io.dropwizard.jdbi.bundles.DBIExceptionsBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import monasca.api.infrastructure.messaging.EventsConsumer;
+import monasca.api.infrastructure.messaging.OutboxRelay;
+import monasca.api.infrastructure.persistence.AlarmIdIndex;
+import monasca.api.infrastructure.persistence.AlarmIndex;
+import monasca.api.infrastructure.persistence.CachedAlarmDefinitionRepo;
+import monasca.api.infrastructure.persistence.hibernate.OrmCache;
+import monasca.api.infrastructure.servlet.BulkheadFilter;
 import monasca.api.infrastructure.servlet.MockAuthenticationFilter;
 import monasca.api.infrastructure.servlet.PostAuthenticationFilter;
 import monasca.api.infrastructure.servlet.PreAuthenticationFilter;
+import monasca.api.infrastructure.servlet.ResponseSizeFilter;
 import monasca.api.infrastructure.servlet.RoleAuthorizationFilter;
 import monasca.api.resource.AlarmDefinitionResource;
 import monasca.api.resource.AlarmResource;
+import monasca.api.resource.MeasurementExportResource;
 import monasca.api.resource.MeasurementResource;
+import monasca.api.resource.MetricQueryResource;
 import monasca.api.resource.MetricResource;
 import monasca.api.resource.NotificationMethodResource;
 import monasca.api.resource.StatisticResource;
@@ -108,10 +118,35 @@ public class MonApiApplication extends Application<ApiConfig> {
     environment.jersey().register(Injector.getInstance(AlarmDefinitionResource.class));
     environment.jersey().register(Injector.getInstance(AlarmResource.class));
     environment.jersey().register(Injector.getInstance(MetricResource.class));
+    environment.jersey().register(Injector.getInstance(MetricQueryResource.class));
     environment.jersey().register(Injector.getInstance(MeasurementResource.class));
+    environment.jersey().register(Injector.getInstance(MeasurementExportResource.class));
     environment.jersey().register(Injector.getInstance(StatisticResource.class));
     environment.jersey().register(Injector.getInstance(NotificationMethodResource.class));
 
+    /** Configure event consumers */
+    EventsConsumer eventsConsumer = Injector.getInstance(EventsConsumer.class);
+    AlarmIdIndex alarmIdIndex = Injector.getInstance(AlarmIdIndex.class);
+    if (alarmIdIndex.isEnabled()) {
+      eventsConsumer.register(alarmIdIndex);
+    }
+    AlarmIndex alarmIndex = Injector.getInstance(AlarmIndex.class);
+    if (alarmIndex.isEnabled()) {
+      eventsConsumer.register(alarmIndex);
+      eventsConsumer.register(config.alarmStateTransitionsTopic, alarmIndex);
+    }
+    if (Boolean.TRUE.equals(config.alarmDefinitionCache.enabled)) {
+      eventsConsumer.register(Injector.getInstance(CachedAlarmDefinitionRepo.class));
+    }
+    if (config.hibernate != null && config.hibernate.getSupportEnabled()
+        && Boolean.TRUE.equals(config.ormCache.enabled)) {
+      eventsConsumer.register(Injector.getInstance(OrmCache.class));
+    }
+    environment.lifecycle().manage(eventsConsumer);
+    if (Boolean.TRUE.equals(config.outbox.enabled)) {
+      environment.lifecycle().manage(Injector.getInstance(OutboxRelay.class));
+    }
+
     /** Configure providers */
     removeExceptionMappers(environment.jersey().getResourceConfig().getSingletons());
     environment.jersey().register(new EntityExistsExceptionMapper());
@@ -142,6 +177,14 @@ public class MonApiApplication extends Application<ApiConfig> {
         "X-Requested-With,Content-Type,Accept,Origin,X-Auth-Token");
     corsFilter.setInitParameter("allowedMethods", "OPTIONS,GET,HEAD");
 
+    /** Configure response sizes first so they cover error responses of the other filters too */
+    if (Boolean.TRUE.equals(config.responseSize.enabled)) {
+      Dynamic responseSizeFilter =
+          environment.servlets().addFilter("response-size",
+              new ResponseSizeFilter(environment.metrics()));
+      responseSizeFilter.addMappingForUrlPatterns(null, true, "/v2.0/*");
+    }
+
     if (config.middleware.enabled) {
       ensureHasValue(config.middleware.serverVIP, "serverVIP", "enabled", "true");
       ensureHasValue(config.middleware.serverPort, "serverPort", "enabled", "true");
@@ -219,6 +262,14 @@ public class MonApiApplication extends Application<ApiConfig> {
       mockAuthenticationFilter.addMappingForUrlPatterns(null, true, "/");
       mockAuthenticationFilter.addMappingForUrlPatterns(null, true, "/v2.0/*");
     }
+
+    /** Configure bulkheads after authentication so only authenticated requests take permits */
+    if (config.bulkheads.enabled) {
+      Dynamic bulkheadFilter =
+          environment.servlets().addFilter("bulkhead",
+              new BulkheadFilter(config.bulkheads, environment.metrics()));
+      bulkheadFilter.addMappingForUrlPatterns(null, true, "/v2.0/*");
+    }
   }
 
   private void ensureHasValue(final String value, final String what, final String control,
@@ -20,6 +20,7 @@ import io.dropwizard.setup.Environment;
 
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -43,6 +44,7 @@ import com.google.inject.name.Names;
 import monasca.api.app.ApplicationModule;
 import monasca.api.domain.DomainModule;
 import monasca.api.infrastructure.InfrastructureModule;
+import monasca.api.infrastructure.persistence.hibernate.OrmCache;
 import monasca.common.hibernate.db.AlarmActionDb;
 import monasca.common.hibernate.db.AlarmActionId;
 import monasca.common.hibernate.db.AlarmDb;
@@ -70,6 +72,10 @@ public class MonApiModule
    * <b>MySQL</b> {@link javax.sql.DataSource} class name
    */
   private static final String MYSQL_DS_CLASS = "com.mysql.jdbc.jdbc2.optional.MysqlDataSource";
+  /**
+   * Statements sent to the database in one JDBC batch when flushing a session
+   */
+  private static final int ORM_JDBC_BATCH_SIZE = 50;
   private final ApiConfig config;
   private final Environment environment;
 
@@ -119,10 +125,17 @@ public class MonApiModule
       configuration.addAnnotatedClass(NotificationMethodDb.class);
 
       configuration.setProperties(this.getORMProperties(this.config.hibernate.getDataSourceClassName()));
+      if (Boolean.TRUE.equals(this.config.ormCache.enabled)) {
+        OrmCache.configure(configuration, this.config.ormCache);
+      }
       ServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder().applySettings(configuration.getProperties()).build();
 
       // builds a session factory from the service registry
-      return configuration.buildSessionFactory(serviceRegistry);
+      final SessionFactory sessionFactory = configuration.buildSessionFactory(serviceRegistry);
+      if (Boolean.TRUE.equals(this.config.ormCache.enabled)) {
+        OrmCache.registerMetrics(sessionFactory, this.environment.metrics());
+      }
+      return sessionFactory;
     } catch (Throwable ex) {
       throw new ProvisionException("Failed to provision ORM DBI", ex);
     }
@@ -150,6 +163,26 @@ public class MonApiModule
     }
   }
 
+  @Provides
+  @Singleton
+  @Named("alarmStateHistory")
+  public ExecutorService getAlarmStateHistoryExecutor() {
+    return environment.lifecycle().executorService("alarm-state-history-%d")
+        .minThreads(config.alarmStateHistoryThreads)
+        .maxThreads(config.alarmStateHistoryThreads)
+        .build();
+  }
+
+  @Provides
+  @Singleton
+  @Named("metricQuery")
+  public ExecutorService getMetricQueryExecutor() {
+    return environment.lifecycle().executorService("metric-query-%d")
+        .minThreads(config.metricQuery.threads)
+        .maxThreads(config.metricQuery.threads)
+        .build();
+  }
+
   @Provides
   @Singleton
   public Producer<String, String> getProducer() {
@@ -197,10 +230,16 @@ public class MonApiModule
     properties.put("hibernate.hikari.dataSource.user", this.config.hibernate.getUser());
     properties.put("hibernate.hikari.dataSource.password", this.config.hibernate.getPassword());
     properties.put("hibernate.hikari.dataSourceClassName", this.config.hibernate.getDataSourceClassName());
+    // group the inserts and updates of each entity so they are sent in batches
+    properties.put("hibernate.jdbc.batch_size", String.valueOf(ORM_JDBC_BATCH_SIZE));
+    properties.put("hibernate.order_inserts", "true");
+    properties.put("hibernate.order_updates", "true");
   }
 
   private void handleMySQLORMProperties(final Properties properties) {
     properties.put("hibernate.hikari.dataSource.url", this.config.hibernate.getDataSourceUrl());
+    // send each batch in one round trip instead of one statement at a time
+    properties.put("hibernate.hikari.dataSource.rewriteBatchedStatements", "true");
   }
 
   private void handlePostgresORMProperties(final Properties properties) {
@@ -13,6 +13,8 @@
  */
 package monasca.api.app;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -30,8 +32,15 @@ import kafka.producer.KeyedMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import monasca.api.ApiConfig;
@@ -49,9 +58,12 @@ import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.exception.InvalidEntityException;
 import monasca.api.domain.model.alarm.Alarm;
 import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarm.AlarmUpdate;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDetail;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.domain.model.outbox.OutboxEvent;
 import monasca.common.util.Exceptions;
 import monasca.common.util.Serialization;
 
@@ -66,17 +78,32 @@ public class AlarmDefinitionService {
   private final AlarmDefinitionRepo repo;
   private final AlarmRepo alarmRepo;
   private final NotificationMethodRepo notificationMethodRepo;
+  private final Meter publishedEvents;
+  private final Meter failedEvents;
+  private final Timer publishTimer;
   long eventCount;
 
   @Inject
   public AlarmDefinitionService(ApiConfig config, Producer<String, String> producer,
       AlarmDefinitionRepo repo, AlarmRepo alarmRepo,
-      NotificationMethodRepo notificationMethodRepo) {
+      NotificationMethodRepo notificationMethodRepo, MetricRegistry metricRegistry) {
     this.config = config;
     this.producer = producer;
     this.repo = repo;
     this.alarmRepo = alarmRepo;
     this.notificationMethodRepo = notificationMethodRepo;
+    this.publishedEvents = metricRegistry.meter(
+        MetricRegistry.name(AlarmDefinitionService.class, "alarm-deleted-events", "published"));
+    this.failedEvents = metricRegistry.meter(
+        MetricRegistry.name(AlarmDefinitionService.class, "alarm-deleted-events", "failed"));
+    this.publishTimer = metricRegistry.timer(
+        MetricRegistry.name(AlarmDefinitionService.class, "alarm-deleted-events", "publish"));
+  }
+
+  public AlarmDefinitionService(ApiConfig config, Producer<String, String> producer,
+      AlarmDefinitionRepo repo, AlarmRepo alarmRepo,
+      NotificationMethodRepo notificationMethodRepo) {
+    this(config, producer, repo, alarmRepo, notificationMethodRepo, new MetricRegistry());
   }
 
   static class SubExpressions {
@@ -119,15 +146,23 @@ public class AlarmDefinitionService {
 
     try {
       LOG.debug("Creating alarm definition {} for tenant {}", name, tenantId);
-      alarm =
-          repo.create(tenantId, alarmDefId, name, description, severity, expression, subAlarms,
-              matchBy, alarmActions, okActions, undeterminedActions);
 
       // Notify interested parties of new alarm
       String event =
           Serialization.toJson(new AlarmDefinitionCreatedEvent(tenantId, alarmDefId, name,
               description, expression, subAlarms, matchBy));
-      producer.send(new KeyedMessage<>(config.eventsTopic, String.valueOf(eventCount++), event));
+      String key = String.valueOf(eventCount++);
+
+      if (isOutboxEnabled()) {
+        return repo.create(tenantId, alarmDefId, name, description, severity, expression,
+            subAlarms, matchBy, alarmActions, okActions, undeterminedActions,
+            Collections.singletonList(new OutboxEvent(config.eventsTopic, key, event)));
+      }
+
+      alarm =
+          repo.create(tenantId, alarmDefId, name, description, severity, expression, subAlarms,
+              matchBy, alarmActions, okActions, undeterminedActions);
+      producer.send(new KeyedMessage<>(config.eventsTopic, key, event));
 
       return alarm;
     } catch (Exception e) {
@@ -142,34 +177,118 @@ public class AlarmDefinitionService {
   }
 
   /**
-   * Deletes the alarm definition identified by the {@code alarmDefId}.
-   * 
+   * Deletes the alarm definition identified by the {@code alarmDefId}, and its alarms as the
+   * delete cascades to them. An AlarmDefinitionDeletedEvent is followed by an AlarmDeletedEvent
+   * per alarm, the alarms being read a page of ids at a time before the delete.
+   *
+   * <p>With the outbox enabled each page of events is written to the outbox as it is read, in the
+   * delete's transaction, so only one page is held at a time. Without it the events may only be
+   * published once the delete succeeded, so every page is held until then and published as a
+   * batch.
+   *
    * @throws EntityNotFoundException if the alarm cannot be found
    */
-  public void delete(String tenantId, String alarmDefId) {
+  public void delete(final String tenantId, final String alarmDefId) {
     Map<String, MetricDefinition> subAlarmMetricDefs =
-        repo.findSubAlarmMetricDefinitions(alarmDefId);
+        repo.findDetailById(tenantId, alarmDefId).getSubAlarmMetricDefinitions();
+    final Iterator<List<KeyedMessage<String, String>>> pages =
+        deletedEvents(tenantId, alarmDefId, subAlarmMetricDefs);
+
+    if (isOutboxEnabled()) {
+      repo.deleteById(tenantId, alarmDefId, Iterators.transform(pages,
+          new Function<List<KeyedMessage<String, String>>, List<OutboxEvent>>() {
+            @Override
+            public List<OutboxEvent> apply(List<KeyedMessage<String, String>> page) {
+              return OutboxEvents.of(page);
+            }
+          }));
+      return;
+    }
 
-    // Have to get information about the Alarms before they are deleted. They will be deleted
-    // by the database as a cascade delete from the Alarm Definition delete
-    final List<Alarm> alarms = alarmRepo.find(tenantId, alarmDefId, null, null, null, null, null, null, null, 1, false);
-    final Map<String, Map<String, AlarmSubExpression>> alarmSubExpressions =
-                                          alarmRepo.findAlarmSubExpressionsForAlarmDefinition(alarmDefId);
+    final List<List<KeyedMessage<String, String>>> events = Lists.newArrayList(pages);
 
     repo.deleteById(tenantId, alarmDefId);
 
-    // Notify interested parties of alarm definition deletion
-    String event =
+    for (List<KeyedMessage<String, String>> page : events) {
+      if (!page.isEmpty()) {
+        publish(page);
+      }
+    }
+  }
+
+  /**
+   * Returns the events notifying of the deletion of the alarm definition, then of its alarms a
+   * page at a time, the alarms being read as the pages are iterated.
+   */
+  private Iterator<List<KeyedMessage<String, String>>> deletedEvents(final String tenantId,
+      final String alarmDefId, Map<String, MetricDefinition> subAlarmMetricDefs) {
+    final String event =
         Serialization.toJson(new AlarmDefinitionDeletedEvent(alarmDefId, subAlarmMetricDefs));
-    producer.send(new KeyedMessage<>(config.eventsTopic, String.valueOf(eventCount++), event));
+    final KeyedMessage<String, String> definitionDeleted =
+        new KeyedMessage<>(config.eventsTopic, String.valueOf(eventCount++), event);
+    final int pageSize = config.alarmDeletionBatchSize;
 
     // Notify about the Deletion of the Alarms second because that is the order that thresh
-    // wants it so Alarms don't get recreated
-    for (final Alarm alarm : alarms) {
-      String alarmDeletedEvent =
-          Serialization.toJson(new AlarmDeletedEvent(tenantId, alarm.getId(), alarm.getMetrics(),
-              alarmDefId, alarmSubExpressions.get(alarm.getId())));
-      producer.send(new KeyedMessage<>(config.eventsTopic, String.valueOf(eventCount++), alarmDeletedEvent));
+    // wants it so Alarms don't get recreated.
+    return new AbstractIterator<List<KeyedMessage<String, String>>>() {
+      private boolean definitionSent;
+      private boolean lastPage;
+      private String offset;
+
+      @Override
+      protected List<KeyedMessage<String, String>> computeNext() {
+        if (!definitionSent) {
+          definitionSent = true;
+          return Collections.singletonList(definitionDeleted);
+        }
+        if (lastPage) {
+          return endOfData();
+        }
+
+        final List<String> alarmIds =
+            alarmRepo.findIdsByAlarmDefinition(tenantId, alarmDefId, offset, pageSize);
+        // Paging goes by the ids, as alarms deleted meanwhile are missing from the page read
+        lastPage = alarmIds.size() < pageSize;
+        if (alarmIds.isEmpty()) {
+          return endOfData();
+        }
+        offset = alarmIds.get(alarmIds.size() - 1);
+
+        final List<KeyedMessage<String, String>> events = new ArrayList<>(alarmIds.size());
+        for (final AlarmUpdate alarmUpdate : alarmRepo.findForUpdate(tenantId, alarmIds)) {
+          final Alarm alarm = alarmUpdate.getAlarm();
+          String alarmDeletedEvent =
+              Serialization.toJson(new AlarmDeletedEvent(tenantId, alarm.getId(),
+                  alarm.getMetrics(), alarmDefId, alarmUpdate.getSubAlarms()));
+          events.add(new KeyedMessage<>(config.eventsTopic, String.valueOf(eventCount++),
+              alarmDeletedEvent));
+        }
+        return events;
+      }
+    };
+  }
+
+  /**
+   * Returns true if events are written to the outbox in the same transaction as the changes,
+   * rather than sent to the producer after them.
+   */
+  private boolean isOutboxEnabled() {
+    return Boolean.TRUE.equals(config.outbox.enabled);
+  }
+
+  /**
+   * Sends a page of {@code events} to the producer as one batch.
+   */
+  private void publish(List<KeyedMessage<String, String>> events) {
+    final Timer.Context context = publishTimer.time();
+    try {
+      producer.send(events);
+      publishedEvents.mark(events.size());
+    } catch (RuntimeException e) {
+      failedEvents.mark(events.size());
+      throw e;
+    } finally {
+      context.stop();
     }
   }
 
@@ -185,11 +304,12 @@ public class AlarmDefinitionService {
   public AlarmDefinition update(String tenantId, String alarmDefId,
           AlarmExpression alarmExpression,
           UpdateAlarmDefinitionCommand command) {
-      final AlarmDefinition oldAlarmDefinition = assertAlarmDefinitionExists(
+      final AlarmDefinitionDetail oldDetail = assertAlarmDefinitionExists(
               tenantId, alarmDefId, command.alarmActions, command.okActions,
               command.undeterminedActions);
+      final AlarmDefinition oldAlarmDefinition = oldDetail.getAlarmDefinition();
       final SubExpressions subExpressions = subExpressionsFor(
-              repo.findSubExpressions(alarmDefId), alarmExpression);
+              oldDetail.getSubExpressions(), alarmExpression);
       String alarmID = repo.exists(tenantId, command.name);
       if (alarmID != null && !alarmID.equalsIgnoreCase(alarmDefId)) {
           throw new EntityExistsException(
@@ -251,9 +371,10 @@ public class AlarmDefinitionService {
             String expression, AlarmExpression alarmExpression,
             List<String> matchBy, Boolean enabled, List<String> alarmActions,
             List<String> okActions, List<String> undeterminedActions) {
-        AlarmDefinition oldAlarmDefinition = assertAlarmDefinitionExists(
+        AlarmDefinitionDetail oldDetail = assertAlarmDefinitionExists(
                 tenantId, alarmDefId, alarmActions, okActions,
                 undeterminedActions);
+        AlarmDefinition oldAlarmDefinition = oldDetail.getAlarmDefinition();
         name = name == null ? oldAlarmDefinition.getName() : name;
         String alarmID = repo.exists(tenantId, name);
         if (alarmID != null && !alarmID.equalsIgnoreCase(alarmDefId)) {
@@ -274,7 +395,7 @@ public class AlarmDefinitionService {
         matchBy = matchBy == null ? oldAlarmDefinition.getMatchBy() : matchBy;
 
         final SubExpressions subExpressions = subExpressionsFor(
-                repo.findSubExpressions(alarmDefId), alarmExpression);
+                oldDetail.getSubExpressions(), alarmExpression);
         validateChangesAllowed(matchBy, oldAlarmDefinition, subExpressions);
         updateInternal(tenantId, alarmDefId, true, name, description,
                 expression, matchBy, severity, alarmExpression, enabled,
@@ -300,12 +421,6 @@ public class AlarmDefinitionService {
         try {
             LOG.debug("Updating alarm definition {} for tenant {}", name,
                     tenantId);
-            repo.update(tenantId, alarmDefId, patch, name, description,
-                    expression, matchBy, severity, enabled,
-                    subExpressions.oldAlarmSubExpressions.keySet(),
-                    subExpressions.changedSubExpressions,
-                    subExpressions.newAlarmSubExpressions, alarmActions,
-                    okActions, undeterminedActions);
 
             // Notify interested parties of updated alarm
             String event = Serialization
@@ -316,8 +431,27 @@ public class AlarmDefinitionService {
                             subExpressions.changedSubExpressions,
                             subExpressions.unchangedSubExpressions,
                             subExpressions.newAlarmSubExpressions));
-            producer.send(new KeyedMessage<>(config.eventsTopic, String
-                    .valueOf(eventCount++), event));
+            String key = String.valueOf(eventCount++);
+
+            if (isOutboxEnabled()) {
+                repo.update(tenantId, alarmDefId, patch, name, description,
+                        expression, matchBy, severity, enabled,
+                        subExpressions.oldAlarmSubExpressions.keySet(),
+                        subExpressions.changedSubExpressions,
+                        subExpressions.newAlarmSubExpressions, alarmActions,
+                        okActions, undeterminedActions,
+                        Collections.singletonList(
+                                new OutboxEvent(config.eventsTopic, key, event)));
+                return;
+            }
+
+            repo.update(tenantId, alarmDefId, patch, name, description,
+                    expression, matchBy, severity, enabled,
+                    subExpressions.oldAlarmSubExpressions.keySet(),
+                    subExpressions.changedSubExpressions,
+                    subExpressions.newAlarmSubExpressions, alarmActions,
+                    okActions, undeterminedActions);
+            producer.send(new KeyedMessage<>(config.eventsTopic, key, event));
         } catch (Exception e) {
             throw Exceptions.uncheck(e,
                     "Error updating alarm definition for project / tenant %s",
@@ -388,13 +522,14 @@ public class AlarmDefinitionService {
   }
 
   /**
-   * Asserts an alarm definition exists for the {@code alarmDefId} as well as the actions.
+   * Asserts an alarm definition exists for the {@code alarmDefId} as well as the actions, and
+   * returns it with its sub expressions.
    * 
    * @throws EntityNotFoundException if the alarm cannot be found
    */
-  private AlarmDefinition assertAlarmDefinitionExists(String tenantId, String alarmDefId,
+  private AlarmDefinitionDetail assertAlarmDefinitionExists(String tenantId, String alarmDefId,
       List<String> alarmActions, List<String> okActions, List<String> undeterminedActions) {
-    AlarmDefinition alarm = repo.findById(tenantId, alarmDefId);
+    AlarmDefinitionDetail alarm = repo.findDetailById(tenantId, alarmDefId);
     assertActionsExist(tenantId, alarmActions, okActions, undeterminedActions);
     return alarm;
   }
@@ -408,9 +543,11 @@ public class AlarmDefinitionService {
       actions.addAll(okActions);
     if (undeterminedActions != null)
       actions.addAll(undeterminedActions);
-    if (!actions.isEmpty())
-      for (String action : actions)
-        if (!notificationMethodRepo.exists(tenantId, action))
-          throw new InvalidEntityException("No notification method exists for action %s", action);
+    if (!actions.isEmpty()) {
+      List<String> missing = notificationMethodRepo.existAll(tenantId, actions);
+      if (!missing.isEmpty())
+        throw new InvalidEntityException("No notification method exists for action %s",
+            missing.get(0));
+    }
   }
 }
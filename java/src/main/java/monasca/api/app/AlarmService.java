@@ -13,6 +13,11 @@
  */
 package monasca.api.app;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -33,9 +38,12 @@ import monasca.common.model.alarm.AlarmSubExpression;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.exception.InvalidEntityException;
 import monasca.api.domain.model.alarm.Alarm;
+import monasca.api.domain.model.alarm.Alarm.AlarmDefinitionShort;
+import monasca.api.domain.model.alarm.AlarmPatchResult;
 import monasca.api.domain.model.alarm.AlarmRepo;
-import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
-import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.alarm.AlarmUpdate;
+import monasca.api.domain.model.outbox.OutboxEvent;
+import monasca.api.domain.model.outbox.OutboxEventFactory;
 import monasca.common.util.Exceptions;
 import monasca.common.util.Serialization;
 
@@ -48,16 +56,14 @@ public class AlarmService {
   private final ApiConfig config;
   private final Producer<String, String> producer;
   private final AlarmRepo repo;
-  private final AlarmDefinitionRepo alarmDefRepo;
   private long messageCount = 0;
 
   @Inject
   public AlarmService(ApiConfig config, Producer<String, String> producer,
-      AlarmRepo repo, AlarmDefinitionRepo alarmDefRepo) {
+      AlarmRepo repo) {
     this.config = config;
     this.producer = producer;
     this.repo = repo;
-    this.alarmDefRepo = alarmDefRepo;
   }
 
   /**
@@ -69,13 +75,21 @@ public class AlarmService {
   public void delete(String tenantId, String alarmId) {
     Alarm alarm = repo.findById(tenantId, alarmId);
     Map<String, AlarmSubExpression> subAlarmMetricDefs = repo.findAlarmSubExpressions(alarmId);
-    repo.deleteById(tenantId, alarmId);
 
     // Notify interested parties of alarm deletion
     String event =
         Serialization.toJson(new AlarmDeletedEvent(tenantId, alarmId, alarm.getMetrics(), alarm
             .getAlarmDefinition().getId(), subAlarmMetricDefs));
-    producer.send(new KeyedMessage<>(config.eventsTopic, String.valueOf(messageCount++), event));
+    KeyedMessage<String, String> message =
+        new KeyedMessage<>(config.eventsTopic, String.valueOf(messageCount++), event);
+
+    if (isOutboxEnabled()) {
+      repo.deleteById(tenantId, alarmId, OutboxEvents.of(Collections.singletonList(message)));
+      return;
+    }
+
+    repo.deleteById(tenantId, alarmId);
+    producer.send(message);
   }
 
   /**
@@ -87,17 +101,11 @@ public class AlarmService {
    */
   public Alarm patch(String tenantId, String alarmId, AlarmState state, String lifecycleState,
                      String link) {
-    Alarm oldAlarm = repo.findById(tenantId, alarmId);
-
     if (state == null && lifecycleState == null && link == null) {
-      return oldAlarm;
+      return repo.findById(tenantId, alarmId);
     }
 
-    state = (state == null) ? oldAlarm.getState() : state;
-    lifecycleState = (lifecycleState == null) ? oldAlarm.getLifecycleState() : lifecycleState;
-    link = (link == null) ? oldAlarm.getLink() : link;
-
-    Alarm alarm = updateInternal(tenantId, alarmId, state, lifecycleState, link);
+    Alarm alarm = updateInternal(tenantId, alarmId, true, state, lifecycleState, link);
     return alarm;
   }
 
@@ -108,7 +116,8 @@ public class AlarmService {
    * @throws EntityNotFoundException if the alarmed metric cannot be found
    */
   public Alarm update(String tenantId, String alarmId, UpdateAlarmCommand command) {
-    Alarm alarm = updateInternal(tenantId, alarmId, command.state, command.lifecycleState, command.link);
+    Alarm alarm = updateInternal(tenantId, alarmId, false, command.state, command.lifecycleState,
+        command.link);
     return alarm;
   }
 
@@ -116,29 +125,31 @@ public class AlarmService {
     return "Alarm state updated via API";
   }
 
-  private Alarm updateInternal(String tenantId, String alarmId, AlarmState newState,
-                               String newLifecycleState, String newLink) {
+  /**
+   * Updates the alarm, loading everything needed for the events in the same transaction.
+   */
+  private Alarm updateInternal(String tenantId, String alarmId, boolean patch,
+                               AlarmState newState, String newLifecycleState, String newLink) {
     try {
       LOG.debug("Updating alarm {} for tenant {}", alarmId, tenantId);
-      final Alarm alarm = repo.update(tenantId, alarmId, newState, newLifecycleState, newLink);
+      final AlarmUpdate update = repo.update(tenantId, alarmId, patch, newState,
+          newLifecycleState, newLink, outboxEventsFor(tenantId, newState));
+      final Alarm alarm = update.getAlarm();
       final AlarmState oldState = alarm.getState();
-      // Notify interested parties of updated alarm
-      AlarmDefinition alarmDef = alarmDefRepo.findById(tenantId, alarm.getAlarmDefinition().getId());
-      Map<String, AlarmSubExpression> subAlarms = repo.findAlarmSubExpressions(alarmId);
-      String event =
-          Serialization.toJson(new AlarmUpdatedEvent(alarmId, alarmDef.getId(),
-              tenantId, alarm.getMetrics(), subAlarms, newState, oldState));
-      producer.send(new KeyedMessage<>(config.eventsTopic, String.valueOf(messageCount++), event));
-
-      // Notify interested parties of transitioned alarm state
-      if (!oldState.equals(newState)) {
-        event =
-            Serialization.toJson(new AlarmStateTransitionedEvent(tenantId, alarmId, alarmDef
-                .getId(), alarm.getMetrics(), alarmDef.getName(), alarmDef.getDescription(),
-                oldState, newState, alarmDef.getSeverity(), alarmDef.isActionsEnabled(),
-                stateChangeReasonFor(oldState, newState), null, System.currentTimeMillis()));
-        producer.send(new KeyedMessage<>(config.alarmStateTransitionsTopic, String.valueOf(messageCount++), event));
+
+      if (patch) {
+        newState = (newState == null) ? oldState : newState;
+        newLifecycleState =
+            (newLifecycleState == null) ? alarm.getLifecycleState() : newLifecycleState;
+        newLink = (newLink == null) ? alarm.getLink() : newLink;
       }
+
+      if (!isOutboxEnabled()) {
+        List<KeyedMessage<String, String>> events = new ArrayList<>(2);
+        addUpdateEvents(events, tenantId, update, newState);
+        producer.send(events);
+      }
+
       alarm.setState(newState);
       alarm.setLifecycleState(newLifecycleState);
       alarm.setLink(newLink);
@@ -149,4 +160,114 @@ public class AlarmService {
       throw Exceptions.uncheck(e, "Error updating alarm for project / tenant %s", tenantId);
     }
   }
+
+  /**
+   * Patches the alarms for the {@code tenantId} and {@code alarmIds} in one transaction, leaving
+   * whichever of {@code state}, {@code lifecycleState} and {@code link} are null unchanged, and
+   * publishes the resulting events in one batch.
+   *
+   * @return the outcome for each distinct alarm id, in the order given
+   */
+  public List<AlarmPatchResult> patchAll(String tenantId, List<String> alarmIds,
+                                         AlarmState state, String lifecycleState, String link) {
+    final List<String> ids = new ArrayList<>(new LinkedHashSet<>(alarmIds));
+    final Map<String, Alarm> updated = new HashMap<>();
+
+    try {
+      LOG.debug("Updating {} alarms for tenant {}", ids.size(), tenantId);
+      final List<AlarmUpdate> updates = repo.update(tenantId, ids, state, lifecycleState, link,
+          outboxEventsFor(tenantId, state));
+      final List<KeyedMessage<String, String>> events = new ArrayList<>(updates.size() * 2);
+
+      for (AlarmUpdate update : updates) {
+        final Alarm alarm = update.getAlarm();
+        final AlarmState newState = (state == null) ? alarm.getState() : state;
+
+        addUpdateEvents(events, tenantId, update, newState);
+
+        alarm.setState(newState);
+        if (lifecycleState != null) {
+          alarm.setLifecycleState(lifecycleState);
+        }
+        if (link != null) {
+          alarm.setLink(link);
+        }
+        updated.put(alarm.getId(), alarm);
+      }
+
+      if (!events.isEmpty() && !isOutboxEnabled()) {
+        producer.send(events);
+      }
+    } catch (Exception e) {
+      throw Exceptions.uncheck(e, "Error updating alarms for project / tenant %s", tenantId);
+    }
+
+    final List<AlarmPatchResult> results = new ArrayList<>(ids.size());
+
+    for (String id : ids) {
+      final Alarm alarm = updated.get(id);
+      results.add(alarm == null
+          ? new AlarmPatchResult(id, 404, null, String.format("No alarm exists for %s", id))
+          : new AlarmPatchResult(id, 200, alarm, null));
+    }
+
+    return results;
+  }
+
+  /**
+   * Returns true if events are written to the outbox in the same transaction as the changes,
+   * rather than sent to the producer after them.
+   */
+  private boolean isOutboxEnabled() {
+    return Boolean.TRUE.equals(config.outbox.enabled);
+  }
+
+  /**
+   * Returns the factory of the events to write to the outbox when alarms are updated to the
+   * {@code newState}, or to their current state if it is null, or null if the outbox is disabled.
+   */
+  private OutboxEventFactory<AlarmUpdate> outboxEventsFor(final String tenantId,
+                                                          final AlarmState newState) {
+    if (!isOutboxEnabled()) {
+      return null;
+    }
+
+    return new OutboxEventFactory<AlarmUpdate>() {
+      @Override
+      public List<OutboxEvent> eventsFor(AlarmUpdate original) {
+        final List<KeyedMessage<String, String>> events = new ArrayList<>(2);
+        addUpdateEvents(events, tenantId, original,
+            newState == null ? original.getAlarm().getState() : newState);
+        return OutboxEvents.of(events);
+      }
+    };
+  }
+
+  /**
+   * Adds the events notifying interested parties of the {@code update} to the {@code events}.
+   */
+  private void addUpdateEvents(List<KeyedMessage<String, String>> events, String tenantId,
+                               AlarmUpdate update, AlarmState newState) {
+    final Alarm alarm = update.getAlarm();
+    final AlarmState oldState = alarm.getState();
+    final AlarmDefinitionShort alarmDef = alarm.getAlarmDefinition();
+
+    // Notify interested parties of updated alarm
+    String event =
+        Serialization.toJson(new AlarmUpdatedEvent(alarm.getId(), alarmDef.getId(),
+            tenantId, alarm.getMetrics(), update.getSubAlarms(), newState, oldState));
+    events.add(new KeyedMessage<>(config.eventsTopic, String.valueOf(messageCount++), event));
+
+    // Notify interested parties of transitioned alarm state
+    if (!oldState.equals(newState)) {
+      event =
+          Serialization.toJson(new AlarmStateTransitionedEvent(tenantId, alarm.getId(), alarmDef
+              .getId(), alarm.getMetrics(), alarmDef.getName(),
+              update.getAlarmDefinitionDescription(), oldState, newState,
+              alarmDef.getSeverity(), update.isActionsEnabled(),
+              stateChangeReasonFor(oldState, newState), null, System.currentTimeMillis()));
+      events.add(new KeyedMessage<>(config.alarmStateTransitionsTopic,
+          String.valueOf(messageCount++), event));
+    }
+  }
 }
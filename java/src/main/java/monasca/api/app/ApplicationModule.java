@@ -26,5 +26,6 @@ public class ApplicationModule extends AbstractModule {
     bind(MetricService.class).in(Singleton.class);
     bind(AlarmDefinitionService.class).in(Singleton.class);
     bind(AlarmService.class).in(Singleton.class);
+    bind(MetricQueryService.class).in(Singleton.class);
   }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.app;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of multi-metric queries, whose metrics are queried in parallel on a shared pool.
+ */
+public class MetricQueryConfiguration {
+  /** Metrics a single request may query. */
+  @Min(1)
+  @JsonProperty
+  public int maxQueries = 100;
+  /** Metrics of a single request queried at once. */
+  @Min(1)
+  @JsonProperty
+  public int parallelism = 4;
+  /** Threads shared by all requests. */
+  @Min(1)
+  @JsonProperty
+  public int threads = 16;
+}
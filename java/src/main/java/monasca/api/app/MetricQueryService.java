@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.joda.time.DateTime;
+
+import monasca.api.ApiConfig;
+import monasca.api.app.command.QueryMetricsCommand.Query;
+import monasca.api.app.validation.DimensionValidation;
+import monasca.api.app.validation.MetricNameValidation;
+import monasca.api.app.validation.Validation;
+import monasca.api.domain.model.measurement.MeasurementRepo;
+import monasca.api.domain.model.measurement.Measurements;
+import monasca.api.domain.model.statistic.StatisticRepo;
+import monasca.api.domain.model.statistic.Statistics;
+import monasca.api.infrastructure.persistence.PersistUtils;
+
+/**
+ * Queries measurements and statistics of several metrics at once. The queries of a request run in
+ * parallel on a shared pool, at most {@link MetricQueryConfiguration#parallelism} at a time, and
+ * each succeeds or fails on its own.
+ */
+public class MetricQueryService {
+  private static final int DEFAULT_PERIOD = 300;
+
+  private final MeasurementRepo measurementRepo;
+  private final StatisticRepo statisticRepo;
+  private final PersistUtils persistUtils;
+  private final ExecutorService executor;
+  private final int parallelism;
+
+  /**
+   * The outcome of a single query, either its elements or the exception it failed with.
+   */
+  public static class Result {
+    public final List<?> elements;
+    /** Offset of the next page, if the elements were truncated to the limit. */
+    public final String nextOffset;
+    public final Exception exception;
+
+    Result(List<?> elements, @Nullable String nextOffset) {
+      this.elements = elements;
+      this.nextOffset = nextOffset;
+      this.exception = null;
+    }
+
+    Result(Exception exception) {
+      this.elements = null;
+      this.nextOffset = null;
+      this.exception = exception;
+    }
+  }
+
+  @Inject
+  public MetricQueryService(ApiConfig config, MeasurementRepo measurementRepo,
+                            StatisticRepo statisticRepo, PersistUtils persistUtils,
+                            @Named("metricQuery") ExecutorService executor) {
+    this.measurementRepo = measurementRepo;
+    this.statisticRepo = statisticRepo;
+    this.persistUtils = persistUtils;
+    this.executor = executor;
+    this.parallelism = config.metricQuery.parallelism;
+  }
+
+  /**
+   * Runs the {@code queries} from {@code startTime} to {@code endTime}, returning their results in
+   * the same order.
+   */
+  public List<Result> query(final String tenantId, final DateTime startTime,
+                            @Nullable final DateTime endTime, final List<Query> queries)
+      throws Exception {
+
+    final AtomicReferenceArray<Result> results = new AtomicReferenceArray<>(queries.size());
+    final AtomicInteger next = new AtomicInteger();
+
+    // Each worker takes the next query until none are left, so no more than parallelism queries
+    // of the request occupy the shared pool at once.
+    int workers = Math.min(this.parallelism, queries.size());
+    List<Future<Void>> futures = new ArrayList<>(workers);
+
+    for (int i = 0; i < workers; i++) {
+      futures.add(this.executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (int index = next.getAndIncrement(); index < queries.size();
+               index = next.getAndIncrement()) {
+            results.set(index, run(tenantId, startTime, endTime, queries.get(index)));
+          }
+          return null;
+        }
+      }));
+    }
+
+    try {
+
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+
+    } catch (ExecutionException e) {
+
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+
+    } catch (InterruptedException e) {
+
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+
+      Thread.currentThread().interrupt();
+
+      throw e;
+    }
+
+    List<Result> ordered = new ArrayList<>(queries.size());
+    for (int i = 0; i < queries.size(); i++) {
+      ordered.add(results.get(i));
+    }
+    return ordered;
+  }
+
+  private Result run(String tenantId, DateTime startTime, @Nullable DateTime endTime,
+                     Query query) {
+    try {
+
+      MetricNameValidation.validate(query.name, true);
+      if (query.dimensions != null) {
+        DimensionValidation.validate(query.dimensions);
+      }
+
+      int limit = this.persistUtils.getLimit(query.limit == null ? null : query.limit.toString());
+
+      if (query.hasStatistics()) {
+
+        List<Statistics> statistics =
+            this.statisticRepo.find(tenantId, query.name, query.dimensions, startTime, endTime,
+                                    Validation.parseValidateAndNormalizeStatistics(
+                                        query.statistics),
+                                    query.period == null ? DEFAULT_PERIOD : query.period,
+                                    query.offset, limit, query.mergeMetrics, null);
+
+        // Paged like the statistics resource, limit zero turning paging off.
+        String nextOffset = null;
+        if (limit > 0 && !statistics.isEmpty() && statistics.get(0).size() > limit) {
+          nextOffset = Measurements.formatTimestamp(statistics.get(0).timestampAt(limit - 1));
+          statistics.get(0).truncate(limit);
+        }
+        return new Result(statistics, nextOffset);
+
+      }
+
+      List<Measurements> measurements =
+          this.measurementRepo.find(tenantId, query.name, query.dimensions, startTime, endTime,
+                                    query.offset, limit, query.mergeMetrics, null);
+
+      String nextOffset = null;
+      if (limit > 0 && !measurements.isEmpty() && measurements.get(0).size() > limit) {
+        nextOffset = Measurements.formatTimestamp(measurements.get(0).timestampAt(limit - 1));
+        measurements.get(0).truncate(limit);
+      }
+      return new Result(measurements, nextOffset);
+
+    } catch (Exception e) {
+
+      return new Result(e);
+
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import kafka.producer.KeyedMessage;
+
+import monasca.api.domain.model.outbox.OutboxEvent;
+
+/**
+ * Converts the messages built by the services into events for the outbox.
+ */
+final class OutboxEvents {
+  private OutboxEvents() {}
+
+  static List<OutboxEvent> of(List<KeyedMessage<String, String>> messages) {
+    final List<OutboxEvent> events = new ArrayList<>(messages.size());
+    for (KeyedMessage<String, String> message : messages) {
+      events.add(new OutboxEvent(message.topic(), message.key(), message.message()));
+    }
+    return events;
+  }
+}
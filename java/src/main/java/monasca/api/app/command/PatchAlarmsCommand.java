@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.app.command;
+
+import java.util.List;
+
+import monasca.api.app.validation.Validation;
+import monasca.api.resource.exception.Exceptions;
+import monasca.common.model.alarm.AlarmState;
+
+/**
+ * Changes to apply to several alarms at once, either those listed in {@code alarmIds} or those
+ * matching a filter.
+ */
+public class PatchAlarmsCommand {
+  public List<String> alarmIds;
+  public AlarmState state;
+  public String lifecycleState;
+  public String link;
+
+  public PatchAlarmsCommand() {}
+
+  public PatchAlarmsCommand(List<String> alarmIds, AlarmState state, String lifecycleState,
+      String link) {
+    this.alarmIds = alarmIds;
+    this.state = state;
+    this.lifecycleState = lifecycleState;
+    this.link = link;
+  }
+
+  public void validate() {
+    if (state == null && lifecycleState == null && link == null)
+      throw Exceptions.unprocessableEntity(
+          "At least one of state, lifecycle_state or link must be given");
+    Validation.validateLifecycleState(lifecycleState);
+    Validation.validateLink(link);
+  }
+}
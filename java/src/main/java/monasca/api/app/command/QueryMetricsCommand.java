@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.app.command;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+/**
+ * Queries measurements or statistics of several metrics over a shared time window.
+ */
+public class QueryMetricsCommand {
+  @NotEmpty
+  public String startTime;
+  public String endTime;
+  @NotEmpty
+  @Valid
+  public List<Query> queries;
+
+  /**
+   * Measurements of a metric, or its statistics if any are given.
+   */
+  public static class Query {
+    @NotEmpty
+    @Size(min = 1, max = CreateMetricCommand.MAX_NAME_LENGTH)
+    public String name;
+    public Map<String, String> dimensions;
+    public List<String> statistics;
+    @Min(1)
+    public Integer period;
+    public String offset;
+    @Min(1)
+    public Integer limit;
+    @NotNull
+    public Boolean mergeMetrics = Boolean.FALSE;
+
+    public boolean hasStatistics() {
+      return statistics != null && !statistics.isEmpty();
+    }
+  }
+}
@@ -25,12 +25,14 @@ import org.joda.time.format.ISODateTimeFormat;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.ws.rs.WebApplicationException;
 
+import monasca.api.domain.model.measurement.LargestTriangleThreeBuckets;
 import monasca.api.resource.exception.Exceptions;
 
 /**
@@ -110,6 +112,36 @@ public final class Validation {
     }
   }
 
+  /**
+   * Parses {@code period}, a number of seconds or "auto". Auto picks the smallest of the
+   * {@code autoPeriods} giving at most {@code autoPoints} periods from {@code startTime} to
+   * {@code endTime}, or now, and for longer ranges the smallest multiple of the largest one that
+   * does.
+   *
+   * @throws WebApplicationException if the {@code period} is neither a number nor auto
+   */
+  public static int parseAndValidatePeriod(String period, DateTime startTime, DateTime endTime,
+                                           List<Integer> autoPeriods, int autoPoints) {
+    if (!"auto".equalsIgnoreCase(period)) {
+      return parseAndValidateNumber(period, "period");
+    }
+
+    long end = endTime != null ? endTime.getMillis() : DateTime.now().getMillis();
+    long rangeSeconds = Math.max((end - startTime.getMillis()) / 1000, 0);
+    long minPeriod = (rangeSeconds + autoPoints - 1) / autoPoints;
+
+    List<Integer> periods = new ArrayList<>(autoPeriods);
+    Collections.sort(periods);
+    for (int candidate : periods) {
+      if (candidate >= minPeriod) {
+        return candidate;
+      }
+    }
+
+    long largest = periods.get(periods.size() - 1);
+    return (int) Math.min(largest * ((minPeriod + largest - 1) / largest), Integer.MAX_VALUE);
+  }
+
   /**
    * @throws WebApplicationException if the {@code statistics} empty or invalid.
    */
@@ -171,6 +203,110 @@ public final class Validation {
     }
   }
 
+  /**
+   * Returns whether {@code format} selects the columnar representation of measurements and
+   * statistics. The default representation, one row per point, is selected by "rows" or no format.
+   *
+   * @throws WebApplicationException if the format is neither rows nor columnar
+   */
+  public static boolean validateAndParseColumnarFormat(String format) {
+    if (Strings.isNullOrEmpty(format) || "rows".equalsIgnoreCase(format)) {
+      return false;
+    } else if ("columnar".equalsIgnoreCase(format)) {
+      return true;
+    }
+    throw Exceptions.unprocessableEntity("format (%s) must be either 'rows' or 'columnar'", format);
+  }
+
+  /**
+   * Parses {@code groupBy}, "*" or a comma separated list of dimension names, returning null when
+   * the series are not grouped.
+   *
+   * @throws WebApplicationException if a dimension name is invalid or the series are also merged
+   */
+  public static List<String> parseAndValidateGroupBy(String groupBy, Boolean mergeMetricsFlag) {
+    if (Strings.isNullOrEmpty(groupBy)) {
+      return null;
+    }
+    if (Boolean.TRUE.equals(mergeMetricsFlag)) {
+      throw Exceptions.unprocessableEntity("group_by cannot be combined with merge_metrics");
+    }
+
+    List<String> groupByList = new ArrayList<>();
+    for (String name : COMMA_SPLITTER.split(groupBy)) {
+      groupByList.add(name);
+    }
+
+    if (groupByList.contains("*")) {
+      if (groupByList.size() > 1) {
+        throw Exceptions.unprocessableEntity("group_by (%s) must be either '*' or dimension names",
+                                             groupBy);
+      }
+    } else {
+      DimensionValidation.validateNames(groupByList);
+    }
+
+    return groupByList.isEmpty() ? null : groupByList;
+  }
+
+  /**
+   * Parses {@code maxPoints}, the most measurements to return per metric, returning 0 when the
+   * measurements are not downsampled.
+   *
+   * @throws WebApplicationException if {@code maxPoints} is not a number of at least
+   *         {@link LargestTriangleThreeBuckets#MIN_POINTS}
+   */
+  public static int parseAndValidateMaxPoints(String maxPoints) {
+    if (Strings.isNullOrEmpty(maxPoints)) {
+      return 0;
+    }
+
+    int maxPointsInt = parseAndValidateNumber(maxPoints, "max_points");
+    if (maxPointsInt < LargestTriangleThreeBuckets.MIN_POINTS) {
+      throw Exceptions.unprocessableEntity("max_points (%s) must be at least %d", maxPoints,
+                                           LargestTriangleThreeBuckets.MIN_POINTS);
+    }
+    return maxPointsInt;
+  }
+
+  /**
+   * Parses {@code sortBy}, a comma separated list of "field [asc|desc]", into entries of the form
+   * "field asc" or "field desc".
+   *
+   * @throws WebApplicationException if a field is not one of {@code allowedFields} or a direction
+   *         is neither asc nor desc
+   */
+  public static List<String> parseAndValidateSortBy(String sortBy, List<String> allowedFields) {
+    List<String> sortByList = new ArrayList<>();
+    if (Strings.isNullOrEmpty(sortBy)) {
+      return sortByList;
+    }
+
+    for (String entry : COMMA_SPLITTER.split(sortBy)) {
+      List<String> parts = new ArrayList<>();
+      for (String part : entry.split("\\s+")) {
+        if (!part.isEmpty()) {
+          parts.add(part);
+        }
+      }
+
+      if (parts.isEmpty() || parts.size() > 2 || !allowedFields.contains(parts.get(0))) {
+        throw Exceptions.unprocessableEntity("sort_by field '%s' must be one of %s", entry,
+                                             allowedFields);
+      }
+
+      String direction = parts.size() == 2 ? parts.get(1).toLowerCase() : "asc";
+      if (!direction.equals("asc") && !direction.equals("desc")) {
+        throw Exceptions.unprocessableEntity("sort_by direction '%s' must be asc or desc",
+                                             parts.get(1));
+      }
+
+      sortByList.add(parts.get(0) + " " + direction);
+    }
+
+    return sortByList;
+  }
+
   public static void validateLifecycleState(String lifecycleState) {
     if (lifecycleState != null) {
       if (lifecycleState.length() > 50) {
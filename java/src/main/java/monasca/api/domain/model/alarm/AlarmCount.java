@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.alarm;
+
+import monasca.common.model.alarm.AlarmState;
+
+/**
+ * Number of alarms sharing an alarm definition, severity, state and lifecycle state.
+ */
+public class AlarmCount {
+  private String alarmDefinitionId;
+  private String alarmDefinitionName;
+  private String severity;
+  private AlarmState state;
+  private String lifecycleState;
+  private long count;
+
+  public AlarmCount() {}
+
+  public AlarmCount(String alarmDefinitionId, String alarmDefinitionName, String severity,
+      AlarmState state, String lifecycleState, long count) {
+    this.alarmDefinitionId = alarmDefinitionId;
+    this.alarmDefinitionName = alarmDefinitionName;
+    this.severity = severity;
+    this.state = state;
+    this.lifecycleState = lifecycleState;
+    this.count = count;
+  }
+
+  public String getAlarmDefinitionId() {
+    return alarmDefinitionId;
+  }
+
+  public String getAlarmDefinitionName() {
+    return alarmDefinitionName;
+  }
+
+  public String getSeverity() {
+    return severity;
+  }
+
+  public AlarmState getState() {
+    return state;
+  }
+
+  public String getLifecycleState() {
+    return lifecycleState;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public void setAlarmDefinitionId(String alarmDefinitionId) {
+    this.alarmDefinitionId = alarmDefinitionId;
+  }
+
+  public void setAlarmDefinitionName(String alarmDefinitionName) {
+    this.alarmDefinitionName = alarmDefinitionName;
+  }
+
+  public void setSeverity(String severity) {
+    this.severity = severity;
+  }
+
+  public void setState(AlarmState state) {
+    this.state = state;
+  }
+
+  public void setLifecycleState(String lifecycleState) {
+    this.lifecycleState = lifecycleState;
+  }
+
+  public void setCount(long count) {
+    this.count = count;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof AlarmCount))
+      return false;
+    AlarmCount other = (AlarmCount) obj;
+    return count == other.count
+        && state == other.state
+        && equal(alarmDefinitionId, other.alarmDefinitionId)
+        && equal(alarmDefinitionName, other.alarmDefinitionName)
+        && equal(severity, other.severity)
+        && equal(lifecycleState, other.lifecycleState);
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + ((alarmDefinitionId == null) ? 0 : alarmDefinitionId.hashCode());
+    result = prime * result + ((alarmDefinitionName == null) ? 0 : alarmDefinitionName.hashCode());
+    result = prime * result + ((severity == null) ? 0 : severity.hashCode());
+    result = prime * result + ((state == null) ? 0 : state.hashCode());
+    result = prime * result + ((lifecycleState == null) ? 0 : lifecycleState.hashCode());
+    result = prime * result + (int) (count ^ (count >>> 32));
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("AlarmCount [alarmDefinitionId=%s, severity=%s, state=%s, "
+        + "lifecycleState=%s, count=%s]", alarmDefinitionId, severity, state, lifecycleState,
+        count);
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.alarm;
+
+/**
+ * Outcome of patching one alarm of a bulk alarm update. Holds the updated alarm, or the reason it
+ * could not be updated.
+ */
+public class AlarmPatchResult {
+  private String id;
+  private int status;
+  private Alarm alarm;
+  private String error;
+
+  public AlarmPatchResult() {}
+
+  public AlarmPatchResult(String id, int status, Alarm alarm, String error) {
+    this.id = id;
+    this.status = status;
+    this.alarm = alarm;
+    this.error = error;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /** Returns the HTTP status the update of this alarm alone would have had. */
+  public int getStatus() {
+    return status;
+  }
+
+  public Alarm getAlarm() {
+    return alarm;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public void setStatus(int status) {
+    this.status = status;
+  }
+
+  public void setAlarm(Alarm alarm) {
+    this.alarm = alarm;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("AlarmPatchResult [id=%s, status=%s, error=%s]", id, status, error);
+  }
+}
@@ -21,6 +21,8 @@ import java.util.Map;
 import monasca.common.model.alarm.AlarmState;
 import monasca.common.model.alarm.AlarmSubExpression;
 import monasca.api.domain.exception.EntityNotFoundException;
+import monasca.api.domain.model.outbox.OutboxEvent;
+import monasca.api.domain.model.outbox.OutboxEventFactory;
 
 public interface AlarmRepo {
   /**
@@ -28,12 +30,50 @@ public interface AlarmRepo {
    */
   void deleteById(String tenantId, String id);
 
+  /**
+   * Deletes the alarm for the {@code id}, writing the {@code events} to the outbox in the same
+   * transaction.
+   *
+   * @throws EntityNotFoundException if an alarm cannot be found for the {@code id}
+   */
+  void deleteById(String tenantId, String id, List<OutboxEvent> events);
+
   /**
    * Returns alarms for the given criteria.
    */
   List<Alarm> find(String tenantId, String alarmDefId, String metricName, Map<String,
       String> metricDimensions, AlarmState state, String lifecycleState, String link, DateTime stateUpdatedStart, String offset, int limit, boolean enforceLimit);
 
+  /**
+   * Returns the ids of the alarms for the given criteria, ordered by id and at most {@code limit}
+   * of them if {@code limit} is positive.
+   */
+  List<String> findIds(String tenantId, String alarmDefId, String metricName,
+      Map<String, String> metricDimensions, AlarmState state, String lifecycleState, String link,
+      DateTime stateUpdatedStart, int limit);
+
+  /**
+   * Returns at most {@code limit} ids of the alarms of the alarm definition which come after the
+   * {@code offset}, ordered by id. Lets callers page through every alarm of an alarm definition
+   * without loading them all at once.
+   */
+  List<String> findIdsByAlarmDefinition(String tenantId, String alarmDefId, String offset,
+      int limit);
+
+  /**
+   * Returns the alarms with the {@code alarmIds}, ordered by id, with their sub alarms. Alarms
+   * which no longer exist are left out.
+   */
+  List<AlarmUpdate> findForUpdate(String tenantId, List<String> alarmIds);
+
+  /**
+   * Returns the number of alarms matching the given criteria grouped by alarm definition,
+   * severity, state and lifecycle state.
+   */
+  List<AlarmCount> count(String tenantId, String alarmDefId, String metricName,
+      Map<String, String> metricDimensions, AlarmState state, String lifecycleState, String link,
+      DateTime stateUpdatedStart);
+
   /**
    * @throws EntityNotFoundException if an alarm cannot be found for the {@code id}
    */
@@ -45,6 +85,43 @@ public interface AlarmRepo {
    */
   Alarm update(String tenantId, String id, AlarmState state, String lifecycleState, String link);
 
+  /**
+   * Updates the alarm for the {@code id} in a single transaction. When {@code patch} is set,
+   * whichever of {@code state}, {@code lifecycleState} and {@code link} are null are left
+   * unchanged.
+   *
+   * @return the original alarm before any change, with its alarm definition and sub alarms
+   * @throws EntityNotFoundException if an alarm cannot be found for the {@code id}
+   */
+  AlarmUpdate update(String tenantId, String id, boolean patch, AlarmState state,
+      String lifecycleState, String link);
+
+  /**
+   * Updates the alarm for the {@code id} like {@link #update(String, String, boolean, AlarmState,
+   * String, String)} and writes the events built by the {@code events} factory from the original
+   * alarm to the outbox in the same transaction.
+   */
+  AlarmUpdate update(String tenantId, String id, boolean patch, AlarmState state,
+      String lifecycleState, String link, OutboxEventFactory<AlarmUpdate> events);
+
+  /**
+   * Updates the alarms for the {@code ids} in a single transaction, leaving whichever of
+   * {@code state}, {@code lifecycleState} and {@code link} are null unchanged.
+   *
+   * @return the original alarms which were found, ordered by id, with their alarm definitions
+   *         and sub alarms
+   */
+  List<AlarmUpdate> update(String tenantId, List<String> ids, AlarmState state,
+      String lifecycleState, String link);
+
+  /**
+   * Updates the alarms for the {@code ids} like {@link #update(String, List, AlarmState, String,
+   * String)} and writes the events built by the {@code events} factory from each original alarm
+   * to the outbox in the same transaction.
+   */
+  List<AlarmUpdate> update(String tenantId, List<String> ids, AlarmState state,
+      String lifecycleState, String link, OutboxEventFactory<AlarmUpdate> events);
+
   /**
    * Gets the AlarmSubExpressions mapped by their Ids for an Alarm Id
    */
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.alarm;
+
+import java.util.Map;
+
+import monasca.common.model.alarm.AlarmSubExpression;
+
+/**
+ * An alarm as it was before an update, with the parts of its alarm definition and the sub alarms
+ * needed to notify interested parties of the update.
+ */
+public class AlarmUpdate {
+  private final Alarm alarm;
+  private final String alarmDefinitionDescription;
+  private final boolean actionsEnabled;
+  private final Map<String, AlarmSubExpression> subAlarms;
+
+  public AlarmUpdate(Alarm alarm, String alarmDefinitionDescription, boolean actionsEnabled,
+      Map<String, AlarmSubExpression> subAlarms) {
+    this.alarm = alarm;
+    this.alarmDefinitionDescription = alarmDefinitionDescription;
+    this.actionsEnabled = actionsEnabled;
+    this.subAlarms = subAlarms;
+  }
+
+  /** Returns the alarm before the update. */
+  public Alarm getAlarm() {
+    return alarm;
+  }
+
+  public String getAlarmDefinitionDescription() {
+    return alarmDefinitionDescription;
+  }
+
+  public boolean isActionsEnabled() {
+    return actionsEnabled;
+  }
+
+  /** Returns the sub alarm expressions of the alarm mapped by sub alarm id. */
+  public Map<String, AlarmSubExpression> getSubAlarms() {
+    return subAlarms;
+  }
+}
@@ -15,6 +15,7 @@ package monasca.api.domain.model.alarmdefinition;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -57,6 +58,28 @@ public class AlarmDefinition extends AbstractEntity implements Linked {
     setUndeterminedActions(undeterminedActions);
   }
 
+  /**
+   * Copies {@code other} without parsing its expression again.
+   */
+  public AlarmDefinition(AlarmDefinition other) {
+    this.id = other.id;
+    this.links = other.links == null ? null : new ArrayList<>(other.links);
+    this.name = other.name;
+    this.description = other.description;
+    this.expression = other.expression;
+    this.expressionData = other.expressionData;
+    this.matchBy = copy(other.matchBy);
+    this.severity = other.severity;
+    this.actionsEnabled = other.actionsEnabled;
+    this.alarmActions = copy(other.alarmActions);
+    this.okActions = copy(other.okActions);
+    this.undeterminedActions = copy(other.undeterminedActions);
+  }
+
+  private static List<String> copy(List<String> list) {
+    return list == null ? null : new ArrayList<>(list);
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (this == obj)
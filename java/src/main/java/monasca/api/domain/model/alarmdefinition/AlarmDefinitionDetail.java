@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.alarmdefinition;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import monasca.common.model.alarm.AlarmSubExpression;
+import monasca.common.model.metric.MetricDefinition;
+
+/**
+ * An alarm definition together with its sub expressions, as read by a single repository call.
+ */
+public class AlarmDefinitionDetail {
+  private final AlarmDefinition alarmDefinition;
+  private final Map<String, AlarmSubExpression> subExpressions;
+
+  public AlarmDefinitionDetail(AlarmDefinition alarmDefinition,
+      Map<String, AlarmSubExpression> subExpressions) {
+    this.alarmDefinition = alarmDefinition;
+    this.subExpressions = subExpressions;
+  }
+
+  public AlarmDefinition getAlarmDefinition() {
+    return alarmDefinition;
+  }
+
+  /** Returns the sub expressions of the alarm definition mapped by sub alarm definition id. */
+  public Map<String, AlarmSubExpression> getSubExpressions() {
+    return subExpressions;
+  }
+
+  /** Returns the metric definitions of the sub expressions mapped by sub alarm definition id. */
+  public Map<String, MetricDefinition> getSubAlarmMetricDefinitions() {
+    final Map<String, MetricDefinition> metricDefinitions = new HashMap<>();
+    for (Map.Entry<String, AlarmSubExpression> entry : subExpressions.entrySet()) {
+      metricDefinitions.put(entry.getKey(), entry.getValue().getMetricDefinition());
+    }
+    return metricDefinitions;
+  }
+}
@@ -14,12 +14,14 @@
 package monasca.api.domain.model.alarmdefinition;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import monasca.common.model.alarm.AlarmSubExpression;
 import monasca.common.model.metric.MetricDefinition;
 import monasca.api.domain.exception.EntityNotFoundException;
+import monasca.api.domain.model.outbox.OutboxEvent;
 
 /**
  * Repository for alarm definitions.
@@ -33,28 +35,55 @@ public interface AlarmDefinitionRepo {
       List<String> matchBy, List<String> alarmActions, List<String> okActions,
       List<String> undeterminedActions);
 
+  /**
+   * Creates and returns a new alarm definition for the criteria, writing the {@code events} to
+   * the outbox in the same transaction.
+   */
+  AlarmDefinition create(String tenantId, String id, String name, String description,
+      String severity, String expression, Map<String, AlarmSubExpression> subExpressions,
+      List<String> matchBy, List<String> alarmActions, List<String> okActions,
+      List<String> undeterminedActions, List<OutboxEvent> events);
+
   /**
    * @throws EntityNotFoundException if an alarm definition cannot be found for the
    *         {@code alarmDefId}
    */
   void deleteById(String tenantId, String alarmDefId);
 
+  /**
+   * Deletes the alarm definition and its alarms, writing the {@code events} to the outbox in the
+   * same transaction. The pages of events are taken one at a time once the alarm definition is
+   * found and before its alarms are deleted, so they may be built from reads of the alarms.
+   *
+   * @throws EntityNotFoundException if an alarm definition cannot be found for the
+   *         {@code alarmDefId}
+   */
+  void deleteById(String tenantId, String alarmDefId, Iterator<List<OutboxEvent>> events);
+
   /**
    * Returns true if an alarm exists for the given criteria, else false.
    */
   String exists(String tenantId, String name);
 
   /**
-   * Returns alarms for the given criteria.
+   * Returns alarms for the given criteria, ordered by the {@code sortBy} columns and then id. The
+   * page starts after the alarm definition whose id is the {@code offset}.
    */
   List<AlarmDefinition> find(String tenantId, String name, Map<String, String> dimensions,
-                             String offset, int limit);
+                             List<String> sortBy, String offset, int limit);
 
   /**
    * @throws EntityNotFoundException if an alarm cannot be found for the {@code alarmDefId}
    */
   AlarmDefinition findById(String tenantId, String alarmDefId);
 
+  /**
+   * Returns the alarm definition for the {@code alarmDefId} together with its sub expressions.
+   *
+   * @throws EntityNotFoundException if an alarm cannot be found for the {@code alarmDefId}
+   */
+  AlarmDefinitionDetail findDetailById(String tenantId, String alarmDefId);
+
   /**
    * Returns the sub-alarm Ids for the {@code alarmDefId}.
    */
@@ -73,4 +102,14 @@ public interface AlarmDefinitionRepo {
       Collection<String> oldSubAlarmIds, Map<String, AlarmSubExpression> changedSubAlarms,
       Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions,
       List<String> okActions, List<String> undeterminedActions);
+
+  /**
+   * Updates an alarm definition for the criteria, writing the {@code events} to the outbox in the
+   * same transaction.
+   */
+  void update(String tenantId, String id, boolean patch, String name, String description,
+      String expression, List<String> matchBy, String severity, boolean actionsEnabled,
+      Collection<String> oldSubAlarmIds, Map<String, AlarmSubExpression> changedSubAlarms,
+      Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions,
+      List<String> okActions, List<String> undeterminedActions, List<OutboxEvent> events);
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.common;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Offset of a page of grouped measurements or statistics, "index_timestamp". The page starts after
+ * the point at the ISO 8601 timestamp of the series with the index, in the order the repository
+ * returns the groups.
+ */
+public final class SeriesOffset {
+
+  private final int index;
+  private final DateTime timestamp;
+
+  public SeriesOffset(int index, DateTime timestamp) {
+    this.index = index;
+    this.timestamp = timestamp;
+  }
+
+  /**
+   * Parses an offset of grouped series.
+   *
+   * @throws IllegalArgumentException if {@code offset} is not of the form index_timestamp
+   */
+  public static SeriesOffset parse(String offset) {
+    final int separator = offset.indexOf('_');
+
+    try {
+      final int index = Integer.parseInt(offset.substring(0, Math.max(separator, 0)));
+      if (index < 0) {
+        throw new IllegalArgumentException();
+      }
+      return new SeriesOffset(index, ISODateTimeFormat.dateTimeParser().withZoneUTC()
+          .parseDateTime(offset.substring(separator + 1)));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(String.format(
+          "Offset '%s' of grouped series must be of the form index_timestamp", offset));
+    }
+  }
+
+  public static String format(int index, long timestamp) {
+    return index + "_" + ISODateTimeFormat.dateTime()
+        .print(new DateTime(timestamp, DateTimeZone.UTC));
+  }
+
+  /**
+   * Returns the index of the series the page starts in.
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * Returns the timestamp the page starts after, within the series at {@link #getIndex()}.
+   */
+  public DateTime getTimestamp() {
+    return timestamp;
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.common;
+
+/**
+ * Points of one series in time order, as paged by the measurement and statistic resources.
+ */
+public interface TimeSeries {
+
+  String getId();
+
+  void setId(String id);
+
+  /**
+   * Returns the number of points.
+   */
+  int size();
+
+  /**
+   * Returns the timestamp, in epoch milliseconds, of the point at {@code index}.
+   */
+  long timestampAt(int index);
+
+  /**
+   * Keeps only the first {@code length} points.
+   */
+  void truncate(int length);
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.measurement;
+
+import java.util.Map;
+
+/**
+ * Columnar view of {@link Measurements}, holding parallel arrays of epoch millisecond timestamps
+ * and values. Value metadata is present only for the measurements having some, keyed by their
+ * index in the arrays.
+ */
+public class ColumnarMeasurements {
+  private static final String[] COLUMNS = new String[] {"timestamp", "value", "value_meta"};
+
+  private final String id;
+  private final String name;
+  private final Map<String, String> dimensions;
+  private final long[] timestamps;
+  private final double[] values;
+  private final Map<Integer, Map<String, String>> valueMeta;
+
+  public ColumnarMeasurements(Measurements measurements) {
+    this.id = measurements.getId();
+    this.name = measurements.getName();
+    this.dimensions = measurements.getDimensions();
+    this.timestamps = measurements.getTimestamps();
+    this.values = measurements.getValues();
+    this.valueMeta = measurements.getValueMeta();
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Map<String, String> getDimensions() {
+    return dimensions;
+  }
+
+  public String[] getColumns() {
+    return COLUMNS;
+  }
+
+  public long[] getTimestamps() {
+    return timestamps;
+  }
+
+  public double[] getValues() {
+    return values;
+  }
+
+  public Map<Integer, Map<String, String>> getValueMeta() {
+    return valueMeta;
+  }
+}
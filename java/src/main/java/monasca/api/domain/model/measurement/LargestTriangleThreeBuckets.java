@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.measurement;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a series of points, as described by Sveinn
+ * Steinarsson in "Downsampling Time Series for Visual Representation".
+ *
+ * <p>The first and last points are always kept. The points in between are split into
+ * {@code maxPoints - 2} buckets of equal point count, and from each bucket the single point forming
+ * the largest triangle with the point kept from the previous bucket and the average of the next
+ * bucket is kept. The series is read front to back, each point at most twice, as a candidate and
+ * as part of the next bucket average, with no memory used beyond the selected indexes.
+ *
+ * <p>Error characteristics:
+ * <ul>
+ * <li>Every point returned is an actual measurement, values are never averaged or interpolated, so
+ * the downsampled series never shows a value that was not measured.
+ * <li>An isolated spike or dip forms the largest triangle in its bucket and is kept. A bucket
+ * holding both a spike and a dip keeps only one of them, so the other extreme may be lost when
+ * more than one extreme falls in the same {@code (size - 2) / (maxPoints - 2)} points.
+ * <li>Drawn as a line, the downsampled series deviates from the original by at most the value
+ * range of each bucket, and exactly matches it at the kept points.
+ * <li>Buckets hold equal numbers of points, not equal time ranges, so gaps in the measurements are
+ * kept as gaps rather than being filled.
+ * </ul>
+ */
+public final class LargestTriangleThreeBuckets {
+
+  /** The smallest budget, the first and last points plus a single bucket. */
+  public static final int MIN_POINTS = 3;
+
+  private LargestTriangleThreeBuckets() {}
+
+  /**
+   * Returns the indexes, in increasing order, of at most {@code maxPoints} points to keep out of
+   * the first {@code size} points of the {@code timestamps} and {@code values}.
+   *
+   * @throws IllegalArgumentException if {@code maxPoints} is less than {@link #MIN_POINTS}
+   */
+  public static int[] select(long[] timestamps, double[] values, int size, int maxPoints) {
+    if (maxPoints < MIN_POINTS) {
+      throw new IllegalArgumentException("maxPoints must be at least " + MIN_POINTS);
+    }
+
+    if (size <= maxPoints) {
+      final int[] all = new int[size];
+      for (int i = 0; i < size; i++) {
+        all[i] = i;
+      }
+      return all;
+    }
+
+    final int[] selected = new int[maxPoints];
+    final double bucketSize = (double) (size - 2) / (maxPoints - 2);
+
+    // Times relative to the first point, which keeps the triangle areas precise in a double.
+    final long origin = timestamps[0];
+
+    int kept = 0;
+    selected[0] = 0;
+
+    for (int bucket = 0; bucket < maxPoints - 2; bucket++) {
+
+      final int start = (int) (bucket * bucketSize) + 1;
+      final int end = (int) ((bucket + 1) * bucketSize) + 1;
+
+      // The next bucket is represented by its average point, the last bucket by the last point.
+      final int nextStart = end;
+      final int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, size);
+
+      double nextTime = 0;
+      double nextValue = 0;
+      for (int i = nextStart; i < nextEnd; i++) {
+        nextTime += timestamps[i] - origin;
+        nextValue += values[i];
+      }
+      nextTime /= nextEnd - nextStart;
+      nextValue /= nextEnd - nextStart;
+
+      final double keptTime = timestamps[kept] - origin;
+      final double keptValue = values[kept];
+
+      double largestArea = -1;
+      int largest = start;
+
+      for (int i = start; i < end; i++) {
+        // Twice the triangle area, which orders the candidates the same.
+        final double area = Math.abs((keptTime - nextTime) * (values[i] - keptValue)
+                                     - (keptTime - (timestamps[i] - origin))
+                                       * (nextValue - keptValue));
+        if (area > largestArea) {
+          largestArea = area;
+          largest = i;
+        }
+      }
+
+      selected[bucket + 1] = largest;
+      kept = largest;
+    }
+
+    selected[maxPoints - 1] = size - 1;
+
+    return selected;
+  }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.measurement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Downsamples every measurement from a start time to an end time with
+ * Largest-Triangle-Three-Buckets as the measurements are read, holding at most two buckets of each
+ * series in memory.
+ *
+ * <p>{@link LargestTriangleThreeBuckets} splits a series into buckets of equal point count, which
+ * needs the count up front. Here the {@code maxPoints - 2} buckets split the time range into equal
+ * durations instead, so the bucket of a measurement is known as soon as it is read. The point of a
+ * bucket is chosen once the following bucket, whose average it is measured against, is complete.
+ * The first and last measurements are always kept and empty buckets yield no point, so gaps stay
+ * gaps and a series may keep fewer than {@code maxPoints} measurements.
+ *
+ * <p>With merge_metrics or group_by, the downsampled series of each returned element are combined
+ * in time order and downsampled again to {@code maxPoints} with {@link Measurements#downsample}.
+ */
+public class MeasurementDownsampler implements MeasurementHandler {
+
+  private static final Logger logger = LoggerFactory.getLogger(MeasurementDownsampler.class);
+
+  private static final TypeReference<Map<String, String>> VALUE_META_TYPE =
+      new TypeReference<Map<String, String>>() {};
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private final long startMillis;
+  private final long durationMillis;
+  private final int maxPoints;
+  private final int buckets;
+  private final boolean mergeMetrics;
+  private final List<String> groupBy;
+
+  // Series by name and then dimensions, in the order they were first read.
+  private final Map<String, Map<Map<String, String>, Series>> series = new LinkedHashMap<>();
+
+  /**
+   * @throws IllegalArgumentException if {@code maxPoints} is less than
+   *         {@link LargestTriangleThreeBuckets#MIN_POINTS}
+   */
+  public MeasurementDownsampler(DateTime startTime, DateTime endTime, int maxPoints,
+                                Boolean mergeMetricsFlag, @Nullable List<String> groupBy) {
+    if (maxPoints < LargestTriangleThreeBuckets.MIN_POINTS) {
+      throw new IllegalArgumentException(
+          "maxPoints must be at least " + LargestTriangleThreeBuckets.MIN_POINTS);
+    }
+
+    this.startMillis = startTime.getMillis();
+    this.durationMillis = Math.max(endTime.getMillis() - this.startMillis, 1);
+    this.maxPoints = maxPoints;
+    this.buckets = maxPoints - 2;
+    this.mergeMetrics = Boolean.TRUE.equals(mergeMetricsFlag);
+    this.groupBy = groupBy;
+  }
+
+  @Override
+  public void handle(String name, Map<String, String> dimensions, long timestamp, double value,
+                     @Nullable String valueMeta) {
+    Map<Map<String, String>, Series> named = series.get(name);
+    if (named == null) {
+      named = new LinkedHashMap<>();
+      series.put(name, named);
+    }
+
+    Series serie = named.get(dimensions);
+    if (serie == null) {
+      serie = new Series(name, dimensions);
+      named.put(dimensions, serie);
+    }
+
+    serie.add(timestamp, value, valueMeta);
+  }
+
+  /**
+   * Returns the downsampled measurements once every measurement has been handled: one element
+   * per series, per name with merge_metrics or per group with group_by, the id of a group being
+   * its index in the group order.
+   */
+  public List<Measurements> result() {
+    final List<Measurements> result = new ArrayList<>();
+
+    if (mergeMetrics) {
+
+      for (Map.Entry<String, Map<Map<String, String>, Series>> named : series.entrySet()) {
+        result.add(combine(named.getKey(), new HashMap<String, String>(),
+                           new ArrayList<>(named.getValue().values())));
+      }
+
+    } else if (groupBy != null) {
+
+      // Dimension values are never empty, so the joined key is unambiguous.
+      final Map<String, List<Series>> groups = new TreeMap<>();
+      final Map<String, Map<String, String>> groupDimensions = new HashMap<>();
+
+      for (Map<Map<String, String>, Series> named : series.values()) {
+        for (Series serie : named.values()) {
+
+          final Map<String, String> dimensions = groupDimensions(serie);
+          final String key = serie.name + '\0' + new TreeMap<>(dimensions);
+          List<Series> group = groups.get(key);
+          if (group == null) {
+            group = new ArrayList<>();
+            groups.put(key, group);
+            groupDimensions.put(key, dimensions);
+          }
+          group.add(serie);
+        }
+      }
+
+      for (Map.Entry<String, List<Series>> group : groups.entrySet()) {
+        final Measurements measurements = combine(group.getValue().get(0).name,
+                                                  groupDimensions.get(group.getKey()),
+                                                  group.getValue());
+        measurements.setId(String.valueOf(result.size()));
+        result.add(measurements);
+      }
+
+    } else {
+
+      for (Map<Map<String, String>, Series> named : series.values()) {
+        for (Series serie : named.values()) {
+          result.add(combine(serie.name, serie.dimensions, Arrays.asList(serie)));
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the dimensions of the group of the {@code serie}, all of them for "*".
+   */
+  private Map<String, String> groupDimensions(Series serie) {
+    if (groupBy.contains("*")) {
+      return serie.dimensions;
+    }
+
+    final Map<String, String> dimensions = new HashMap<>();
+    for (String dimensionName : groupBy) {
+      final String value = serie.dimensions.get(dimensionName);
+      if (value != null) {
+        dimensions.put(dimensionName, value);
+      }
+    }
+    return dimensions;
+  }
+
+  private Measurements combine(String name, Map<String, String> dimensions,
+                               List<Series> members) {
+    final Points points = new Points();
+    for (Series serie : members) {
+      final Points kept = serie.finish();
+      for (int i = 0; i < kept.size; i++) {
+        points.add(kept.timestamps[i], kept.values[i], kept.valueMeta[i]);
+      }
+    }
+
+    // Each series is in time order, so only series combined together need sorting.
+    final Integer[] order = new Integer[points.size];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    if (members.size() > 1) {
+      Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+          return Long.compare(points.timestamps[a], points.timestamps[b]);
+        }
+      });
+    }
+
+    final Measurements measurements = new Measurements(name, dimensions);
+    for (int i : order) {
+      measurements.addMeasurement(points.timestamps[i], points.values[i],
+                                  parseValueMeta(points.valueMeta[i]));
+    }
+    measurements.downsample(maxPoints);
+
+    return measurements;
+  }
+
+  private static Map<String, String> parseValueMeta(@Nullable String valueMeta) {
+    if (valueMeta == null || valueMeta.isEmpty()) {
+      return null;
+    }
+
+    try {
+      return OBJECT_MAPPER.readValue(valueMeta, VALUE_META_TYPE);
+    } catch (IOException e) {
+      logger.error("failed to parse value metadata: {}", valueMeta);
+      return null;
+    }
+  }
+
+  private int bucketOf(long timestamp) {
+    final int bucket = (int) ((double) (timestamp - startMillis) / durationMillis * buckets);
+    return Math.min(Math.max(bucket, 0), buckets - 1);
+  }
+
+  /**
+   * The kept points of a series and the points of its two undecided buckets.
+   */
+  private final class Series {
+    private final String name;
+    private final Map<String, String> dimensions;
+    private final Points kept = new Points();
+    private Points current = new Points();
+    private int currentBucket;
+    private Points next = new Points();
+    private int nextBucket;
+
+    private Series(String name, Map<String, String> dimensions) {
+      this.name = name;
+      this.dimensions = dimensions;
+    }
+
+    private void add(long timestamp, double value, @Nullable String valueMeta) {
+      if (kept.size == 0) {
+        kept.add(timestamp, value, valueMeta);
+        return;
+      }
+
+      final int bucket = bucketOf(timestamp);
+
+      if (current.size == 0 || (next.size == 0 && bucket == currentBucket)) {
+        currentBucket = bucket;
+        current.add(timestamp, value, valueMeta);
+      } else if (next.size == 0 || bucket == nextBucket) {
+        nextBucket = bucket;
+        next.add(timestamp, value, valueMeta);
+      } else {
+        // The next bucket is complete, so the point of the current one can be chosen.
+        select(current, next.averageTime(), next.averageValue());
+        final Points chosen = current;
+        current = next;
+        currentBucket = nextBucket;
+        next = chosen;
+        next.size = 0;
+        nextBucket = bucket;
+        next.add(timestamp, value, valueMeta);
+      }
+    }
+
+    /**
+     * Chooses the points of the undecided buckets, the last point read being kept as is.
+     */
+    private Points finish() {
+      final Points last = next.size > 0 ? next : current;
+
+      if (last.size > 0) {
+        last.size--;
+        final long lastTime = last.timestamps[last.size];
+        final double lastValue = last.values[last.size];
+        final String lastValueMeta = last.valueMeta[last.size];
+
+        if (next.size > 0) {
+          select(current, next.averageTime(), next.averageValue());
+          select(next, lastTime, lastValue);
+        } else if (current.size > 0) {
+          select(current, lastTime, lastValue);
+        }
+
+        kept.add(lastTime, lastValue, lastValueMeta);
+        current.size = 0;
+        next.size = 0;
+      }
+
+      return kept;
+    }
+
+    /**
+     * Keeps the candidate forming the largest triangle with the last kept point and the given
+     * point.
+     */
+    private void select(Points candidates, double nextTime, double nextValue) {
+      // Times relative to the first point, which keeps the triangle areas precise in a double.
+      final long origin = kept.timestamps[0];
+      final double keptTime = kept.timestamps[kept.size - 1] - origin;
+      final double keptValue = kept.values[kept.size - 1];
+      final double relativeNextTime = nextTime - origin;
+
+      double largestArea = -1;
+      int largest = 0;
+
+      for (int i = 0; i < candidates.size; i++) {
+        // Twice the triangle area, which orders the candidates the same.
+        final double area =
+            Math.abs((keptTime - relativeNextTime) * (candidates.values[i] - keptValue)
+                     - (keptTime - (candidates.timestamps[i] - origin))
+                       * (nextValue - keptValue));
+        if (area > largestArea) {
+          largestArea = area;
+          largest = i;
+        }
+      }
+
+      kept.add(candidates.timestamps[largest], candidates.values[largest],
+               candidates.valueMeta[largest]);
+    }
+  }
+
+  /**
+   * Points held in parallel arrays, the value metadata still as read.
+   */
+  private static final class Points {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private String[] valueMeta = new String[INITIAL_CAPACITY];
+    private int size;
+
+    private void add(long timestamp, double value, @Nullable String meta) {
+      if (size == timestamps.length) {
+        final int capacity = size + (size >> 1);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        values = Arrays.copyOf(values, capacity);
+        valueMeta = Arrays.copyOf(valueMeta, capacity);
+      }
+
+      timestamps[size] = timestamp;
+      values[size] = value;
+      valueMeta[size] = meta;
+      size++;
+    }
+
+    private double averageTime() {
+      // Summed relative to the first point, so the sum cannot lose precision.
+      double sum = 0;
+      for (int i = 0; i < size; i++) {
+        sum += timestamps[i] - timestamps[0];
+      }
+      return timestamps[0] + sum / size;
+    }
+
+    private double averageValue() {
+      double sum = 0;
+      for (int i = 0; i < size; i++) {
+        sum += values[i];
+      }
+      return sum / size;
+    }
+  }
+}
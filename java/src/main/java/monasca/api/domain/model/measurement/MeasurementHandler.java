@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.measurement;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Receives measurements one at a time as they are read, so they need not be held in memory.
+ */
+public interface MeasurementHandler {
+  /**
+   * Handles a measurement of the series named {@code name} with {@code dimensions}. The same
+   * dimensions instance is passed for every measurement of a series.
+   *
+   * @param timestamp epoch milliseconds
+   * @param valueMeta the value metadata as a JSON object, or null if there is none
+   */
+  void handle(String name, Map<String, String> dimensions, long timestamp, double value,
+              @Nullable String valueMeta) throws IOException;
+}
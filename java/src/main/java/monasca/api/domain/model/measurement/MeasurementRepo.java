@@ -25,8 +25,34 @@ import java.util.Map;
 public interface MeasurementRepo {
   /**
    * Finds measurements for the given criteria.
+   *
+   * <p>With {@code groupBy}, dimension names or "*" for all of them, the series are returned
+   * separately, one element per distinct value of the dimensions, in a stable group order. The
+   * {@code limit} then bounds the measurements across all groups, the {@code offset} is a
+   * {@link monasca.api.domain.model.common.SeriesOffset} and the id of each element is its index
+   * in the group order.
    */
   List<Measurements> find(String tenantId, String name, Map<String, String> dimensions,
                           DateTime startTime, @Nullable DateTime endTime, @Nullable String offset,
-                          int limit, Boolean mergeMetricsFlag) throws Exception;
+                          int limit, Boolean mergeMetricsFlag, @Nullable List<String> groupBy)
+      throws Exception;
+
+  /**
+   * Finds the measurements for the given criteria from {@code startTime} to {@code endTime},
+   * downsampled with a {@link MeasurementDownsampler} to at most {@code maxPoints} per returned
+   * element as they are read. The whole time range is read, so there is no offset or limit.
+   */
+  List<Measurements> findDownsampled(String tenantId, String name, Map<String, String> dimensions,
+                                     DateTime startTime, @Nullable DateTime endTime,
+                                     Boolean mergeMetricsFlag, @Nullable List<String> groupBy,
+                                     int maxPoints) throws Exception;
+
+  /**
+   * Passes every measurement of every series matching the given criteria from {@code startTime},
+   * inclusive, to {@code endTime}, exclusive, to the handler, in time order within each series.
+   * Measurements are read in bounded portions, so the memory used does not grow with the time
+   * range.
+   */
+  void export(String tenantId, String name, Map<String, String> dimensions, DateTime startTime,
+              @Nullable DateTime endTime, MeasurementHandler handler) throws Exception;
 }
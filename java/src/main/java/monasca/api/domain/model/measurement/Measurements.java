@@ -13,39 +13,87 @@
  */
 package monasca.api.domain.model.measurement;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import monasca.api.domain.model.common.TimeSeries;
 import monasca.common.model.domain.common.AbstractEntity;
 
 /**
  * Encapsulates a metric measurements.
+ *
+ * <p>Measurements are held in parallel primitive arrays, timestamps as epoch milliseconds, with
+ * value metadata kept only for the measurements having some. {@link #getMeasurements()} renders
+ * them as [timestamp, value, value_meta] rows.
  */
-public class Measurements extends AbstractEntity {
+public class Measurements extends AbstractEntity implements TimeSeries {
   private static final String[] COLUMNS = new String[] {"timestamp", "value", "value_meta"};
+  private static final DateTimeFormatter TIMESTAMP_FORMATTER = ISODateTimeFormat.dateTime()
+      .withZoneUTC();
+  private static final DateTimeFormatter TIMESTAMP_PARSER = ISODateTimeFormat.dateTimeParser()
+      .withZoneUTC();
+  private static final int INITIAL_CAPACITY = 16;
 
   private String name;
   private Map<String, String> dimensions;
   private final String[] columns = COLUMNS;
-  private List<Object[]> measurements;
+  private int size;
+  private long[] timestamps = new long[INITIAL_CAPACITY];
+  private double[] values = new double[INITIAL_CAPACITY];
+  private final TreeMap<Integer, Map<String, String>> valueMeta = new TreeMap<>();
 
   public Measurements() {}
 
   public Measurements(String name, Map<String, String> dimensions, List<Object[]> measurements) {
     this.name = name;
     this.dimensions = dimensions;
-    this.measurements = measurements;
+    setMeasurements(measurements);
   }
 
   public Measurements(String name, Map<String, String> dimensions) {
     this.name = name;
     this.dimensions = dimensions;
-    this.measurements = new LinkedList<>();
   }
 
+  /**
+   * Formats epoch milliseconds as the ISO 8601 UTC timestamps of the measurement rows.
+   */
+  public static String formatTimestamp(long timestamp) {
+    return TIMESTAMP_FORMATTER.print(timestamp);
+  }
+
+  public void addMeasurement(long timestamp, double value, Map<String, String> valueMeta) {
+    if (size == timestamps.length) {
+      final int capacity = size + (size >> 1);
+      timestamps = Arrays.copyOf(timestamps, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    timestamps[size] = timestamp;
+    values[size] = value;
+    if (valueMeta != null && !valueMeta.isEmpty()) {
+      this.valueMeta.put(size, valueMeta);
+    }
+    size++;
+  }
+
+  /**
+   * Adds a [timestamp, value, value_meta] row, the timestamp being an ISO 8601 string.
+   */
+  @SuppressWarnings("unchecked")
   public void addMeasurement(Object[] measurement) {
-    measurements.add(measurement);
+    addMeasurement(TIMESTAMP_PARSER.parseMillis((String) measurement[0]),
+                   ((Number) measurement[1]).doubleValue(),
+                   measurement.length > 2 ? (Map<String, String>) measurement[2] : null);
   }
 
   @Override
@@ -62,10 +110,11 @@ public class Measurements extends AbstractEntity {
         return false;
     } else if (!dimensions.equals(other.dimensions))
       return false;
-    if (measurements == null) {
-      if (other.measurements != null)
-        return false;
-    } else if (!measurements.equals(other.measurements))
+    if (!Arrays.equals(getTimestamps(), other.getTimestamps()))
+      return false;
+    if (!Arrays.equals(getValues(), other.getValues()))
+      return false;
+    if (!valueMeta.equals(other.valueMeta))
       return false;
     if (name == null) {
       if (other.name != null)
@@ -84,6 +133,14 @@ public class Measurements extends AbstractEntity {
   }
 
   public List<Object[]> getMeasurements() {
+    final List<Object[]> measurements = new ArrayList<>(size);
+
+    for (int i = 0; i < size; i++) {
+      final Map<String, String> meta = valueMeta.get(i);
+      measurements.add(new Object[] {formatTimestamp(timestamps[i]), values[i],
+                                     meta != null ? meta : Collections.emptyMap()});
+    }
+
     return measurements;
   }
 
@@ -91,12 +148,54 @@ public class Measurements extends AbstractEntity {
     return name;
   }
 
+  /**
+   * Returns the number of measurements.
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the timestamp, in epoch milliseconds, of the measurement at {@code index}.
+   */
+  @Override
+  public long timestampAt(int index) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return timestamps[index];
+  }
+
+  /**
+   * Returns the timestamps of the measurements in epoch milliseconds.
+   */
+  @JsonIgnore
+  public long[] getTimestamps() {
+    return Arrays.copyOf(timestamps, size);
+  }
+
+  @JsonIgnore
+  public double[] getValues() {
+    return Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Returns the value metadata of the measurements having some, by measurement index.
+   */
+  @JsonIgnore
+  public Map<Integer, Map<String, String>> getValueMeta() {
+    return Collections.unmodifiableMap(valueMeta);
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
     result = prime * result + ((dimensions == null) ? 0 : dimensions.hashCode());
-    result = prime * result + ((measurements == null) ? 0 : measurements.hashCode());
+    result = prime * result + Arrays.hashCode(getTimestamps());
+    result = prime * result + Arrays.hashCode(getValues());
+    result = prime * result + valueMeta.hashCode();
     result = prime * result + ((name == null) ? 0 : name.hashCode());
     return result;
   }
@@ -106,7 +205,54 @@ public class Measurements extends AbstractEntity {
   }
 
   public void setMeasurements(List<Object[]> measurements) {
-    this.measurements = measurements;
+    size = 0;
+    valueMeta.clear();
+    if (measurements != null) {
+      for (Object[] measurement : measurements) {
+        addMeasurement(measurement);
+      }
+    }
+  }
+
+  /**
+   * Keeps only the first {@code length} measurements.
+   */
+  @Override
+  public void truncate(int length) {
+    if (length < size) {
+      size = length;
+      valueMeta.tailMap(length).clear();
+    }
+  }
+
+  /**
+   * Keeps at most {@code maxPoints} measurements, selected by
+   * {@link LargestTriangleThreeBuckets}. The first and last measurements are always kept.
+   *
+   * @throws IllegalArgumentException if {@code maxPoints} is less than
+   *         {@link LargestTriangleThreeBuckets#MIN_POINTS}
+   */
+  public void downsample(int maxPoints) {
+    final int[] selected = LargestTriangleThreeBuckets.select(timestamps, values, size, maxPoints);
+
+    if (selected.length == size) {
+      return;
+    }
+
+    // Indexes only increase, so the kept measurements are moved down in place.
+    final TreeMap<Integer, Map<String, String>> keptValueMeta = new TreeMap<>();
+    for (int i = 0; i < selected.length; i++) {
+      timestamps[i] = timestamps[selected[i]];
+      values[i] = values[selected[i]];
+      final Map<String, String> meta = valueMeta.get(selected[i]);
+      if (meta != null) {
+        keptValueMeta.put(i, meta);
+      }
+    }
+
+    valueMeta.clear();
+    valueMeta.putAll(keptValueMeta);
+    size = selected.length;
   }
 
   public void setName(String name) {
@@ -119,7 +265,7 @@ public class Measurements extends AbstractEntity {
 
   @Override
   public String toString() {
-    return String.format("Measurement [name=%s, dimensions=%s, measurements=%s]", name, dimensions,
-        measurements);
+    return String.format("Measurement [name=%s, dimensions=%s, size=%d]", name, dimensions,
+        size);
   }
 }
@@ -13,6 +13,7 @@
  */
 package monasca.api.domain.model.notificationmethod;
 
+import java.util.Collection;
 import java.util.List;
 
 import monasca.api.domain.exception.EntityNotFoundException;
@@ -33,6 +34,12 @@ public interface NotificationMethodRepo {
   /** Returns whether the {@code notificationMethodId} exists for the {@code tenantId}. */
   boolean exists(String tenantId, String notificationMethodId);
 
+  /**
+   * Returns those of the {@code notificationMethodIds} which do not exist for the
+   * {@code tenantId}, in the order given, or an empty list if they all exist.
+   */
+  List<String> existAll(String tenantId, Collection<String> notificationMethodIds);
+
   /**
    * @throws EntityNotFoundException if a notification method cannot be found for the
    *         {@code notificationMethodId}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.outbox;
+
+/**
+ * An event written to the outbox in the same transaction as the change it notifies of, kept until
+ * it has been published to its topic.
+ */
+public class OutboxEvent {
+  private long id;
+  private String topic;
+  private String key;
+  private String payload;
+
+  public OutboxEvent() {}
+
+  public OutboxEvent(String topic, String key, String payload) {
+    this.topic = topic;
+    this.key = key;
+    this.payload = payload;
+  }
+
+  public OutboxEvent(long id, String topic, String key, String payload) {
+    this(topic, key, payload);
+    this.id = id;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    OutboxEvent other = (OutboxEvent) obj;
+    if (id != other.id)
+      return false;
+    if (key == null) {
+      if (other.key != null)
+        return false;
+    } else if (!key.equals(other.key))
+      return false;
+    if (payload == null) {
+      if (other.payload != null)
+        return false;
+    } else if (!payload.equals(other.payload))
+      return false;
+    if (topic == null) {
+      if (other.topic != null)
+        return false;
+    } else if (!topic.equals(other.topic))
+      return false;
+    return true;
+  }
+
+  /** Returns the position of the event in the outbox, 0 until it has been written. */
+  public long getId() {
+    return id;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public String getPayload() {
+    return payload;
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + (int) (id ^ (id >>> 32));
+    result = prime * result + ((key == null) ? 0 : key.hashCode());
+    result = prime * result + ((payload == null) ? 0 : payload.hashCode());
+    result = prime * result + ((topic == null) ? 0 : topic.hashCode());
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("OutboxEvent [id=%s, topic=%s, key=%s]", id, topic, key);
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.outbox;
+
+import java.util.List;
+
+/**
+ * Builds the events notifying of a change from what the change read inside its transaction, so
+ * they can be written to the outbox in that same transaction.
+ *
+ * @param <T> what the change read
+ */
+public interface OutboxEventFactory<T> {
+  /**
+   * Returns the events to write to the outbox for the {@code original}, possibly none.
+   */
+  List<OutboxEvent> eventsFor(T original);
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.outbox;
+
+import java.util.List;
+
+/**
+ * Repository for the events waiting in the outbox to be published.
+ */
+public interface OutboxRepo {
+  /**
+   * Publishes events taken from the outbox.
+   */
+  interface Publisher {
+    /**
+     * Publishes the {@code events}, returning only once they have been acknowledged.
+     */
+    void publish(List<OutboxEvent> events);
+  }
+
+  /**
+   * Hands the oldest events of the outbox, at most {@code limit} of them in the order they were
+   * written, to the {@code publisher} and deletes them once it returns. The events are first
+   * claimed for {@code leaseSeconds} in a short transaction, and published outside of any, so
+   * writes to the outbox never wait for the publisher. No events are claimed while the oldest ones
+   * are claimed by another relay, so that relays do not reorder them. Events are released if the
+   * {@code publisher} throws, and claimed again by any relay once their lease expired.
+   *
+   * @return the number of events published
+   */
+  int relay(int limit, int leaseSeconds, Publisher publisher);
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.statistic;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Columnar view of {@link Statistics}, holding the epoch millisecond timestamps and, for each
+ * statistic column following the timestamp, its values. Missing values, NaN, are written as null
+ * as in the rows of {@link Statistics#getStatistics()}.
+ */
+public class ColumnarStatistics {
+  private final String id;
+  private final String name;
+  private final Map<String, String> dimensions;
+  private final List<String> columns;
+  private final long[] timestamps;
+  private final double[][] statistics;
+
+  public ColumnarStatistics(Statistics statistics) {
+    this.id = statistics.getId();
+    this.name = statistics.getName();
+    this.dimensions = statistics.getDimensions();
+    this.columns = statistics.getColumns();
+    this.timestamps = statistics.getTimestamps();
+    this.statistics = statistics.getColumnValues();
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Map<String, String> getDimensions() {
+    return dimensions;
+  }
+
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  public long[] getTimestamps() {
+    return timestamps;
+  }
+
+  @JsonSerialize(using = ColumnsSerializer.class)
+  public double[][] getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * Writes the statistic columns as arrays of numbers, NaN as null.
+   */
+  public static class ColumnsSerializer extends JsonSerializer<double[][]> {
+    @Override
+    public void serialize(double[][] columns, JsonGenerator jgen, SerializerProvider provider)
+        throws IOException {
+      jgen.writeStartArray();
+      for (double[] column : columns) {
+        jgen.writeStartArray();
+        for (double value : column) {
+          if (Double.isNaN(value)) {
+            jgen.writeNull();
+          } else {
+            jgen.writeNumber(value);
+          }
+        }
+        jgen.writeEndArray();
+      }
+      jgen.writeEndArray();
+    }
+  }
+}
@@ -27,9 +27,14 @@ public interface StatisticRepo {
 
   /**
    * Finds statistics for the given criteria.
+   *
+   * <p>With {@code groupBy}, dimension names or "*" for all of them, the statistics of each group
+   * of series are returned separately, as described for
+   * {@link monasca.api.domain.model.measurement.MeasurementRepo#find}, the {@code limit} bounding
+   * the periods across all groups.
    */
   List<Statistics> find(String tenantId, String name, Map<String, String> dimensions,
                         DateTime startTime, @Nullable DateTime endTime, List<String> statistics,
-                        int period, String offset, int limit, Boolean mergeMetricsFlag)
-      throws Exception;
+                        int period, String offset, int limit, Boolean mergeMetricsFlag,
+                        @Nullable List<String> groupBy) throws Exception;
 }
@@ -14,36 +14,87 @@
 package monasca.api.domain.model.statistic;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import monasca.api.domain.model.measurement.Measurements;
+import monasca.api.domain.model.common.TimeSeries;
 import monasca.common.model.domain.common.AbstractEntity;
 
 /**
  * Encapsulates a metric measurements.
+ *
+ * <p>Statistics are held in primitive arrays, timestamps as epoch milliseconds and the values of
+ * each statistic column as doubles, NaN standing for a missing value. {@link #getStatistics()}
+ * renders them as [timestamp, statistic...] rows.
  */
-public class Statistics extends AbstractEntity {
+public class Statistics extends AbstractEntity implements TimeSeries {
+  private static final DateTimeFormatter TIMESTAMP_PARSER = ISODateTimeFormat.dateTimeParser()
+      .withZoneUTC();
+  private static final int INITIAL_CAPACITY = 16;
 
   private String name;
   private Map<String, String> dimensions;
   private List<String> columns;
-  private List<List<Object>> statistics;
+  private int size;
+  /** Number of statistic columns, set by the first row added. */
+  private int width = -1;
+  private long[] timestamps = new long[INITIAL_CAPACITY];
+  /** Statistic values row after row, width values per row. */
+  private double[] values;
 
-  public Statistics() {
-    statistics = new ArrayList<>();
-  }
+  public Statistics() {}
 
   public Statistics(String name, Map<String, String> dimensions, List<String> columns) {
     this.name = name;
     this.dimensions = dimensions;
     this.columns = columns;
-    this.statistics = new LinkedList<>();
+  }
+
+  /**
+   * Adds a row of statistics, in the order of the statistic columns, at {@code timestamp} epoch
+   * milliseconds.
+   */
+  public void addStatistics(long timestamp, double[] statistics) {
+    if (width < 0) {
+      width = statistics.length;
+      values = new double[INITIAL_CAPACITY * width];
+    } else if (statistics.length != width) {
+      throw new IllegalArgumentException(
+          "Expected " + width + " statistics, got " + statistics.length);
+    }
 
+    if (size == timestamps.length) {
+      final int capacity = size + (size >> 1);
+      timestamps = Arrays.copyOf(timestamps, capacity);
+      values = Arrays.copyOf(values, capacity * width);
+    }
+
+    timestamps[size] = timestamp;
+    System.arraycopy(statistics, 0, values, size * width, width);
+    size++;
   }
 
   public void addValues(List<Object> value) {
-    statistics.add(value);
+    addStatistics(value);
+  }
+
+  /**
+   * Adds a [timestamp, statistic...] row, the timestamp being an ISO 8601 string.
+   */
+  public void addStatistics(List<Object> statistics) {
+    final double[] row = new double[statistics.size() - 1];
+    for (int i = 0; i < row.length; i++) {
+      final Number value = (Number) statistics.get(i + 1);
+      row[i] = value == null ? Double.NaN : value.doubleValue();
+    }
+    addStatistics(TIMESTAMP_PARSER.parseMillis((String) statistics.get(0)), row);
   }
 
   @Override
@@ -65,10 +116,9 @@ public class Statistics extends AbstractEntity {
         return false;
     } else if (!columns.equals(other.columns))
       return false;
-    if (statistics == null) {
-      if (other.statistics != null)
-        return false;
-    } else if (!statistics.equals(other.statistics))
+    if (!Arrays.equals(getTimestamps(), other.getTimestamps()))
+      return false;
+    if (!Arrays.deepEquals(getColumnValues(), other.getColumnValues()))
       return false;
     if (name == null) {
       if (other.name != null)
@@ -83,10 +133,6 @@ public class Statistics extends AbstractEntity {
     this.id = id;
   }
 
-  public void addStatistics(List<Object> statistics) {
-    this.statistics.add(statistics);
-  }
-
   public List<String> getColumns() {
     return columns;
   }
@@ -100,16 +146,78 @@ public class Statistics extends AbstractEntity {
   }
 
   public List<List<Object>> getStatistics() {
+    final List<List<Object>> statistics = new ArrayList<>(size);
+
+    for (int i = 0; i < size; i++) {
+      final List<Object> row = new ArrayList<>(width + 1);
+      row.add(Measurements.formatTimestamp(timestamps[i]));
+      for (int j = 0; j < width; j++) {
+        final double value = values[i * width + j];
+        if (Double.isNaN(value)) {
+          row.add(null);
+        } else if (isCount(j)) {
+          row.add((long) value);
+        } else {
+          row.add(value);
+        }
+      }
+      statistics.add(row);
+    }
+
     return statistics;
   }
 
+  /**
+   * Returns the number of rows of statistics.
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the timestamp, in epoch milliseconds, of the row at {@code index}.
+   */
+  @Override
+  public long timestampAt(int index) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return timestamps[index];
+  }
+
+  /**
+   * Returns the timestamps of the rows in epoch milliseconds.
+   */
+  @JsonIgnore
+  public long[] getTimestamps() {
+    return Arrays.copyOf(timestamps, size);
+  }
+
+  /**
+   * Returns the values of each statistic column, in column order.
+   */
+  @JsonIgnore
+  public double[][] getColumnValues() {
+    final double[][] columnValues = new double[Math.max(width, 0)][size];
+
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < width; j++) {
+        columnValues[j][i] = values[i * width + j];
+      }
+    }
+
+    return columnValues;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
     result = prime * result + ((dimensions == null) ? 0 : dimensions.hashCode());
     result = prime * result + ((name == null) ? 0 : name.hashCode());
-    result = prime * result + ((statistics == null) ? 0 : statistics.hashCode());
+    result = prime * result + Arrays.hashCode(getTimestamps());
+    result = prime * result + Arrays.deepHashCode(getColumnValues());
     result = prime * result + ((columns == null) ? 0 : columns.hashCode());
     return result;
   }
@@ -127,12 +235,32 @@ public class Statistics extends AbstractEntity {
   }
 
   public void setStatistics(List<List<Object>> statistics) {
-    this.statistics = statistics;
+    size = 0;
+    width = -1;
+    if (statistics != null) {
+      for (List<Object> row : statistics) {
+        addStatistics(row);
+      }
+    }
+  }
+
+  /**
+   * Keeps only the first {@code length} rows.
+   */
+  @Override
+  public void truncate(int length) {
+    if (length < size) {
+      size = length;
+    }
+  }
+
+  private boolean isCount(int statistic) {
+    return columns != null && statistic + 1 < columns.size()
+           && "count".equals(columns.get(statistic + 1));
   }
 
   @Override
   public String toString() {
-    return String.format("Statistics [name=%s, dimensions=%s,statistics=%s]", name, dimensions,
-        statistics);
+    return String.format("Statistics [name=%s, dimensions=%s, size=%d]", name, dimensions, size);
   }
 }
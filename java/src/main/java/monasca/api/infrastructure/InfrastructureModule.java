@@ -15,6 +15,7 @@ package monasca.api.infrastructure;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.ProvisionException;
+import com.google.inject.name.Names;
 
 import javax.inject.Singleton;
 
@@ -25,7 +26,15 @@ import monasca.api.domain.model.alarmstatehistory.AlarmStateHistoryRepo;
 import monasca.api.domain.model.measurement.MeasurementRepo;
 import monasca.api.domain.model.metric.MetricDefinitionRepo;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.domain.model.outbox.OutboxRepo;
 import monasca.api.domain.model.statistic.StatisticRepo;
+import monasca.api.infrastructure.messaging.EventsConsumer;
+import monasca.api.infrastructure.messaging.OutboxRelay;
+import monasca.api.infrastructure.persistence.AlarmIdIndex;
+import monasca.api.infrastructure.persistence.AlarmIndex;
+import monasca.api.infrastructure.persistence.CachedAlarmDefinitionRepo;
+import monasca.api.infrastructure.persistence.CachedStatisticRepo;
+import monasca.api.infrastructure.persistence.ChunkedAlarmStateHistoryQuery;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.api.infrastructure.persistence.Utils;
 import monasca.api.infrastructure.persistence.influxdb.InfluxV9AlarmStateHistoryRepo;
@@ -38,9 +47,11 @@ import monasca.api.infrastructure.persistence.mysql.AlarmDefinitionMySqlRepoImpl
 import monasca.api.infrastructure.persistence.mysql.AlarmMySqlRepoImpl;
 import monasca.api.infrastructure.persistence.mysql.MySQLUtils;
 import monasca.api.infrastructure.persistence.mysql.NotificationMethodMySqlRepoImpl;
+import monasca.api.infrastructure.persistence.mysql.OutboxMySqlRepoImpl;
 import monasca.api.infrastructure.persistence.hibernate.AlarmDefinitionSqlRepoImpl;
 import monasca.api.infrastructure.persistence.hibernate.AlarmSqlRepoImpl;
 import monasca.api.infrastructure.persistence.hibernate.NotificationMethodSqlRepoImpl;
+import monasca.api.infrastructure.persistence.hibernate.OutboxSqlRepoImpl;
 import monasca.api.infrastructure.persistence.hibernate.AlarmHibernateUtils;
 import monasca.api.infrastructure.persistence.vertica.AlarmStateHistoryVerticaRepoImpl;
 import monasca.api.infrastructure.persistence.vertica.MeasurementVerticaRepoImpl;
@@ -72,21 +83,29 @@ public class InfrastructureModule extends AbstractModule {
 
     if (hibernateEnabled) {
       this.bind(AlarmRepo.class).to(AlarmSqlRepoImpl.class).in(Singleton.class);
-      this.bind(AlarmDefinitionRepo.class).to(AlarmDefinitionSqlRepoImpl.class).in(Singleton.class);
+      this.bindAlarmDefinitionRepo(AlarmDefinitionSqlRepoImpl.class);
       this.bind(NotificationMethodRepo.class).to(NotificationMethodSqlRepoImpl.class).in(Singleton.class);
+      this.bind(OutboxRepo.class).to(OutboxSqlRepoImpl.class).in(Singleton.class);
     } else {
       bind(AlarmRepo.class).to(AlarmMySqlRepoImpl.class).in(Singleton.class);
-      bind(AlarmDefinitionRepo.class).to(AlarmDefinitionMySqlRepoImpl.class).in(Singleton.class);
+      bindAlarmDefinitionRepo(AlarmDefinitionMySqlRepoImpl.class);
       bind(NotificationMethodRepo.class).to(NotificationMethodMySqlRepoImpl.class).in(Singleton.class);
+      bind(OutboxRepo.class).to(OutboxMySqlRepoImpl.class).in(Singleton.class);
       bind(PersistUtils.class).in(Singleton.class);
     }
 
+    bind(ChunkedAlarmStateHistoryQuery.class).in(Singleton.class);
+    bind(AlarmIdIndex.class).in(Singleton.class);
+    bind(AlarmIndex.class).in(Singleton.class);
+    bind(EventsConsumer.class).in(Singleton.class);
+    bind(OutboxRelay.class).in(Singleton.class);
+
     if (config.databaseConfiguration.getDatabaseType().trim().equalsIgnoreCase(VERTICA)) {
 
       bind(AlarmStateHistoryRepo.class).to(AlarmStateHistoryVerticaRepoImpl.class).in(Singleton.class);
       bind(MetricDefinitionRepo.class).to(MetricDefinitionVerticaRepoImpl.class).in(Singleton.class);
       bind(MeasurementRepo.class).to(MeasurementVerticaRepoImpl.class).in(Singleton.class);
-      bind(StatisticRepo.class).to(StatisticVerticaRepoImpl.class).in(Singleton.class);
+      bindStatisticRepo(StatisticVerticaRepoImpl.class);
 
     } else if (config.databaseConfiguration.getDatabaseType().trim().equalsIgnoreCase(INFLUXDB)) {
 
@@ -105,7 +124,7 @@ public class InfrastructureModule extends AbstractModule {
       bind(AlarmStateHistoryRepo.class).to(InfluxV9AlarmStateHistoryRepo.class).in(Singleton.class);
       bind(MetricDefinitionRepo.class).to(InfluxV9MetricDefinitionRepo.class).in(Singleton.class);
       bind(MeasurementRepo.class).to(InfluxV9MeasurementRepo.class).in(Singleton.class);
-      bind(StatisticRepo.class).to(InfluxV9StatisticRepo.class).in(Singleton.class);
+      bindStatisticRepo(InfluxV9StatisticRepo.class);
 
     } else {
 
@@ -118,6 +137,29 @@ public class InfrastructureModule extends AbstractModule {
     return this.config.hibernate != null && this.config.hibernate.getSupportEnabled();
   }
 
+  private void bindAlarmDefinitionRepo(
+      final Class<? extends AlarmDefinitionRepo> implementation) {
+    if (Boolean.TRUE.equals(this.config.alarmDefinitionCache.enabled)) {
+      this.bind(AlarmDefinitionRepo.class).annotatedWith(Names.named("uncached"))
+          .to(implementation).in(Singleton.class);
+      this.bind(CachedAlarmDefinitionRepo.class).in(Singleton.class);
+      this.bind(AlarmDefinitionRepo.class).to(CachedAlarmDefinitionRepo.class);
+    } else {
+      this.bind(AlarmDefinitionRepo.class).to(implementation).in(Singleton.class);
+    }
+  }
+
+  private void bindStatisticRepo(final Class<? extends StatisticRepo> implementation) {
+    if (Boolean.TRUE.equals(this.config.statisticsCache.enabled)) {
+      this.bind(StatisticRepo.class).annotatedWith(Names.named("uncached"))
+          .to(implementation).in(Singleton.class);
+      this.bind(CachedStatisticRepo.class).in(Singleton.class);
+      this.bind(StatisticRepo.class).to(CachedStatisticRepo.class);
+    } else {
+      this.bind(StatisticRepo.class).to(implementation).in(Singleton.class);
+    }
+  }
+
   private void bindUtils(final boolean hibernateEnabled) {
     final Class<? extends Utils> implementation = hibernateEnabled ? AlarmHibernateUtils.class : MySQLUtils.class;
     this.bind(Utils.class).to(implementation).in(Singleton.class);
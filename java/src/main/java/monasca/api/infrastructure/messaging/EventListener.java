@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.messaging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Receives domain events read from the events topic.
+ */
+public interface EventListener {
+  /**
+   * Handles the event of {@code type}, e.g. {@code alarm-deleted}, whose body is {@code event}.
+   */
+  void onEvent(String type, JsonNode event);
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.messaging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.dropwizard.lifecycle.Managed;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.inject.Inject;
+
+import kafka.consumer.Consumer;
+import kafka.consumer.ConsumerConfig;
+import kafka.consumer.ConsumerIterator;
+import kafka.consumer.KafkaStream;
+import kafka.javaapi.consumer.ConsumerConnector;
+
+import monasca.api.ApiConfig;
+
+/**
+ * Reads domain events from the events and alarm state transitions topics and hands them to the
+ * {@link EventListener}s registered for each topic. Every API node consumes in its own consumer
+ * group so that each node sees every event. Only topics with at least one listener registered
+ * before start are consumed.
+ */
+public class EventsConsumer implements Managed {
+
+  private static final Logger logger = LoggerFactory.getLogger(EventsConsumer.class);
+
+  private final ApiConfig config;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final Map<String, List<EventListener>> listeners = new ConcurrentHashMap<>();
+
+  private ConsumerConnector connector;
+  private ExecutorService executor;
+
+  @Inject
+  public EventsConsumer(ApiConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * Registers a listener for the events topic.
+   */
+  public void register(EventListener listener) {
+    register(config.eventsTopic, listener);
+  }
+
+  public void register(String topic, EventListener listener) {
+    List<EventListener> topicListeners = this.listeners.get(topic);
+    if (topicListeners == null) {
+      topicListeners = new CopyOnWriteArrayList<>();
+      this.listeners.put(topic, topicListeners);
+    }
+    topicListeners.add(listener);
+  }
+
+  @Override
+  public void start() {
+
+    if (this.listeners.isEmpty()) {
+      logger.debug("No event listeners registered, not consuming any topic");
+      return;
+    }
+
+    String groupId = groupId();
+
+    logger.info("Consuming topics {} as consumer group {}", this.listeners.keySet(), groupId);
+
+    Properties props = new Properties();
+    props.put("zookeeper.connect", Joiner.on(',').join(config.kafka.zookeeperUris));
+    props.put("group.id", groupId);
+    // Only changes made after startup matter, the listeners load current state on demand.
+    props.put("auto.offset.reset", "largest");
+
+    this.connector = Consumer.createJavaConsumerConnector(new ConsumerConfig(props));
+
+    Map<String, Integer> topicCountMap = new HashMap<>();
+    for (String topic : this.listeners.keySet()) {
+      topicCountMap.put(topic, 1);
+    }
+
+    Map<String, List<KafkaStream<byte[], byte[]>>> streams =
+        this.connector.createMessageStreams(topicCountMap);
+
+    this.executor = Executors.newFixedThreadPool(topicCountMap.size(),
+        new ThreadFactoryBuilder().setNameFormat("events-consumer-%d").setDaemon(true).build());
+
+    for (final String topic : topicCountMap.keySet()) {
+
+      final KafkaStream<byte[], byte[]> stream = streams.get(topic).get(0);
+
+      this.executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          ConsumerIterator<byte[], byte[]> it = stream.iterator();
+          while (it.hasNext()) {
+            dispatch(topic, it.next().message());
+          }
+        }
+      });
+    }
+  }
+
+  @Override
+  public void stop() {
+
+    if (this.connector != null) {
+      this.connector.shutdown();
+    }
+
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+    }
+  }
+
+  void dispatch(String topic, byte[] message) {
+
+    JsonNode root;
+
+    try {
+
+      root = this.objectMapper.readTree(message);
+
+    } catch (IOException e) {
+
+      logger.warn("Failed to parse event from topic {}", topic, e);
+
+      return;
+    }
+
+    // Events are wrapped in an object whose only field name is the event type.
+    Iterator<Map.Entry<String, JsonNode>> fields = root.fields();
+
+    if (!fields.hasNext()) {
+      return;
+    }
+
+    Map.Entry<String, JsonNode> event = fields.next();
+
+    List<EventListener> topicListeners = this.listeners.get(topic);
+
+    if (topicListeners == null) {
+      return;
+    }
+
+    for (EventListener listener : topicListeners) {
+
+      try {
+
+        listener.onEvent(event.getKey(), event.getValue());
+
+      } catch (RuntimeException e) {
+
+        logger.error("Event listener {} failed to handle {} event", listener, event.getKey(), e);
+      }
+    }
+  }
+
+  private String groupId() {
+
+    if (config.eventsConsumerGroupId != null && !config.eventsConsumerGroupId.isEmpty()) {
+      return config.eventsConsumerGroupId;
+    }
+
+    try {
+
+      return "monasca-api-" + InetAddress.getLocalHost().getHostName();
+
+    } catch (UnknownHostException e) {
+
+      return "monasca-api-" + UUID.randomUUID().toString();
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.messaging;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Event outbox configuration.
+ */
+public class OutboxConfiguration {
+  /**
+   * Writes events to the outbox table in the same transaction as the changes and relays them to
+   * Kafka in the background, instead of sending them from the request.
+   */
+  @JsonProperty
+  public Boolean enabled = Boolean.FALSE;
+  /** Maximum number of events relayed in one producer batch. */
+  @JsonProperty
+  public int batchSize = 500;
+  /** Milliseconds the relay waits before polling an empty outbox again. */
+  @JsonProperty
+  public long pollMillis = 200;
+  /**
+   * Seconds a relay may take to publish the events it claimed before another relay claims them,
+   * publishing them again.
+   */
+  @JsonProperty
+  public int leaseSeconds = 60;
+}
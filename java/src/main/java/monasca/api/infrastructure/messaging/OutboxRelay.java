@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import kafka.javaapi.producer.Producer;
+import kafka.producer.KeyedMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.dropwizard.lifecycle.Managed;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.outbox.OutboxEvent;
+import monasca.api.domain.model.outbox.OutboxRepo;
+
+/**
+ * Publishes the events written to the outbox to their topics, oldest first, and removes them from
+ * the outbox once the producer has sent them. Every API node runs a relay, the outbox repository
+ * leases the events being relayed to one node at a time.
+ */
+public class OutboxRelay implements Managed {
+
+  private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+  private final ApiConfig config;
+  private final OutboxRepo repo;
+  private final Producer<String, String> producer;
+  private final Meter relayed;
+  private final Meter failures;
+  private final OutboxRepo.Publisher publisher = new OutboxRepo.Publisher() {
+    @Override
+    public void publish(List<OutboxEvent> events) {
+      final List<KeyedMessage<String, String>> messages = new ArrayList<>(events.size());
+      for (OutboxEvent event : events) {
+        messages.add(new KeyedMessage<>(event.getTopic(), event.getKey(), event.getPayload()));
+      }
+      producer.send(messages);
+    }
+  };
+
+  private ScheduledExecutorService executor;
+
+  @Inject
+  public OutboxRelay(ApiConfig config, OutboxRepo repo, Producer<String, String> producer,
+                     MetricRegistry metricRegistry) {
+    this.config = config;
+    this.repo = repo;
+    this.producer = producer;
+    this.relayed = metricRegistry.meter(MetricRegistry.name(OutboxRelay.class, "relayed"));
+    this.failures = metricRegistry.meter(MetricRegistry.name(OutboxRelay.class, "failures"));
+  }
+
+  @Override
+  public void start() {
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("outbox-relay-%d").setDaemon(true).build());
+
+    this.executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        relay();
+      }
+    }, 0, config.outbox.pollMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    if (this.executor != null) {
+      this.executor.shutdown();
+    }
+  }
+
+  /**
+   * Relays batches of events until the outbox has been emptied or publishing fails, in which case
+   * the events are kept and retried on the next poll.
+   */
+  void relay() {
+    try {
+      int count;
+      do {
+        count = this.repo.relay(config.outbox.batchSize, config.outbox.leaseSeconds,
+                               this.publisher);
+        this.relayed.mark(count);
+      } while (count == config.outbox.batchSize);
+    } catch (RuntimeException e) {
+      this.failures.mark();
+      logger.warn("Failed to relay events from the outbox, retrying in {} ms",
+                  config.outbox.pollMillis, e);
+    }
+  }
+}
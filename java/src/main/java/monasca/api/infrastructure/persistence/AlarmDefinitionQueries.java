@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Utilities for building the keyset paged alarm definition listing.
+ *
+ * <p>A page holds the alarm definitions following the one whose id is the offset in the sort
+ * order, the id breaking ties. The sort columns of the offset definition are bound as :key0 to
+ * :key(n - 1) and its id as :offset.
+ */
+public final class AlarmDefinitionQueries {
+
+  /**
+   * Columns alarm definitions can be sorted by. Each is covered by an index on (tenant_id,
+   * deleted_at, column), and none is nullable.
+   */
+  public static final List<String> SORT_BY_FIELDS =
+      ImmutableList.of("id", "name", "created_at", "updated_at");
+
+  private static final Splitter SPACE_SPLITTER = Splitter.on(' ').omitEmptyStrings().trimResults();
+
+  private AlarmDefinitionQueries() {}
+
+  /**
+   * Returns the sort columns other than id, whose values of the offset definition are bound as
+   * :key0 to :key(n - 1).
+   */
+  public static List<String> keyColumns(List<String> sortBy) {
+    final List<SortField> fields = sortFields(sortBy);
+    final List<String> columns = new ArrayList<>(fields.size() - 1);
+
+    for (SortField field : fields.subList(0, fields.size() - 1)) {
+      columns.add(field.column);
+    }
+
+    return columns;
+  }
+
+  /**
+   * Returns the condition on the alarm definition aliased {@code ad} holding for the definitions
+   * following the offset definition in the {@code sortBy} order.
+   */
+  public static String buildKeysetClause(List<String> sortBy) {
+    final List<SortField> fields = sortFields(sortBy);
+    final StringBuilder sbKeyset = new StringBuilder(" and ");
+
+    // Nested as a > :k0 or (a = :k0 and (b > :k1 or (b = :k1 and ad.id > :offset))) so each
+    // level narrows a prefix of the sort index.
+    for (int i = 0; i < fields.size(); i++) {
+      final SortField field = fields.get(i);
+      final String key = i == fields.size() - 1 ? ":offset" : ":key" + i;
+      final String operator = field.descending ? " < " : " > ";
+
+      if (i == fields.size() - 1) {
+        sbKeyset.append("ad.").append(field.column).append(operator).append(key);
+      } else {
+        sbKeyset.append("(ad.").append(field.column).append(operator).append(key)
+            .append(" or (ad.").append(field.column).append(" = ").append(key).append(" and ");
+      }
+    }
+
+    for (int i = 0; i < fields.size() - 1; i++) {
+      sbKeyset.append("))");
+    }
+
+    return sbKeyset.toString();
+  }
+
+  /**
+   * Returns the order by clause of the {@code sortBy} order on the alarm definition aliased
+   * {@code ad}.
+   */
+  public static String buildOrderBy(List<String> sortBy) {
+    final StringBuilder sbOrderBy = new StringBuilder(" order by ");
+
+    boolean first = true;
+    for (SortField field : sortFields(sortBy)) {
+      if (!first) {
+        sbOrderBy.append(", ");
+      }
+      sbOrderBy.append("ad.").append(field.column).append(field.descending ? " desc" : " asc");
+      first = false;
+    }
+
+    return sbOrderBy.toString();
+  }
+
+  /**
+   * Parses {@code sortBy}, entries of the form "column [asc|desc]", and ends it with the id if it
+   * does not sort by id already. The id sorts in the direction of the last column so a single
+   * index scan serves the page.
+   *
+   * @throws IllegalArgumentException if an entry is not one of {@link #SORT_BY_FIELDS}
+   */
+  private static List<SortField> sortFields(List<String> sortBy) {
+    final List<SortField> fields = new ArrayList<>();
+
+    if (sortBy != null) {
+      for (String entry : sortBy) {
+        final List<String> parts = SPACE_SPLITTER.splitToList(entry);
+        if (parts.isEmpty() || parts.size() > 2 || !SORT_BY_FIELDS.contains(parts.get(0))) {
+          throw new IllegalArgumentException("Invalid sort_by entry " + entry);
+        }
+        final SortField field =
+            new SortField(parts.get(0), parts.size() == 2 && "desc".equalsIgnoreCase(parts.get(1)));
+        fields.add(field);
+        // The id is unique, columns following it never decide the order.
+        if ("id".equals(field.column)) {
+          return fields;
+        }
+      }
+    }
+
+    fields.add(new SortField("id", !fields.isEmpty() && fields.get(fields.size() - 1).descending));
+    return fields;
+  }
+
+  private static final class SortField {
+    final String column;
+    final boolean descending;
+
+    SortField(String column, boolean descending) {
+      this.column = column;
+      this.descending = descending;
+    }
+  }
+}
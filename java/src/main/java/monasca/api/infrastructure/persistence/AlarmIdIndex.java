@@ -0,0 +1,470 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import monasca.api.ApiConfig;
+import monasca.api.infrastructure.messaging.EventListener;
+
+/**
+ * Resolves the alarm ids matching a set of metric dimensions from an in-memory inverted index
+ * instead of the database. Each tenant's index maps every (dimension name, value) pair to a bitmap
+ * of the alarm metrics carrying it, so a multi-dimension filter is a bitmap intersection. Indexes
+ * are loaded on first use and kept current by applying alarm created and deleted events to the
+ * bitmaps. They are rebuilt periodically in the background to reconcile with the database, while
+ * requests keep being answered from the previous index. When disabled every lookup goes to
+ * {@link Utils}.
+ */
+public class AlarmIdIndex implements EventListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(AlarmIdIndex.class);
+
+  private final Utils utils;
+  private final boolean enabled;
+  private final LoadingCache<String, TenantIndex> tenantIndexes;
+
+  @Inject
+  public AlarmIdIndex(ApiConfig config, Utils utils) {
+    this(utils, config.alarmIdIndex);
+  }
+
+  public AlarmIdIndex(Utils utils, AlarmIdIndexConfiguration configuration) {
+    this(utils, configuration, Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("alarm-id-index-%d").setDaemon(true).build()));
+  }
+
+  AlarmIdIndex(final Utils utils, AlarmIdIndexConfiguration configuration,
+               final Executor reloadExecutor) {
+    this.utils = utils;
+    this.enabled = Boolean.TRUE.equals(configuration.enabled);
+    this.tenantIndexes =
+        CacheBuilder.newBuilder()
+            .maximumSize(configuration.maxTenants)
+            .refreshAfterWrite(configuration.refreshSeconds, TimeUnit.SECONDS)
+            .build(new CacheLoader<String, TenantIndex>() {
+              @Override
+              public TenantIndex load(String tenantId) {
+                logger.debug("Building alarm id index for tenant {}", tenantId);
+                return TenantIndex.build(utils.findAlarmMetricDimensions(tenantId));
+              }
+
+              @Override
+              public ListenableFuture<TenantIndex> reload(final String tenantId,
+                                                          final TenantIndex oldIndex) {
+                ListenableFutureTask<TenantIndex> task =
+                    ListenableFutureTask.create(new Callable<TenantIndex>() {
+                      @Override
+                      public TenantIndex call() {
+                        // Events applied while the rows are read may or may not be reflected
+                        // in them, so they are replayed onto the rebuilt index.
+                        oldIndex.startJournal();
+                        try {
+                          TenantIndex index = load(tenantId);
+                          index.replay(oldIndex.stopJournal());
+                          return index;
+                        } catch (RuntimeException e) {
+                          oldIndex.stopJournal();
+                          throw e;
+                        }
+                      }
+                    });
+                reloadExecutor.execute(task);
+                return task;
+              }
+            });
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * Returns the ids of the tenant's alarms which have a metric carrying all of the
+   * {@code dimensions}.
+   */
+  public List<String> findAlarmIds(String tenantId, Map<String, String> dimensions) {
+
+    if (!this.enabled) {
+      return this.utils.findAlarmIds(tenantId, dimensions);
+    }
+
+    return this.tenantIndexes.getUnchecked(tenantId).find(dimensions);
+  }
+
+  @Override
+  public void onEvent(String type, JsonNode event) {
+
+    if (!this.enabled) {
+      return;
+    }
+
+    switch (type) {
+      case "alarm-created":
+        onAlarmCreated(event);
+        break;
+      case "alarm-deleted":
+        onAlarmDeleted(event);
+        break;
+      case "alarm-definition-deleted":
+        // The definition's alarms are removed by their own alarm-deleted events, reconcile in case
+        // any of them were missed.
+        refreshAll();
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void onAlarmCreated(JsonNode event) {
+
+    String tenantId = textOrNull(event.get("tenantId"));
+    String alarmId = textOrNull(event.get("alarmId"));
+
+    if (tenantId == null || alarmId == null) {
+      refreshAll();
+      return;
+    }
+
+    TenantIndex index = this.tenantIndexes.getIfPresent(tenantId);
+
+    if (index == null) {
+      return;
+    }
+
+    JsonNode alarmMetrics = event.get("alarmMetrics");
+
+    if (alarmMetrics == null || !alarmMetrics.isArray()) {
+      // Without the alarm's metrics it can't be placed in the bitmaps, rebuild in the background.
+      this.tenantIndexes.refresh(tenantId);
+      return;
+    }
+
+    List<Map<String, String>> metricDimensions = new ArrayList<>(alarmMetrics.size());
+
+    for (JsonNode alarmMetric : alarmMetrics) {
+
+      metricDimensions.add(dimensions(alarmMetric));
+    }
+
+    index.add(alarmId, metricDimensions);
+  }
+
+  private void onAlarmDeleted(JsonNode event) {
+
+    String tenantId = textOrNull(event.get("tenantId"));
+    String alarmId = textOrNull(event.get("alarmId"));
+
+    if (tenantId == null || alarmId == null) {
+      refreshAll();
+      return;
+    }
+
+    TenantIndex index = this.tenantIndexes.getIfPresent(tenantId);
+
+    if (index != null) {
+      index.remove(alarmId);
+    }
+  }
+
+  /**
+   * Rebuilds every loaded index in the background. Requests keep using the current indexes until
+   * the rebuilt ones replace them.
+   */
+  private void refreshAll() {
+    for (String tenantId : this.tenantIndexes.asMap().keySet()) {
+      this.tenantIndexes.refresh(tenantId);
+    }
+  }
+
+  private static String textOrNull(JsonNode node) {
+    return node != null && node.isTextual() ? node.asText() : null;
+  }
+
+  /**
+   * Returns the dimensions of an alarm metric from an alarm event's {@code alarmMetrics}.
+   */
+  static Map<String, String> dimensions(JsonNode alarmMetric) {
+
+    Map<String, String> dimensions = new HashMap<>();
+    JsonNode dimensionsNode = alarmMetric.get("dimensions");
+
+    if (dimensionsNode != null) {
+      Iterator<Map.Entry<String, JsonNode>> fields = dimensionsNode.fields();
+      while (fields.hasNext()) {
+        Map.Entry<String, JsonNode> field = fields.next();
+        dimensions.put(field.getKey(), field.getValue().asText());
+      }
+    }
+
+    return dimensions;
+  }
+
+  /**
+   * A tenant's inverted index. Alarms are added and removed in place as events arrive; a removed
+   * alarm's metric bits stay set until the next rebuild and are masked out by {@code live}.
+   */
+  static final class TenantIndex {
+
+    private final List<String> alarmIds = new ArrayList<>();
+    private final Map<String, Integer> alarmPositions = new HashMap<>();
+    /** Alarms which have not been deleted, by position in {@code alarmIds}. */
+    private final BitSet live = new BitSet();
+    /** Position in {@code alarmIds} of the alarm owning each alarm metric. */
+    private int[] alarmOfMetric = new int[16];
+    private int metricCount;
+    /** Alarm metrics by dimension name and value. */
+    private final Map<String, Map<String, BitSet>> metricsByDimension = new HashMap<>();
+    /** Changes applied while the index is being rebuilt, or null when no rebuild is running. */
+    private List<Change> journal;
+
+    private TenantIndex() {
+    }
+
+    static TenantIndex build(List<Object[]> rows) {
+
+      TenantIndex index = new TenantIndex();
+      Map<String, Integer> metricPositions = new HashMap<>();
+
+      for (Object[] row : rows) {
+
+        String alarmId = (String) row[0];
+
+        int alarmPosition = index.alarmPosition(alarmId);
+
+        String name = (String) row[2];
+
+        if (name == null) {
+          continue;
+        }
+
+        String metricKey = alarmId + ':' + binaryKey(row[1]);
+
+        Integer metricPosition = metricPositions.get(metricKey);
+
+        if (metricPosition == null) {
+          metricPosition = index.addMetric(alarmPosition);
+          metricPositions.put(metricKey, metricPosition);
+        }
+
+        index.setDimension(name, (String) row[3], metricPosition);
+      }
+
+      return index;
+    }
+
+    synchronized List<String> find(Map<String, String> dimensions) {
+
+      if (dimensions == null || dimensions.isEmpty()) {
+        List<String> result = new ArrayList<>(this.live.cardinality());
+        for (int i = this.live.nextSetBit(0); i >= 0; i = this.live.nextSetBit(i + 1)) {
+          result.add(this.alarmIds.get(i));
+        }
+        return result;
+      }
+
+      BitSet matchingMetrics = null;
+
+      for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+
+        Map<String, BitSet> metricsByValue = this.metricsByDimension.get(dimension.getKey());
+
+        BitSet metrics = metricsByValue == null ? null : metricsByValue.get(dimension.getValue());
+
+        if (metrics == null) {
+          return new ArrayList<>();
+        }
+
+        if (matchingMetrics == null) {
+          matchingMetrics = (BitSet) metrics.clone();
+        } else {
+          matchingMetrics.and(metrics);
+        }
+
+        if (matchingMetrics.isEmpty()) {
+          return new ArrayList<>();
+        }
+      }
+
+      BitSet matchingAlarms = new BitSet(this.alarmIds.size());
+
+      for (int i = matchingMetrics.nextSetBit(0); i >= 0; i = matchingMetrics.nextSetBit(i + 1)) {
+        matchingAlarms.set(this.alarmOfMetric[i]);
+      }
+
+      matchingAlarms.and(this.live);
+
+      List<String> result = new ArrayList<>(matchingAlarms.cardinality());
+
+      for (int i = matchingAlarms.nextSetBit(0); i >= 0; i = matchingAlarms.nextSetBit(i + 1)) {
+        result.add(this.alarmIds.get(i));
+      }
+
+      return result;
+    }
+
+    /**
+     * Adds an alarm with the dimensions of each of its metrics. An alarm which is already indexed
+     * is left unchanged.
+     */
+    synchronized void add(String alarmId, List<Map<String, String>> metricDimensions) {
+
+      if (this.journal != null) {
+        this.journal.add(new Change(alarmId, metricDimensions));
+      }
+
+      if (this.alarmPositions.containsKey(alarmId)) {
+        return;
+      }
+
+      int alarmPosition = alarmPosition(alarmId);
+
+      for (Map<String, String> dimensions : metricDimensions) {
+
+        if (dimensions.isEmpty()) {
+          continue;
+        }
+
+        int metricPosition = addMetric(alarmPosition);
+
+        for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+          setDimension(dimension.getKey(), dimension.getValue(), metricPosition);
+        }
+      }
+    }
+
+    synchronized void remove(String alarmId) {
+
+      if (this.journal != null) {
+        this.journal.add(new Change(alarmId, null));
+      }
+
+      Integer alarmPosition = this.alarmPositions.remove(alarmId);
+
+      if (alarmPosition != null) {
+        this.live.clear(alarmPosition);
+      }
+    }
+
+    synchronized void startJournal() {
+      this.journal = new ArrayList<>();
+    }
+
+    synchronized List<Change> stopJournal() {
+      List<Change> changes = this.journal;
+      this.journal = null;
+      return changes == null ? new ArrayList<Change>() : changes;
+    }
+
+    void replay(List<Change> changes) {
+      for (Change change : changes) {
+        if (change.metricDimensions == null) {
+          remove(change.alarmId);
+        } else {
+          add(change.alarmId, change.metricDimensions);
+        }
+      }
+    }
+
+    private int alarmPosition(String alarmId) {
+
+      Integer alarmPosition = this.alarmPositions.get(alarmId);
+
+      if (alarmPosition == null) {
+        alarmPosition = this.alarmIds.size();
+        this.alarmPositions.put(alarmId, alarmPosition);
+        this.alarmIds.add(alarmId);
+        this.live.set(alarmPosition);
+      }
+
+      return alarmPosition;
+    }
+
+    private int addMetric(int alarmPosition) {
+
+      if (this.metricCount == this.alarmOfMetric.length) {
+        this.alarmOfMetric = Arrays.copyOf(this.alarmOfMetric, this.metricCount * 2);
+      }
+
+      this.alarmOfMetric[this.metricCount] = alarmPosition;
+
+      return this.metricCount++;
+    }
+
+    private void setDimension(String name, String value, int metricPosition) {
+
+      Map<String, BitSet> metricsByValue = this.metricsByDimension.get(name);
+
+      if (metricsByValue == null) {
+        metricsByValue = new HashMap<>();
+        this.metricsByDimension.put(name, metricsByValue);
+      }
+
+      BitSet metrics = metricsByValue.get(value);
+
+      if (metrics == null) {
+        metrics = new BitSet();
+        metricsByValue.put(value, metrics);
+      }
+
+      metrics.set(metricPosition);
+    }
+  }
+
+  /** An alarm added with its metrics' dimensions, or removed when those are null. */
+  static final class Change {
+
+    final String alarmId;
+    final List<Map<String, String>> metricDimensions;
+
+    Change(String alarmId, List<Map<String, String>> metricDimensions) {
+      this.alarmId = alarmId;
+      this.metricDimensions = metricDimensions;
+    }
+  }
+
+  /**
+   * Returns a key for a binary id column, which drivers may return either as bytes or as a
+   * wrapper type.
+   */
+  static String binaryKey(Object binaryId) {
+    return binaryId instanceof byte[]
+           ? Hex.encodeHexString((byte[]) binaryId)
+           : String.valueOf(binaryId);
+  }
+}
@@ -0,0 +1,667 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import monasca.api.ApiConfig;
+import monasca.api.infrastructure.messaging.EventListener;
+import monasca.common.model.alarm.AlarmState;
+
+/**
+ * Read-side index of each tenant's alarms which answers alarm list filters on state, alarm
+ * definition, metric name and metric dimensions without querying the database. Alarms are held in
+ * columns ordered by alarm id with a bitmap per state, definition, metric name and dimension pair,
+ * so a filter is a bitmap intersection and a page is the set bits following the offset's position.
+ * Indexes are loaded on first use, kept current by the API's own writes and by the events and
+ * alarm state transitions topics, and resynchronized from the database periodically in the
+ * background while requests keep using the current index. Lookups return null when the index is
+ * disabled or cannot answer the filters, callers then use SQL.
+ */
+public class AlarmIndex implements EventListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(AlarmIndex.class);
+
+  private final Utils utils;
+  private final boolean enabled;
+  private final LoadingCache<String, TenantAlarms> tenantAlarms;
+
+  @Inject
+  public AlarmIndex(ApiConfig config, Utils utils) {
+    this(utils, config.alarmIndex);
+  }
+
+  public AlarmIndex(Utils utils, AlarmIndexConfiguration configuration) {
+    this(utils, configuration, Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("alarm-index-%d").setDaemon(true).build()));
+  }
+
+  AlarmIndex(final Utils utils, AlarmIndexConfiguration configuration,
+             final Executor reloadExecutor) {
+    this.utils = utils;
+    this.enabled = Boolean.TRUE.equals(configuration.enabled);
+    this.tenantAlarms =
+        CacheBuilder.newBuilder()
+            .maximumSize(configuration.maxTenants)
+            .refreshAfterWrite(configuration.resyncSeconds, TimeUnit.SECONDS)
+            .build(new CacheLoader<String, TenantAlarms>() {
+              @Override
+              public TenantAlarms load(String tenantId) {
+                logger.debug("Loading alarm index for tenant {}", tenantId);
+                return TenantAlarms.build(utils.findAlarmIndexRows(tenantId));
+              }
+
+              @Override
+              public ListenableFuture<TenantAlarms> reload(final String tenantId,
+                                                           final TenantAlarms oldAlarms) {
+                ListenableFutureTask<TenantAlarms> task =
+                    ListenableFutureTask.create(new Callable<TenantAlarms>() {
+                      @Override
+                      public TenantAlarms call() {
+                        // Changes applied while the rows are read may or may not be reflected
+                        // in them, so they are replayed onto the reloaded index.
+                        oldAlarms.startJournal();
+                        try {
+                          TenantAlarms alarms = load(tenantId);
+                          alarms.replay(oldAlarms.stopJournal());
+                          return alarms;
+                        } catch (RuntimeException e) {
+                          oldAlarms.stopJournal();
+                          throw e;
+                        }
+                      }
+                    });
+                reloadExecutor.execute(task);
+                return task;
+              }
+            });
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * Returns, in ascending order, the ids greater than {@code offset} of at most {@code limit} of
+   * the tenant's alarms matching the filters, or null if the index is disabled or the filters
+   * include the lifecycle state, link or state updated time, which are not indexed. A
+   * {@code limit} of zero returns every match.
+   */
+  public List<String> findAlarmIds(String tenantId, String alarmDefId, String metricName,
+                                   Map<String, String> metricDimensions, AlarmState state,
+                                   String lifecycleState, String link, DateTime stateUpdatedStart,
+                                   String offset, int limit) {
+
+    if (!this.enabled || lifecycleState != null || link != null || stateUpdatedStart != null) {
+      return null;
+    }
+
+    return this.tenantAlarms.getUnchecked(tenantId)
+        .find(alarmDefId, metricName, metricDimensions, state, offset, limit);
+  }
+
+  /**
+   * Records a state change made by this API, ahead of its event coming back from the topic.
+   */
+  public void stateChanged(String tenantId, String alarmId, AlarmState state) {
+
+    TenantAlarms alarms = this.enabled ? this.tenantAlarms.getIfPresent(tenantId) : null;
+
+    if (alarms != null) {
+      alarms.setState(alarmId, state);
+    }
+  }
+
+  /**
+   * Records an alarm deletion made by this API, ahead of its event coming back from the topic.
+   */
+  public void deleted(String tenantId, String alarmId) {
+
+    TenantAlarms alarms = this.enabled ? this.tenantAlarms.getIfPresent(tenantId) : null;
+
+    if (alarms != null) {
+      alarms.remove(alarmId);
+    }
+  }
+
+  @Override
+  public void onEvent(String type, JsonNode event) {
+
+    String tenantId = text(event, "tenantId");
+
+    switch (type) {
+
+      case "alarm-transitioned":
+        stateChanged(tenantId, text(event, "alarmId"), state(event, "newState"));
+        break;
+
+      case "alarm-updated":
+        stateChanged(tenantId, text(event, "alarmId"), state(event, "alarmNewState"));
+        break;
+
+      case "alarm-deleted":
+        deleted(tenantId, text(event, "alarmId"));
+        break;
+
+      case "alarm-created":
+        created(tenantId, event);
+        break;
+
+      case "alarm-definition-deleted":
+        definitionDeleted(text(event, "alarmDefinitionId"));
+        break;
+
+      default:
+        break;
+    }
+  }
+
+  private void created(String tenantId, JsonNode event) {
+
+    TenantAlarms alarms = this.enabled && tenantId != null
+                          ? this.tenantAlarms.getIfPresent(tenantId) : null;
+
+    if (alarms == null) {
+      return;
+    }
+
+    String alarmId = text(event, "alarmId");
+    String alarmDefId = text(event, "alarmDefinitionId");
+    JsonNode alarmMetrics = event.get("alarmMetrics");
+
+    if (alarmId == null || alarmDefId == null || alarmMetrics == null
+        || !alarmMetrics.isArray()) {
+      // Without the alarm's metrics it can't be placed in the bitmaps, reload in the background.
+      this.tenantAlarms.refresh(tenantId);
+      return;
+    }
+
+    List<AlarmMetric> metrics = new ArrayList<>(alarmMetrics.size());
+
+    for (JsonNode alarmMetric : alarmMetrics) {
+      metrics.add(new AlarmMetric(text(alarmMetric, "name"),
+                                  AlarmIdIndex.dimensions(alarmMetric)));
+    }
+
+    // New alarms start undetermined, their transitions follow on the state transitions topic.
+    alarms.add(alarmId, alarmDefId, AlarmState.UNDETERMINED, metrics);
+  }
+
+  private void definitionDeleted(String alarmDefId) {
+
+    if (!this.enabled || alarmDefId == null) {
+      return;
+    }
+
+    // The event does not carry the tenant, the definition id is unique across tenants.
+    for (TenantAlarms alarms : this.tenantAlarms.asMap().values()) {
+      alarms.removeDefinition(alarmDefId);
+    }
+  }
+
+  private static String text(JsonNode event, String field) {
+    JsonNode node = event.get(field);
+    return node != null && node.isTextual() ? node.asText() : null;
+  }
+
+  private static AlarmState state(JsonNode event, String field) {
+    String state = text(event, field);
+    return state == null ? null : AlarmState.valueOf(state);
+  }
+
+  static final class TenantAlarms {
+
+    /** Alarm ids in ascending order, the position of an alarm in every column and bitmap. */
+    private final String[] alarmIds;
+    private final AlarmState[] states;
+    /** Alarms not deleted since the index was loaded. */
+    private final BitSet live;
+    private final Map<AlarmState, BitSet> alarmsByState;
+    private final Map<String, BitSet> alarmsByDefinition;
+    /** Position of the alarm owning each alarm metric. */
+    private final int[] alarmOfMetric;
+    private final Map<String, BitSet> metricsByName;
+    private final Map<String, Map<String, BitSet>> metricsByDimension;
+    /**
+     * Alarms created since the index was loaded, by id. They are matched by scanning and merged
+     * into pages in id order, the next reload moves them into the bitmaps.
+     */
+    private final TreeMap<String, AddedAlarm> added = new TreeMap<>();
+    /** Changes applied while the index is being reloaded, or null when no reload is running. */
+    private List<Change> journal;
+
+    private TenantAlarms(String[] alarmIds, AlarmState[] states,
+                         Map<AlarmState, BitSet> alarmsByState,
+                         Map<String, BitSet> alarmsByDefinition, int[] alarmOfMetric,
+                         Map<String, BitSet> metricsByName,
+                         Map<String, Map<String, BitSet>> metricsByDimension) {
+      this.alarmIds = alarmIds;
+      this.states = states;
+      this.live = new BitSet(alarmIds.length);
+      this.live.set(0, alarmIds.length);
+      this.alarmsByState = alarmsByState;
+      this.alarmsByDefinition = alarmsByDefinition;
+      this.alarmOfMetric = alarmOfMetric;
+      this.metricsByName = metricsByName;
+      this.metricsByDimension = metricsByDimension;
+    }
+
+    /**
+     * Builds the index from rows of {@link Utils#findAlarmIndexRows(String)}.
+     */
+    static TenantAlarms build(List<Object[]> rows) {
+
+      TreeSet<String> sortedIds = new TreeSet<>();
+
+      for (Object[] row : rows) {
+        sortedIds.add((String) row[0]);
+      }
+
+      String[] alarmIds = sortedIds.toArray(new String[sortedIds.size()]);
+      AlarmState[] states = new AlarmState[alarmIds.length];
+      Map<AlarmState, BitSet> alarmsByState = new EnumMap<>(AlarmState.class);
+      Map<String, BitSet> alarmsByDefinition = new HashMap<>();
+      List<Integer> alarmOfMetric = new ArrayList<>();
+      Map<String, Integer> metricPositions = new HashMap<>();
+      Map<String, BitSet> metricsByName = new HashMap<>();
+      Map<String, Map<String, BitSet>> metricsByDimension = new HashMap<>();
+
+      for (AlarmState state : AlarmState.values()) {
+        alarmsByState.put(state, new BitSet(alarmIds.length));
+      }
+
+      for (Object[] row : rows) {
+
+        String alarmId = (String) row[0];
+        int alarmPosition = Arrays.binarySearch(alarmIds, alarmId);
+
+        if (states[alarmPosition] == null) {
+          states[alarmPosition] = AlarmState.valueOf(String.valueOf(row[2]));
+          alarmsByState.get(states[alarmPosition]).set(alarmPosition);
+          bitmap(alarmsByDefinition, (String) row[1]).set(alarmPosition);
+        }
+
+        if (row[3] == null) {
+          continue;
+        }
+
+        String metricKey = alarmId + ':' + AlarmIdIndex.binaryKey(row[3]);
+        Integer metricPosition = metricPositions.get(metricKey);
+
+        if (metricPosition == null) {
+          metricPosition = alarmOfMetric.size();
+          metricPositions.put(metricKey, metricPosition);
+          alarmOfMetric.add(alarmPosition);
+          bitmap(metricsByName, (String) row[4]).set(metricPosition);
+        }
+
+        String name = (String) row[5];
+
+        if (name == null) {
+          continue;
+        }
+
+        Map<String, BitSet> metricsByValue = metricsByDimension.get(name);
+
+        if (metricsByValue == null) {
+          metricsByValue = new HashMap<>();
+          metricsByDimension.put(name, metricsByValue);
+        }
+
+        bitmap(metricsByValue, (String) row[6]).set(metricPosition);
+      }
+
+      int[] alarmOfMetricArray = new int[alarmOfMetric.size()];
+
+      for (int i = 0; i < alarmOfMetricArray.length; i++) {
+        alarmOfMetricArray[i] = alarmOfMetric.get(i);
+      }
+
+      return new TenantAlarms(alarmIds, states, alarmsByState, alarmsByDefinition,
+                              alarmOfMetricArray, metricsByName, metricsByDimension);
+    }
+
+    private static BitSet bitmap(Map<String, BitSet> bitmaps, String key) {
+      BitSet bitmap = bitmaps.get(key);
+      if (bitmap == null) {
+        bitmap = new BitSet();
+        bitmaps.put(key, bitmap);
+      }
+      return bitmap;
+    }
+
+    synchronized List<String> find(String alarmDefId, String metricName,
+                                   Map<String, String> metricDimensions, AlarmState state,
+                                   String offset, int limit) {
+
+      BitSet matching = (BitSet) this.live.clone();
+
+      if (alarmDefId != null) {
+        and(matching, this.alarmsByDefinition.get(alarmDefId));
+      }
+
+      if (state != null) {
+        and(matching, this.alarmsByState.get(state));
+      }
+
+      boolean hasDimensions = metricDimensions != null && !metricDimensions.isEmpty();
+
+      if (metricName != null || hasDimensions) {
+        and(matching, alarmsWithMetric(metricName, hasDimensions ? metricDimensions : null));
+      }
+
+      int from = 0;
+
+      if (offset != null) {
+        int position = Arrays.binarySearch(this.alarmIds, offset);
+        from = position >= 0 ? position + 1 : -position - 1;
+      }
+
+      Iterator<String> addedIds =
+          addedMatching(alarmDefId, metricName, hasDimensions ? metricDimensions : null, state,
+                        offset).iterator();
+
+      List<String> result = new ArrayList<>();
+      int i = matching.nextSetBit(from);
+      String addedId = addedIds.hasNext() ? addedIds.next() : null;
+
+      while ((i >= 0 || addedId != null) && (limit <= 0 || result.size() < limit)) {
+        if (addedId == null || (i >= 0 && this.alarmIds[i].compareTo(addedId) < 0)) {
+          result.add(this.alarmIds[i]);
+          i = matching.nextSetBit(i + 1);
+        } else {
+          result.add(addedId);
+          addedId = addedIds.hasNext() ? addedIds.next() : null;
+        }
+      }
+
+      return result;
+    }
+
+    /**
+     * Returns, in ascending order, the ids greater than {@code offset} of the added alarms
+     * matching the filters.
+     */
+    private List<String> addedMatching(String alarmDefId, String metricName,
+                                       Map<String, String> dimensions, AlarmState state,
+                                       String offset) {
+
+      List<String> result = new ArrayList<>();
+      Map<String, AddedAlarm> candidates =
+          offset == null ? this.added : this.added.tailMap(offset, false);
+
+      for (Map.Entry<String, AddedAlarm> entry : candidates.entrySet()) {
+        if (entry.getValue().matches(alarmDefId, metricName, dimensions, state)) {
+          result.add(entry.getKey());
+        }
+      }
+
+      return result;
+    }
+
+    /**
+     * Returns the alarms with a metric of the given name, if any, which has all of the given
+     * dimensions, if any.
+     */
+    private BitSet alarmsWithMetric(String metricName, Map<String, String> dimensions) {
+
+      BitSet alarms = new BitSet(this.alarmIds.length);
+      BitSet metrics = null;
+
+      if (metricName != null) {
+        BitSet named = this.metricsByName.get(metricName);
+        if (named == null) {
+          return alarms;
+        }
+        metrics = (BitSet) named.clone();
+      }
+
+      if (dimensions != null) {
+        for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+
+          Map<String, BitSet> metricsByValue = this.metricsByDimension.get(dimension.getKey());
+          BitSet withDimension =
+              metricsByValue == null ? null : metricsByValue.get(dimension.getValue());
+
+          if (withDimension == null) {
+            return alarms;
+          }
+
+          if (metrics == null) {
+            metrics = (BitSet) withDimension.clone();
+          } else {
+            metrics.and(withDimension);
+          }
+        }
+      }
+
+      for (int i = metrics.nextSetBit(0); i >= 0; i = metrics.nextSetBit(i + 1)) {
+        alarms.set(this.alarmOfMetric[i]);
+      }
+
+      return alarms;
+    }
+
+    private static void and(BitSet matching, BitSet bitmap) {
+      if (bitmap == null) {
+        matching.clear();
+      } else {
+        matching.and(bitmap);
+      }
+    }
+
+    synchronized void setState(final String alarmId, final AlarmState state) {
+
+      if (alarmId == null || state == null) {
+        return;
+      }
+
+      journal(new Change() {
+        @Override
+        void apply(TenantAlarms alarms) {
+          alarms.setState(alarmId, state);
+        }
+      });
+
+      int position = Arrays.binarySearch(this.alarmIds, alarmId);
+
+      if (position < 0) {
+        AddedAlarm addedAlarm = this.added.get(alarmId);
+        if (addedAlarm != null) {
+          addedAlarm.state = state;
+        }
+        return;
+      }
+
+      if (this.states[position] == state) {
+        return;
+      }
+
+      this.alarmsByState.get(this.states[position]).clear(position);
+      this.alarmsByState.get(state).set(position);
+      this.states[position] = state;
+    }
+
+    synchronized void remove(final String alarmId) {
+
+      if (alarmId == null) {
+        return;
+      }
+
+      journal(new Change() {
+        @Override
+        void apply(TenantAlarms alarms) {
+          alarms.remove(alarmId);
+        }
+      });
+
+      int position = Arrays.binarySearch(this.alarmIds, alarmId);
+
+      if (position >= 0) {
+        this.live.clear(position);
+      } else {
+        this.added.remove(alarmId);
+      }
+    }
+
+    /**
+     * Adds an alarm created since the index was loaded. An alarm which is already indexed is left
+     * unchanged.
+     */
+    synchronized void add(final String alarmId, final String alarmDefId, final AlarmState state,
+                          final List<AlarmMetric> metrics) {
+
+      journal(new Change() {
+        @Override
+        void apply(TenantAlarms alarms) {
+          alarms.add(alarmId, alarmDefId, state, metrics);
+        }
+      });
+
+      if (Arrays.binarySearch(this.alarmIds, alarmId) >= 0 || this.added.containsKey(alarmId)) {
+        return;
+      }
+
+      this.added.put(alarmId, new AddedAlarm(alarmDefId, state, metrics));
+    }
+
+    synchronized void removeDefinition(final String alarmDefId) {
+
+      journal(new Change() {
+        @Override
+        void apply(TenantAlarms alarms) {
+          alarms.removeDefinition(alarmDefId);
+        }
+      });
+
+      BitSet definitionAlarms = this.alarmsByDefinition.get(alarmDefId);
+
+      if (definitionAlarms != null) {
+        this.live.andNot(definitionAlarms);
+      }
+
+      Iterator<AddedAlarm> addedAlarms = this.added.values().iterator();
+
+      while (addedAlarms.hasNext()) {
+        if (alarmDefId.equals(addedAlarms.next().alarmDefId)) {
+          addedAlarms.remove();
+        }
+      }
+    }
+
+    private void journal(Change change) {
+      if (this.journal != null) {
+        this.journal.add(change);
+      }
+    }
+
+    synchronized void startJournal() {
+      this.journal = new ArrayList<>();
+    }
+
+    synchronized List<Change> stopJournal() {
+      List<Change> changes = this.journal;
+      this.journal = null;
+      return changes == null ? new ArrayList<Change>() : changes;
+    }
+
+    void replay(List<Change> changes) {
+      for (Change change : changes) {
+        change.apply(this);
+      }
+    }
+  }
+
+  /** A metric of an alarm, by name and dimensions. */
+  static final class AlarmMetric {
+
+    final String name;
+    final Map<String, String> dimensions;
+
+    AlarmMetric(String name, Map<String, String> dimensions) {
+      this.name = name;
+      this.dimensions = dimensions;
+    }
+  }
+
+  /** An alarm created since its tenant's index was loaded. */
+  private static final class AddedAlarm {
+
+    final String alarmDefId;
+    AlarmState state;
+    final List<AlarmMetric> metrics;
+
+    AddedAlarm(String alarmDefId, AlarmState state, List<AlarmMetric> metrics) {
+      this.alarmDefId = alarmDefId;
+      this.state = state;
+      this.metrics = metrics;
+    }
+
+    boolean matches(String alarmDefId, String metricName, Map<String, String> dimensions,
+                    AlarmState state) {
+
+      if ((alarmDefId != null && !alarmDefId.equals(this.alarmDefId))
+          || (state != null && state != this.state)) {
+        return false;
+      }
+
+      if (metricName == null && dimensions == null) {
+        return true;
+      }
+
+      for (AlarmMetric metric : this.metrics) {
+        if ((metricName == null || metricName.equals(metric.name))
+            && (dimensions == null
+                || metric.dimensions.entrySet().containsAll(dimensions.entrySet()))) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+  }
+
+  /** A change applied to a tenant's alarms, kept to be replayed onto a reloaded index. */
+  abstract static class Change {
+
+    abstract void apply(TenantAlarms alarms);
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * In-memory alarm index configuration.
+ */
+public class AlarmIndexConfiguration {
+  @JsonProperty
+  public Boolean enabled = Boolean.FALSE;
+  /** Maximum number of tenants whose index is held in memory. */
+  @JsonProperty
+  public long maxTenants = 1000;
+  /** Seconds after which a tenant's index is resynchronized from the database. */
+  @JsonProperty
+  public long resyncSeconds = 300;
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+
+import monasca.api.domain.model.alarm.Alarm;
+import monasca.common.model.alarm.AlarmState;
+import monasca.common.model.metric.MetricDefinition;
+
+/**
+ * One row of an alarm hydration query: an alarm, one of its metrics and at most one dimension of
+ * that metric. Rows ordered by alarm id and then metric id are folded back into alarms by
+ * {@link #toAlarms(List)}.
+ */
+public class AlarmMetricRow {
+
+  public String alarmId;
+  public String alarmDefinitionId;
+  public String alarmDefinitionName;
+  public String severity;
+  public AlarmState state;
+  public String lifecycleState;
+  public String link;
+  public DateTime stateUpdatedTimestamp;
+  public DateTime updatedTimestamp;
+  public DateTime createdTimestamp;
+  /** Identifies the metric within the alarm, must implement equals by value. */
+  public Object metricId;
+  public String metricName;
+  public String dimensionName;
+  public String dimensionValue;
+
+  /**
+   * Builds the alarms described by {@code rows}, which must be ordered by alarm id and then
+   * metric id. Alarms are returned in the order of the rows.
+   */
+  public static List<Alarm> toAlarms(List<? extends AlarmMetricRow> rows) {
+
+    final List<Alarm> alarms = new ArrayList<>();
+
+    AlarmMetricRow previous = null;
+    List<MetricDefinition> alarmedMetrics = null;
+    Map<String, String> dimensions = null;
+
+    for (AlarmMetricRow row : rows) {
+
+      final boolean newAlarm = previous == null || !row.alarmId.equals(previous.alarmId);
+
+      if (newAlarm) {
+        alarmedMetrics = new ArrayList<>();
+        alarms.add(new Alarm(row.alarmId, row.alarmDefinitionId, row.alarmDefinitionName,
+                             row.severity, alarmedMetrics, row.state, row.lifecycleState,
+                             row.link, row.stateUpdatedTimestamp, row.updatedTimestamp,
+                             row.createdTimestamp));
+      }
+
+      if (newAlarm || !row.metricId.equals(previous.metricId)) {
+        dimensions = new HashMap<>();
+        alarmedMetrics.add(new MetricDefinition(row.metricName, dimensions));
+      }
+
+      // Metrics without dimensions come back as a single row with a null dimension.
+      if (row.dimensionName != null) {
+        dimensions.put(row.dimensionName, row.dimensionValue);
+      }
+
+      previous = row;
+    }
+
+    return alarms;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import monasca.api.domain.model.alarm.Alarm;
+import monasca.api.domain.model.alarm.AlarmUpdate;
+import monasca.common.model.alarm.AlarmSubExpression;
+
+/**
+ * One row of the query loading an alarm for update: an {@link AlarmMetricRow} joined with the
+ * alarm definition and at most one sub alarm of the alarm.
+ */
+public final class AlarmUpdateRow extends AlarmMetricRow {
+
+  public String alarmDefinitionDescription;
+  public boolean actionsEnabled;
+  public String subAlarmId;
+  public String subAlarmExpression;
+
+  /**
+   * Builds the alarms described by {@code rows}, which must be ordered by alarm id and then
+   * metric id. Alarms are returned in the order of the rows.
+   */
+  public static List<AlarmUpdate> toAlarmUpdates(List<AlarmUpdateRow> rows) {
+
+    final List<Alarm> alarms = toAlarms(rows);
+    final List<AlarmUpdate> updates = new ArrayList<>(alarms.size());
+
+    int i = 0;
+
+    for (Alarm alarm : alarms) {
+
+      final AlarmUpdateRow first = rows.get(i);
+      final Map<String, AlarmSubExpression> subAlarms = new HashMap<>();
+
+      // Each sub alarm repeats for every metric dimension row, parse it once.
+      for (; i < rows.size() && rows.get(i).alarmId.equals(alarm.getId()); i++) {
+        final AlarmUpdateRow row = rows.get(i);
+        if (row.subAlarmId != null && !subAlarms.containsKey(row.subAlarmId)) {
+          subAlarms.put(row.subAlarmId, AlarmSubExpression.of(row.subAlarmExpression));
+        }
+      }
+
+      updates.add(new AlarmUpdate(alarm, first.alarmDefinitionDescription, first.actionsEnabled,
+                                  subAlarms));
+    }
+
+    return updates;
+  }
+}
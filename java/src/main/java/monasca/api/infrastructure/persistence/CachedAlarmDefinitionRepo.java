@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDetail;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.outbox.OutboxEvent;
+import monasca.api.infrastructure.messaging.EventListener;
+import monasca.common.model.alarm.AlarmSubExpression;
+import monasca.common.model.metric.MetricDefinition;
+
+/**
+ * Read-through cache in front of an {@link AlarmDefinitionRepo}. Alarm definitions and name
+ * lookups are cached per tenant, sub expressions per alarm definition. Writes through this
+ * repository and alarm definition events from other API nodes invalidate the affected tenant and
+ * definition.
+ *
+ * <p>Cached values live in holders which invalidation discards rather than empties, so a read
+ * which raced a write can only store its possibly stale value into a holder nobody reads anymore.
+ */
+public class CachedAlarmDefinitionRepo implements AlarmDefinitionRepo, EventListener {
+
+  private static final Set<String> ALARM_DEFINITION_EVENTS = ImmutableSet.of(
+      "alarm-definition-created", "alarm-definition-updated", "alarm-definition-deleted");
+
+  /** Cached absence of an alarm definition with a given name. */
+  private static final String NO_ID = "";
+
+  private final AlarmDefinitionRepo delegate;
+  private final AlarmDefinitionCacheConfiguration configuration;
+  private final Cache<String, TenantEntry> tenants;
+  private final Cache<String, DefinitionEntry> definitions;
+  private final Meter hits;
+  private final Meter misses;
+
+  @Inject
+  public CachedAlarmDefinitionRepo(@Named("uncached") AlarmDefinitionRepo delegate,
+                                   ApiConfig config, MetricRegistry registry) {
+    this(delegate, config.alarmDefinitionCache, registry);
+  }
+
+  public CachedAlarmDefinitionRepo(AlarmDefinitionRepo delegate,
+                                   AlarmDefinitionCacheConfiguration configuration,
+                                   MetricRegistry registry) {
+    this.delegate = delegate;
+    this.configuration = configuration;
+    this.tenants = CacheBuilder.newBuilder()
+        .maximumSize(configuration.maxTenants)
+        .expireAfterWrite(configuration.expireSeconds, TimeUnit.SECONDS)
+        .build();
+    this.definitions = CacheBuilder.newBuilder()
+        .maximumSize(configuration.maxSubExpressions)
+        .expireAfterWrite(configuration.expireSeconds, TimeUnit.SECONDS)
+        .build();
+    this.hits = registry.meter(name(CachedAlarmDefinitionRepo.class, "hits"));
+    this.misses = registry.meter(name(CachedAlarmDefinitionRepo.class, "misses"));
+  }
+
+  @Override
+  public AlarmDefinition create(String tenantId, String id, String name, String description,
+                                String severity, String expression,
+                                Map<String, AlarmSubExpression> subExpressions,
+                                List<String> matchBy, List<String> alarmActions,
+                                List<String> okActions, List<String> undeterminedActions) {
+    return create(tenantId, id, name, description, severity, expression, subExpressions, matchBy,
+                  alarmActions, okActions, undeterminedActions,
+                  Collections.<OutboxEvent>emptyList());
+  }
+
+  @Override
+  public AlarmDefinition create(String tenantId, String id, String name, String description,
+                                String severity, String expression,
+                                Map<String, AlarmSubExpression> subExpressions,
+                                List<String> matchBy, List<String> alarmActions,
+                                List<String> okActions, List<String> undeterminedActions,
+                                List<OutboxEvent> events) {
+    try {
+      return this.delegate.create(tenantId, id, name, description, severity, expression,
+                                  subExpressions, matchBy, alarmActions, okActions,
+                                  undeterminedActions, events);
+    } finally {
+      invalidate(tenantId, id);
+    }
+  }
+
+  @Override
+  public void deleteById(String tenantId, String alarmDefId) {
+    deleteById(tenantId, alarmDefId, Collections.<List<OutboxEvent>>emptyIterator());
+  }
+
+  @Override
+  public void deleteById(String tenantId, String alarmDefId,
+                         Iterator<List<OutboxEvent>> events) {
+    try {
+      this.delegate.deleteById(tenantId, alarmDefId, events);
+    } finally {
+      invalidate(tenantId, alarmDefId);
+    }
+  }
+
+  @Override
+  public String exists(String tenantId, String name) {
+    TenantEntry entry = tenant(tenantId);
+    String id = entry.idsByName.getIfPresent(name);
+
+    if (id == null) {
+      this.misses.mark();
+      id = this.delegate.exists(tenantId, name);
+      entry.idsByName.put(name, id == null ? NO_ID : id);
+      return id;
+    }
+
+    this.hits.mark();
+    return NO_ID.equals(id) ? null : id;
+  }
+
+  @Override
+  public List<AlarmDefinition> find(String tenantId, String name, Map<String, String> dimensions,
+                                    List<String> sortBy, String offset, int limit) {
+    return this.delegate.find(tenantId, name, dimensions, sortBy, offset, limit);
+  }
+
+  @Override
+  public AlarmDefinition findById(String tenantId, String alarmDefId) {
+    TenantEntry entry = tenant(tenantId);
+    AlarmDefinition alarmDefinition = entry.definitionsById.getIfPresent(alarmDefId);
+
+    if (alarmDefinition == null) {
+      this.misses.mark();
+      // Not found propagates uncached, so a definition created elsewhere is seen immediately.
+      alarmDefinition = this.delegate.findById(tenantId, alarmDefId);
+      entry.definitionsById.put(alarmDefId, alarmDefinition);
+    } else {
+      this.hits.mark();
+    }
+
+    // Callers decorate definitions with links, so never hand out the cached instance.
+    return new AlarmDefinition(alarmDefinition);
+  }
+
+  @Override
+  public AlarmDefinitionDetail findDetailById(String tenantId, String alarmDefId) {
+    TenantEntry tenantEntry = tenant(tenantId);
+    DefinitionEntry definitionEntry = definition(alarmDefId);
+    AlarmDefinition alarmDefinition = tenantEntry.definitionsById.getIfPresent(alarmDefId);
+    Map<String, AlarmSubExpression> subExpressions = definitionEntry.subExpressions;
+
+    if (alarmDefinition == null || subExpressions == null) {
+      this.misses.mark();
+      AlarmDefinitionDetail detail = this.delegate.findDetailById(tenantId, alarmDefId);
+      alarmDefinition = detail.getAlarmDefinition();
+      subExpressions = Collections.unmodifiableMap(detail.getSubExpressions());
+      tenantEntry.definitionsById.put(alarmDefId, alarmDefinition);
+      definitionEntry.subExpressions = subExpressions;
+    } else {
+      this.hits.mark();
+    }
+
+    return new AlarmDefinitionDetail(new AlarmDefinition(alarmDefinition), subExpressions);
+  }
+
+  @Override
+  public Map<String, MetricDefinition> findSubAlarmMetricDefinitions(String alarmDefId) {
+    DefinitionEntry entry = definition(alarmDefId);
+    Map<String, MetricDefinition> subAlarmMetricDefinitions = entry.subAlarmMetricDefinitions;
+
+    if (subAlarmMetricDefinitions == null) {
+      this.misses.mark();
+      subAlarmMetricDefinitions =
+          Collections.unmodifiableMap(this.delegate.findSubAlarmMetricDefinitions(alarmDefId));
+      entry.subAlarmMetricDefinitions = subAlarmMetricDefinitions;
+    } else {
+      this.hits.mark();
+    }
+
+    return subAlarmMetricDefinitions;
+  }
+
+  @Override
+  public Map<String, AlarmSubExpression> findSubExpressions(String alarmDefId) {
+    DefinitionEntry entry = definition(alarmDefId);
+    Map<String, AlarmSubExpression> subExpressions = entry.subExpressions;
+
+    if (subExpressions == null) {
+      this.misses.mark();
+      subExpressions =
+          Collections.unmodifiableMap(this.delegate.findSubExpressions(alarmDefId));
+      entry.subExpressions = subExpressions;
+    } else {
+      this.hits.mark();
+    }
+
+    return subExpressions;
+  }
+
+  @Override
+  public void update(String tenantId, String id, boolean patch, String name, String description,
+                     String expression, List<String> matchBy, String severity,
+                     boolean actionsEnabled, Collection<String> oldSubAlarmIds,
+                     Map<String, AlarmSubExpression> changedSubAlarms,
+                     Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions,
+                     List<String> okActions, List<String> undeterminedActions) {
+    update(tenantId, id, patch, name, description, expression, matchBy, severity, actionsEnabled,
+           oldSubAlarmIds, changedSubAlarms, newSubAlarms, alarmActions, okActions,
+           undeterminedActions, Collections.<OutboxEvent>emptyList());
+  }
+
+  @Override
+  public void update(String tenantId, String id, boolean patch, String name, String description,
+                     String expression, List<String> matchBy, String severity,
+                     boolean actionsEnabled, Collection<String> oldSubAlarmIds,
+                     Map<String, AlarmSubExpression> changedSubAlarms,
+                     Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions,
+                     List<String> okActions, List<String> undeterminedActions,
+                     List<OutboxEvent> events) {
+    try {
+      this.delegate.update(tenantId, id, patch, name, description, expression, matchBy, severity,
+                           actionsEnabled, oldSubAlarmIds, changedSubAlarms, newSubAlarms,
+                           alarmActions, okActions, undeterminedActions, events);
+    } finally {
+      invalidate(tenantId, id);
+    }
+  }
+
+  @Override
+  public void onEvent(String type, JsonNode event) {
+
+    if (!ALARM_DEFINITION_EVENTS.contains(type)) {
+      return;
+    }
+
+    JsonNode tenantId = event.get("tenantId");
+    JsonNode alarmDefinitionId = event.get("alarmDefinitionId");
+
+    if (tenantId != null && tenantId.isTextual()) {
+      this.tenants.invalidate(tenantId.asText());
+    } else {
+      this.tenants.invalidateAll();
+    }
+
+    if (alarmDefinitionId != null && alarmDefinitionId.isTextual()) {
+      this.definitions.invalidate(alarmDefinitionId.asText());
+    } else {
+      this.definitions.invalidateAll();
+    }
+  }
+
+  private void invalidate(String tenantId, String alarmDefId) {
+    this.tenants.invalidate(tenantId);
+    if (alarmDefId != null) {
+      this.definitions.invalidate(alarmDefId);
+    }
+  }
+
+  private TenantEntry tenant(String tenantId) {
+    try {
+      return this.tenants.get(tenantId, new Callable<TenantEntry>() {
+        @Override
+        public TenantEntry call() {
+          return new TenantEntry(configuration.maxDefinitionsPerTenant);
+        }
+      });
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private DefinitionEntry definition(String alarmDefId) {
+    try {
+      return this.definitions.get(alarmDefId, new Callable<DefinitionEntry>() {
+        @Override
+        public DefinitionEntry call() {
+          return new DefinitionEntry();
+        }
+      });
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final class TenantEntry {
+    final Cache<String, AlarmDefinition> definitionsById;
+    final Cache<String, String> idsByName;
+
+    TenantEntry(long maxDefinitions) {
+      this.definitionsById = CacheBuilder.newBuilder().maximumSize(maxDefinitions).build();
+      this.idsByName = CacheBuilder.newBuilder().maximumSize(maxDefinitions).build();
+    }
+  }
+
+  private static final class DefinitionEntry {
+    volatile Map<String, AlarmSubExpression> subExpressions;
+    volatile Map<String, MetricDefinition> subAlarmMetricDefinitions;
+  }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.statistic.StatisticRepo;
+import monasca.api.domain.model.statistic.Statistics;
+
+/**
+ * Cache of closed statistics buckets in front of a {@link StatisticRepo}, keyed by tenant, series
+ * filter, statistic, period and bucket start. A query is answered from the cached buckets it
+ * spans, the repository being queried only for the missing or expired ones, the open trailing
+ * buckets and the partial bucket at the start time, merged into as few queries as contiguous.
+ *
+ * <p>Only first pages of ungrouped statistics whose period divides a day, and which fit within
+ * the limit, are cached. Buckets are then aligned to the same boundaries in every repository. A
+ * bucket is closed once it ended settleSeconds ago, and is queried again ttlSeconds after it last
+ * was, picking up late measurements.
+ *
+ * <p>The cached buckets of a series are replaced rather than updated, so concurrent queries of a
+ * series can at worst drop each other's buckets, which the next query fetches again.
+ */
+public class CachedStatisticRepo implements StatisticRepo {
+
+  private static final long DAY_SECONDS = 86400;
+  private static final String TIMESTAMP = "timestamp";
+  private static final long OPEN = Long.MAX_VALUE;
+
+  private final StatisticRepo delegate;
+  private final StatisticsCacheConfiguration configuration;
+  private final boolean periodEndTimestamps;
+  private final Clock clock;
+  private final Cache<List<Object>, CachedSeries> series;
+  private final Meter hits;
+  private final Meter misses;
+
+  @Inject
+  public CachedStatisticRepo(@Named("uncached") StatisticRepo delegate, ApiConfig config,
+                             MetricRegistry registry) {
+    this(delegate, config.statisticsCache,
+         "vertica".equalsIgnoreCase(config.databaseConfiguration.getDatabaseType().trim()),
+         registry, Clock.defaultClock());
+  }
+
+  /**
+   * @param periodEndTimestamps whether the delegate labels buckets with their end, as Vertica
+   *        time slices are, rather than with their start
+   */
+  public CachedStatisticRepo(StatisticRepo delegate, StatisticsCacheConfiguration configuration,
+                             boolean periodEndTimestamps, MetricRegistry registry, Clock clock) {
+    this.delegate = delegate;
+    this.configuration = configuration;
+    this.periodEndTimestamps = periodEndTimestamps;
+    this.clock = clock;
+    this.series = CacheBuilder.newBuilder()
+        .maximumWeight(configuration.maxBuckets)
+        .weigher(new Weigher<List<Object>, CachedSeries>() {
+          @Override
+          public int weigh(List<Object> key, CachedSeries value) {
+            return value.buckets.size() + 1;
+          }
+        })
+        .expireAfterWrite(configuration.ttlSeconds, TimeUnit.SECONDS)
+        .build();
+    this.hits = registry.meter(name(CachedStatisticRepo.class, "hits"));
+    this.misses = registry.meter(name(CachedStatisticRepo.class, "misses"));
+    registry.register(name(CachedStatisticRepo.class, "hit-ratio"), new RatioGauge() {
+      @Override
+      protected Ratio getRatio() {
+        return Ratio.of(hits.getOneMinuteRate(),
+                        hits.getOneMinuteRate() + misses.getOneMinuteRate());
+      }
+    });
+  }
+
+  @Override
+  public List<Statistics> find(String tenantId, String name, Map<String, String> dimensions,
+                               DateTime startTime, @Nullable DateTime endTime,
+                               List<String> statistics, int period, String offset, int limit,
+                               Boolean mergeMetricsFlag, @Nullable List<String> groupBy)
+      throws Exception {
+
+    final long now = clock.getTime();
+    final long periodMillis = period * 1000L;
+
+    if (groupBy != null || !Strings.isNullOrEmpty(offset) || startTime == null || period < 1
+        || DAY_SECONDS % period != 0) {
+      return this.delegate.find(tenantId, name, dimensions, startTime, endTime, statistics, period,
+                                offset, limit, mergeMetricsFlag, groupBy);
+    }
+
+    final long start = startTime.getMillis();
+    final long end = endTime != null ? endTime.getMillis() : OPEN;
+    final long first = ceil(start, periodMillis);
+    long closed = floor(now - configuration.settleSeconds * 1000, periodMillis);
+    if (end != OPEN) {
+      closed = Math.min(closed, floor(end, periodMillis));
+    }
+
+    // One bucket of slack for the bucket ending at the start time.
+    final long spanned = (ceil(Math.min(end, now), periodMillis) - floor(start, periodMillis))
+                         / periodMillis + 1;
+
+    if (closed <= first || spanned > limit) {
+      return this.delegate.find(tenantId, name, dimensions, startTime, endTime, statistics, period,
+                                offset, limit, mergeMetricsFlag, groupBy);
+    }
+
+    final List<List<Object>> keys = new ArrayList<>(statistics.size());
+    final List<CachedSeries> cached = new ArrayList<>(statistics.size());
+    for (String statistic : statistics) {
+      final List<Object> key = Arrays.<Object>asList(
+          tenantId, name,
+          dimensions != null ? new TreeMap<String, String>(dimensions) : null,
+          Boolean.TRUE.equals(mergeMetricsFlag), statistic, period);
+      keys.add(key);
+      cached.add(this.series.getIfPresent(key));
+    }
+
+    // The missing or expired closed buckets are queried again as a single range.
+    long missingFrom = closed;
+    long missingTo = first;
+    int missed = 0;
+    for (long bucket = first; bucket < closed; bucket += periodMillis) {
+      if (!isCached(cached, bucket, now)) {
+        missingFrom = Math.min(missingFrom, bucket);
+        missingTo = bucket + periodMillis;
+        missed++;
+      }
+    }
+    this.hits.mark((closed - first) / periodMillis - missed);
+    this.misses.mark(missed);
+
+    final List<long[]> ranges = new ArrayList<>(3);
+    addRange(ranges, start, first);
+    addRange(ranges, missingFrom, missingTo);
+    addRange(ranges, closed, end);
+
+    final TreeMap<Long, double[]> rows = new TreeMap<>();
+    final Set<Long> queried = new HashSet<>();
+    Statistics returned = null;
+
+    for (long[] range : ranges) {
+
+      final long from = range[0];
+      final long to = range[1];
+      final long firstBucket = floor(from, periodMillis);
+
+      // Bounds are exclusive in InfluxDB, so a measurement at an aligned start is included by
+      // starting a millisecond earlier, the bucket this adds being discarded below.
+      final List<Statistics> result = this.delegate.find(
+          tenantId, name, dimensions,
+          from == start ? startTime : new DateTime(from - 1, DateTimeZone.UTC),
+          to == OPEN ? null : new DateTime(to, DateTimeZone.UTC),
+          statistics, period, null, limit, mergeMetricsFlag, null);
+
+      if (result.size() > 1) {
+        return this.delegate.find(tenantId, name, dimensions, startTime, endTime, statistics,
+                                  period, offset, limit, mergeMetricsFlag, groupBy);
+      }
+
+      for (long bucket = Math.max(firstBucket, first); bucket < Math.min(to, closed);
+           bucket += periodMillis) {
+        queried.add(bucket);
+      }
+
+      if (result.isEmpty()) {
+        continue;
+      }
+
+      final Statistics s = result.get(0);
+      if (returned == null) {
+        returned = s;
+      }
+
+      final int[] indexes = columnIndexes(s.getColumns(), statistics);
+      final long[] timestamps = s.getTimestamps();
+      final double[][] values = s.getColumnValues();
+      for (int i = 0; i < timestamps.length; i++) {
+        final long bucket = periodEndTimestamps ? timestamps[i] - periodMillis : timestamps[i];
+        if (bucket < firstBucket || bucket >= to) {
+          continue;
+        }
+        final double[] row = new double[statistics.size()];
+        for (int j = 0; j < row.length; j++) {
+          row[j] = indexes[j] >= 0 ? values[indexes[j]][i] : Double.NaN;
+        }
+        rows.put(bucket, row);
+      }
+    }
+
+    for (long bucket = first; bucket < closed; bucket += periodMillis) {
+      if (!queried.contains(bucket) && cached.get(0).buckets.get(bucket).present) {
+        final double[] row = new double[statistics.size()];
+        for (int j = 0; j < row.length; j++) {
+          row[j] = cached.get(j).buckets.get(bucket).value;
+        }
+        rows.put(bucket, row);
+      }
+    }
+
+    String seriesName = returned != null ? returned.getName() : null;
+    Map<String, String> seriesDimensions = returned != null ? returned.getDimensions() : null;
+    for (CachedSeries c : cached) {
+      if (seriesName == null && c != null) {
+        seriesName = c.name;
+        seriesDimensions = c.dimensions;
+      }
+    }
+
+    if (missed > 0) {
+      for (int j = 0; j < keys.size(); j++) {
+        this.series.put(keys.get(j), update(cached.get(j), j, seriesName, seriesDimensions, rows,
+                                            queried, now));
+      }
+    }
+
+    if (seriesName == null) {
+      return Collections.emptyList();
+    }
+
+    final List<String> columns;
+    if (returned != null) {
+      columns = returned.getColumns();
+    } else {
+      columns = new ArrayList<>(statistics.size() + 1);
+      columns.add(TIMESTAMP);
+      columns.addAll(statistics);
+    }
+
+    final int[] indexes = columnIndexes(statistics, columns.subList(1, columns.size()));
+    final Statistics spliced = new Statistics(seriesName, seriesDimensions, columns);
+    for (Map.Entry<Long, double[]> entry : rows.entrySet()) {
+      final double[] row = new double[indexes.length];
+      for (int j = 0; j < row.length; j++) {
+        row[j] = indexes[j] >= 0 ? entry.getValue()[indexes[j]] : Double.NaN;
+      }
+      spliced.addStatistics(periodEndTimestamps ? entry.getKey() + periodMillis : entry.getKey(),
+                            row);
+    }
+
+    return Collections.singletonList(spliced);
+  }
+
+  private boolean isCached(List<CachedSeries> cached, long bucket, long now) {
+    for (CachedSeries c : cached) {
+      final Bucket b = c != null ? c.buckets.get(bucket) : null;
+      if (b == null || now - b.queriedAt >= configuration.ttlSeconds * 1000) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the cached series of the {@code statistic}th statistic with the {@code queried}
+   * buckets replaced and the expired ones dropped.
+   */
+  private CachedSeries update(@Nullable CachedSeries cached, int statistic, String name,
+                              Map<String, String> dimensions, Map<Long, double[]> rows,
+                              Set<Long> queried, long now) {
+    final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+
+    if (cached != null) {
+      for (Map.Entry<Long, Bucket> entry : cached.buckets.entrySet()) {
+        if (now - entry.getValue().queriedAt < configuration.ttlSeconds * 1000) {
+          buckets.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+
+    for (Long bucket : queried) {
+      final double[] row = rows.get(bucket);
+      buckets.put(bucket, row != null ? new Bucket(row[statistic], true, now)
+                                      : new Bucket(Double.NaN, false, now));
+    }
+
+    return new CachedSeries(name, dimensions, buckets);
+  }
+
+  /**
+   * Returns the index in {@code columns}, less the leading timestamp column if it has one, of
+   * each of the {@code names}, or -1.
+   */
+  private static int[] columnIndexes(List<String> columns, List<String> names) {
+    final int offset = !columns.isEmpty() && TIMESTAMP.equals(columns.get(0)) ? 1 : 0;
+    final int[] indexes = new int[names.size()];
+    for (int j = 0; j < indexes.length; j++) {
+      final int index = columns.indexOf(names.get(j));
+      indexes[j] = index >= offset ? index - offset : -1;
+    }
+    return indexes;
+  }
+
+  private static void addRange(List<long[]> ranges, long from, long to) {
+    if (from >= to) {
+      return;
+    }
+    final long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+    if (last != null && last[1] == from) {
+      last[1] = to;
+    } else {
+      ranges.add(new long[] {from, to});
+    }
+  }
+
+  private static long floor(long millis, long periodMillis) {
+    return millis - ((millis % periodMillis) + periodMillis) % periodMillis;
+  }
+
+  private static long ceil(long millis, long periodMillis) {
+    final long floor = floor(millis, periodMillis);
+    return floor == millis ? millis : floor + periodMillis;
+  }
+
+  /** The cached buckets of a statistic of a series, by bucket start. */
+  private static final class CachedSeries {
+    final String name;
+    final Map<String, String> dimensions;
+    final NavigableMap<Long, Bucket> buckets;
+
+    CachedSeries(String name, Map<String, String> dimensions,
+                 NavigableMap<Long, Bucket> buckets) {
+      this.name = name;
+      this.dimensions = dimensions;
+      this.buckets = buckets;
+    }
+  }
+
+  private static final class Bucket {
+    final double value;
+    /** Whether the repository returned a row for the bucket. */
+    final boolean present;
+    final long queriedAt;
+
+    Bucket(double value, boolean present, long queriedAt) {
+      this.value = value;
+      this.present = present;
+      this.queriedAt = queriedAt;
+    }
+  }
+}
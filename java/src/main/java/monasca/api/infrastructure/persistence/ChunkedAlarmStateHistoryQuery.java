@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.alarmstatehistory.AlarmStateHistory;
+
+/**
+ * Runs an alarm state history query over a potentially large set of alarm ids by splitting the
+ * ids into bounded chunks, querying the chunks in parallel and merging the results by timestamp.
+ */
+public class ChunkedAlarmStateHistoryQuery {
+
+  private static final Logger logger = LoggerFactory.getLogger(ChunkedAlarmStateHistoryQuery.class);
+
+  private static final int DEFAULT_CHUNK_SIZE = 1000;
+
+  private static final Comparator<PeekingIterator<AlarmStateHistory>> BY_HEAD_TIMESTAMP =
+      new Comparator<PeekingIterator<AlarmStateHistory>>() {
+        @Override
+        public int compare(PeekingIterator<AlarmStateHistory> a,
+                           PeekingIterator<AlarmStateHistory> b) {
+          return a.peek().getTimestamp().compareTo(b.peek().getTimestamp());
+        }
+      };
+
+  /**
+   * Queries alarm state history for a single chunk of alarm ids. Results must be sorted by
+   * ascending timestamp.
+   */
+  public interface Chunk {
+    List<AlarmStateHistory> find(List<String> alarmIds) throws Exception;
+  }
+
+  private final ExecutorService executor;
+  private final int chunkSize;
+
+  @Inject
+  public ChunkedAlarmStateHistoryQuery(ApiConfig config,
+                                       @Named("alarmStateHistory") ExecutorService executor) {
+    this(executor, config.alarmIdChunkSize);
+  }
+
+  public ChunkedAlarmStateHistoryQuery(ExecutorService executor, int chunkSize) {
+    this.executor = executor;
+    this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+  }
+
+  /**
+   * Returns at most {@code limit} entries for the {@code alarmIds}, ordered by ascending
+   * timestamp.
+   */
+  public List<AlarmStateHistory> find(List<String> alarmIds, int limit, final Chunk chunk)
+      throws Exception {
+
+    List<List<String>> partitions = Lists.partition(alarmIds, this.chunkSize);
+
+    if (partitions.size() == 1) {
+      return truncate(chunk.find(partitions.get(0)), limit);
+    }
+
+    logger.debug("Querying alarm state history for {} alarm ids in {} chunks", alarmIds.size(),
+                 partitions.size());
+
+    List<Future<List<AlarmStateHistory>>> futures = new ArrayList<>(partitions.size());
+
+    for (final List<String> partition : partitions) {
+      futures.add(this.executor.submit(new Callable<List<AlarmStateHistory>>() {
+        @Override
+        public List<AlarmStateHistory> call() throws Exception {
+          return chunk.find(partition);
+        }
+      }));
+    }
+
+    List<List<AlarmStateHistory>> results = new ArrayList<>(futures.size());
+
+    try {
+
+      for (Future<List<AlarmStateHistory>> future : futures) {
+        results.add(future.get());
+      }
+
+    } catch (ExecutionException e) {
+
+      cancel(futures);
+
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+
+    } catch (InterruptedException e) {
+
+      cancel(futures);
+
+      Thread.currentThread().interrupt();
+
+      throw e;
+    }
+
+    return mergeByTimestamp(results, limit);
+  }
+
+  /**
+   * K-way merges the {@code sortedLists}, each sorted by ascending timestamp, stopping once
+   * {@code limit} entries have been taken.
+   */
+  static List<AlarmStateHistory> mergeByTimestamp(List<List<AlarmStateHistory>> sortedLists,
+                                                  int limit) {
+
+    PriorityQueue<PeekingIterator<AlarmStateHistory>> heads =
+        new PriorityQueue<>(Math.max(1, sortedLists.size()), BY_HEAD_TIMESTAMP);
+
+    for (List<AlarmStateHistory> sortedList : sortedLists) {
+      if (!sortedList.isEmpty()) {
+        heads.add(Iterators.peekingIterator(sortedList.iterator()));
+      }
+    }
+
+    List<AlarmStateHistory> merged = new ArrayList<>();
+
+    while (merged.size() < limit && !heads.isEmpty()) {
+
+      PeekingIterator<AlarmStateHistory> head = heads.poll();
+
+      merged.add(head.next());
+
+      if (head.hasNext()) {
+        heads.add(head);
+      }
+    }
+
+    return merged;
+  }
+
+  private static List<AlarmStateHistory> truncate(List<AlarmStateHistory> list, int limit) {
+    return list.size() > limit ? new ArrayList<>(list.subList(0, limit)) : list;
+  }
+
+  private static void cancel(List<Future<List<AlarmStateHistory>>> futures) {
+    for (Future<List<AlarmStateHistory>> future : futures) {
+      future.cancel(true);
+    }
+  }
+}
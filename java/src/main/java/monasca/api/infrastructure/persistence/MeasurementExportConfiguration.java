@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Measurement export configuration, bounding how much of an exported time range is read at once.
+ */
+public class MeasurementExportConfiguration {
+  /** Length of the time slices InfluxDB is queried by, each read in one response. */
+  @Min(1)
+  @JsonProperty
+  public int sliceSeconds = 3600;
+  /** Number of rows Vertica returns per fetch while the export query is streamed. */
+  @Min(1)
+  @JsonProperty
+  public int fetchSize = 10000;
+}
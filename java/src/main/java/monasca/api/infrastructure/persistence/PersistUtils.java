@@ -108,7 +108,8 @@ public class PersistUtils {
     }
   }
 
-  public Date parseTimestamp(String timestampString) throws ParseException {
+  // SimpleDateFormat is not thread safe and state history chunks are parsed in parallel.
+  public synchronized Date parseTimestamp(String timestampString) throws ParseException {
 
     try {
 
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Measurements pre-aggregated by period, as the min, max, sum and count of the measurements of each
+ * series in each period. Statistics of any multiple of the period are computed from them.
+ *
+ * <p>In InfluxDB a rollup is written by a continuous query, into the measurement of the metric name
+ * followed by {@link #measurementSuffix}, in {@link #retentionPolicy}. Its fields are min, max, sum
+ * and count, and it keeps the tags of the raw measurements. In Vertica a rollup is the
+ * {@link #table}, with the columns definition_dimensions_id, time_stamp (the start of the period),
+ * min_value, max_value, sum_value and count_value.
+ */
+public class RollupConfiguration {
+  @Min(1)
+  @JsonProperty
+  public int period;
+  /** InfluxDB retention policy of the rollup, the default policy when not set. */
+  @JsonProperty
+  public String retentionPolicy;
+  /** Suffix of the InfluxDB rollup measurement names, the metric name itself when not set. */
+  @JsonProperty
+  public String measurementSuffix;
+  /** Vertica rollup table, including its schema. The rollup is InfluxDB only when not set. */
+  @JsonProperty
+  public String table;
+
+  /**
+   * Returns whether the rollup is in InfluxDB.
+   */
+  @JsonIgnore
+  public boolean isInfluxDb() {
+    return (retentionPolicy != null && !retentionPolicy.isEmpty())
+           || (measurementSuffix != null && !measurementSuffix.isEmpty());
+  }
+
+  /**
+   * Returns whether the rollup is in Vertica.
+   */
+  @JsonIgnore
+  public boolean isVertica() {
+    return table != null && !table.isEmpty();
+  }
+}
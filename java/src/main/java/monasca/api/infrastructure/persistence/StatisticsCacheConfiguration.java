@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Statistics bucket cache configuration.
+ */
+public class StatisticsCacheConfiguration {
+  @JsonProperty
+  public Boolean enabled = Boolean.FALSE;
+  /** Maximum number of buckets cached, across all tenants, series and statistics. */
+  @JsonProperty
+  public long maxBuckets = 500000;
+  /** Seconds after its end before a bucket is considered closed and cached. */
+  @JsonProperty
+  public long settleSeconds = 120;
+  /** Seconds after which a cached bucket is queried again, picking up late measurements. */
+  @JsonProperty
+  public long ttlSeconds = 3600;
+}
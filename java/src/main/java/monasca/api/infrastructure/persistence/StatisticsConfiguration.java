@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Statistics configuration, the periods picked for period=auto and the rollups coarse periods are
+ * read from.
+ */
+public class StatisticsConfiguration {
+  /** Periods, in seconds, period=auto picks from. */
+  @NotEmpty
+  @JsonProperty
+  public List<Integer> autoPeriods = Arrays.asList(60, 300, 900, 3600, 21600, 86400);
+  /** Most periods per series period=auto picks a period for. */
+  @Min(1)
+  @JsonProperty
+  public int autoPoints = 500;
+  /** Pre-aggregated measurements, each read instead of the raw ones for multiples of its period. */
+  @Valid
+  @NotNull
+  @JsonProperty
+  public List<RollupConfiguration> rollups = new ArrayList<>();
+}
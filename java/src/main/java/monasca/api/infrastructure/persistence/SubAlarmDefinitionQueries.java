@@ -21,22 +21,28 @@ import java.util.Map;
 public final class SubAlarmDefinitionQueries {
   private SubAlarmDefinitionQueries() {}
 
-  public static String buildJoinClauseFor(Map<String, String> dimensions) {
-
-    StringBuilder sbJoin = new StringBuilder();
-
-    if (dimensions != null) {
+  /**
+   * Returns a condition on the alarm definition aliased {@code ad} holding when one of its sub
+   * alarm definitions has all the {@code dimensions}, bound by
+   * {@link DimensionQueries#bindDimensionsToQuery}. Being a semi-join, the condition does not
+   * repeat alarm definitions matching through several sub alarm definitions.
+   */
+  public static String buildExistsClauseFor(Map<String, String> dimensions) {
+
+    if (dimensions == null || dimensions.isEmpty()) {
+      return "";
+    }
 
-      sbJoin = new StringBuilder();
+    StringBuilder sbExists =
+        new StringBuilder(" and exists (select 1 from sub_alarm_definition as sad");
 
-      for (int i = 0; i < dimensions.size(); i++) {
-        sbJoin.append(" inner join sub_alarm_definition_dimension d").append(i).append(" on d").append(i)
-            .append(".dimension_name = :dname").append(i).append(" and d").append(i)
-            .append(".value = :dvalue").append(i).append(" and dim.sub_alarm_definition_id = d")
-            .append(i).append(".sub_alarm_definition_id");
-      }
+    for (int i = 0; i < dimensions.size(); i++) {
+      sbExists.append(" inner join sub_alarm_definition_dimension as d").append(i).append(" on d")
+          .append(i).append(".sub_alarm_definition_id = sad.id and d").append(i)
+          .append(".dimension_name = :dname").append(i).append(" and d").append(i)
+          .append(".value = :dvalue").append(i);
     }
 
-    return sbJoin.toString();
+    return sbExists.append(" where sad.alarm_definition_id = ad.id)").toString();
   }
 }
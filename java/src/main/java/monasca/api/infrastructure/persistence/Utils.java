@@ -21,9 +21,43 @@ import java.util.Map;
 
 abstract public class Utils {
 
+  protected static final String FIND_ALARM_METRIC_DIMENSIONS_SQL =
+      "select a.id, mdd.metric_dimension_set_id, md.name, md.value "
+          + "from alarm as a "
+          + "join alarm_definition as ad on a.alarm_definition_id = ad.id "
+          + "left join alarm_metric as am on a.id = am.alarm_id "
+          + "left join metric_definition_dimensions as mdd on am.metric_definition_dimensions_id = mdd.id "
+          + "left join metric_dimension as md on mdd.metric_dimension_set_id = md.dimension_set_id "
+          + "where ad.tenant_id = :tenantId and ad.deleted_at is NULL";
+
+  protected static final String FIND_ALARM_INDEX_SQL =
+      "select a.id, a.alarm_definition_id, a.state, am.metric_definition_dimensions_id, "
+          + "mdef.name as metric_name, md.name, md.value "
+          + "from alarm as a "
+          + "join alarm_definition as ad on a.alarm_definition_id = ad.id "
+          + "left join alarm_metric as am on a.id = am.alarm_id "
+          + "left join metric_definition_dimensions as mdd on am.metric_definition_dimensions_id = mdd.id "
+          + "left join metric_definition as mdef on mdd.metric_definition_id = mdef.id "
+          + "left join metric_dimension as md on mdd.metric_dimension_set_id = md.dimension_set_id "
+          + "where ad.tenant_id = :tenantId and ad.deleted_at is NULL";
+
   public abstract List<String> findAlarmIds(String tenantId,
                                             Map<String, String> dimensions);
 
+  /**
+   * Returns one row of alarm id, metric dimension set id, dimension name and dimension value for
+   * every dimension of every metric of the tenant's alarms. The trailing columns are null for
+   * alarms or metrics without dimensions.
+   */
+  public abstract List<Object[]> findAlarmMetricDimensions(String tenantId);
+
+  /**
+   * Returns one row of alarm id, alarm definition id, alarm state, metric definition dimensions
+   * id, metric name, dimension name and dimension value for every dimension of every metric of the
+   * tenant's alarms. The trailing columns are null for alarms or metrics without dimensions.
+   */
+  public abstract List<Object[]> findAlarmIndexRows(String tenantId);
+
   protected String buildJoinClauseFor(Map<String, String> dimensions) {
 
     if ((dimensions == null) || dimensions.isEmpty()) {
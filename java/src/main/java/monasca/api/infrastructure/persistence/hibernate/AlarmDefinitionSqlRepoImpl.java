@@ -48,7 +48,10 @@ import com.google.common.collect.Sets;
 
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDetail;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.outbox.OutboxEvent;
+import monasca.api.infrastructure.persistence.AlarmDefinitionQueries;
 import monasca.api.infrastructure.persistence.SubAlarmDefinitionQueries;
 import monasca.common.hibernate.db.AlarmActionDb;
 import monasca.common.hibernate.db.AlarmDb;
@@ -79,6 +82,41 @@ public class AlarmDefinitionSqlRepoImpl
   private static final String ACTIONS_ENABLED = "ACTIONS_ENABLED";
   private static final String STATE = "STATES";
   private static final String NOTIFICATION_ID = "NOTIFICATIONIDS";
+  private static final String SUB_ALARM_ID = "SUB_ALARM_ID";
+  private static final String FUNCTION = "FUNCTION";
+  private static final String METRIC_NAME = "METRIC_NAME";
+  private static final String OPERATOR = "OPERATOR";
+  private static final String THRESHOLD = "THRESHOLD";
+  private static final String PERIOD = "PERIOD";
+  private static final String PERIODS = "PERIODS";
+  private static final String DIMENSION_NAME = "DIMENSION_NAME";
+  private static final String DIMENSION_VALUE = "DIMENSION_VALUE";
+  /**
+   * Reads a definition with its actions, sub expressions and their dimensions in one round trip.
+   */
+  private static final String FIND_DETAIL_BY_ID_SQL =
+      "SELECT ad.id, ad.name, ad.description, ad.expression, ad.severity, ad.match_by, ad.actions_enabled, "
+          + "aa.alarm_state AS states, aa.action_id AS notificationIds, "
+          + "sad.id AS sub_alarm_id, sad.function, sad.metric_name, sad.operator, sad.threshold, sad.period, sad.periods, "
+          + "dim.dimension_name, dim.value AS dimension_value "
+          + "FROM alarm_definition AS ad "
+          + "LEFT OUTER JOIN alarm_action AS aa ON ad.id = aa.alarm_definition_id "
+          + "LEFT OUTER JOIN sub_alarm_definition AS sad ON ad.id = sad.alarm_definition_id "
+          + "LEFT OUTER JOIN sub_alarm_definition_dimension AS dim ON sad.id = dim.sub_alarm_definition_id "
+          + "WHERE ad.tenant_id = :tenantId AND ad.id = :id AND ad.deleted_at IS NULL";
+  /**
+   * Reads the ids of a page only, dimension filters are semi-joins so definitions are neither
+   * repeated nor need a distinct before the limit applies.
+   */
+  private static final String FIND_PAGE_IDS_SQL =
+      "SELECT ad.id FROM alarm_definition AS ad WHERE ad.tenant_id = :tenantId AND ad.deleted_at IS NULL%s%s%s";
+  private static final String FIND_OFFSET_KEYS_SQL =
+      "SELECT %s FROM alarm_definition WHERE tenant_id = :tenantId AND id = :offset";
+  private static final String FIND_BY_IDS_SQL =
+      "SELECT ad.id, ad.name, ad.description, ad.expression, ad.severity, ad.match_by, ad.actions_enabled, "
+          + "aa.alarm_state AS states, aa.action_id AS notificationIds "
+          + "FROM alarm_definition AS ad LEFT OUTER JOIN alarm_action AS aa ON ad.id = aa.alarm_definition_id "
+          + "WHERE ad.id IN (:ids)";
   private static final Joiner COMMA_JOINER = Joiner.on(',');
   private static final Splitter COMMA_SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
   private static final Logger logger = LoggerFactory.getLogger(AlarmDefinitionSqlRepoImpl.class);
@@ -92,6 +130,14 @@ public class AlarmDefinitionSqlRepoImpl
   public AlarmDefinition create(String tenantId, String id, String name, String description, String severity, String expression,
                                 Map<String, AlarmSubExpression> subExpressions, List<String> matchBy, List<String> alarmActions, List<String> okActions,
                                 List<String> undeterminedActions) {
+    return this.create(tenantId, id, name, description, severity, expression, subExpressions, matchBy, alarmActions, okActions,
+        undeterminedActions, Collections.<OutboxEvent>emptyList());
+  }
+
+  @Override
+  public AlarmDefinition create(String tenantId, String id, String name, String description, String severity, String expression,
+                                Map<String, AlarmSubExpression> subExpressions, List<String> matchBy, List<String> alarmActions, List<String> okActions,
+                                List<String> undeterminedActions, List<OutboxEvent> events) {
     logger.trace(ORM_LOG_MARKER, "create(...) entering...");
 
     Transaction tx = null;
@@ -123,6 +169,8 @@ public class AlarmDefinitionSqlRepoImpl
       this.persistActions(session, alarmDefinition, AlarmState.OK, okActions);
       this.persistActions(session, alarmDefinition, AlarmState.UNDETERMINED, undeterminedActions);
 
+      OutboxSqlRepoImpl.append(session, events);
+
       tx.commit();
       tx = null;
 
@@ -153,6 +201,12 @@ public class AlarmDefinitionSqlRepoImpl
 
   @Override
   public void deleteById(String tenantId, String alarmDefId) {
+    this.deleteById(tenantId, alarmDefId, Collections.<List<OutboxEvent>>emptyIterator());
+  }
+
+  @Override
+  public void deleteById(String tenantId, String alarmDefId,
+                         Iterator<List<OutboxEvent>> events) {
     logger.trace(ORM_LOG_MARKER, "deleteById(...) entering...");
 
     Session session = null;
@@ -170,6 +224,11 @@ public class AlarmDefinitionSqlRepoImpl
       result.setDeletedAt(this.getUTCNow());
       session.update(result);
 
+      // The events may be built from the alarms, so they are written before the cascade
+      while (events.hasNext()) {
+        OutboxSqlRepoImpl.append(session, events.next());
+      }
+
       // Cascade soft delete to alarms
       session
           .getNamedQuery(AlarmDb.Queries.DELETE_BY_ALARMDEFINITION_ID)
@@ -225,22 +284,11 @@ public class AlarmDefinitionSqlRepoImpl
 
   @Override
   @SuppressWarnings("unchecked")
-  public List<AlarmDefinition> find(String tenantId, String name, Map<String, String> dimensions, String offset, int limit) {
+  public List<AlarmDefinition> find(String tenantId, String name, Map<String, String> dimensions, List<String> sortBy,
+                                    String offset, int limit) {
     logger.trace(ORM_LOG_MARKER, "find(...) entering...");
 
     Session session = null;
-    List<AlarmDefinition> resultSet = Lists.newArrayList();
-
-    // TODO introduce criteria here, will make code significantly better
-    String query =
-        "  SELECT t.id, t.tenant_id, t.name, t.description, t.expression, t.severity, t.match_by, "
-            + "t.actions_enabled, aa.alarm_state AS states, aa.action_id AS notificationIds "
-            + "FROM (SELECT distinct ad.id, ad.tenant_id, ad.name, ad.description, ad.expression, "
-            + "ad.severity, ad.match_by, ad.actions_enabled, ad.created_at, ad.updated_at, ad.deleted_at "
-            + "FROM alarm_definition AS ad LEFT OUTER JOIN sub_alarm_definition AS sad ON ad.id = sad.alarm_definition_id "
-            + "LEFT OUTER JOIN sub_alarm_definition_dimension AS dim ON sad.id = dim.sub_alarm_definition_id %1$s "
-            + "WHERE ad.tenant_id = :tenantId AND ad.deleted_at IS NULL %2$s %3$s) AS t "
-            + "LEFT OUTER JOIN alarm_action AS aa ON t.id = aa.alarm_definition_id ORDER BY t.id, t.created_at";
 
     StringBuilder sbWhere = new StringBuilder();
 
@@ -249,51 +297,90 @@ public class AlarmDefinitionSqlRepoImpl
     }
 
     if (offset != null) {
-      sbWhere.append(" and ad.id > :offset");
+      sbWhere.append(AlarmDefinitionQueries.buildKeysetClause(sortBy));
     }
 
+    sbWhere.append(SubAlarmDefinitionQueries.buildExistsClauseFor(dimensions));
+
     String limitPart = "";
     if (limit > 0) {
       limitPart = " limit :limit";
     }
 
-    String sql = String.format(query, SubAlarmDefinitionQueries.buildJoinClauseFor(dimensions), sbWhere, limitPart);
+    String sql = String.format(FIND_PAGE_IDS_SQL, sbWhere, AlarmDefinitionQueries.buildOrderBy(sortBy), limitPart);
+    final List<String> keyColumns = AlarmDefinitionQueries.keyColumns(sortBy);
 
     try {
       session = sessionFactory.openSession();
 
-      final Query qAlarmDefinition = session
+      final Query qIds = session
           .createSQLQuery(sql)
-          .setString("tenantId", tenantId)
-          .setResultTransformer(ALARM_DEF_RESULT_TRANSFORMER);
+          .setString("tenantId", tenantId);
 
       if (name != null) {
-        qAlarmDefinition.setString("name", name);
+        qIds.setString("name", name);
       }
 
       if (offset != null) {
-        qAlarmDefinition.setString("offset", offset);
+        qIds.setString("offset", offset);
+
+        if (!keyColumns.isEmpty()) {
+          final Map<?, ?> offsetKeys = (Map<?, ?>) session
+              .createSQLQuery(String.format(FIND_OFFSET_KEYS_SQL, COMMA_JOINER.join(keyColumns)))
+              .setString("tenantId", tenantId)
+              .setString("offset", offset)
+              .setResultTransformer(ALARM_DEF_RESULT_TRANSFORMER)
+              .uniqueResult();
+
+          // The offset definition is gone, no definition follows it anymore
+          if (offsetKeys == null) {
+            return Lists.newArrayList();
+          }
+
+          for (int i = 0; i < keyColumns.size(); i++) {
+            qIds.setParameter("key" + i, offsetKeys.get(keyColumns.get(i).toUpperCase()));
+          }
+        }
       }
 
       if (limit > 0) {
-        qAlarmDefinition.setInteger("limit", limit + 1);
+        qIds.setInteger("limit", limit + 1);
+      }
+
+      this.bindDimensionsToQuery(qIds, dimensions);
+
+      final List<String> ids = qIds.list();
+
+      if (CollectionUtils.isEmpty(ids)) {
+        return Lists.newArrayList();
       }
 
-      this.bindDimensionsToQuery(qAlarmDefinition, dimensions);
+      final List<Map<?, ?>> alarmDefinitionDbList = session
+          .createSQLQuery(FIND_BY_IDS_SQL)
+          .setParameterList("ids", ids)
+          .setResultTransformer(ALARM_DEF_RESULT_TRANSFORMER)
+          .list();
 
-      final List<Map<?,?>> alarmDefinitionDbList = qAlarmDefinition.list();
+      final Map<String, AlarmDefinition> alarmDefinitions = Maps.newHashMap();
+      for (AlarmDefinition alarmDefinition : this.createAlarmDefinitions(alarmDefinitionDbList)) {
+        alarmDefinitions.put(alarmDefinition.getId(), alarmDefinition);
+      }
 
-      resultSet = CollectionUtils.isEmpty(alarmDefinitionDbList) ?
-          Lists.<AlarmDefinition>newArrayList() :
-          this.createAlarmDefinitions(alarmDefinitionDbList);
+      final List<AlarmDefinition> resultSet = Lists.newArrayListWithCapacity(ids.size());
+      for (String id : ids) {
+        final AlarmDefinition alarmDefinition = alarmDefinitions.get(id);
+        // Deleted between reading the page and its definitions
+        if (alarmDefinition != null) {
+          resultSet.add(alarmDefinition);
+        }
+      }
+      return resultSet;
 
     } finally {
       if (session != null) {
         session.close();
       }
     }
-
-    return resultSet;
   }
 
   @Override
@@ -309,12 +396,11 @@ public class AlarmDefinitionSqlRepoImpl
     try {
       session = sessionFactory.openSession();
 
-      final AlarmDefinitionDb alarmDefinitionDb = (AlarmDefinitionDb) session
-          .getNamedQuery(AlarmDefinitionDb.Queries.FIND_BY_TENANT_AND_ID_NOT_DELETED)
-          .setString("tenant_id", tenantId)
-          .setString("id", alarmDefId).uniqueResult();
+      // Read by id so the second-level cache, which alarm definition events evict by id, is used
+      final AlarmDefinitionDb alarmDefinitionDb = session.get(AlarmDefinitionDb.class, alarmDefId);
 
-      if (alarmDefinitionDb == null) {
+      if (alarmDefinitionDb == null || !tenantId.equals(alarmDefinitionDb.getTenantId())
+          || alarmDefinitionDb.getDeletedAt() != null) {
         throw new EntityNotFoundException("No alarm definition exists for tenantId=%s and id=%s", tenantId, alarmDefId);
       }
 
@@ -364,6 +450,36 @@ public class AlarmDefinitionSqlRepoImpl
     }
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public AlarmDefinitionDetail findDetailById(String tenantId, String alarmDefId) {
+    logger.trace(ORM_LOG_MARKER, "findDetailById(...) entering...");
+
+    Session session = null;
+
+    try {
+      session = sessionFactory.openSession();
+
+      final List<Map<?, ?>> rows = session
+          .createSQLQuery(FIND_DETAIL_BY_ID_SQL)
+          .setString("tenantId", tenantId)
+          .setString("id", alarmDefId)
+          .setResultTransformer(ALARM_DEF_RESULT_TRANSFORMER)
+          .list();
+
+      if (CollectionUtils.isEmpty(rows)) {
+        throw new EntityNotFoundException("No alarm definition exists for tenantId=%s and id=%s", tenantId, alarmDefId);
+      }
+
+      return this.createAlarmDefinitionDetail(rows);
+
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public Map<String, MetricDefinition> findSubAlarmMetricDefinitions(String alarmDefId) {
@@ -461,6 +577,15 @@ public class AlarmDefinitionSqlRepoImpl
   public void update(String tenantId, String id, boolean patch, String name, String description, String expression, List<String> matchBy,
                      String severity, boolean actionsEnabled, Collection<String> oldSubAlarmIds, Map<String, AlarmSubExpression> changedSubAlarms,
                      Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions, List<String> okActions, List<String> undeterminedActions) {
+    this.update(tenantId, id, patch, name, description, expression, matchBy, severity, actionsEnabled, oldSubAlarmIds, changedSubAlarms,
+        newSubAlarms, alarmActions, okActions, undeterminedActions, Collections.<OutboxEvent>emptyList());
+  }
+
+  @Override
+  public void update(String tenantId, String id, boolean patch, String name, String description, String expression, List<String> matchBy,
+                     String severity, boolean actionsEnabled, Collection<String> oldSubAlarmIds, Map<String, AlarmSubExpression> changedSubAlarms,
+                     Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions, List<String> okActions, List<String> undeterminedActions,
+                     List<OutboxEvent> events) {
     logger.trace(ORM_LOG_MARKER, "update(...) entering...");
 
     Transaction tx = null;
@@ -492,6 +617,8 @@ public class AlarmDefinitionSqlRepoImpl
       this.persistActions(session, alarmDefinitionDb, AlarmState.UNDETERMINED, undeterminedActions);
       // Insert new actions
 
+      OutboxSqlRepoImpl.append(session, events);
+
       tx.commit();
       tx = null;
     } catch (RuntimeException e) {
@@ -524,17 +651,22 @@ public class AlarmDefinitionSqlRepoImpl
 
   private void updateChangedSubAlarms(final Map<String, AlarmSubExpression> changedSubAlarms,
                                       final Session session) {
-    if (!MapUtils.isEmpty(changedSubAlarms))
-      for (Map.Entry<String, AlarmSubExpression> entry : changedSubAlarms.entrySet()) {
-        final AlarmSubExpression sa = entry.getValue();
-        final String subAlarmDefinitionId = entry.getKey();
+    if (!MapUtils.isEmpty(changedSubAlarms)) {
+      // Load all changed sub alarms at once, the updates are flushed in a JDBC batch on commit
+      @SuppressWarnings("unchecked")
+      final List<SubAlarmDefinitionDb> subAlarmDefinitions = session
+          .createCriteria(SubAlarmDefinitionDb.class)
+          .add(Restrictions.in("id", changedSubAlarms.keySet()))
+          .list();
 
-        SubAlarmDefinitionDb subAlarmDefinitionDb = session.get(SubAlarmDefinitionDb.class, subAlarmDefinitionId);
+      final DateTime now = new DateTime();
+      for (SubAlarmDefinitionDb subAlarmDefinitionDb : subAlarmDefinitions) {
+        final AlarmSubExpression sa = changedSubAlarms.get(subAlarmDefinitionDb.getId());
         subAlarmDefinitionDb.setOperator(sa.getOperator().name());
         subAlarmDefinitionDb.setThreshold(sa.getThreshold());
-        subAlarmDefinitionDb.setUpdatedAt(new DateTime());
-        session.saveOrUpdate(subAlarmDefinitionDb);
+        subAlarmDefinitionDb.setUpdatedAt(now);
       }
+    }
   }
 
   private void deleteOldSubAlarms(final Collection<String> oldSubAlarmIds,
@@ -687,6 +819,69 @@ public class AlarmDefinitionSqlRepoImpl
     return result;
   }
 
+  /**
+   * Builds the alarm definition detail from the rows of {@link #FIND_DETAIL_BY_ID_SQL}, each of
+   * which holds one combination of action and sub expression dimension.
+   */
+  private AlarmDefinitionDetail createAlarmDefinitionDetail(List<Map<?, ?>> rows) {
+    final Map<AlarmState, Set<String>> actions = Maps.newEnumMap(AlarmState.class);
+    for (AlarmState state : AlarmState.values()) {
+      actions.put(state, Sets.<String>newLinkedHashSet());
+    }
+    final Map<String, Map<?, ?>> subAlarmRows = Maps.newLinkedHashMap();
+    final Map<String, Map<String, String>> dimensions = Maps.newHashMap();
+
+    for (Map<?, ?> row : rows) {
+      final String state = (String) row.get(STATE);
+      final String actionId = (String) row.get(NOTIFICATION_ID);
+      if (state != null && actionId != null) {
+        actions.get(AlarmState.valueOf(state)).add(actionId);
+      }
+
+      final String subAlarmId = (String) row.get(SUB_ALARM_ID);
+      if (subAlarmId == null) {
+        continue;
+      }
+      if (!subAlarmRows.containsKey(subAlarmId)) {
+        subAlarmRows.put(subAlarmId, row);
+        dimensions.put(subAlarmId, Maps.<String, String>newHashMap());
+      }
+      final String dimensionName = (String) row.get(DIMENSION_NAME);
+      if (dimensionName != null) {
+        dimensions.get(subAlarmId).put(dimensionName, (String) row.get(DIMENSION_VALUE));
+      }
+    }
+
+    final Map<String, AlarmSubExpression> subExpressions = Maps.newHashMap();
+    for (Map.Entry<String, Map<?, ?>> entry : subAlarmRows.entrySet()) {
+      final Map<?, ?> row = entry.getValue();
+      subExpressions.put(entry.getKey(), new AlarmSubExpression(
+          AggregateFunction.fromJson((String) row.get(FUNCTION)),
+          new MetricDefinition((String) row.get(METRIC_NAME), dimensions.get(entry.getKey())),
+          AlarmOperator.fromJson((String) row.get(OPERATOR)),
+          ((Number) row.get(THRESHOLD)).doubleValue(),
+          ((Number) row.get(PERIOD)).intValue(),
+          ((Number) row.get(PERIODS)).intValue()
+      ));
+    }
+
+    final Map<?, ?> first = rows.get(0);
+    final AlarmDefinition alarmDefinition = new AlarmDefinition(
+        (String) first.get(ID),
+        (String) first.get(NAME),
+        (String) first.get(DESCRIPTION),
+        (String) first.get(SEVERITY),
+        (String) first.get(EXPRESSION),
+        this.splitStringIntoList((String) first.get(MATCH_BY)),
+        (Boolean) first.get(ACTIONS_ENABLED),
+        Lists.newArrayList(actions.get(AlarmState.ALARM)),
+        Lists.newArrayList(actions.get(AlarmState.OK)),
+        Lists.newArrayList(actions.get(AlarmState.UNDETERMINED))
+    );
+
+    return new AlarmDefinitionDetail(alarmDefinition, subExpressions);
+  }
+
   private List<String> splitStringIntoList(String str) {
     return str == null ? Lists.<String>newArrayList() : Lists.newArrayList(COMMA_SPLITTER.split(str));
   }
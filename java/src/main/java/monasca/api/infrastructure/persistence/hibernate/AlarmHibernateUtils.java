@@ -79,6 +79,46 @@ public class AlarmHibernateUtils
     return alarmIdList;
   }
 
+  public List<Object[]> findAlarmMetricDimensions(String tenantId) {
+    logger.trace(BaseSqlRepo.ORM_LOG_MARKER, "findAlarmMetricDimensions(...) entering");
+
+    StatelessSession session = null;
+    try {
+      session = sessionFactory.openStatelessSession();
+
+      @SuppressWarnings("unchecked") List<Object[]> rows = session
+          .createSQLQuery(FIND_ALARM_METRIC_DIMENSIONS_SQL)
+          .setString("tenantId", tenantId)
+          .list();
+
+      return rows;
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+
+  public List<Object[]> findAlarmIndexRows(String tenantId) {
+    logger.trace(BaseSqlRepo.ORM_LOG_MARKER, "findAlarmIndexRows(...) entering");
+
+    StatelessSession session = null;
+    try {
+      session = sessionFactory.openStatelessSession();
+
+      @SuppressWarnings("unchecked") List<Object[]> rows = session
+          .createSQLQuery(FIND_ALARM_INDEX_SQL)
+          .setString("tenantId", tenantId)
+          .list();
+
+      return rows;
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+
   private String findAlarmQueryString(final Map<String, String> dimensions) {
     return String.format(FIND_ALARM_IDS_SQL, this.buildJoinClauseFor(dimensions));
   }
@@ -13,10 +13,8 @@
  */
 package monasca.api.infrastructure.persistence.hibernate;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -31,6 +29,8 @@ import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.transform.BasicTransformerAdapter;
+import org.hibernate.transform.ResultTransformer;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
@@ -38,14 +38,20 @@ import org.slf4j.LoggerFactory;
 
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarm.Alarm;
+import monasca.api.domain.model.alarm.AlarmCount;
 import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarm.AlarmUpdate;
+import monasca.api.domain.model.outbox.OutboxEvent;
+import monasca.api.domain.model.outbox.OutboxEventFactory;
+import monasca.api.infrastructure.persistence.AlarmIndex;
+import monasca.api.infrastructure.persistence.AlarmMetricRow;
+import monasca.api.infrastructure.persistence.AlarmUpdateRow;
 import monasca.common.hibernate.db.AlarmDb;
 import monasca.common.hibernate.db.SubAlarmDb;
 import monasca.common.hibernate.type.BinaryId;
 import monasca.common.model.alarm.AlarmSeverity;
 import monasca.common.model.alarm.AlarmState;
 import monasca.common.model.alarm.AlarmSubExpression;
-import monasca.common.model.metric.MetricDefinition;
 import monasca.common.util.Conversions;
 
 /**
@@ -57,47 +63,136 @@ public class AlarmSqlRepoImpl
 
   private static final Logger logger = LoggerFactory.getLogger(AlarmSqlRepoImpl.class);
 
-  private static final String FIND_ALARM_BY_ID_SQL =
-      "select distinct ad.id as alarm_definition_id, ad.severity, ad.name as alarm_definition_name, "
-          + "a.id, a.state, a.updatedAt, a.createdAt as created_timestamp, "
-          + "md.name as metric_name, mdg.id.name, mdg.value, a.lifecycleState, a.link, a.stateUpdatedAt, "
-          + "mdg.id.dimensionSetId from AlarmDb as a "
-          + ", AlarmDefinitionDb as ad "
-          + ", AlarmMetricDb as am "
-          + ", MetricDefinitionDimensionsDb as mdd "
-          + ", MetricDefinitionDb as md "
-          + ", MetricDimensionDb as mdg "
-          + "where "
-          + " ad.id = a.alarmDefinition.id "
-          + " and am.alarmMetricId.alarm.id = a.id "
-          + " and mdd.id = am.alarmMetricId.metricDefinitionDimensions.id "
-          + " and md.id = mdd.metricDefinition.id "
-          + " and mdg.id.dimensionSetId = mdd.metricDimensionSetId "
-          + " and ad.tenantId = :tenantId "
-          + " %s "
-          + " and ad.deletedAt is null order by a.id, mdg.id.dimensionSetId %s";
-
-  private static final String ALARM_SQL =
-      "select distinct ad.id as alarm_definition_id, ad.severity, ad.name as alarm_definition_name, "
-          + "a.id, a.state, a.updated_at, a.created_at as created_timestamp, "
-          + "md.name as metric_name, mdg.name, mdg.value, a.lifecycle_state, a.link, a.state_updated_at, "
-          + "mdg.dimension_set_id "
+  private static final String ALARM_IDS_SQL =
+      "select a.id from alarm as a "
+          + "inner join alarm_definition ad on ad.id = a.alarm_definition_id "
+          + "where ad.tenant_id = :tenantId and ad.deleted_at is null %s order by a.id ASC %s";
+
+  private static final String COUNT_ALARMS_SQL =
+      "select ad.id as alarm_definition_id, ad.name as alarm_definition_name, ad.severity, "
+          + "a.state, a.lifecycle_state, count(*) as alarm_count "
+          + "from alarm as a "
+          + "inner join alarm_definition ad on ad.id = a.alarm_definition_id "
+          + "where ad.tenant_id = :tenantId and ad.deleted_at is null %s "
+          + "group by ad.id, ad.name, ad.severity, a.state, a.lifecycle_state "
+          + "order by ad.id, a.state, a.lifecycle_state";
+
+  private static final String ALARMS_BY_IDS_SQL =
+      "select a.id, ad.id as alarm_definition_id, ad.name as alarm_definition_name, ad.severity, "
+          + "a.state, a.lifecycle_state, a.link, a.state_updated_at, a.updated_at, a.created_at, "
+          + "mdd.id as metric_definition_dimensions_id, md.name as metric_name, "
+          + "mdim.name as dimension_name, mdim.value as dimension_value "
+          + "from alarm as a "
+          + "inner join alarm_definition ad on ad.id = a.alarm_definition_id "
+          + "inner join alarm_metric as am on am.alarm_id = a.id "
+          + "inner join metric_definition_dimensions as mdd on mdd.id = am.metric_definition_dimensions_id "
+          + "inner join metric_definition as md on md.id = mdd.metric_definition_id "
+          + "left join metric_dimension as mdim on mdim.dimension_set_id = mdd.metric_dimension_set_id "
+          + "where ad.tenant_id = :tenantId and ad.deleted_at is null and a.id in (:alarmIds) "
+          + "order by a.id ASC, mdd.id ASC";
+
+  /**
+   * Loads alarms with their metrics, alarm definitions and sub alarms in one query. The first
+   * columns are those of {@link #ALARMS_BY_IDS_SQL}.
+   */
+  private static final String ALARM_FOR_UPDATE_SQL =
+      "select a.id, ad.id as alarm_definition_id, ad.name as alarm_definition_name, ad.severity, "
+          + "a.state, a.lifecycle_state, a.link, a.state_updated_at, a.updated_at, a.created_at, "
+          + "mdd.id as metric_definition_dimensions_id, md.name as metric_name, "
+          + "mdim.name as dimension_name, mdim.value as dimension_value, "
+          + "ad.description as alarm_definition_description, ad.actions_enabled, "
+          + "sa.id as sub_alarm_id, sa.expression as sub_alarm_expression "
           + "from alarm as a "
           + "inner join alarm_definition ad on ad.id = a.alarm_definition_id "
           + "inner join alarm_metric as am on am.alarm_id = a.id "
           + "inner join metric_definition_dimensions as mdd on mdd.id = am.metric_definition_dimensions_id "
           + "inner join metric_definition as md on md.id = mdd.metric_definition_id "
-          + "left join (select dimension_set_id, name, value "
-          + "from metric_dimension group by dimension_set_id, name, value) as mdg on mdg.dimension_set_id = mdd.metric_dimension_set_id "
-          + "where ad.tenant_id = :tenantId and ad.deleted_at is null %s order by a.id ASC, mdg.dimension_set_id %s ";
+          + "left join metric_dimension as mdim on mdim.dimension_set_id = mdd.metric_dimension_set_id "
+          + "left join sub_alarm as sa on sa.alarm_id = a.id "
+          + "where ad.tenant_id = :tenantId and ad.deleted_at is null and a.id in (:alarmIds) "
+          + "order by a.id ASC, mdd.id ASC, sa.id ASC";
+
+  private static final String UPDATE_ALARM_HQL =
+      "update AlarmDb set state = :state, lifecycleState = :lifecycleState, link = :link, "
+          + "updatedAt = :now%s where id = :id";
+
+  private static final String UPDATE_ALARMS_STATE_HQL =
+      "update AlarmDb set state = :state, stateUpdatedAt = :now "
+          + "where id in (:ids) and state <> :state";
+
+  private static final String UPDATE_ALARMS_HQL = "update AlarmDb set %s where id in (:ids)";
+
+  /**
+   * Maps a row of {@link #ALARMS_BY_IDS_SQL}.
+   */
+  private static final ResultTransformer ALARM_METRIC_ROW_TRANSFORMER = new BasicTransformerAdapter() {
+    @Override
+    public Object transformTuple(Object[] tuple, String[] aliases) {
+      return toAlarmMetricRow(new AlarmMetricRow(), tuple);
+    }
+  };
+
+  /**
+   * Maps a row of {@link #ALARM_FOR_UPDATE_SQL}.
+   */
+  private static final ResultTransformer ALARM_UPDATE_ROW_TRANSFORMER = new BasicTransformerAdapter() {
+    @Override
+    public Object transformTuple(Object[] tuple, String[] aliases) {
+      final AlarmUpdateRow row = toAlarmMetricRow(new AlarmUpdateRow(), tuple);
+      row.alarmDefinitionDescription = (String) tuple[14];
+      row.actionsEnabled = (Boolean) tuple[15];
+      row.subAlarmId = (String) tuple[16];
+      row.subAlarmExpression = (String) tuple[17];
+      return row;
+    }
+  };
+
+  private static <T extends AlarmMetricRow> T toAlarmMetricRow(T row, Object[] tuple) {
+    row.alarmId = (String) tuple[0];
+    row.alarmDefinitionId = (String) tuple[1];
+    row.alarmDefinitionName = (String) tuple[2];
+    row.severity = Conversions.variantToEnum(tuple[3], AlarmSeverity.class).name();
+    row.state = Conversions.variantToEnum(tuple[4], AlarmState.class);
+    row.lifecycleState = (String) tuple[5];
+    row.link = (String) tuple[6];
+    row.stateUpdatedTimestamp = Conversions.variantToDateTime(tuple[7]);
+    row.updatedTimestamp = Conversions.variantToDateTime(tuple[8]);
+    row.createdTimestamp = Conversions.variantToDateTime(tuple[9]);
+    row.metricId = convertBinaryId(tuple[10]);
+    row.metricName = (String) tuple[11];
+    row.dimensionName = (String) tuple[12];
+    row.dimensionValue = (String) tuple[13];
+    return row;
+  }
+
+  /**
+   * Maps a row of {@link #COUNT_ALARMS_SQL}.
+   */
+  private static final ResultTransformer ALARM_COUNT_TRANSFORMER = new BasicTransformerAdapter() {
+    @Override
+    public Object transformTuple(Object[] tuple, String[] aliases) {
+      return new AlarmCount((String) tuple[0], (String) tuple[1],
+          Conversions.variantToEnum(tuple[2], AlarmSeverity.class).name(),
+          Conversions.variantToEnum(tuple[3], AlarmState.class), (String) tuple[4],
+          ((Number) tuple[5]).longValue());
+    }
+  };
+
+  private final AlarmIndex alarmIndex;
 
   @Inject
-  public AlarmSqlRepoImpl(@Named("orm") SessionFactory sessionFactory) {
+  public AlarmSqlRepoImpl(@Named("orm") SessionFactory sessionFactory, AlarmIndex alarmIndex) {
     super(sessionFactory);
+    this.alarmIndex = alarmIndex;
   }
 
   @Override
   public void deleteById(String tenantId, String id) {
+    this.deleteById(tenantId, id, Collections.<OutboxEvent>emptyList());
+  }
+
+  @Override
+  public void deleteById(String tenantId, String id, List<OutboxEvent> events) {
     logger.trace(ORM_LOG_MARKER, "deleteById(...) entering");
 
     Transaction tx = null;
@@ -131,6 +226,8 @@ public class AlarmSqlRepoImpl
           .setString("id", id)
           .executeUpdate();
 
+      OutboxSqlRepoImpl.append(session, events);
+
       tx.commit();
       tx = null;
     } catch (Exception e) {
@@ -142,6 +239,7 @@ public class AlarmSqlRepoImpl
       }
     }
 
+    this.alarmIndex.deleted(tenantId, id);
   }
 
   @Override
@@ -151,195 +249,251 @@ public class AlarmSqlRepoImpl
                           String offset, int limit, boolean enforceLimit) {
     logger.trace(ORM_LOG_MARKER, "find(...) entering");
 
-    List<Alarm> alarms = this.findInternal(tenantId, alarmDefId, metricName, metricDimensions, state,
-        lifecycleState, link, stateUpdatedStart, offset, (3 * limit / 2), enforceLimit);
+    Session session = null;
 
-    if (limit == 0 || !enforceLimit)
-      return alarms;
+    try {
+      session = sessionFactory.openSession();
 
-    if (alarms.size() > limit) {
-      for (int i = alarms.size() - 1; i > limit; i--) {
-        alarms.remove(i);
-      }
-    } else if (alarms.size() > 0) {
-      while (alarms.size() < limit) {
-        List<Alarm> alarms2;
-        int diff = limit - alarms.size();
-        String offset2 = alarms.get(alarms.size() - 1).getId();
-        alarms2 = this.findInternal(tenantId, alarmDefId, metricName, metricDimensions, state,
-            lifecycleState, link, stateUpdatedStart, offset2, (2 * diff), enforceLimit);
-        if (alarms2.size() == 0)
-          break;
-        for (int i = 0; i < alarms2.size() && i < diff; i++)
-          alarms.add(alarms2.get(i));
+      // Page over alarm ids first so the limit counts alarms, then load only that page.
+      final List<String> alarmIds = this.findAlarmIds(session, tenantId, alarmDefId, metricName,
+          metricDimensions, state, lifecycleState, link, stateUpdatedStart, offset,
+          enforceLimit && limit > 0 ? limit + 1 : 0);
+
+      return this.findAlarms(session, tenantId, alarmIds);
+
+    } finally {
+      if (session != null) {
+        session.close();
       }
     }
-
-    return alarms;
   }
 
-  private List<Alarm> findInternal(String tenantId, String alarmDefId, String metricName,
-                                   Map<String, String> metricDimensions, AlarmState state,
-                                   String lifecycleState, String link, DateTime stateUpdatedStart,
-                                   String offset, int limit, boolean enforceLimit) {
+  @Override
+  public List<String> findIds(String tenantId, String alarmDefId, String metricName,
+                              Map<String, String> metricDimensions, AlarmState state,
+                              String lifecycleState, String link, DateTime stateUpdatedStart,
+                              int limit) {
     Session session = null;
-
-    List<Alarm> alarms = new LinkedList<>();
-
     try {
-      Query query;
       session = sessionFactory.openSession();
+      return this.findAlarmIds(session, tenantId, alarmDefId, metricName, metricDimensions,
+          state, lifecycleState, link, stateUpdatedStart, null, limit);
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
 
-      StringBuilder sbWhere = new StringBuilder();
+  @Override
+  public List<String> findIdsByAlarmDefinition(String tenantId, String alarmDefId, String offset,
+                                               int limit) {
+    Session session = null;
+    try {
+      session = sessionFactory.openSession();
+      return this.findAlarmIds(session, tenantId, alarmDefId, null, null, null, null, null, null,
+          offset, limit);
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
 
-      if (alarmDefId != null) {
-        sbWhere.append("and ad.id = :alarmDefId ");
+  @Override
+  public List<AlarmUpdate> findForUpdate(String tenantId, List<String> alarmIds) {
+    Session session = null;
+    try {
+      session = sessionFactory.openSession();
+      return this.findAlarmsForUpdate(session, tenantId, alarmIds);
+    } finally {
+      if (session != null) {
+        session.close();
       }
-      if (metricName != null) {
-        sbWhere.append(" and a.id in (select distinct a.id from alarm as a "
-                       + "inner join alarm_metric as am on am.alarm_id = a.id "
-                       + "inner join metric_definition_dimensions as mdd "
-                       + "  on mdd.id = am.metric_definition_dimensions_id "
-                       + "inner join (select distinct id from metric_definition "
-                       + "            where name = :metricName) as md "
-                       + "on md.id = mdd.metric_definition_id ");
+    }
+  }
 
-        buildJoinClauseFor(metricDimensions, sbWhere);
+  /**
+   * Returns the ids of the alarms for the given criteria after the {@code offset}, at most
+   * {@code limit} of them if {@code limit} is positive.
+   */
+  @SuppressWarnings("unchecked")
+  private List<String> findAlarmIds(Session session, String tenantId, String alarmDefId,
+                                    String metricName, Map<String, String> metricDimensions,
+                                    AlarmState state, String lifecycleState, String link,
+                                    DateTime stateUpdatedStart, String offset, int limit) {
+    final List<String> indexedAlarmIds = this.alarmIndex.findAlarmIds(tenantId, alarmDefId,
+        metricName, metricDimensions, state, lifecycleState, link, stateUpdatedStart, offset,
+        limit);
+
+    if (indexedAlarmIds != null) {
+      return indexedAlarmIds;
+    }
 
-        sbWhere.append(")");
+    StringBuilder sbWhere = buildWhereClause(alarmDefId, metricName, metricDimensions, state,
+                                             lifecycleState, link, stateUpdatedStart);
 
-      }
-      if (state != null) {
-        sbWhere.append(" and a.state = :state");
-      }
-      if (lifecycleState != null) {
-        sbWhere.append(" and a.lifecycle_state = :lifecycleState");
-      }
-      if (link != null) {
-        sbWhere.append(" and a.link = :link");
-      }
-      if (stateUpdatedStart != null) {
-        sbWhere.append(" and a.state_updated_at >= :stateUpdatedStart");
-      }
-      if (offset != null) {
-        sbWhere.append(" and a.id > :offset");
-      }
+    if (offset != null) {
+      sbWhere.append(" and a.id > :offset");
+    }
 
-      String limitPart = "";
-      if (enforceLimit && limit > 0) {
-        limitPart = " limit :limit";
-      }
+    String limitPart = "";
+    if (limit > 0) {
+      limitPart = " limit :limit";
+    }
 
-      String sql = String.format(ALARM_SQL, sbWhere, limitPart);
+    Query query = createSQLQuery(session, String.format(ALARM_IDS_SQL, sbWhere, limitPart));
 
-      try {
-        query = session.createSQLQuery(sql);
-      } catch (Exception e) {
-        logger.error("Failed to bind query {}, error is {}", sql, e.getMessage());
-        throw new RuntimeException("Failed to bind query", e);
-      }
+    bindFilters(query, tenantId, alarmDefId, metricName, metricDimensions, state,
+                lifecycleState, link, stateUpdatedStart);
 
-      query.setString("tenantId", tenantId);
-      if (alarmDefId != null) {
-        query.setString("alarmDefId", alarmDefId);
-      }
+    if (offset != null) {
+      query.setString("offset", offset);
+    }
 
-      if (offset != null) {
-        query.setString("offset", offset);
-      }
+    if (limit > 0) {
+      query.setInteger("limit", limit);
+    }
 
-      if (metricName != null) {
-        query.setString("metricName", metricName);
-      }
+    return (List<String>) query.list();
+  }
 
-      if (state != null) {
-        query.setString("state", state.name());
-      }
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<AlarmCount> count(String tenantId, String alarmDefId, String metricName,
+                                Map<String, String> metricDimensions, AlarmState state,
+                                String lifecycleState, String link, DateTime stateUpdatedStart) {
+    logger.trace(ORM_LOG_MARKER, "count(...) entering");
 
-      if (link != null) {
-        query.setString("link", link);
-      }
+    Session session = null;
 
-      if (lifecycleState != null) {
-        query.setString("lifecycleState", lifecycleState);
-      }
+    try {
+      session = sessionFactory.openSession();
 
-      if (stateUpdatedStart != null) {
-        query.setDate("stateUpdatedStart", stateUpdatedStart.toDateTime(DateTimeZone.UTC).toDate());
-      }
+      Query query = createSQLQuery(session, String.format(COUNT_ALARMS_SQL,
+          buildWhereClause(alarmDefId, metricName, metricDimensions, state, lifecycleState, link,
+                           stateUpdatedStart)));
 
-      if (enforceLimit && limit > 0) {
-        query.setInteger("limit", limit + 1);
-      }
-      if (metricName != null) {
-        bindDimensionsToQuery(query, metricDimensions);
-      }
+      bindFilters(query, tenantId, alarmDefId, metricName, metricDimensions, state,
+                  lifecycleState, link, stateUpdatedStart);
 
-      List<Object[]> alarmList = (List<Object[]>) query.list();
-      alarms = createAlarms(alarmList);
+      return (List<AlarmCount>) query.setResultTransformer(ALARM_COUNT_TRANSFORMER).list();
 
     } finally {
       if (session != null) {
         session.close();
       }
     }
-    return alarms;
   }
 
-  private List<Alarm> createAlarms(List<Object[]> alarmList) {
-    List<Alarm> alarms = Lists.newLinkedList();
+  private Query createSQLQuery(Session session, String sql) {
+    try {
+      return session.createSQLQuery(sql);
+    } catch (Exception e) {
+      logger.error("Failed to bind query {}, error is {}", sql, e.getMessage());
+      throw new RuntimeException("Failed to bind query", e);
+    }
+  }
+
+  private StringBuilder buildWhereClause(String alarmDefId, String metricName,
+                                         Map<String, String> metricDimensions, AlarmState state,
+                                         String lifecycleState, String link,
+                                         DateTime stateUpdatedStart) {
+    StringBuilder sbWhere = new StringBuilder();
 
-    String previousAlarmId = null;
-    BinaryId previousDimensionSetId = null;
-    List<MetricDefinition> alarmedMetrics = null;
-    Map<String, String> dimensionMap = new HashMap<>();
+    if (alarmDefId != null) {
+      sbWhere.append("and ad.id = :alarmDefId ");
+    }
+    if (metricName != null) {
+      sbWhere.append(" and a.id in (select distinct a.id from alarm as a "
+                     + "inner join alarm_metric as am on am.alarm_id = a.id "
+                     + "inner join metric_definition_dimensions as mdd "
+                     + "  on mdd.id = am.metric_definition_dimensions_id "
+                     + "inner join (select distinct id from metric_definition "
+                     + "            where name = :metricName) as md "
+                     + "on md.id = mdd.metric_definition_id ");
 
-    for (Object[] alarmRow : alarmList) {
-      String alarmDefinitionId = (String) alarmRow[0];
-      AlarmSeverity severity = Conversions.variantToEnum(alarmRow[1], AlarmSeverity.class);
-      AlarmState alarmState = Conversions.variantToEnum(alarmRow[4], AlarmState.class);
-      DateTime updatedTimestamp = Conversions.variantToDateTime(alarmRow[5]);
-      DateTime createdTimestamp = Conversions.variantToDateTime(alarmRow[6]);
-      BinaryId dimensionSetId = this.convertBinaryId(alarmRow[13]);
-      DateTime stateUpdatedTimestamp = Conversions.variantToDateTime(alarmRow[12]);
+      buildJoinClauseFor(metricDimensions, sbWhere);
 
-      String alarm_definition_name = (String) alarmRow[2];
-      String id = (String) alarmRow[3];
+      sbWhere.append(")");
 
-      String lifecycle_state = (String) alarmRow[10];
-      String link = (String) alarmRow[11];
+    } else if (metricDimensions != null) {
+      sbWhere.append(" and a.id in (select distinct a.id from alarm as a "
+                     + "inner join alarm_metric as am on am.alarm_id = a.id "
+                     + "inner join metric_definition_dimensions as mdd "
+                     + "  on mdd.id = am.metric_definition_dimensions_id ");
 
-      String metric_name = (String) alarmRow[7];
-      String dimension_name = (String) alarmRow[8];
-      String dimension_value = (String) alarmRow[9];
+      buildJoinClauseFor(metricDimensions, sbWhere);
 
-      if (!id.equals(previousAlarmId)) {
-        alarmedMetrics = new ArrayList<>();
-        dimensionMap = Maps.newHashMap();
-        alarmedMetrics.add(new MetricDefinition(metric_name, dimensionMap));
+      sbWhere.append(")");
+    }
+    if (state != null) {
+      sbWhere.append(" and a.state = :state");
+    }
+    if (lifecycleState != null) {
+      sbWhere.append(" and a.lifecycle_state = :lifecycleState");
+    }
+    if (link != null) {
+      sbWhere.append(" and a.link = :link");
+    }
+    if (stateUpdatedStart != null) {
+      sbWhere.append(" and a.state_updated_at >= :stateUpdatedStart");
+    }
 
-        alarms.add(new Alarm(id, alarmDefinitionId, alarm_definition_name, severity.name(),
-            alarmedMetrics, alarmState, lifecycle_state, link,
-            stateUpdatedTimestamp, updatedTimestamp, createdTimestamp
-        ));
+    return sbWhere;
+  }
 
-        previousDimensionSetId = dimensionSetId;
-      }
+  private void bindFilters(Query query, String tenantId, String alarmDefId, String metricName,
+                           Map<String, String> metricDimensions, AlarmState state,
+                           String lifecycleState, String link, DateTime stateUpdatedStart) {
+    query.setString("tenantId", tenantId);
+    if (alarmDefId != null) {
+      query.setString("alarmDefId", alarmDefId);
+    }
 
-      if (!dimensionSetId.equals(previousDimensionSetId)) {
-        dimensionMap = Maps.newHashMap();
-        alarmedMetrics.add(new MetricDefinition(metric_name, dimensionMap));
-      }
+    if (metricName != null) {
+      query.setString("metricName", metricName);
+    }
 
-      dimensionMap.put(dimension_name, dimension_value);
+    if (state != null) {
+      query.setString("state", state.name());
+    }
+
+    if (link != null) {
+      query.setString("link", link);
+    }
 
-      previousDimensionSetId = dimensionSetId;
-      previousAlarmId = id;
+    if (lifecycleState != null) {
+      query.setString("lifecycleState", lifecycleState);
     }
-    return alarms;
+
+    if (stateUpdatedStart != null) {
+      query.setDate("stateUpdatedStart", stateUpdatedStart.toDateTime(DateTimeZone.UTC).toDate());
+    }
+
+    bindDimensionsToQuery(query, metricDimensions);
+  }
+
+  /**
+   * Loads the alarms with the given ids, with all of their metrics, in one query.
+   */
+  @SuppressWarnings("unchecked")
+  private List<Alarm> findAlarms(Session session, String tenantId, List<String> alarmIds) {
+    if (alarmIds.isEmpty()) {
+      return Lists.newArrayList();
+    }
+
+    final List<AlarmMetricRow> rows = (List<AlarmMetricRow>) session
+        .createSQLQuery(ALARMS_BY_IDS_SQL)
+        .setString("tenantId", tenantId)
+        .setParameterList("alarmIds", alarmIds)
+        .setResultTransformer(ALARM_METRIC_ROW_TRANSFORMER)
+        .list();
+
+    return AlarmMetricRow.toAlarms(rows);
   }
 
-  private BinaryId convertBinaryId(final Object o) {
+  private static BinaryId convertBinaryId(final Object o) {
     final BinaryId dimensionSetId;
     if (o instanceof BinaryId) {
       dimensionSetId = (BinaryId) o;
@@ -379,62 +533,168 @@ public class AlarmSqlRepoImpl
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public Alarm findById(String tenantId, String id) {
     logger.trace(ORM_LOG_MARKER, "findById(...) entering");
 
     Session session = null;
+    List<Alarm> alarms;
+    try {
+      session = sessionFactory.openSession();
+      alarms = this.findAlarms(session, tenantId, Collections.singletonList(id));
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
 
-    final String sql = String.format(FIND_ALARM_BY_ID_SQL, " and a.id = :id", "");
-    List<Alarm> alarms = new LinkedList<>();
+    if (alarms.isEmpty()) {
+      throw new EntityNotFoundException("No alarm exists for %s", id);
+    }
+
+    return alarms.get(0);
+  }
+
+  @Override
+  public Alarm update(String tenantId, String id, AlarmState state, String lifecycleState, String link) {
+    return this.update(tenantId, id, false, state, lifecycleState, link).getAlarm();
+  }
+
+  @Override
+  public AlarmUpdate update(String tenantId, String id, boolean patch, AlarmState state,
+                            String lifecycleState, String link) {
+    return this.update(tenantId, id, patch, state, lifecycleState, link, null);
+  }
+
+  @Override
+  public AlarmUpdate update(String tenantId, String id, boolean patch, AlarmState state,
+                            String lifecycleState, String link,
+                            OutboxEventFactory<AlarmUpdate> events) {
+    Session session = null;
+    Transaction tx = null;
     try {
       session = sessionFactory.openSession();
-      Query qAlarmDefinition =
-          session.createQuery(sql).setString("tenantId", tenantId)
-              .setString("id", id);
-      List<Object[]> alarmList = (List<Object[]>) qAlarmDefinition.list();
+      tx = session.beginTransaction();
+
+      final List<AlarmUpdate> found =
+          this.findAlarmsForUpdate(session, tenantId, Collections.singletonList(id));
 
-      if (alarmList.isEmpty()) {
+      if (found.isEmpty()) {
         throw new EntityNotFoundException("No alarm exists for %s", id);
       }
 
-      alarms = this.createAlarms(alarmList);
+      final AlarmUpdate original = found.get(0);
+      final Alarm originalAlarm = original.getAlarm();
+
+      if (patch) {
+        state = state == null ? originalAlarm.getState() : state;
+        lifecycleState = lifecycleState == null ? originalAlarm.getLifecycleState() : lifecycleState;
+        link = link == null ? originalAlarm.getLink() : link;
+      }
+
+      final boolean stateChanged = !originalAlarm.getState().equals(state);
+
+      session
+          .createQuery(String.format(UPDATE_ALARM_HQL,
+              stateChanged ? ", stateUpdatedAt = :now" : ""))
+          .setParameter("state", state)
+          .setString("lifecycleState", lifecycleState)
+          .setString("link", link)
+          .setParameter("now", this.getUTCNow())
+          .setString("id", id)
+          .executeUpdate();
+
+      if (events != null) {
+        OutboxSqlRepoImpl.append(session, events.eventsFor(original));
+      }
 
+      tx.commit();
+      tx = null;
+      this.alarmIndex.stateChanged(tenantId, id, state);
+      return original;
+    } catch (Exception e) {
+      this.rollbackIfNotNull(tx);
+      throw e;
     } finally {
       if (session != null) {
         session.close();
       }
     }
-    return alarms.get(0);
   }
 
   @Override
-  public Alarm update(String tenantId, String id, AlarmState state, String lifecycleState, String link) {
+  public List<AlarmUpdate> update(String tenantId, List<String> ids, AlarmState state,
+                                  String lifecycleState, String link) {
+    return this.update(tenantId, ids, state, lifecycleState, link, null);
+  }
+
+  @Override
+  public List<AlarmUpdate> update(String tenantId, List<String> ids, AlarmState state,
+                                  String lifecycleState, String link,
+                                  OutboxEventFactory<AlarmUpdate> events) {
     Session session = null;
-    Alarm originalAlarm = null;
     Transaction tx = null;
     try {
       session = sessionFactory.openSession();
       tx = session.beginTransaction();
-      originalAlarm = findById(tenantId, id);
 
-      AlarmDb result = (AlarmDb) session
-          .getNamedQuery(AlarmDb.Queries.FIND_BY_ID)
-          .setString("id", id)
-          .uniqueResult();
+      final List<AlarmUpdate> originals = this.findAlarmsForUpdate(session, tenantId, ids);
+      final List<String> foundIds = Lists.newArrayListWithCapacity(originals.size());
 
-      if (!originalAlarm.getState().equals(state)) {
-        result.setStateUpdatedAt(this.getUTCNow());
-        result.setState(state);
+      for (AlarmUpdate original : originals) {
+        foundIds.add(original.getAlarm().getId());
       }
 
-      result.setUpdatedAt(this.getUTCNow());
-      result.setLink(link);
-      result.setLifecycleState(lifecycleState);
-      session.update(result);
+      if (!foundIds.isEmpty()) {
+        final DateTime now = this.getUTCNow();
+
+        if (state != null) {
+          session
+              .createQuery(UPDATE_ALARMS_STATE_HQL)
+              .setParameter("state", state)
+              .setParameter("now", now)
+              .setParameterList("ids", foundIds)
+              .executeUpdate();
+        }
+
+        final StringBuilder setPart = new StringBuilder("updatedAt = :now");
+        if (lifecycleState != null) {
+          setPart.append(", lifecycleState = :lifecycleState");
+        }
+        if (link != null) {
+          setPart.append(", link = :link");
+        }
+
+        final Query query = session
+            .createQuery(String.format(UPDATE_ALARMS_HQL, setPart))
+            .setParameter("now", now)
+            .setParameterList("ids", foundIds);
+        if (lifecycleState != null) {
+          query.setString("lifecycleState", lifecycleState);
+        }
+        if (link != null) {
+          query.setString("link", link);
+        }
+        query.executeUpdate();
+      }
+
+      if (events != null) {
+        final List<OutboxEvent> outboxEvents = Lists.newArrayList();
+        for (AlarmUpdate original : originals) {
+          outboxEvents.addAll(events.eventsFor(original));
+        }
+        OutboxSqlRepoImpl.append(session, outboxEvents);
+      }
 
       tx.commit();
       tx = null;
+
+      if (state != null) {
+        for (String foundId : foundIds) {
+          this.alarmIndex.stateChanged(tenantId, foundId, state);
+        }
+      }
+
+      return originals;
     } catch (Exception e) {
       this.rollbackIfNotNull(tx);
       throw e;
@@ -443,7 +703,25 @@ public class AlarmSqlRepoImpl
         session.close();
       }
     }
-    return originalAlarm;
+  }
+
+  /**
+   * Loads the alarms with the given ids, with their metrics, alarm definitions and sub alarms,
+   * in one query.
+   */
+  @SuppressWarnings("unchecked")
+  private List<AlarmUpdate> findAlarmsForUpdate(Session session, String tenantId,
+                                                List<String> alarmIds) {
+    if (alarmIds.isEmpty()) {
+      return Lists.newArrayList();
+    }
+
+    return AlarmUpdateRow.toAlarmUpdates((List<AlarmUpdateRow>) session
+        .createSQLQuery(ALARM_FOR_UPDATE_SQL)
+        .setString("tenantId", tenantId)
+        .setParameterList("alarmIds", alarmIds)
+        .setResultTransformer(ALARM_UPDATE_ROW_TRANSFORMER)
+        .list());
   }
 
   @Override
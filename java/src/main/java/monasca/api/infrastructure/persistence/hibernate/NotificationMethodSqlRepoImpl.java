@@ -13,7 +13,11 @@
  */
 package monasca.api.infrastructure.persistence.hibernate;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -134,6 +138,40 @@ public class NotificationMethodSqlRepoImpl
     }
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<String> existAll(String tenantId, Collection<String> notificationMethodIds) {
+    final List<String> missing = new ArrayList<>();
+
+    if (notificationMethodIds.isEmpty()) {
+      return missing;
+    }
+
+    Session session = null;
+    try {
+      session = sessionFactory.openSession();
+
+      final Set<String> found = new HashSet<>((List<String>) session
+          .createQuery("select nm.id from NotificationMethodDb as nm "
+              + "where nm.tenantId = :tenantId and nm.id in (:ids)")
+          .setString("tenantId", tenantId)
+          .setParameterList("ids", notificationMethodIds)
+          .list());
+
+      for (String notificationMethodId : notificationMethodIds) {
+        if (!found.contains(notificationMethodId)) {
+          missing.add(notificationMethodId);
+        }
+      }
+
+      return missing;
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+
   @Override
   public NotificationMethod findById(String tenantId, String notificationMethodId) {
     Session session = null;
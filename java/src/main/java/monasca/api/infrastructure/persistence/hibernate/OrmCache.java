@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.hibernate;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.Iterator;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableSet;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+
+import monasca.api.infrastructure.messaging.EventListener;
+import monasca.common.hibernate.db.AlarmDefinitionDb;
+import monasca.common.hibernate.db.SubAlarmDefinitionDb;
+
+/**
+ * Second-level cache of alarm definitions and sub alarm definitions, each in its own cache region.
+ * Only entities looked up by id are served from it: alarm definitions read by id and sub alarm
+ * definitions resolved through their associations. Lists, existence checks and the lookups of sub
+ * alarm definitions by alarm definition are queries and always read the database.
+ *
+ * <p>Writes through Hibernate keep the cache consistent on this node. Alarm definition events
+ * from other API nodes evict the definition and its sub alarm definitions by id, so only entities
+ * that such events cover are cached. Notification methods, alarm actions and sub alarm definition
+ * dimensions are not: there are no events for notification methods, and the other two are never
+ * looked up by id. Query results are not cached either, they cannot be evicted per entity.
+ */
+public class OrmCache implements EventListener {
+
+  static final String ALARM_DEFINITION_REGION = "alarm_definition";
+  static final String SUB_ALARM_DEFINITION_REGION = "sub_alarm_definition";
+
+  private static final Set<String> ENTITY_REGIONS =
+      ImmutableSet.of(ALARM_DEFINITION_REGION, SUB_ALARM_DEFINITION_REGION);
+
+  private static final Set<String> ALARM_DEFINITION_EVENTS = ImmutableSet.of(
+      "alarm-definition-created", "alarm-definition-updated", "alarm-definition-deleted");
+
+  /** Fields of the alarm definition events holding sub expressions by sub alarm definition id. */
+  private static final Set<String> SUB_EXPRESSION_FIELDS = ImmutableSet.of(
+      "alarmSubExpressions", "oldAlarmSubExpressions", "changedSubExpressions",
+      "unchangedSubExpressions", "newAlarmSubExpressions", "subAlarmMetricDefinitions");
+
+  private static final Set<String> REGION_STATISTICS =
+      ImmutableSet.of("hits", "misses", "puts", "size");
+
+  private static final String CONCURRENCY_STRATEGY = "read-write";
+
+  private final SessionFactory sessionFactory;
+
+  @Inject
+  public OrmCache(@Named("orm") SessionFactory sessionFactory) {
+    this.sessionFactory = sessionFactory;
+  }
+
+  /**
+   * Enables the second-level cache for the cached entities of the
+   * {@code configuration}, with the region limits of {@code cacheConfiguration}. Must be called
+   * after the properties of the {@code configuration} are set.
+   */
+  public static void configure(Configuration configuration,
+                               OrmCacheConfiguration cacheConfiguration) {
+
+    // The region factory uses the singleton cache manager, create it with the region limits.
+    final net.sf.ehcache.config.Configuration ehcache = new net.sf.ehcache.config.Configuration()
+        .name("monasca-api-orm")
+        // Only the update timestamps region falls back to the default, it must never expire.
+        .defaultCache(new CacheConfiguration("default", 10000).eternal(true));
+    addRegion(ehcache, ALARM_DEFINITION_REGION, cacheConfiguration.alarmDefinitions);
+    addRegion(ehcache, SUB_ALARM_DEFINITION_REGION, cacheConfiguration.subAlarmDefinitions);
+    CacheManager.create(ehcache);
+
+    configuration.setProperty("hibernate.cache.use_second_level_cache", "true");
+    configuration.setProperty("hibernate.cache.region.factory_class",
+        "org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory");
+    configuration.setProperty("hibernate.generate_statistics", "true");
+
+    configuration.setCacheConcurrencyStrategy(AlarmDefinitionDb.class.getName(),
+        CONCURRENCY_STRATEGY, ALARM_DEFINITION_REGION, true);
+    configuration.setCacheConcurrencyStrategy(SubAlarmDefinitionDb.class.getName(),
+        CONCURRENCY_STRATEGY, SUB_ALARM_DEFINITION_REGION, true);
+  }
+
+  private static void addRegion(net.sf.ehcache.config.Configuration ehcache, String region,
+                                OrmCacheConfiguration.Region limits) {
+    ehcache.addCache(new CacheConfiguration(region, limits.maxEntries)
+        .timeToLiveSeconds(limits.ttlSeconds));
+  }
+
+  /**
+   * Publishes the hits, misses, puts and size of every cache region to the {@code registry}.
+   */
+  public static void registerMetrics(SessionFactory sessionFactory, MetricRegistry registry) {
+    final Statistics statistics = sessionFactory.getStatistics();
+
+    for (String region : ENTITY_REGIONS) {
+      for (String statistic : REGION_STATISTICS) {
+        registry.register(name(OrmCache.class, region, statistic),
+            new RegionGauge(statistics, region, statistic));
+      }
+    }
+  }
+
+  @Override
+  public void onEvent(String type, JsonNode event) {
+
+    if (!ALARM_DEFINITION_EVENTS.contains(type)) {
+      return;
+    }
+
+    final org.hibernate.Cache cache = this.sessionFactory.getCache();
+    final JsonNode alarmDefId = event.get("alarmDefinitionId");
+
+    if (alarmDefId == null || !alarmDefId.isTextual()) {
+      cache.evictEntityRegion(AlarmDefinitionDb.class);
+      cache.evictEntityRegion(SubAlarmDefinitionDb.class);
+      return;
+    }
+
+    cache.evictEntity(AlarmDefinitionDb.class, alarmDefId.asText());
+
+    for (String field : SUB_EXPRESSION_FIELDS) {
+      final JsonNode subExpressions = event.get(field);
+      if (subExpressions != null) {
+        final Iterator<String> subAlarmDefIds = subExpressions.fieldNames();
+        while (subAlarmDefIds.hasNext()) {
+          cache.evictEntity(SubAlarmDefinitionDb.class, subAlarmDefIds.next());
+        }
+      }
+    }
+  }
+
+  private static final class RegionGauge implements Gauge<Long> {
+    private final Statistics statistics;
+    private final String region;
+    private final String statistic;
+
+    RegionGauge(Statistics statistics, String region, String statistic) {
+      this.statistics = statistics;
+      this.region = region;
+      this.statistic = statistic;
+    }
+
+    @Override
+    public Long getValue() {
+      final SecondLevelCacheStatistics regionStatistics =
+          this.statistics.getSecondLevelCacheStatistics(this.region);
+      // Regions are only known once the session factory created them
+      if (regionStatistics == null) {
+        return 0L;
+      }
+      switch (this.statistic) {
+        case "hits":
+          return regionStatistics.getHitCount();
+        case "misses":
+          return regionStatistics.getMissCount();
+        case "puts":
+          return regionStatistics.getPutCount();
+        default:
+          return regionStatistics.getElementCountInMemory();
+      }
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.hibernate;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Hibernate second-level cache configuration.
+ */
+public class OrmCacheConfiguration {
+  @JsonProperty
+  public Boolean enabled = Boolean.FALSE;
+  /** Alarm definitions. */
+  @JsonProperty
+  @Valid
+  @NotNull
+  public Region alarmDefinitions = new Region(10000, 300);
+  /** Sub alarm definitions. */
+  @JsonProperty
+  @Valid
+  @NotNull
+  public Region subAlarmDefinitions = new Region(50000, 300);
+
+  public static class Region {
+    /** Maximum number of entries held by the cache region. */
+    @JsonProperty
+    @Min(1)
+    public int maxEntries;
+    /**
+     * Seconds after which entries are reloaded, bounds staleness of changes made by other API
+     * nodes that this node did not receive an event for.
+     */
+    @JsonProperty
+    @Min(1)
+    public long ttlSeconds;
+
+    public Region() {}
+
+    public Region(int maxEntries, long ttlSeconds) {
+      this.maxEntries = maxEntries;
+      this.ttlSeconds = ttlSeconds;
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import com.google.common.collect.Lists;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.Work;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import monasca.api.domain.model.outbox.OutboxEvent;
+import monasca.api.domain.model.outbox.OutboxRepo;
+
+/**
+ * Outbox repository implementation. The other repositories write to the outbox with
+ * {@link #append(Session, List)} inside their own transactions.
+ */
+public class OutboxSqlRepoImpl
+    extends BaseSqlRepo
+    implements OutboxRepo {
+
+  private static final String INSERT_EVENT_SQL =
+      "insert into event_outbox (topic, message_key, payload, created_at) "
+          + "values (?, ?, ?, current_timestamp)";
+
+  private static final String FIND_OLDEST_EVENTS_SQL =
+      "select id, topic, message_key, payload from event_outbox order by id limit :limit "
+          + "for update";
+
+  private static final String COUNT_CLAIMED_EVENTS_SQL =
+      "select count(*) from event_outbox where id between :first_id and :last_id "
+          + "and claimed_at > :expired_at";
+
+  private static final String CLAIM_EVENTS_SQL =
+      "update event_outbox set claimed_by = :claim, claimed_at = :claimed_at where id in (:ids)";
+
+  private static final String RELEASE_EVENTS_SQL =
+      "update event_outbox set claimed_by = null, claimed_at = null where claimed_by = :claim";
+
+  private static final String DELETE_EVENTS_SQL =
+      "delete from event_outbox where claimed_by = :claim";
+
+  @Inject
+  public OutboxSqlRepoImpl(@Named("orm") SessionFactory sessionFactory) {
+    super(sessionFactory);
+  }
+
+  /**
+   * Writes the {@code events} to the outbox with the {@code session}, so they are committed or
+   * rolled back with its current transaction.
+   */
+  static void append(final Session session, final List<OutboxEvent> events) {
+    if (events == null || events.isEmpty()) {
+      return;
+    }
+
+    session.doWork(new Work() {
+      @Override
+      public void execute(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_EVENT_SQL)) {
+          for (OutboxEvent event : events) {
+            statement.setString(1, event.getTopic());
+            statement.setString(2, event.getKey());
+            statement.setString(3, event.getPayload());
+            statement.addBatch();
+          }
+          statement.executeBatch();
+        }
+      }
+    });
+  }
+
+  @Override
+  public int relay(int limit, int leaseSeconds, Publisher publisher) {
+    final String claim = UUID.randomUUID().toString();
+    final List<OutboxEvent> events = claim(limit, leaseSeconds, claim);
+
+    if (events.isEmpty()) {
+      return 0;
+    }
+
+    try {
+      publisher.publish(events);
+    } catch (RuntimeException e) {
+      execute(RELEASE_EVENTS_SQL, claim);
+      throw e;
+    }
+
+    // Rows whose lease expired and were claimed again are left to the new claim.
+    execute(DELETE_EVENTS_SQL, claim);
+
+    return events.size();
+  }
+
+  /**
+   * Claims the oldest events for {@code leaseSeconds} in a short transaction, unless some of them
+   * are still claimed by another relay, keeping the events in order across relays.
+   */
+  @SuppressWarnings("unchecked")
+  private List<OutboxEvent> claim(int limit, int leaseSeconds, String claim) {
+    final DateTime now = DateTime.now(DateTimeZone.UTC);
+    Session session = null;
+    Transaction tx = null;
+    try {
+      session = sessionFactory.openSession();
+      tx = session.beginTransaction();
+
+      final List<Object[]> rows = session
+          .createSQLQuery(FIND_OLDEST_EVENTS_SQL)
+          .setInteger("limit", limit)
+          .list();
+
+      final List<OutboxEvent> events = Lists.newArrayListWithCapacity(rows.size());
+      final List<Long> ids = Lists.newArrayListWithCapacity(rows.size());
+      for (Object[] row : rows) {
+        events.add(new OutboxEvent(((Number) row[0]).longValue(), (String) row[1],
+            (String) row[2], (String) row[3]));
+        ids.add(((Number) row[0]).longValue());
+      }
+
+      if (events.isEmpty() || ((Number) session
+          .createSQLQuery(COUNT_CLAIMED_EVENTS_SQL)
+          .setLong("first_id", ids.get(0))
+          .setLong("last_id", ids.get(ids.size() - 1))
+          .setTimestamp("expired_at", now.minusSeconds(leaseSeconds).toDate())
+          .uniqueResult()).longValue() > 0) {
+        tx.commit();
+        tx = null;
+        return Collections.emptyList();
+      }
+
+      session
+          .createSQLQuery(CLAIM_EVENTS_SQL)
+          .setString("claim", claim)
+          .setTimestamp("claimed_at", now.toDate())
+          .setParameterList("ids", ids)
+          .executeUpdate();
+
+      tx.commit();
+      tx = null;
+      return events;
+    } catch (Exception e) {
+      this.rollbackIfNotNull(tx);
+      throw e;
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+
+  private void execute(String sql, String claim) {
+    Session session = null;
+    Transaction tx = null;
+    try {
+      session = sessionFactory.openSession();
+      tx = session.beginTransaction();
+
+      session.createSQLQuery(sql).setString("claim", claim).executeUpdate();
+
+      tx.commit();
+      tx = null;
+    } catch (Exception e) {
+      this.rollbackIfNotNull(tx);
+      throw e;
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+}
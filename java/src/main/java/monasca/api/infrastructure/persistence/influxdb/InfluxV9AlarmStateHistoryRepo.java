@@ -17,8 +17,9 @@ import com.google.inject.Inject;
 
 import monasca.api.domain.model.alarmstatehistory.AlarmStateHistory;
 import monasca.api.domain.model.alarmstatehistory.AlarmStateHistoryRepo;
+import monasca.api.infrastructure.persistence.AlarmIdIndex;
+import monasca.api.infrastructure.persistence.ChunkedAlarmStateHistoryQuery;
 import monasca.api.infrastructure.persistence.PersistUtils;
-import monasca.api.infrastructure.persistence.Utils;
 import monasca.common.model.alarm.AlarmState;
 import monasca.common.model.alarm.AlarmTransitionSubAlarm;
 import monasca.common.model.metric.MetricDefinition;
@@ -47,10 +48,11 @@ public class InfluxV9AlarmStateHistoryRepo implements AlarmStateHistoryRepo {
   private static final Logger logger = LoggerFactory
       .getLogger(InfluxV9AlarmStateHistoryRepo.class);
 
-  private final Utils utils;
+  private final AlarmIdIndex alarmIdIndex;
   private final InfluxV9RepoReader influxV9RepoReader;
   private final InfluxV9Utils influxV9Utils;
   private final PersistUtils persistUtils;
+  private final ChunkedAlarmStateHistoryQuery chunkedQuery;
   private static final ObjectMapper objectMapper = new ObjectMapper();
 
   static {
@@ -65,15 +67,17 @@ public class InfluxV9AlarmStateHistoryRepo implements AlarmStateHistoryRepo {
       new TypeReference<List<AlarmTransitionSubAlarm>>() {};
 
   @Inject
-  public InfluxV9AlarmStateHistoryRepo(Utils utils,
+  public InfluxV9AlarmStateHistoryRepo(AlarmIdIndex alarmIdIndex,
                                        InfluxV9RepoReader influxV9RepoReader,
                                        InfluxV9Utils influxV9Utils,
-                                       PersistUtils persistUtils) {
+                                       PersistUtils persistUtils,
+                                       ChunkedAlarmStateHistoryQuery chunkedQuery) {
 
-    this.utils = utils;
+    this.alarmIdIndex = alarmIdIndex;
     this.influxV9RepoReader = influxV9RepoReader;
     this.influxV9Utils = influxV9Utils;
     this.persistUtils = persistUtils;
+    this.chunkedQuery = chunkedQuery;
 
   }
 
@@ -105,16 +109,36 @@ public class InfluxV9AlarmStateHistoryRepo implements AlarmStateHistoryRepo {
   }
 
   @Override
-  public List<AlarmStateHistory> find(String tenantId, Map<String, String> dimensions,
-                                      DateTime startTime, @Nullable DateTime endTime,
-                                      @Nullable String offset, int limit) throws Exception {
+  public List<AlarmStateHistory> find(final String tenantId, Map<String, String> dimensions,
+                                      final DateTime startTime, @Nullable final DateTime endTime,
+                                      @Nullable final String offset, final int limit)
+      throws Exception {
 
-    List<String> alarmIdList = this.utils.findAlarmIds(tenantId, dimensions);
+    List<String> alarmIdList = this.alarmIdIndex.findAlarmIds(tenantId, dimensions);
 
     if (alarmIdList == null || alarmIdList.isEmpty()) {
       return new ArrayList<>();
     }
 
+    List<AlarmStateHistory> alarmStateHistoryList =
+        this.chunkedQuery.find(alarmIdList, limit + 1, new ChunkedAlarmStateHistoryQuery.Chunk() {
+          @Override
+          public List<AlarmStateHistory> find(List<String> alarmIdChunk) throws Exception {
+            return findByAlarmIds(tenantId, alarmIdChunk, startTime, endTime, offset, limit);
+          }
+        });
+
+    logger.debug("Found {} alarm state transitions matching query", alarmStateHistoryList.size());
+
+    return alarmStateHistoryList;
+
+  }
+
+  private List<AlarmStateHistory> findByAlarmIds(String tenantId, List<String> alarmIdList,
+                                                 DateTime startTime, @Nullable DateTime endTime,
+                                                 @Nullable String offset, int limit)
+      throws Exception {
+
     String q = String.format("select alarm_id, metrics, old_state, new_state, "
                              + "reason, reason_data, sub_alarms "
                              + "from alarm_state_history "
@@ -131,11 +155,7 @@ public class InfluxV9AlarmStateHistoryRepo implements AlarmStateHistoryRepo {
 
     Series series = this.objectMapper.readValue(r, Series.class);
 
-    List<AlarmStateHistory> alarmStateHistoryList = alarmStateHistoryList(series);
-
-    logger.debug("Found {} alarm state transitions matching query", alarmStateHistoryList.size());
-
-    return alarmStateHistoryList;
+    return alarmStateHistoryList(series);
 
   }
 
@@ -19,10 +19,13 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -32,6 +35,9 @@ import javax.annotation.Nullable;
 
 import monasca.api.ApiConfig;
 import monasca.api.domain.exception.MultipleMetricsException;
+import monasca.api.domain.model.common.SeriesOffset;
+import monasca.api.domain.model.measurement.MeasurementDownsampler;
+import monasca.api.domain.model.measurement.MeasurementHandler;
 import monasca.api.domain.model.measurement.MeasurementRepo;
 import monasca.api.domain.model.measurement.Measurements;
 
@@ -65,9 +71,14 @@ public class InfluxV9MeasurementRepo implements MeasurementRepo {
   @Override
   public List<Measurements> find(String tenantId, String name, Map<String, String> dimensions,
                                  DateTime startTime, @Nullable DateTime endTime,
-                                 @Nullable String offset, int limit, Boolean mergeMetricsFlag)
+                                 @Nullable String offset, int limit, Boolean mergeMetricsFlag,
+                                 @Nullable List<String> groupBy)
       throws Exception {
 
+    if (groupBy != null) {
+      return findGrouped(tenantId, name, dimensions, startTime, endTime, offset, limit, groupBy);
+    }
+
     String q = buildQuery(tenantId, name, dimensions, startTime, endTime,
                           offset, limit, mergeMetricsFlag);
 
@@ -83,6 +94,191 @@ public class InfluxV9MeasurementRepo implements MeasurementRepo {
     return measurementsList;
   }
 
+  /**
+   * Finds the measurements of the groups from the offset group on, one group per query. The
+   * groups are numbered in the order of their tag values over the whole time range, so the index
+   * of the offset selects its group directly and only the groups of the page are read.
+   */
+  private List<Measurements> findGrouped(String tenantId, String name,
+                                         Map<String, String> dimensions, DateTime startTime,
+                                         @Nullable DateTime endTime, @Nullable String offset,
+                                         int limit, List<String> groupBy) throws Exception {
+
+    List<Measurements> measurementsList = new ArrayList<>();
+
+    int index = 0;
+    // One measurement past the limit tells that there is a next page.
+    int remaining = limit + 1;
+
+    if (offset != null && !offset.isEmpty()) {
+
+      SeriesOffset seriesOffset = SeriesOffset.parse(offset);
+      index = seriesOffset.getIndex();
+
+      // One measurement of the offset group resolves its dimensions, the rest of the group is
+      // fetched by them.
+      Measurements offsetGroup =
+          findGroup(tenantId, name, dimensions, startTime, endTime, 1, groupBy, index);
+
+      if (offsetGroup == null) {
+        return measurementsList;
+      }
+
+      String q = buildGroupedQuery(tenantId, name,
+                                   this.influxV9Utils.groupDimensions(dimensions,
+                                                                      offsetGroup.getDimensions()),
+                                   seriesOffset.getTimestamp(), endTime, remaining - 1,
+                                   groupBy, "");
+
+      Series series = this.objectMapper.readValue(this.influxV9RepoReader.read(q), Series.class);
+
+      for (Measurements measurements : measurementsList(series)) {
+        measurements.setId(String.valueOf(index));
+        remaining -= measurements.size();
+        measurementsList.add(measurements);
+      }
+      index++;
+
+    }
+
+    while (remaining > 0) {
+
+      Measurements measurements =
+          findGroup(tenantId, name, dimensions, startTime, endTime, remaining, groupBy, index);
+
+      if (measurements == null) {
+        break;
+      }
+
+      measurements.setId(String.valueOf(index));
+      remaining -= measurements.size();
+      measurementsList.add(measurements);
+      index++;
+
+    }
+
+    logger.debug("Found {} groups matching query", measurementsList.size());
+
+    return measurementsList;
+  }
+
+  /**
+   * Returns at most {@code limit} measurements of the {@code index}-th group, or null if there
+   * are no more groups.
+   */
+  @Nullable
+  private Measurements findGroup(String tenantId, String name, Map<String, String> dimensions,
+                                 DateTime startTime, @Nullable DateTime endTime, int limit,
+                                 List<String> groupBy, int index) throws Exception {
+
+    String q = buildGroupedQuery(tenantId, name, dimensions, startTime, endTime, limit - 1,
+                                 groupBy, this.influxV9Utils.seriesPart(index, 1));
+
+    Series series = this.objectMapper.readValue(this.influxV9RepoReader.read(q), Series.class);
+
+    List<Measurements> measurementsList = measurementsList(series);
+
+    return measurementsList.isEmpty() ? null : measurementsList.get(0);
+  }
+
+  private String buildGroupedQuery(String tenantId, String name, Map<String, String> dimensions,
+                                   DateTime startTime, @Nullable DateTime endTime, int limit,
+                                   List<String> groupBy, String seriesPart) throws Exception {
+
+    // The time column is automatically included in the results before all other columns.
+    String q = String.format("select value, value_meta %1$s "
+                             + "where %2$s %3$s %4$s %5$s %6$s %7$s %8$s %9$s",
+                             this.influxV9Utils.namePart(name, true),
+                             this.influxV9Utils.privateTenantIdPart(tenantId),
+                             this.influxV9Utils.privateRegionPart(this.region),
+                             this.influxV9Utils.startTimePart(startTime),
+                             this.influxV9Utils.dimPart(dimensions),
+                             this.influxV9Utils.endTimePart(endTime),
+                             this.influxV9Utils.groupByPart(groupBy),
+                             this.influxV9Utils.limitPart(limit),
+                             seriesPart);
+
+    logger.debug("Grouped measurements query: {}", q);
+
+    return q;
+  }
+
+  @Override
+  public List<Measurements> findDownsampled(String tenantId, String name,
+                                            Map<String, String> dimensions, DateTime startTime,
+                                            @Nullable DateTime endTime, Boolean mergeMetricsFlag,
+                                            @Nullable List<String> groupBy, int maxPoints)
+      throws Exception {
+
+    if (!Boolean.TRUE.equals(mergeMetricsFlag) && groupBy == null
+        && !this.influxV9MetricDefinitionRepo.isAtMostOneSeries(tenantId, name, dimensions)) {
+
+      throw new MultipleMetricsException(name, dimensions);
+
+    }
+
+    final DateTime end = endTime != null ? endTime : DateTime.now(DateTimeZone.UTC);
+
+    MeasurementDownsampler downsampler =
+        new MeasurementDownsampler(startTime, end, maxPoints, mergeMetricsFlag, groupBy);
+
+    export(tenantId, name, dimensions, startTime, end, downsampler);
+
+    return downsampler.result();
+  }
+
+  @Override
+  public void export(String tenantId, String name, Map<String, String> dimensions,
+                     DateTime startTime, @Nullable DateTime endTime, MeasurementHandler handler)
+      throws Exception {
+
+    final DateTime end = endTime != null ? endTime : DateTime.now(DateTimeZone.UTC);
+    final long sliceMillis = this.config.measurementExport.sliceSeconds * 1000L;
+
+    // Each slice is one query whose response is parsed and handled before the next is sent.
+    for (DateTime sliceStart = startTime; sliceStart.isBefore(end);
+         sliceStart = sliceStart.plus(sliceMillis)) {
+
+      final DateTime sliceEnd = sliceStart.plus(sliceMillis).isBefore(end)
+                                ? sliceStart.plus(sliceMillis) : end;
+
+      // The time column is automatically included in the results before all other columns.
+      String q = String.format("select value, value_meta %1$s "
+                               + "where %2$s %3$s %4$s %5$s %6$s",
+                               this.influxV9Utils.namePart(name, true),
+                               this.influxV9Utils.privateTenantIdPart(tenantId),
+                               this.influxV9Utils.privateRegionPart(this.region),
+                               slicePart(sliceStart, sliceEnd),
+                               this.influxV9Utils.dimPart(dimensions),
+                               this.influxV9Utils.groupByPart());
+
+      logger.debug("Measurements export query: {}", q);
+
+      Series series = this.objectMapper.readValue(this.influxV9RepoReader.read(q), Series.class);
+
+      if (series.isEmpty()) {
+        continue;
+      }
+
+      for (Serie serie : series.getSeries()) {
+
+        final Map<String, String> tags = influxV9Utils.filterPrivateTags(serie.getTags());
+
+        for (String[] values : serie.getValues()) {
+          handler.handle(serie.getName(), tags, influxV9Utils.timestampMillis(values[0]),
+                         Double.parseDouble(values[1]),
+                         values[2] == null || values[2].isEmpty() ? null : values[2]);
+        }
+      }
+    }
+  }
+
+  private String slicePart(DateTime sliceStart, DateTime sliceEnd) {
+
+    return " and time >= '" + ISODateTimeFormat.dateTime().print(sliceStart) + "'"
+           + " and time < '" + ISODateTimeFormat.dateTime().print(sliceEnd) + "'";
+  }
+
   private String buildQuery(String tenantId, String name, Map<String, String> dimensions,
                             DateTime startTime, DateTime endTime, String offset, int limit,
                             Boolean mergeMetricsFlag) throws Exception {
@@ -140,9 +336,8 @@ public class InfluxV9MeasurementRepo implements MeasurementRepo {
                              influxV9Utils.filterPrivateTags(serie.getTags()));
 
         for (String[] values : serie.getValues()) {
-          final String timestamp = influxV9Utils.threeDigitMillisTimestamp(values[0]);
-          measurements.addMeasurement(
-              new Object[]{timestamp, Double.parseDouble(values[1]), getValueMeta(values)});
+          measurements.addMeasurement(influxV9Utils.timestampMillis(values[0]),
+                                      Double.parseDouble(values[1]), getValueMeta(values));
         }
 
         measurementsList.add(measurements);
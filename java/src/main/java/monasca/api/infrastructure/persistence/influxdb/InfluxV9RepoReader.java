@@ -27,17 +27,23 @@ import org.apache.http.HttpResponse;
 import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Arrays;
 
 import monasca.api.ApiConfig;
 
@@ -45,6 +51,9 @@ public class InfluxV9RepoReader {
 
   private static final Logger logger = LoggerFactory.getLogger(InfluxV9RepoReader.class);
 
+  // Queries whose encoded form is longer than this are sent as POST rather than GET.
+  private static final int MAX_GET_QUERY_LENGTH = 2048;
+
   private final String influxName;
   private final String influxUrl;
   private final String influxCreds;
@@ -123,10 +132,8 @@ public class InfluxV9RepoReader {
 
   protected String read(final String query) throws Exception {
 
-    HttpGet request = new HttpGet(this.influxUrl + "?q=" + URLEncoder.encode(query, "UTF-8")
-                                  + "&db=" + URLEncoder.encode(this.influxName, "UTF-8"));
+    HttpRequestBase request = buildRequest(query);
 
-    request.addHeader("content-type", "application/json");
     request.addHeader("Authorization", this.baseAuthHeader);
 
     try {
@@ -165,4 +172,32 @@ public class InfluxV9RepoReader {
 
     }
   }
+
+  private HttpRequestBase buildRequest(final String query) throws UnsupportedEncodingException {
+
+    String encodedQuery = URLEncoder.encode(query, "UTF-8");
+
+    if (encodedQuery.length() <= MAX_GET_QUERY_LENGTH) {
+
+      HttpGet request = new HttpGet(this.influxUrl + "?q=" + encodedQuery
+                                    + "&db=" + URLEncoder.encode(this.influxName, "UTF-8"));
+
+      request.addHeader("content-type", "application/json");
+
+      return request;
+
+    }
+
+    // Long queries, e.g. with many alarm ids, exceed the URL length Influxdb accepts.
+    logger.debug("Sending {} character query to influx database {} as POST",
+                 encodedQuery.length(), this.influxName);
+
+    HttpPost request = new HttpPost(this.influxUrl);
+
+    request.setEntity(new UrlEncodedFormEntity(
+        Arrays.asList(new BasicNameValuePair("q", query),
+                      new BasicNameValuePair("db", this.influxName)), "UTF-8"));
+
+    return request;
+  }
 }
@@ -31,8 +31,10 @@ import javax.annotation.Nullable;
 
 import monasca.api.ApiConfig;
 import monasca.api.domain.exception.MultipleMetricsException;
+import monasca.api.domain.model.common.SeriesOffset;
 import monasca.api.domain.model.statistic.StatisticRepo;
 import monasca.api.domain.model.statistic.Statistics;
+import monasca.api.infrastructure.persistence.RollupConfiguration;
 
 
 public class InfluxV9StatisticRepo implements StatisticRepo {
@@ -40,6 +42,10 @@ public class InfluxV9StatisticRepo implements StatisticRepo {
 
   private static final Logger logger = LoggerFactory.getLogger(InfluxV9StatisticRepo.class);
 
+  private static final int DEFAULT_PERIOD = 300;
+  private static final String ROLLUP_AVG_SUM = "avg_sum";
+  private static final String ROLLUP_AVG_COUNT = "avg_count";
+
   private final ApiConfig config;
   private final String region;
   private final InfluxV9RepoReader influxV9RepoReader;
@@ -67,16 +73,24 @@ public class InfluxV9StatisticRepo implements StatisticRepo {
   public List<Statistics> find(String tenantId, String name, Map<String, String> dimensions,
                                DateTime startTime, @Nullable DateTime endTime,
                                List<String> statistics, int period, String offset, int limit,
-                               Boolean mergeMetricsFlag) throws Exception {
+                               Boolean mergeMetricsFlag, @Nullable List<String> groupBy)
+      throws Exception {
+
+    RollupConfiguration rollup = rollupFor(period > 0 ? period : DEFAULT_PERIOD);
+
+    if (groupBy != null) {
+      return findGrouped(tenantId, name, dimensions, startTime, endTime, statistics, period,
+                         offset, limit, groupBy, rollup);
+    }
 
     String q = buildQuery(tenantId, name, dimensions, startTime, endTime,
-                   statistics, period, offset, limit, mergeMetricsFlag);
+                   statistics, period, offset, limit, mergeMetricsFlag, rollup);
 
     String r = this.influxV9RepoReader.read(q);
 
     Series series = this.objectMapper.readValue(r, Series.class);
 
-    List<Statistics> statisticsList = statisticslist(series);
+    List<Statistics> statisticsList = statisticslist(series, name);
 
     logger.debug("Found {} metric definitions matching query", statisticsList.size());
 
@@ -84,10 +98,144 @@ public class InfluxV9StatisticRepo implements StatisticRepo {
 
   }
 
+  /**
+   * Finds the statistics of the groups from the offset group on, like the grouped measurements of
+   * {@link InfluxV9MeasurementRepo}. Periods are filled, so every group holds a period for each
+   * period of the time range.
+   */
+  private List<Statistics> findGrouped(String tenantId, String name,
+                                       Map<String, String> dimensions, DateTime startTime,
+                                       @Nullable DateTime endTime, List<String> statistics,
+                                       int period, String offset, int limit, List<String> groupBy,
+                                       @Nullable RollupConfiguration rollup) throws Exception {
+
+    List<Statistics> statisticsList = new ArrayList<>();
+
+    Series counted = this.objectMapper.readValue(
+        this.influxV9RepoReader.read(
+            buildGroupCountQuery(tenantId, name, dimensions, startTime, endTime, groupBy,
+                                 rollup)),
+        Series.class);
+    List<Map<String, String>> groups =
+        new ArrayList<>(this.influxV9Utils.groupCounts(counted).keySet());
+
+    final long periodMillis = (period > 0 ? period : DEFAULT_PERIOD) * 1000L;
+    final long endMillis = endTime != null ? endTime.getMillis() : DateTime.now().getMillis();
+    final long periods = Math.max(1, (endMillis - startTime.getMillis()) / periodMillis + 1);
+
+    int index = 0;
+    // One period past the limit tells that there is a next page.
+    int remaining = limit + 1;
+
+    if (offset != null && !offset.isEmpty()) {
+
+      SeriesOffset seriesOffset = SeriesOffset.parse(offset);
+      index = seriesOffset.getIndex();
+
+      if (index < groups.size()) {
+        String q = buildGroupedQuery(tenantId, name,
+                                     this.influxV9Utils.groupDimensions(dimensions,
+                                                                        groups.get(index)),
+                                     seriesOffset.getTimestamp(), endTime, statistics, period,
+                                     remaining - 1, groupBy, rollup, "");
+
+        remaining -= addGroups(statisticsList, q, name, groups, index, index + 1);
+      }
+      index++;
+
+    }
+
+    while (remaining > 0 && index < groups.size()) {
+
+      int end = (int) Math.min(groups.size(), index + (remaining + periods - 1) / periods);
+
+      String q = buildGroupedQuery(tenantId, name, dimensions, startTime, endTime, statistics,
+                                   period, remaining - 1, groupBy, rollup,
+                                   this.influxV9Utils.seriesPart(index, end - index));
+
+      remaining -= addGroups(statisticsList, q, name, groups, index, end);
+      index = end;
+
+    }
+
+    logger.debug("Found {} groups matching query", statisticsList.size());
+
+    return statisticsList;
+  }
+
+  /**
+   * Adds the statistics of the groups {@code from} to {@code to}, identified by their
+   * dimensions, returning the number of periods added.
+   */
+  private int addGroups(List<Statistics> statisticsList, String q, String name,
+                        List<Map<String, String>> groups, int from, int to) throws Exception {
+
+    Series series = this.objectMapper.readValue(this.influxV9RepoReader.read(q), Series.class);
+
+    int found = 0;
+
+    for (Statistics statistics : statisticslist(series, name)) {
+      int index = groups.subList(from, to).indexOf(statistics.getDimensions());
+      if (index < 0) {
+        continue;
+      }
+      statistics.setId(String.valueOf(from + index));
+      found += statistics.size();
+      statisticsList.add(statistics);
+    }
+
+    return found;
+  }
+
+  private String buildGroupCountQuery(String tenantId, String name,
+                                      Map<String, String> dimensions, DateTime startTime,
+                                      @Nullable DateTime endTime, List<String> groupBy,
+                                      @Nullable RollupConfiguration rollup) throws Exception {
+
+    String q = String.format("select %1$s %2$s "
+                             + "where %3$s %4$s %5$s %6$s %7$s %8$s",
+                             rollup != null ? "count(\"count\")" : "count(value)",
+                             fromPart(name, rollup),
+                             this.influxV9Utils.privateTenantIdPart(tenantId),
+                             this.influxV9Utils.privateRegionPart(this.region),
+                             this.influxV9Utils.startTimePart(startTime),
+                             this.influxV9Utils.dimPart(dimensions),
+                             this.influxV9Utils.endTimePart(endTime),
+                             this.influxV9Utils.groupByPart(groupBy));
+
+    logger.debug("Statistic group count query: {}", q);
+
+    return q;
+  }
+
+  private String buildGroupedQuery(String tenantId, String name, Map<String, String> dimensions,
+                                   DateTime startTime, @Nullable DateTime endTime,
+                                   List<String> statistics, int period, int limit,
+                                   List<String> groupBy, @Nullable RollupConfiguration rollup,
+                                   String seriesPart) throws Exception {
+
+    String q = String.format("select %1$s %2$s "
+                             + "where %3$s %4$s %5$s %6$s %7$s %8$s %9$s %10$s",
+                             funcPart(statistics, rollup),
+                             fromPart(name, rollup),
+                             this.influxV9Utils.privateTenantIdPart(tenantId),
+                             this.influxV9Utils.privateRegionPart(this.region),
+                             this.influxV9Utils.startTimePart(startTime),
+                             this.influxV9Utils.dimPart(dimensions),
+                             this.influxV9Utils.endTimePart(endTime),
+                             this.influxV9Utils.periodPartWithGroupBy(period, groupBy),
+                             this.influxV9Utils.limitPart(limit),
+                             seriesPart);
+
+    logger.debug("Grouped statistics query: {}", q);
+
+    return q;
+  }
+
   private String buildQuery(String tenantId, String name, Map<String, String> dimensions,
                             DateTime startTime, DateTime endTime, List<String> statistics,
-                            int period, String offset, int limit, Boolean mergeMetricsFlag)
-      throws Exception {
+                            int period, String offset, int limit, Boolean mergeMetricsFlag,
+                            @Nullable RollupConfiguration rollup) throws Exception {
 
     String q;
 
@@ -95,8 +243,8 @@ public class InfluxV9StatisticRepo implements StatisticRepo {
 
       q = String.format("select %1$s %2$s "
                         + "where %3$s %4$s %5$s %6$s %7$s %8$s %9$s %10$s",
-                        funcPart(statistics),
-                        this.influxV9Utils.namePart(name, true),
+                        funcPart(statistics, rollup),
+                        fromPart(name, rollup),
                         this.influxV9Utils.privateTenantIdPart(tenantId),
                         this.influxV9Utils.privateRegionPart(this.region),
                         this.influxV9Utils.startTimePart(startTime),
@@ -115,8 +263,8 @@ public class InfluxV9StatisticRepo implements StatisticRepo {
 
       q = String.format("select %1$s %2$s "
                         + "where %3$s %4$s %5$s %6$s %7$s %8$s %9$s %10$s slimit 1",
-                        funcPart(statistics),
-                        this.influxV9Utils.namePart(name, true),
+                        funcPart(statistics, rollup),
+                        fromPart(name, rollup),
                         this.influxV9Utils.privateTenantIdPart(tenantId),
                         this.influxV9Utils.privateRegionPart(this.region),
                         this.influxV9Utils.startTimePart(startTime),
@@ -132,7 +280,7 @@ public class InfluxV9StatisticRepo implements StatisticRepo {
     return q;
   }
 
-  private List<Statistics> statisticslist(Series series) {
+  private List<Statistics> statisticslist(Series series, String name) {
 
     List<Statistics> statisticsList = new LinkedList<>();
 
@@ -140,12 +288,26 @@ public class InfluxV9StatisticRepo implements StatisticRepo {
 
       for (Serie serie : series.getSeries()) {
 
-        Statistics statistics = new Statistics(serie.getName(),
+        List<String> columns = new ArrayList<>(Arrays.asList(translateNames(serie.getColumns())));
+
+        // A rollup average is read as its sum and count, replaced by the average of the sum.
+        final int avgSum = columns.indexOf(ROLLUP_AVG_SUM);
+        final int avgCount = columns.indexOf(ROLLUP_AVG_COUNT);
+        if (avgSum >= 0) {
+          columns.set(avgSum, "avg");
+          columns.remove(avgCount);
+        }
+
+        // Named by the metric, rollup measurements may have a suffix.
+        Statistics statistics = new Statistics(name,
                                                this.influxV9Utils.filterPrivateTags(serie.getTags()),
-                                               Arrays.asList(translateNames(serie.getColumns())));
+                                               columns);
 
-        for (Object[] values : serie.getValues()) {
-          statistics.addStatistics(buildValsList(values));
+        for (String[] values : serie.getValues()) {
+          double[] row = parseStatistics(values);
+          statistics.addStatistics(influxV9Utils.timestampMillis(values[0]),
+                                   avgSum >= 0 ? averageRollup(row, avgSum - 1, avgCount - 1)
+                                               : row);
         }
 
         statisticsList.add(statistics);
@@ -157,19 +319,16 @@ public class InfluxV9StatisticRepo implements StatisticRepo {
     return statisticsList;
   }
 
-  private List<Object> buildValsList(Object[] values) {
+  private double[] parseStatistics(String[] values) {
 
-    ArrayList<Object> valObjArryList = new ArrayList<>();
+    // The first value is the timestamp, all others are doubles, null for empty periods.
+    double[] statistics = new double[values.length - 1];
 
-    // First value is the timestamp.
-    valObjArryList.add(values[0]);
-
-    // All other values are doubles.
     for (int i = 1; i < values.length; ++i) {
-      valObjArryList.add(Double.parseDouble((String) values[i]));
+      statistics[i - 1] = values[i] == null ? Double.NaN : Double.parseDouble(values[i]);
     }
 
-    return valObjArryList;
+    return statistics;
   }
 
   private String[] translateNames(String[] columnNamesArry) {
@@ -184,7 +343,57 @@ public class InfluxV9StatisticRepo implements StatisticRepo {
     return columnNamesArry;
   }
 
-  private String funcPart(List<String> statistics) {
+  private double[] averageRollup(double[] row, int sumIndex, int countIndex) {
+
+    double[] averaged = new double[row.length - 1];
+
+    for (int i = 0, j = 0; i < row.length; i++) {
+      if (i == countIndex) {
+        continue;
+      }
+      if (i == sumIndex) {
+        // Empty periods are filled with zero, like the raw averages.
+        averaged[j++] = row[countIndex] > 0 ? row[sumIndex] / row[countIndex] : 0;
+      } else {
+        averaged[j++] = row[i];
+      }
+    }
+
+    return averaged;
+  }
+
+  /**
+   * Returns the coarsest InfluxDB rollup whose period divides the {@code period}, or null when
+   * the raw measurements have to be read.
+   */
+  private RollupConfiguration rollupFor(int period) {
+
+    RollupConfiguration coarsest = null;
+
+    for (RollupConfiguration rollup : this.config.statistics.rollups) {
+      if (rollup.isInfluxDb() && period % rollup.period == 0
+          && (coarsest == null || rollup.period > coarsest.period)) {
+        coarsest = rollup;
+      }
+    }
+
+    return coarsest;
+  }
+
+  private String fromPart(String name, @Nullable RollupConfiguration rollup) {
+
+    if (rollup == null) {
+      return this.influxV9Utils.namePart(name, true);
+    }
+
+    String measurement = rollup.measurementSuffix == null ? name : name + rollup.measurementSuffix;
+
+    return rollup.retentionPolicy == null || rollup.retentionPolicy.isEmpty()
+           ? this.influxV9Utils.namePart(measurement, true)
+           : this.influxV9Utils.namePart(rollup.retentionPolicy, measurement);
+  }
+
+  private String funcPart(List<String> statistics, @Nullable RollupConfiguration rollup) {
 
     StringBuilder sb = new StringBuilder();
 
@@ -193,7 +402,22 @@ public class InfluxV9StatisticRepo implements StatisticRepo {
         sb.append(",");
       }
 
-      if (stat.trim().toLowerCase().equals("avg")) {
+      final String normalized = stat.trim().toLowerCase();
+
+      if (rollup != null) {
+        // Aggregates of the per period aggregates, the average weighted by the counts.
+        switch (normalized) {
+          case "avg":
+            sb.append(String.format("sum(\"sum\") as \"%1$s\",sum(\"count\") as \"%2$s\"",
+                                    ROLLUP_AVG_SUM, ROLLUP_AVG_COUNT));
+            break;
+          case "count":
+            sb.append("sum(\"count\") as \"count\"");
+            break;
+          default:
+            sb.append(String.format("%1$s(\"%1$s\") as \"%1$s\"", normalized));
+        }
+      } else if (normalized.equals("avg")) {
         sb.append("mean(value)");
       } else {
         sb.append(String.format("%1$s(value)", stat));
@@ -16,9 +16,11 @@ package monasca.api.infrastructure.persistence.influxdb;
 
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -28,6 +30,8 @@ import monasca.common.util.Conversions;
 
 public class InfluxV9Utils {
   private static final Pattern sqlUnsafePattern = Pattern.compile("^.*('|;|\")+.*$");
+  private static final DateTimeFormatter TIMESTAMP_PARSER =
+      ISODateTimeFormat.dateTimeParser().withZoneUTC();
 
   public InfluxV9Utils() {
   }
@@ -85,6 +89,31 @@ public class InfluxV9Utils {
 
   }
 
+  /**
+   * Groups by the given dimension names, or every dimension for "*".
+   */
+  public String groupByPart(List<String> groupBy) {
+
+    return " group by " + tagsPart(groupBy);
+
+  }
+
+  private String tagsPart(List<String> groupBy) {
+
+    if (groupBy.contains("*")) {
+      return "*";
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (String tag : groupBy) {
+      if (sb.length() > 0) {
+        sb.append(",");
+      }
+      sb.append("\"").append(sanitize(tag)).append("\"");
+    }
+    return sb.toString();
+  }
+
   public String namePart(String name, boolean isRequired) {
 
     if (isRequired) {
@@ -100,6 +129,18 @@ public class InfluxV9Utils {
     }
   }
 
+  /**
+   * Selects from the {@code name} measurement of the {@code retentionPolicy}.
+   */
+  public String namePart(String retentionPolicy, String name) {
+
+    if (name == null || name.isEmpty()) {
+      throw new IllegalArgumentException(String.format("Found null or empty name: %1$s", name));
+    }
+
+    return String.format(" from \"%1$s\".\"%2$s\"", sanitize(retentionPolicy), sanitize(name));
+  }
+
   public String publicTenantIdPart(String tenantId) {
 
     if (tenantId == null || tenantId.isEmpty()) {
@@ -246,12 +287,63 @@ public class InfluxV9Utils {
                       : " group by time(300s), * fill(0)";
   }
 
+  public String periodPartWithGroupBy(int period, List<String> groupBy) {
+
+    return String.format(" group by time(%1$ds), %2$s fill(0)", period > 0 ? period : 300,
+                         tagsPart(groupBy));
+  }
+
+  /**
+   * Selects the series, in the order of their tag values, from the {@code seriesOffset}-th on.
+   */
+  public String seriesPart(int seriesOffset, int seriesLimit) {
+
+    return String.format(" slimit %1$d soffset %2$d", seriesLimit, seriesOffset);
+  }
+
   public String periodPart(int period) {
 
     return period > 0 ? String.format(" group by time(%1$ds) fill(0)", period)
                       : " group by time(300s) fill(0)";
   }
 
+  /**
+   * Returns the dimensions of each group of a grouped count query, with its count, in the order
+   * of the groups, which is the order of the groups of any query over the same series.
+   */
+  @SuppressWarnings("unchecked")
+  LinkedHashMap<Map<String, String>, Long> groupCounts(Series series) {
+
+    LinkedHashMap<Map<String, String>, Long> groups = new LinkedHashMap<>();
+
+    if (!series.isEmpty()) {
+      for (Serie serie : series.getSeries()) {
+        long count = 0;
+        for (String[] values : serie.getValues()) {
+          count += values[1] == null ? 0 : (long) Double.parseDouble(values[1]);
+        }
+        groups.put(filterPrivateTags(serie.getTags()), count);
+      }
+    }
+
+    return groups;
+  }
+
+  /**
+   * Returns the {@code dimensions} narrowed to the series of the {@code group}.
+   */
+  Map<String, String> groupDimensions(Map<String, String> dimensions, Map<String, String> group) {
+
+    Map<String, String> groupDimensions = new HashMap<>();
+
+    if (dimensions != null) {
+      groupDimensions.putAll(dimensions);
+    }
+    groupDimensions.putAll(group);
+
+    return groupDimensions;
+  }
+
   Map<String, String> filterPrivateTags(Map<String, String> tagMap) {
 
     Map<String, String> filteredMap = new HashMap<>(tagMap);
@@ -274,4 +366,12 @@ public class InfluxV9Utils {
     }
     return timestamp;
   }
+
+  /**
+   * Parses an InfluxDB RFC 3339 timestamp, of up to nanosecond precision, into epoch
+   * milliseconds.
+   */
+  public long timestampMillis(String timestamp) {
+    return TIMESTAMP_PARSER.parseMillis(timestamp);
+  }
 }
@@ -16,6 +16,7 @@ package monasca.api.infrastructure.persistence.mysql;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
@@ -27,6 +28,7 @@ import javax.inject.Named;
 
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
 import org.skife.jdbi.v2.Query;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
 import org.skife.jdbi.v2.StatementContext;
@@ -43,7 +45,10 @@ import monasca.common.model.metric.MetricDefinition;
 import monasca.common.util.Conversions;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDetail;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.outbox.OutboxEvent;
+import monasca.api.infrastructure.persistence.AlarmDefinitionQueries;
 import monasca.api.infrastructure.persistence.DimensionQueries;
 import monasca.api.infrastructure.persistence.SubAlarmDefinitionQueries;
 
@@ -59,6 +64,34 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
       "select sa.*, sad.dimensions from sub_alarm_definition as sa "
           + "left join (select sub_alarm_definition_id, group_concat(dimension_name, '=', value) as dimensions from sub_alarm_definition_dimension group by sub_alarm_definition_id ) as sad "
           + "on sad.sub_alarm_definition_id = sa.id where sa.alarm_definition_id = :alarmDefId";
+  private static final String FIND_DETAIL_BY_ID_SQL =
+      "select ad.id, ad.name, ad.description, ad.expression, ad.severity, ad.match_by, ad.actions_enabled, "
+          + "aa.notificationIds, aa.states, sa.id as sub_alarm_id, sa.function, sa.metric_name, sa.operator, "
+          + "sa.threshold, sa.period, sa.periods, sad.dimensions from alarm_definition as ad "
+          + "left join (select alarm_definition_id, group_concat(action_id) as notificationIds, group_concat(alarm_state) as states "
+          + "from alarm_action where alarm_definition_id = :alarmDefId group by alarm_definition_id) as aa on aa.alarm_definition_id = ad.id "
+          + "left join sub_alarm_definition as sa on sa.alarm_definition_id = ad.id "
+          + "left join (select sub_alarm_definition_id, group_concat(dimension_name, '=', value) as dimensions from sub_alarm_definition_dimension "
+          + "where sub_alarm_definition_id in (select id from sub_alarm_definition where alarm_definition_id = :alarmDefId) "
+          + "group by sub_alarm_definition_id) as sad on sad.sub_alarm_definition_id = sa.id "
+          + "where ad.tenant_id = :tenantId and ad.id = :alarmDefId and ad.deleted_at is null";
+
+  /**
+   * Reads the ids of a page only, dimension filters are semi-joins so definitions are neither
+   * repeated nor need a distinct before the limit applies.
+   */
+  private static final String FIND_PAGE_IDS_SQL =
+      "select ad.id from alarm_definition as ad "
+          + "where ad.tenant_id = :tenantId and ad.deleted_at is null%s%s%s";
+  private static final String FIND_OFFSET_KEYS_SQL =
+      "select %s from alarm_definition where tenant_id = :tenantId and id = :offset";
+  private static final String FIND_BY_IDS_SQL =
+      "select ad.id, ad.tenant_id, ad.name, ad.description, ad.expression, ad.severity, ad.match_by, "
+          + "ad.actions_enabled, ad.created_at, ad.updated_at, ad.deleted_at, "
+          + "group_concat(aa.alarm_state) as states, group_concat(aa.action_id) as notificationIds "
+          + "from alarm_definition as ad "
+          + "left outer join alarm_action as aa on ad.id = aa.alarm_definition_id "
+          + "where ad.id in (%s) group by ad.id";
 
   private final DBI db;
   private final PersistUtils persistUtils;
@@ -74,6 +107,15 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
       String severity, String expression, Map<String, AlarmSubExpression> subExpressions,
       List<String> matchBy, List<String> alarmActions, List<String> okActions,
       List<String> undeterminedActions) {
+    return create(tenantId, id, name, description, severity, expression, subExpressions, matchBy,
+        alarmActions, okActions, undeterminedActions, Collections.<OutboxEvent>emptyList());
+  }
+
+  @Override
+  public AlarmDefinition create(String tenantId, String id, String name, String description,
+      String severity, String expression, Map<String, AlarmSubExpression> subExpressions,
+      List<String> matchBy, List<String> alarmActions, List<String> okActions,
+      List<String> undeterminedActions, List<OutboxEvent> events) {
     Handle h = db.open();
 
     try {
@@ -87,9 +129,9 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
       createSubExpressions(h, id, subExpressions);
 
       // Persist actions
-      persistActions(h, id, AlarmState.ALARM, alarmActions);
-      persistActions(h, id, AlarmState.OK, okActions);
-      persistActions(h, id, AlarmState.UNDETERMINED, undeterminedActions);
+      persistActions(h, id, alarmActions, okActions, undeterminedActions);
+
+      OutboxMySqlRepoImpl.append(h, events);
 
       h.commit();
       return new AlarmDefinition(id, name, description, severity, expression, matchBy, true,
@@ -105,15 +147,36 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
 
   @Override
   public void deleteById(String tenantId, String alarmDefId) {
-    try (Handle h = db.open()) {
+    deleteById(tenantId, alarmDefId, Collections.<List<OutboxEvent>>emptyIterator());
+  }
+
+  @Override
+  public void deleteById(String tenantId, String alarmDefId,
+                         Iterator<List<OutboxEvent>> events) {
+    Handle h = db.open();
+
+    try {
+      h.begin();
       if (h
           .update(
               "update alarm_definition set deleted_at = NOW() where tenant_id = ? and id = ? and deleted_at is NULL",
               tenantId, alarmDefId) == 0)
         throw new EntityNotFoundException("No alarm definition exists for %s", alarmDefId);
-      
+
+      // The events may be built from the alarms, so they are written before the cascade
+      while (events.hasNext()) {
+        OutboxMySqlRepoImpl.append(h, events.next());
+      }
+
       // Cascade soft delete to alarms
       h.execute("delete from alarm where alarm_definition_id = :id", alarmDefId);
+
+      h.commit();
+    } catch (RuntimeException e) {
+      h.rollback();
+      throw e;
+    } finally {
+      h.close();
     }
   }
 
@@ -136,49 +199,47 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
         }
     }
 
-  @SuppressWarnings("unchecked")
   @Override
   public List<AlarmDefinition> find(String tenantId, String name,
-      Map<String, String> dimensions, String offset, int limit) {
-
+      Map<String, String> dimensions, List<String> sortBy, String offset, int limit) {
 
     try (Handle h = db.open()) {
 
-      String query =
-          "  SELECT t.id, t.tenant_id, t.name, t.description, t.expression, t.severity, t.match_by,"
-          + "     t.actions_enabled, t.created_at, t.updated_at, t.deleted_at, "
-          + "     GROUP_CONCAT(aa.alarm_state) AS states, "
-          + "     GROUP_CONCAT(aa.action_id) AS notificationIds "
-          + "FROM (SELECT distinct ad.id, ad.tenant_id, ad.name, ad.description, ad.expression,"
-          + "        ad.severity, ad.match_by, ad.actions_enabled, ad.created_at, "
-          + "        ad.updated_at, ad.deleted_at "
-          + "      FROM alarm_definition AS ad "
-          + "      LEFT OUTER JOIN sub_alarm_definition AS sad ON ad.id = sad.alarm_definition_id "
-          + "      LEFT OUTER JOIN sub_alarm_definition_dimension AS dim ON sad.id = dim.sub_alarm_definition_id %1$s "
-          + "      WHERE ad.tenant_id = :tenantId AND ad.deleted_at IS NULL %2$s %3$s) AS t "
-          + "LEFT OUTER JOIN alarm_action AS aa ON t.id = aa.alarm_definition_id "
-          + "GROUP BY t.id ORDER BY t.id, t.created_at";
-
-
       StringBuilder sbWhere = new StringBuilder();
 
       if (name != null) {
         sbWhere.append(" and ad.name = :name");
       }
 
+      List<String> keyColumns = AlarmDefinitionQueries.keyColumns(sortBy);
+      Map<String, Object> offsetKeys = null;
+
       if (offset != null) {
-        sbWhere.append(" and ad.id > :offset");
+        if (!keyColumns.isEmpty()) {
+          offsetKeys = h
+              .createQuery(String.format(FIND_OFFSET_KEYS_SQL, COMMA_JOINER.join(keyColumns)))
+              .bind("tenantId", tenantId)
+              .bind("offset", offset)
+              .first();
+          // The offset definition is gone, no definition follows it anymore
+          if (offsetKeys == null) {
+            return new ArrayList<>();
+          }
+        }
+        sbWhere.append(AlarmDefinitionQueries.buildKeysetClause(sortBy));
       }
 
+      sbWhere.append(SubAlarmDefinitionQueries.buildExistsClauseFor(dimensions));
+
       String limitPart = "";
       if (limit > 0) {
         limitPart = " limit :limit";
       }
 
-      String sql = String.format(query,
-          SubAlarmDefinitionQueries.buildJoinClauseFor(dimensions), sbWhere, limitPart);
+      String sql = String.format(FIND_PAGE_IDS_SQL, sbWhere,
+          AlarmDefinitionQueries.buildOrderBy(sortBy), limitPart);
 
-      Query<?> q = h.createQuery(sql);
+      Query<Map<String, Object>> q = h.createQuery(sql);
 
       q.bind("tenantId", tenantId);
 
@@ -188,18 +249,65 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
 
       if (offset != null) {
         q.bind("offset", offset);
+        for (int i = 0; i < keyColumns.size(); i++) {
+          q.bind("key" + i, offsetKeys.get(keyColumns.get(i)));
+        }
       }
 
       if (limit > 0) {
         q.bind("limit", limit + 1);
       }
 
-      q.registerMapper(new AlarmDefinitionMapper());
-      q = q.mapTo(AlarmDefinition.class);
       DimensionQueries.bindDimensionsToQuery(q, dimensions);
-      List<AlarmDefinition> resultSet = (List<AlarmDefinition>) q.list();
-      return resultSet;
+
+      List<String> ids = new ArrayList<>();
+      for (Map<String, Object> row : q.list()) {
+        ids.add((String) row.get("id"));
+      }
+
+      return findByIds(h, ids);
+    }
+  }
+
+  /**
+   * Reads the alarm definitions with the {@code ids} and their actions, in the order of the
+   * {@code ids}.
+   */
+  private List<AlarmDefinition> findByIds(Handle h, List<String> ids) {
+
+    if (ids.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    StringBuilder idsPart = new StringBuilder();
+    for (int i = 0; i < ids.size(); i++) {
+      if (i > 0) {
+        idsPart.append(", ");
+      }
+      idsPart.append(":id").append(i);
+    }
+
+    Query<AlarmDefinition> q = h
+        .createQuery(String.format(FIND_BY_IDS_SQL, idsPart))
+        .map(new AlarmDefinitionMapper());
+    for (int i = 0; i < ids.size(); i++) {
+      q.bind("id" + i, ids.get(i));
     }
+
+    Map<String, AlarmDefinition> alarmDefinitions = new HashMap<>();
+    for (AlarmDefinition alarmDefinition : q.list()) {
+      alarmDefinitions.put(alarmDefinition.getId(), alarmDefinition);
+    }
+
+    List<AlarmDefinition> ordered = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      AlarmDefinition alarmDefinition = alarmDefinitions.get(id);
+      // Deleted between reading the page and its definitions
+      if (alarmDefinition != null) {
+        ordered.add(alarmDefinition);
+      }
+    }
+    return ordered;
   }
 
   @Override
@@ -229,6 +337,28 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
     }
   }
 
+  @Override
+  public AlarmDefinitionDetail findDetailById(String tenantId, String alarmDefId) {
+    try (Handle h = db.open()) {
+      // Each row holds the definition and at most one of its sub expressions
+      List<AlarmDefinitionDetail> rows = h.createQuery(FIND_DETAIL_BY_ID_SQL)
+          .bind("tenantId", tenantId)
+          .bind("alarmDefId", alarmDefId)
+          .map(new AlarmDefinitionDetailMapper())
+          .list();
+
+      if (rows.isEmpty()) {
+        throw new EntityNotFoundException("No alarm definition exists for %s", alarmDefId);
+      }
+
+      Map<String, AlarmSubExpression> subExpressions = new HashMap<>();
+      for (AlarmDefinitionDetail row : rows) {
+        subExpressions.putAll(row.getSubExpressions());
+      }
+      return new AlarmDefinitionDetail(rows.get(0).getAlarmDefinition(), subExpressions);
+    }
+  }
+
   @Override
   public Map<String, MetricDefinition> findSubAlarmMetricDefinitions(String alarmDefId) {
     try (Handle h = db.open()) {
@@ -279,6 +409,17 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
       Collection<String> oldSubAlarmIds, Map<String, AlarmSubExpression> changedSubAlarms,
       Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions,
       List<String> okActions, List<String> undeterminedActions) {
+    update(tenantId, id, patch, name, description, expression, matchBy, severity, actionsEnabled,
+        oldSubAlarmIds, changedSubAlarms, newSubAlarms, alarmActions, okActions,
+        undeterminedActions, Collections.<OutboxEvent>emptyList());
+  }
+
+  @Override
+  public void update(String tenantId, String id, boolean patch, String name, String description,
+      String expression, List<String> matchBy, String severity, boolean actionsEnabled,
+      Collection<String> oldSubAlarmIds, Map<String, AlarmSubExpression> changedSubAlarms,
+      Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions,
+      List<String> okActions, List<String> undeterminedActions, List<OutboxEvent> events) {
     Handle h = db.open();
 
     try {
@@ -289,34 +430,37 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
               : COMMA_JOINER.join(matchBy), severity, actionsEnabled, tenantId, id);
 
       // Delete old sub-alarms
-      if (oldSubAlarmIds != null)
+      if (oldSubAlarmIds != null && !oldSubAlarmIds.isEmpty()) {
+        final PreparedBatch batch = h.prepareBatch("delete from sub_alarm_definition where id = ?");
         for (String oldSubAlarmId : oldSubAlarmIds)
-          h.execute("delete from sub_alarm_definition where id = ?", oldSubAlarmId);
+          batch.add(oldSubAlarmId);
+        batch.execute();
+      }
 
       // Update changed sub-alarms
-      if (changedSubAlarms != null)
+      if (changedSubAlarms != null && !changedSubAlarms.isEmpty()) {
+        final PreparedBatch batch = h.prepareBatch(
+            "update sub_alarm_definition set operator = ?, threshold = ?, updated_at = NOW() where id = ?");
         for (Map.Entry<String, AlarmSubExpression> entry : changedSubAlarms.entrySet()) {
           AlarmSubExpression sa = entry.getValue();
-          h.execute(
-              "update sub_alarm_definition set operator = ?, threshold = ?, updated_at = NOW() where id = ?",
-              sa.getOperator().name(), sa.getThreshold(), entry.getKey());
+          batch.add(sa.getOperator().name(), sa.getThreshold(), entry.getKey());
         }
+        batch.execute();
+      }
 
       // Insert new sub-alarms
       createSubExpressions(h, id, newSubAlarms);
 
       // Delete old actions
-      if (patch) {
-        deleteActions(h, id, AlarmState.ALARM, alarmActions);
-        deleteActions(h, id, AlarmState.OK, okActions);
-        deleteActions(h, id, AlarmState.UNDETERMINED, undeterminedActions);
-      } else
+      if (patch)
+        deleteActions(h, id, alarmActions, okActions, undeterminedActions);
+      else
         h.execute("delete from alarm_action where alarm_definition_id = ?", id);
 
       // Insert new actions
-      persistActions(h, id, AlarmState.ALARM, alarmActions);
-      persistActions(h, id, AlarmState.OK, okActions);
-      persistActions(h, id, AlarmState.UNDETERMINED, undeterminedActions);
+      persistActions(h, id, alarmActions, okActions, undeterminedActions);
+
+      OutboxMySqlRepoImpl.append(h, events);
 
       h.commit();
     } catch (RuntimeException e) {
@@ -327,41 +471,77 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
     }
   }
 
-  private void deleteActions(Handle handle, String id, AlarmState alarmState, List<String> actions) {
-    if (actions != null)
-      handle.execute("delete from alarm_action where alarm_definition_id = ? and alarm_state = ?", id,
-          alarmState.name());
+  /**
+   * Deletes the actions of the states whose new actions are given, with one statement per state.
+   */
+  private void deleteActions(Handle handle, String id, List<String> alarmActions,
+      List<String> okActions, List<String> undeterminedActions) {
+    final PreparedBatch batch =
+        handle.prepareBatch("delete from alarm_action where alarm_definition_id = ? and alarm_state = ?");
+    if (alarmActions != null)
+      batch.add(id, AlarmState.ALARM.name());
+    if (okActions != null)
+      batch.add(id, AlarmState.OK.name());
+    if (undeterminedActions != null)
+      batch.add(id, AlarmState.UNDETERMINED.name());
+    if (batch.size() > 0)
+      batch.execute();
+  }
+
+  /**
+   * Inserts the actions of all states in a single batch.
+   */
+  private void persistActions(Handle handle, String id, List<String> alarmActions,
+      List<String> okActions, List<String> undeterminedActions) {
+    final PreparedBatch batch = handle.prepareBatch("insert into alarm_action values (?, ?, ?)");
+    addActions(batch, id, AlarmState.ALARM, alarmActions);
+    addActions(batch, id, AlarmState.OK, okActions);
+    addActions(batch, id, AlarmState.UNDETERMINED, undeterminedActions);
+    if (batch.size() > 0)
+      batch.execute();
   }
 
-  private void persistActions(Handle handle, String id, AlarmState alarmState, List<String> actions) {
+  private void addActions(PreparedBatch batch, String id, AlarmState alarmState,
+      List<String> actions) {
     if (actions != null)
       for (String action : actions)
-        handle.insert("insert into alarm_action values (?, ?, ?)", id, alarmState.name(), action);
+        batch.add(id, alarmState.name(), action);
   }
 
+  /**
+   * Inserts the sub-alarms and then all of their dimensions, with one batch each.
+   */
   private void createSubExpressions(Handle handle, String id,
       Map<String, AlarmSubExpression> alarmSubExpressions) {
-    if (alarmSubExpressions != null) {
-      for (Map.Entry<String, AlarmSubExpression> subEntry : alarmSubExpressions.entrySet()) {
-        String subAlarmId = subEntry.getKey();
-        AlarmSubExpression subExpr = subEntry.getValue();
-        MetricDefinition metricDef = subExpr.getMetricDefinition();
-
-        // Persist sub-alarm
-        handle
-            .insert(
-                "insert into sub_alarm_definition (id, alarm_definition_id, function, metric_name, operator, threshold, period, periods, created_at, updated_at) "
-                    + "values (?, ?, ?, ?, ?, ?, ?, ?, NOW(), NOW())", subAlarmId, id, subExpr
-                    .getFunction().name(), metricDef.name, subExpr.getOperator().name(), subExpr
-                    .getThreshold(), subExpr.getPeriod(), subExpr.getPeriods());
-
-        // Persist sub-alarm dimensions
-        if (metricDef.dimensions != null && !metricDef.dimensions.isEmpty())
-          for (Map.Entry<String, String> dimEntry : metricDef.dimensions.entrySet())
-            handle.insert("insert into sub_alarm_definition_dimension values (?, ?, ?)", subAlarmId,
-                dimEntry.getKey(), dimEntry.getValue());
-      }
+    if (alarmSubExpressions == null || alarmSubExpressions.isEmpty())
+      return;
+
+    final PreparedBatch subAlarmBatch = handle.prepareBatch(
+        "insert into sub_alarm_definition (id, alarm_definition_id, function, metric_name, operator, threshold, period, periods, created_at, updated_at) "
+            + "values (?, ?, ?, ?, ?, ?, ?, ?, NOW(), NOW())");
+    final PreparedBatch dimensionBatch =
+        handle.prepareBatch("insert into sub_alarm_definition_dimension values (?, ?, ?)");
+
+    for (Map.Entry<String, AlarmSubExpression> subEntry : alarmSubExpressions.entrySet()) {
+      String subAlarmId = subEntry.getKey();
+      AlarmSubExpression subExpr = subEntry.getValue();
+      MetricDefinition metricDef = subExpr.getMetricDefinition();
+
+      // Persist sub-alarm
+      subAlarmBatch.add(subAlarmId, id, subExpr.getFunction().name(), metricDef.name,
+          subExpr.getOperator().name(), subExpr.getThreshold(), subExpr.getPeriod(),
+          subExpr.getPeriods());
+
+      // Persist sub-alarm dimensions
+      if (metricDef.dimensions != null && !metricDef.dimensions.isEmpty())
+        for (Map.Entry<String, String> dimEntry : metricDef.dimensions.entrySet())
+          dimensionBatch.add(subAlarmId, dimEntry.getKey(), dimEntry.getValue());
     }
+
+    // Dimensions reference their sub-alarm, so they go in after it
+    subAlarmBatch.execute();
+    if (dimensionBatch.size() > 0)
+      dimensionBatch.execute();
   }
 
   private static class AlarmDefinitionMapper implements ResultSetMapper<AlarmDefinition> {
@@ -410,5 +590,28 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
       return Lists.newArrayList(split);
     }
   }
-}
 
+  private static class AlarmDefinitionDetailMapper implements ResultSetMapper<AlarmDefinitionDetail> {
+
+    private final AlarmDefinitionMapper alarmDefinitionMapper = new AlarmDefinitionMapper();
+
+    public AlarmDefinitionDetail map(int index, ResultSet r, StatementContext ctx)
+        throws SQLException {
+      AlarmDefinition alarmDefinition = alarmDefinitionMapper.map(index, r, ctx);
+      String subAlarmId = r.getString("sub_alarm_id");
+      if (subAlarmId == null) {
+        return new AlarmDefinitionDetail(alarmDefinition,
+            Collections.<String, AlarmSubExpression>emptyMap());
+      }
+
+      Map<String, String> dimensions = DimensionQueries.dimensionsFor(r.getString("dimensions"));
+      AlarmSubExpression subExpression = new AlarmSubExpression(
+          AggregateFunction.fromJson(r.getString("function")),
+          new MetricDefinition(r.getString("metric_name"), dimensions),
+          AlarmOperator.fromJson(r.getString("operator")), r.getDouble("threshold"),
+          r.getInt("period"), r.getInt("periods"));
+      return new AlarmDefinitionDetail(alarmDefinition,
+          Collections.singletonMap(subAlarmId, subExpression));
+    }
+  }
+}
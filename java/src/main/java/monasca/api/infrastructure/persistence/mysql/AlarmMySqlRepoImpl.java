@@ -15,26 +15,40 @@ package monasca.api.infrastructure.persistence.mysql;
 
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarm.Alarm;
+import monasca.api.domain.model.alarm.AlarmCount;
 import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarm.AlarmUpdate;
+import monasca.api.domain.model.outbox.OutboxEvent;
+import monasca.api.domain.model.outbox.OutboxEventFactory;
+import monasca.api.infrastructure.persistence.AlarmIndex;
+import monasca.api.infrastructure.persistence.AlarmMetricRow;
+import monasca.api.infrastructure.persistence.AlarmUpdateRow;
 import monasca.api.infrastructure.persistence.DimensionQueries;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.common.model.alarm.AlarmState;
 import monasca.common.model.alarm.AlarmSubExpression;
-import monasca.common.model.metric.MetricDefinition;
 import monasca.common.persistence.BeanMapper;
 
+import org.apache.commons.codec.binary.Hex;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.SQLStatement;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.Update;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.skife.jdbi.v2.util.StringMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -50,39 +64,67 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
 
   private final DBI db;
   private final PersistUtils persistUtils;
+  private final AlarmIndex alarmIndex;
 
-  private static final String FIND_ALARM_BY_ID_SQL =
-      "select ad.id as alarm_definition_id, ad.severity, ad.name as alarm_definition_name, "
-      + "a.id, a.state, a.lifecycle_state, a.link, a.state_updated_at as state_updated_timestamp, "
-      + "a.updated_at as updated_timestamp, a.created_at as created_timestamp, "
-      + "md.name as metric_name, mdg.dimensions as metric_dimensions from alarm as a "
-      + "inner join alarm_definition ad on ad.id = a.alarm_definition_id "
+  private static final String FIND_ALARM_IDS_SQL =
+      "select a.id from alarm as a "
+      + "inner join alarm_definition as ad on ad.id = a.alarm_definition_id "
+      + "where ad.tenant_id = :tenantId and ad.deleted_at is null %s "
+      + "order by a.id ASC %s";
+
+  private static final String COUNT_ALARMS_SQL =
+      "select ad.id as alarm_definition_id, ad.name as alarm_definition_name, ad.severity, "
+      + "a.state, a.lifecycle_state, count(*) as alarm_count "
+      + "from alarm as a "
+      + "inner join alarm_definition as ad on ad.id = a.alarm_definition_id "
+      + "where ad.tenant_id = :tenantId and ad.deleted_at is null %s "
+      + "group by ad.id, ad.name, ad.severity, a.state, a.lifecycle_state "
+      + "order by ad.id, a.state, a.lifecycle_state";
+
+  private static final String FIND_ALARMS_BY_IDS_SQL =
+      "select a.id, ad.id as alarm_definition_id, ad.name as alarm_definition_name, ad.severity, "
+      + "a.state, a.lifecycle_state, a.link, a.state_updated_at, a.updated_at, a.created_at, "
+      + "mdd.id as metric_definition_dimensions_id, md.name as metric_name, "
+      + "mdim.name as dimension_name, mdim.value as dimension_value "
+      + "from alarm as a "
+      + "inner join alarm_definition as ad on ad.id = a.alarm_definition_id "
       + "inner join alarm_metric as am on am.alarm_id = a.id "
       + "inner join metric_definition_dimensions as mdd on mdd.id = am.metric_definition_dimensions_id "
       + "inner join metric_definition as md on md.id = mdd.metric_definition_id "
-      + "left outer join (select dimension_set_id, name, value, group_concat(name, '=', value) as dimensions "
-      + "from metric_dimension group by dimension_set_id) as mdg on mdg.dimension_set_id = mdd.metric_dimension_set_id "
-      + "where ad.tenant_id = :tenantId and ad.deleted_at is null %s order by a.id %s";
-
-  private static final String FIND_ALARMS_SQL =
-      "select ad.id as alarm_definition_id, ad.severity, ad.name as alarm_definition_name, "
-      + "a.id, a.state, a.lifecycle_state, a.link, a.state_updated_at as state_updated_timestamp, "
-      + "a.updated_at as updated_timestamp, a.created_at as created_timestamp, "
-      + "md.name as metric_name, group_concat(mdim.name, '=', mdim.value order by mdim.name) as metric_dimensions "
+      + "left outer join metric_dimension as mdim on mdim.dimension_set_id = mdd.metric_dimension_set_id "
+      + "where ad.tenant_id = :tenantId and ad.deleted_at is null and a.id in (%s) "
+      + "order by a.id ASC, mdd.id ASC";
+
+  /** Loads alarms with their metrics, alarm definitions and sub alarms in one query. */
+  private static final String FIND_ALARM_FOR_UPDATE_SQL =
+      "select a.id, ad.id as alarm_definition_id, ad.name as alarm_definition_name, ad.severity, "
+      + "ad.description as alarm_definition_description, ad.actions_enabled, "
+      + "a.state, a.lifecycle_state, a.link, a.state_updated_at, a.updated_at, a.created_at, "
+      + "mdd.id as metric_definition_dimensions_id, md.name as metric_name, "
+      + "mdim.name as dimension_name, mdim.value as dimension_value, "
+      + "sa.id as sub_alarm_id, sa.expression as sub_alarm_expression "
       + "from alarm as a "
-      + "inner join %s as alarm_id_list on alarm_id_list.id = a.id "
-      + "inner join alarm_definition ad on ad.id = a.alarm_definition_id "
+      + "inner join alarm_definition as ad on ad.id = a.alarm_definition_id "
       + "inner join alarm_metric as am on am.alarm_id = a.id "
       + "inner join metric_definition_dimensions as mdd on mdd.id = am.metric_definition_dimensions_id "
       + "inner join metric_definition as md on md.id = mdd.metric_definition_id "
       + "left outer join metric_dimension as mdim on mdim.dimension_set_id = mdd.metric_dimension_set_id "
-      + "group by a.id, md.name, mdim.dimension_set_id "
-      + "order by a.id ASC";
+      + "left outer join sub_alarm as sa on sa.alarm_id = a.id "
+      + "where ad.tenant_id = :tenantId and ad.deleted_at is null and a.id in (%s) "
+      + "order by a.id ASC, mdd.id ASC, sa.id ASC";
+
+  private static final String UPDATE_ALARMS_SQL = "update alarm set %s where id in (%s)";
+
+  private static final String UPDATE_ALARM_SQL =
+      "update alarm set state = :state, lifecycle_state = :lifecycleState, link = :link, "
+      + "updated_at = NOW()%s where id = :id";
 
   @Inject
-  public AlarmMySqlRepoImpl(@Named("mysql") DBI db, PersistUtils persistUtils) {
+  public AlarmMySqlRepoImpl(@Named("mysql") DBI db, PersistUtils persistUtils,
+                            AlarmIndex alarmIndex) {
     this.db = db;
     this.persistUtils = persistUtils;
+    this.alarmIndex = alarmIndex;
   }
 
   private void buildJoinClauseFor(Map<String, String> dimensions, StringBuilder sbJoin) {
@@ -104,13 +146,32 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
 
   @Override
   public void deleteById(String tenantId, String id) {
+    deleteById(tenantId, id, Collections.<OutboxEvent>emptyList());
+  }
+
+  @Override
+  public void deleteById(String tenantId, String id, List<OutboxEvent> events) {
     final String sql = "delete a from alarm a where a.id = ?";
 
-    try (Handle h = db.open()) {
+    Handle h = db.open();
+
+    try {
+      h.begin();
       // This will throw an EntityNotFoundException if Alarm doesn't exist or has a different tenant id
       findAlarm(tenantId, id, h);
       h.execute(sql, id);
+
+      OutboxMySqlRepoImpl.append(h, events);
+
+      h.commit();
+    } catch (RuntimeException e) {
+      h.rollback();
+      throw e;
+    } finally {
+      h.close();
     }
+
+    alarmIndex.deleted(tenantId, id);
   }
 
   @Override
@@ -119,13 +180,119 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
                           String lifecycleState, String link, DateTime stateUpdatedStart, String offset,
                           int limit, boolean enforceLimit) {
 
-    StringBuilder
-        sbWhere =
-        new StringBuilder("(select a.id "
-                          + "from alarm as a, alarm_definition as ad "
-                          + "where ad.id = a.alarm_definition_id "
-                          + "  and ad.deleted_at is null "
-                          + "  and ad.tenant_id = :tenantId ");
+    try (Handle h = db.open()) {
+
+      // Page over alarm ids first so the limit counts alarms, then load only that page.
+      final List<String> alarmIds =
+          findAlarmIds(h, tenantId, alarmDefId, metricName, metricDimensions, state,
+                       lifecycleState, link, stateUpdatedStart, offset,
+                       enforceLimit && limit > 0 ? limit + 1 : 0);
+
+      return findAlarms(h, tenantId, alarmIds);
+    }
+  }
+
+  @Override
+  public List<String> findIds(String tenantId, String alarmDefId, String metricName,
+                              Map<String, String> metricDimensions, AlarmState state,
+                              String lifecycleState, String link, DateTime stateUpdatedStart,
+                              int limit) {
+    try (Handle h = db.open()) {
+      return findAlarmIds(h, tenantId, alarmDefId, metricName, metricDimensions, state,
+                          lifecycleState, link, stateUpdatedStart, null, limit);
+    }
+  }
+
+  @Override
+  public List<String> findIdsByAlarmDefinition(String tenantId, String alarmDefId, String offset,
+                                               int limit) {
+    try (Handle h = db.open()) {
+      return findAlarmIds(h, tenantId, alarmDefId, null, null, null, null, null, null, offset,
+                          limit);
+    }
+  }
+
+  @Override
+  public List<AlarmUpdate> findForUpdate(String tenantId, List<String> alarmIds) {
+    try (Handle h = db.open()) {
+      return findAlarmsForUpdate(h, tenantId, alarmIds);
+    }
+  }
+
+  /**
+   * Returns the ids of the alarms for the given criteria after the {@code offset}, at most
+   * {@code limit} of them if {@code limit} is positive.
+   */
+  private List<String> findAlarmIds(Handle h, String tenantId, String alarmDefId,
+                                    String metricName, Map<String, String> metricDimensions,
+                                    AlarmState state, String lifecycleState, String link,
+                                    DateTime stateUpdatedStart, String offset, int limit) {
+
+    final List<String> indexedAlarmIds =
+        alarmIndex.findAlarmIds(tenantId, alarmDefId, metricName, metricDimensions, state,
+                                lifecycleState, link, stateUpdatedStart, offset, limit);
+
+    if (indexedAlarmIds != null) {
+      return indexedAlarmIds;
+    }
+
+    final StringBuilder sbWhere = buildWhereClause(alarmDefId, metricName, metricDimensions, state,
+                                                   lifecycleState, link, stateUpdatedStart);
+
+    if (offset != null) {
+      sbWhere.append(" and a.id > :offset");
+    }
+
+    final String limitPart = limit > 0 ? " limit :limit" : "";
+
+    final String sql = String.format(FIND_ALARM_IDS_SQL, sbWhere, limitPart);
+
+    logger.debug("mysql sql: {}", sql);
+
+    final Query<Map<String, Object>> q = h.createQuery(sql);
+
+    bindFilters(q, tenantId, alarmDefId, metricName, metricDimensions, state, lifecycleState,
+                link, stateUpdatedStart);
+
+    if (offset != null) {
+      q.bind("offset", offset);
+    }
+
+    if (limit > 0) {
+      q.bind("limit", limit);
+    }
+
+    return q.map(StringMapper.FIRST).list();
+  }
+
+  @Override
+  public List<AlarmCount> count(String tenantId, String alarmDefId, String metricName,
+                                Map<String, String> metricDimensions, AlarmState state,
+                                String lifecycleState, String link, DateTime stateUpdatedStart) {
+
+    final String sql = String.format(COUNT_ALARMS_SQL,
+        buildWhereClause(alarmDefId, metricName, metricDimensions, state, lifecycleState, link,
+                         stateUpdatedStart));
+
+    logger.debug("mysql sql: {}", sql);
+
+    try (Handle h = db.open()) {
+
+      final Query<Map<String, Object>> q = h.createQuery(sql);
+
+      bindFilters(q, tenantId, alarmDefId, metricName, metricDimensions, state, lifecycleState,
+                  link, stateUpdatedStart);
+
+      return q.map(AlarmCountMapper.INSTANCE).list();
+    }
+  }
+
+  private StringBuilder buildWhereClause(String alarmDefId, String metricName,
+                                         Map<String, String> metricDimensions, AlarmState state,
+                                         String lifecycleState, String link,
+                                         DateTime stateUpdatedStart) {
+
+    final StringBuilder sbWhere = new StringBuilder();
 
     if (alarmDefId != null) {
       sbWhere.append(" and ad.id = :alarmDefId ");
@@ -174,150 +341,315 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
       sbWhere.append(" and a.state_updated_at >= :stateUpdatedStart");
     }
 
-    if (offset != null) {
-      sbWhere.append(" and a.id > :offset");
+    return sbWhere;
+  }
+
+  private void bindFilters(Query<?> q, String tenantId, String alarmDefId, String metricName,
+                           Map<String, String> metricDimensions, AlarmState state,
+                           String lifecycleState, String link, DateTime stateUpdatedStart) {
+
+    q.bind("tenantId", tenantId);
+
+    if (alarmDefId != null) {
+      q.bind("alarmDefId", alarmDefId);
     }
 
-    sbWhere.append(" order by a.id ASC ");
+    if (metricName != null) {
+      q.bind("metricName", metricName);
+    }
 
-    if (enforceLimit && limit > 0) {
-      sbWhere.append(" limit :limit");
+    if (state != null) {
+      q.bind("state", state.name());
     }
 
-    sbWhere.append(")");
+    if (lifecycleState != null) {
+      q.bind("lifecycleState", lifecycleState);
+    }
 
-    String sql = String.format(FIND_ALARMS_SQL, sbWhere);
+    if (link != null) {
+      q.bind("link", link);
+    }
 
+    if (stateUpdatedStart != null) {
+      q.bind("stateUpdatedStart", stateUpdatedStart.toString());
+    }
+
+    DimensionQueries.bindDimensionsToQuery(q, metricDimensions);
+  }
+
+  @Override
+  public Alarm findById(String tenantId, String alarmId) {
     try (Handle h = db.open()) {
+      return findAlarm(tenantId, alarmId, h);
+    }
+  }
 
-      final Query<Map<String, Object>> q = h.createQuery(sql).bind("tenantId", tenantId);
+  private Alarm findAlarm(String tenantId, String alarmId, Handle h) {
 
-      if (alarmDefId != null) {
-        q.bind("alarmDefId", alarmDefId);
-      }
+    final List<Alarm> alarms = findAlarms(h, tenantId, Collections.singletonList(alarmId));
 
-      if (metricName != null) {
-        q.bind("metricName", metricName);
-      }
+    if (alarms.isEmpty()) {
+      throw new EntityNotFoundException("No alarm exists for %s", alarmId);
+    }
 
-      if (state != null) {
-        q.bind("state", state.name());
-      }
+    return alarms.get(0);
+  }
 
-      if (lifecycleState != null) {
-        q.bind("lifecycleState", lifecycleState);
-      }
+  /**
+   * Loads the alarms with the given ids, with all of their metrics, in one query.
+   */
+  private List<Alarm> findAlarms(Handle h, String tenantId, List<String> alarmIds) {
 
-      if (link != null) {
-        q.bind("link", link);
-      }
+    if (alarmIds.isEmpty()) {
+      return new ArrayList<>();
+    }
 
-      if (stateUpdatedStart != null) {
-        q.bind("stateUpdatedStart", stateUpdatedStart.toString());
-      }
+    final Query<Map<String, Object>> q =
+        h.createQuery(String.format(FIND_ALARMS_BY_IDS_SQL, idParameters(alarmIds.size())))
+            .bind("tenantId", tenantId);
 
-      if (offset != null) {
-        q.bind("offset", offset);
-      }
+    bindIds(q, alarmIds);
 
-      if (enforceLimit && limit > 0) {
-        q.bind("limit", limit + 1);
-      }
+    return AlarmMetricRow.toAlarms(q.map(AlarmMetricRowMapper.INSTANCE).list());
+  }
+
+  /**
+   * Loads the alarms with the given ids, with their metrics, alarm definitions and sub alarms,
+   * in one query.
+   */
+  private List<AlarmUpdate> findAlarmsForUpdate(Handle h, String tenantId, List<String> alarmIds) {
+
+    if (alarmIds.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    final Query<Map<String, Object>> q =
+        h.createQuery(String.format(FIND_ALARM_FOR_UPDATE_SQL, idParameters(alarmIds.size())))
+            .bind("tenantId", tenantId);
 
-      DimensionQueries.bindDimensionsToQuery(q, metricDimensions);
+    bindIds(q, alarmIds);
 
-      final List<Map<String, Object>> rows = q.list();
+    return AlarmUpdateRow.toAlarmUpdates(q.map(AlarmUpdateRowMapper.INSTANCE).list());
+  }
 
-      return createAlarms(tenantId, rows);
+  /** Returns the named parameters :id0 to :id(count - 1) bound by {@link #bindIds}. */
+  private static String idParameters(int count) {
+    final StringBuilder idsPart = new StringBuilder();
 
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        idsPart.append(", ");
+      }
+      idsPart.append(":id").append(i);
     }
+
+    return idsPart.toString();
   }
 
-  @Override
-  public Alarm findById(String tenantId, String alarmId) {
-    try (Handle h = db.open()) {
-      return findAlarm(tenantId, alarmId, h);
+  private static void bindIds(SQLStatement<?> statement, List<String> ids) {
+    for (int i = 0; i < ids.size(); i++) {
+      statement.bind("id" + i, ids.get(i));
     }
   }
 
-  private Alarm findAlarm(String tenantId, String alarmId, Handle h) {
+  private static final class AlarmCountMapper implements ResultSetMapper<AlarmCount> {
 
-    final String sql = String.format(FIND_ALARM_BY_ID_SQL, " and a.id = :id", "");
+    static final AlarmCountMapper INSTANCE = new AlarmCountMapper();
 
-    final List<Map<String, Object>> rows = h.createQuery(sql).bind("id", alarmId)
-            .bind("tenantId", tenantId)
-            .list();
+    @Override
+    public AlarmCount map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+      return new AlarmCount(r.getString("alarm_definition_id"),
+                            r.getString("alarm_definition_name"),
+                            r.getString("severity"),
+                            AlarmState.valueOf(r.getString("state")),
+                            r.getString("lifecycle_state"),
+                            r.getLong("alarm_count"));
+    }
+  }
 
-    if (rows.isEmpty()) {
-      throw new EntityNotFoundException("No alarm exists for %s", alarmId);
+  private static final class AlarmMetricRowMapper implements ResultSetMapper<AlarmMetricRow> {
+
+    static final AlarmMetricRowMapper INSTANCE = new AlarmMetricRowMapper();
+
+    @Override
+    public AlarmMetricRow map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+      return map(new AlarmMetricRow(), r);
     }
 
-    return createAlarms(tenantId, rows).get(0);
+    static <T extends AlarmMetricRow> T map(T row, ResultSet r) throws SQLException {
+      row.alarmId = r.getString("id");
+      row.alarmDefinitionId = r.getString("alarm_definition_id");
+      row.alarmDefinitionName = r.getString("alarm_definition_name");
+      row.severity = r.getString("severity");
+      row.state = AlarmState.valueOf(r.getString("state"));
+      row.lifecycleState = r.getString("lifecycle_state");
+      row.link = r.getString("link");
+      row.stateUpdatedTimestamp = toDateTime(r.getTimestamp("state_updated_at"));
+      row.updatedTimestamp = toDateTime(r.getTimestamp("updated_at"));
+      row.createdTimestamp = toDateTime(r.getTimestamp("created_at"));
+      row.metricId = Hex.encodeHexString(r.getBytes("metric_definition_dimensions_id"));
+      row.metricName = r.getString("metric_name");
+      row.dimensionName = r.getString("dimension_name");
+      row.dimensionValue = r.getString("dimension_value");
+      return row;
+    }
+
+    private static DateTime toDateTime(Timestamp timestamp) {
+      return timestamp == null ? null : new DateTime(timestamp.getTime(), DateTimeZone.UTC);
+    }
   }
 
-  private List<Alarm> createAlarms(String tenantId, List<Map<String, Object>> rows) {
-    Alarm alarm;
-    String previousAlarmId = null;
-    final List<Alarm> alarms = new LinkedList<>();
-    List<MetricDefinition> alarmedMetrics = null;
-    for (final Map<String, Object> row : rows) {
-      final String alarmId = (String) row.get("id");
-      if (!alarmId.equals(previousAlarmId)) {
-        alarmedMetrics = new ArrayList<>();
-        alarm =
-            new Alarm(alarmId, getString(row, "alarm_definition_id"), getString(row,
-                      "alarm_definition_name"), getString(row, "severity"), alarmedMetrics,
-                      AlarmState.valueOf(getString(row, "state")),
-                      getString(row, "lifecycle_state"),
-                      getString(row, "link"),
-                      new DateTime(((Timestamp)row.get("state_updated_timestamp")).getTime(), DateTimeZone.forID("UTC")),
-                      new DateTime(((Timestamp)row.get("updated_timestamp")).getTime(), DateTimeZone.forID("UTC")),
-                      new DateTime(((Timestamp)row.get("created_timestamp")).getTime(), DateTimeZone.forID("UTC")));
-        alarms.add(alarm);
+  private static final class AlarmUpdateRowMapper implements ResultSetMapper<AlarmUpdateRow> {
+
+    static final AlarmUpdateRowMapper INSTANCE = new AlarmUpdateRowMapper();
+
+    @Override
+    public AlarmUpdateRow map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+      final AlarmUpdateRow row = AlarmMetricRowMapper.map(new AlarmUpdateRow(), r);
+      row.alarmDefinitionDescription = r.getString("alarm_definition_description");
+      row.actionsEnabled = r.getBoolean("actions_enabled");
+      row.subAlarmId = r.getString("sub_alarm_id");
+      row.subAlarmExpression = r.getString("sub_alarm_expression");
+      return row;
+    }
+  }
+
+  @Override
+  public Alarm update(String tenantId, String id, AlarmState state, String lifecycleState, String link) {
+    return update(tenantId, id, false, state, lifecycleState, link).getAlarm();
+  }
+
+  @Override
+  public AlarmUpdate update(String tenantId, String id, boolean patch, AlarmState state,
+                            String lifecycleState, String link) {
+    return update(tenantId, id, patch, state, lifecycleState, link, null);
+  }
+
+  @Override
+  public AlarmUpdate update(String tenantId, String id, boolean patch, AlarmState state,
+                            String lifecycleState, String link,
+                            OutboxEventFactory<AlarmUpdate> events) {
+    Handle h = db.open();
+
+    try {
+      h.begin();
+
+      final List<AlarmUpdate> found =
+          findAlarmsForUpdate(h, tenantId, Collections.singletonList(id));
+
+      if (found.isEmpty()) {
+        throw new EntityNotFoundException("No alarm exists for %s", id);
       }
-      previousAlarmId = alarmId;
-      final Map<String, String> dimensionMap = new HashMap<>();
-
-      // Not all Metrics have dimensions (at least theoretically)
-      if (row.containsKey("metric_dimensions")) {
-        final String dimensions = getString(row, "metric_dimensions");
-        if (dimensions != null && !dimensions.isEmpty()) {
-          for (String dimension : dimensions.split(",")) {
-            final String[] parsed_dimension = dimension.split("=");
-            if (parsed_dimension.length == 2) {
-              dimensionMap.put(parsed_dimension[0], parsed_dimension[1]);
-            } else {
-              logger.error("Failed to parse dimension. Dimension is malformed: {}", dimension);
-            }
-          }
-        }
+
+      final AlarmUpdate original = found.get(0);
+      final Alarm originalAlarm = original.getAlarm();
+
+      if (patch) {
+        state = state == null ? originalAlarm.getState() : state;
+        lifecycleState = lifecycleState == null ? originalAlarm.getLifecycleState() : lifecycleState;
+        link = link == null ? originalAlarm.getLink() : link;
       }
 
-      alarmedMetrics.add(new MetricDefinition(getString(row, "metric_name"), dimensionMap));
+      final String stateUpdatedPart =
+          originalAlarm.getState().equals(state) ? "" : ", state_updated_at = NOW()";
+
+      h.createStatement(String.format(UPDATE_ALARM_SQL, stateUpdatedPart))
+          .bind("state", state.name())
+          .bind("lifecycleState", lifecycleState)
+          .bind("link", link)
+          .bind("id", id)
+          .execute();
+
+      if (events != null) {
+        OutboxMySqlRepoImpl.append(h, events.eventsFor(original));
+      }
+
+      h.commit();
+      alarmIndex.stateChanged(tenantId, id, state);
+      return original;
+    } catch (RuntimeException e) {
+      h.rollback();
+      throw e;
+    } finally {
+      h.close();
     }
-    return alarms;
   }
 
-  private String getString(final Map<String, Object> row, String fieldName) {
-    return (String) row.get(fieldName);
+  @Override
+  public List<AlarmUpdate> update(String tenantId, List<String> ids, AlarmState state,
+                                  String lifecycleState, String link) {
+    return update(tenantId, ids, state, lifecycleState, link, null);
   }
 
   @Override
-  public Alarm update(String tenantId, String id, AlarmState state, String lifecycleState, String link) {
+  public List<AlarmUpdate> update(String tenantId, List<String> ids, AlarmState state,
+                                  String lifecycleState, String link,
+                                  OutboxEventFactory<AlarmUpdate> events) {
     Handle h = db.open();
 
     try {
       h.begin();
-      final Alarm originalAlarm = findAlarm(tenantId, id, h);
-      if (!originalAlarm.getState().equals(state)) {
-        h.insert(
-            "update alarm set state = ?, state_updated_at = NOW() where id = ?",
-            state.name(), id);
+
+      final List<AlarmUpdate> originals = findAlarmsForUpdate(h, tenantId, ids);
+
+      if (originals.isEmpty()) {
+        h.commit();
+        return originals;
+      }
+
+      final List<String> foundIds = new ArrayList<>(originals.size());
+
+      for (AlarmUpdate original : originals) {
+        foundIds.add(original.getAlarm().getId());
+      }
+
+      // state_updated_at is assigned before state so it still sees the old state.
+      final StringBuilder setPart = new StringBuilder("updated_at = NOW()");
+
+      if (state != null) {
+        setPart.append(", state_updated_at = case when state = :state then state_updated_at")
+            .append(" else NOW() end, state = :state");
+      }
+      if (lifecycleState != null) {
+        setPart.append(", lifecycle_state = :lifecycleState");
+      }
+      if (link != null) {
+        setPart.append(", link = :link");
+      }
+
+      final Update update = h.createStatement(String.format(UPDATE_ALARMS_SQL, setPart,
+                                                            idParameters(foundIds.size())));
+
+      if (state != null) {
+        update.bind("state", state.name());
+      }
+      if (lifecycleState != null) {
+        update.bind("lifecycleState", lifecycleState);
       }
-      h.insert("update alarm set lifecycle_state = ?, link = ?, updated_at = NOW() where id = ?",
-               lifecycleState, link, id);
+      if (link != null) {
+        update.bind("link", link);
+      }
+
+      bindIds(update, foundIds);
+      update.execute();
+
+      if (events != null) {
+        final List<OutboxEvent> outboxEvents = new ArrayList<>();
+        for (AlarmUpdate original : originals) {
+          outboxEvents.addAll(events.eventsFor(original));
+        }
+        OutboxMySqlRepoImpl.append(h, outboxEvents);
+      }
+
       h.commit();
-      return originalAlarm;
+
+      if (state != null) {
+        for (String foundId : foundIds) {
+          alarmIndex.stateChanged(tenantId, foundId, state);
+        }
+      }
+
+      return originals;
     } catch (RuntimeException e) {
       h.rollback();
       throw e;
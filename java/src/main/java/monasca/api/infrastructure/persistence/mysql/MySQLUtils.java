@@ -22,6 +22,7 @@ import org.skife.jdbi.v2.util.StringMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -72,4 +73,45 @@ public class MySQLUtils
     return alarmIdList;
   }
 
+  public List<Object[]> findAlarmMetricDimensions(String tenantId) {
+
+    List<Object[]> rows = new ArrayList<>();
+
+    try (Handle h = this.mysql.open()) {
+
+      logger.debug("mysql sql: {}", FIND_ALARM_METRIC_DIMENSIONS_SQL);
+
+      Query<Map<String, Object>> query =
+          h.createQuery(FIND_ALARM_METRIC_DIMENSIONS_SQL).bind("tenantId", tenantId);
+
+      for (Map<String, Object> row : query.list()) {
+        rows.add(new Object[]{row.get("id"), row.get("metric_dimension_set_id"), row.get("name"),
+                              row.get("value")});
+      }
+    }
+
+    return rows;
+  }
+
+  public List<Object[]> findAlarmIndexRows(String tenantId) {
+
+    List<Object[]> rows = new ArrayList<>();
+
+    try (Handle h = this.mysql.open()) {
+
+      logger.debug("mysql sql: {}", FIND_ALARM_INDEX_SQL);
+
+      Query<Map<String, Object>> query =
+          h.createQuery(FIND_ALARM_INDEX_SQL).bind("tenantId", tenantId);
+
+      for (Map<String, Object> row : query.list()) {
+        rows.add(new Object[]{row.get("id"), row.get("alarm_definition_id"), row.get("state"),
+                              row.get("metric_definition_dimensions_id"), row.get("metric_name"),
+                              row.get("name"), row.get("value")});
+      }
+    }
+
+    return rows;
+  }
+
 }
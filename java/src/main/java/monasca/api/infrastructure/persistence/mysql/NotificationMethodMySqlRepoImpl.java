@@ -13,8 +13,12 @@
  */
 package monasca.api.infrastructure.persistence.mysql;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -23,6 +27,7 @@ import javax.inject.Named;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.util.StringMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -89,6 +94,47 @@ public class NotificationMethodMySqlRepoImpl implements NotificationMethodRepo {
     }
   }
 
+  @Override
+  public List<String> existAll(String tenantId, Collection<String> notificationMethodIds) {
+    final List<String> missing = new ArrayList<>();
+
+    if (notificationMethodIds.isEmpty()) {
+      return missing;
+    }
+
+    final StringBuilder idsPart = new StringBuilder();
+
+    for (int i = 0; i < notificationMethodIds.size(); i++) {
+      if (i > 0) {
+        idsPart.append(", ");
+      }
+      idsPart.append(":id").append(i);
+    }
+
+    try (Handle h = db.open()) {
+      Query<Map<String, Object>> q = h
+          .createQuery(
+              "select id from notification_method where tenant_id = :tenantId and id in ("
+                  + idsPart + ")")
+          .bind("tenantId", tenantId);
+
+      int i = 0;
+      for (String notificationMethodId : notificationMethodIds) {
+        q.bind("id" + i++, notificationMethodId);
+      }
+
+      final Set<String> found = new HashSet<>(q.map(StringMapper.FIRST).list());
+
+      for (String notificationMethodId : notificationMethodIds) {
+        if (!found.contains(notificationMethodId)) {
+          missing.add(notificationMethodId);
+        }
+      }
+
+      return missing;
+    }
+  }
+
   private String getNotificationIdForTenantIdAndName(Handle h,String tenantId, String name) {
     Map<String, Object> map = h
         .createQuery(
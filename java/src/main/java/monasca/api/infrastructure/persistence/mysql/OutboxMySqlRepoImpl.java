@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.mysql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import monasca.api.domain.model.outbox.OutboxEvent;
+import monasca.api.domain.model.outbox.OutboxRepo;
+
+/**
+ * Outbox repository implementation. The other repositories write to the outbox with
+ * {@link #append(Handle, List)} inside their own transactions.
+ */
+public class OutboxMySqlRepoImpl implements OutboxRepo {
+
+  private static final String INSERT_EVENT_SQL =
+      "insert into event_outbox (topic, message_key, payload, created_at) "
+      + "values (:topic, :key, :payload, NOW())";
+
+  private static final String FIND_OLDEST_EVENTS_SQL =
+      "select id, topic, message_key, payload from event_outbox order by id limit :limit "
+      + "for update";
+
+  private static final String COUNT_CLAIMED_EVENTS_SQL =
+      "select count(*) from event_outbox where id between :first_id and :last_id "
+      + "and claimed_at > :expired_at";
+
+  private static final String CLAIM_EVENT_SQL =
+      "update event_outbox set claimed_by = :claim, claimed_at = :claimed_at where id = :id";
+
+  private static final String RELEASE_EVENTS_SQL =
+      "update event_outbox set claimed_by = null, claimed_at = null where claimed_by = :claim";
+
+  private static final String DELETE_EVENTS_SQL =
+      "delete from event_outbox where claimed_by = :claim";
+
+  private static final ResultSetMapper<OutboxEvent> OUTBOX_EVENT_MAPPER =
+      new ResultSetMapper<OutboxEvent>() {
+        @Override
+        public OutboxEvent map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+          return new OutboxEvent(r.getLong("id"), r.getString("topic"),
+                                 r.getString("message_key"), r.getString("payload"));
+        }
+      };
+
+  private final DBI db;
+
+  @Inject
+  public OutboxMySqlRepoImpl(@Named("mysql") DBI db) {
+    this.db = db;
+  }
+
+  /**
+   * Writes the {@code events} to the outbox with the handle {@code h}, so they are committed or
+   * rolled back with its current transaction.
+   */
+  static void append(Handle h, List<OutboxEvent> events) {
+    if (events == null || events.isEmpty()) {
+      return;
+    }
+
+    final PreparedBatch batch = h.prepareBatch(INSERT_EVENT_SQL);
+
+    for (OutboxEvent event : events) {
+      batch.add()
+          .bind("topic", event.getTopic())
+          .bind("key", event.getKey())
+          .bind("payload", event.getPayload());
+    }
+
+    batch.execute();
+  }
+
+  @Override
+  public int relay(int limit, int leaseSeconds, Publisher publisher) {
+    final String claim = UUID.randomUUID().toString();
+    final List<OutboxEvent> events = claim(limit, leaseSeconds, claim);
+
+    if (events.isEmpty()) {
+      return 0;
+    }
+
+    try (Handle h = db.open()) {
+      try {
+        publisher.publish(events);
+      } catch (RuntimeException e) {
+        h.createStatement(RELEASE_EVENTS_SQL).bind("claim", claim).execute();
+        throw e;
+      }
+
+      // Rows whose lease expired and were claimed again are left to the new claim.
+      h.createStatement(DELETE_EVENTS_SQL).bind("claim", claim).execute();
+    }
+
+    return events.size();
+  }
+
+  /**
+   * Claims the oldest events for {@code leaseSeconds} in a short transaction, unless some of them
+   * are still claimed by another relay, keeping the events in order across relays.
+   */
+  private List<OutboxEvent> claim(int limit, int leaseSeconds, String claim) {
+    final DateTime now = DateTime.now(DateTimeZone.UTC);
+
+    try (Handle h = db.open()) {
+      h.begin();
+
+      try {
+        final List<OutboxEvent> events = h.createQuery(FIND_OLDEST_EVENTS_SQL)
+            .bind("limit", limit)
+            .map(OUTBOX_EVENT_MAPPER)
+            .list();
+
+        if (events.isEmpty() || h.createQuery(COUNT_CLAIMED_EVENTS_SQL)
+            .bind("first_id", events.get(0).getId())
+            .bind("last_id", events.get(events.size() - 1).getId())
+            .bind("expired_at", new Timestamp(now.minusSeconds(leaseSeconds).getMillis()))
+            .mapTo(Long.class)
+            .first() > 0) {
+          h.commit();
+          return Collections.emptyList();
+        }
+
+        final PreparedBatch batch = h.prepareBatch(CLAIM_EVENT_SQL);
+        for (OutboxEvent event : events) {
+          batch.add()
+              .bind("claim", claim)
+              .bind("claimed_at", new Timestamp(now.getMillis()))
+              .bind("id", event.getId());
+        }
+        batch.execute();
+
+        h.commit();
+        return events;
+      } catch (RuntimeException e) {
+        h.rollback();
+        throw e;
+      }
+    }
+  }
+}
@@ -15,9 +15,9 @@ package monasca.api.infrastructure.persistence.vertica;
 
 import monasca.api.domain.model.alarmstatehistory.AlarmStateHistory;
 import monasca.api.domain.model.alarmstatehistory.AlarmStateHistoryRepo;
-import monasca.api.infrastructure.persistence.DimensionQueries;
+import monasca.api.infrastructure.persistence.AlarmIdIndex;
+import monasca.api.infrastructure.persistence.ChunkedAlarmStateHistoryQuery;
 import monasca.api.infrastructure.persistence.PersistUtils;
-import monasca.api.infrastructure.persistence.Utils;
 import monasca.common.model.alarm.AlarmState;
 import monasca.common.model.alarm.AlarmTransitionSubAlarm;
 import monasca.common.model.metric.MetricDefinition;
@@ -82,20 +82,23 @@ public class AlarmStateHistoryVerticaRepoImpl implements AlarmStateHistoryRepo {
       new TypeReference<List<AlarmTransitionSubAlarm>>() {};
 
   private final DBI vertica;
-  private final Utils utils;
+  private final AlarmIdIndex alarmIdIndex;
   private final PersistUtils persistUtils;
+  private final ChunkedAlarmStateHistoryQuery chunkedQuery;
 
   private final SimpleDateFormat simpleDateFormat;
 
   @Inject
   public AlarmStateHistoryVerticaRepoImpl(
       @Named("vertica") DBI vertica,
-      Utils utils,
-      PersistUtils persistUtils) {
+      AlarmIdIndex alarmIdIndex,
+      PersistUtils persistUtils,
+      ChunkedAlarmStateHistoryQuery chunkedQuery) {
 
     this.vertica = vertica;
-    this.utils = utils;
+    this.alarmIdIndex = alarmIdIndex;
     this.persistUtils = persistUtils;
+    this.chunkedQuery = chunkedQuery;
 
     simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
     simpleDateFormat.setTimeZone(TimeZone.getTimeZone("GMT-0"));
@@ -151,14 +154,14 @@ public class AlarmStateHistoryVerticaRepoImpl implements AlarmStateHistoryRepo {
 
   @Override
   public List<AlarmStateHistory> find(
-      String tenantId,
+      final String tenantId,
       Map<String, String> dimensions,
       DateTime startTime,
       @Nullable DateTime endTime,
       @Nullable String offset,
-      int limit) {
+      final int limit) throws Exception {
 
-    List<String> alarmIds = this.utils.findAlarmIds(tenantId, dimensions);
+    List<String> alarmIds = this.alarmIdIndex.findAlarmIds(tenantId, dimensions);
 
     if (alarmIds == null || alarmIds.isEmpty()) {
 
@@ -168,6 +171,35 @@ public class AlarmStateHistoryVerticaRepoImpl implements AlarmStateHistoryRepo {
 
     }
 
+    // Timestamp will not work in this query for some unknown reason, so the bind values are
+    // formatted once here rather than in each chunk.
+    final String startTimeString =
+        startTime != null ? simpleDateFormat.format(new Date(startTime.getMillis())) : null;
+
+    final String endTimeString =
+        endTime != null ? simpleDateFormat.format(new Date(endTime.getMillis())) : null;
+
+    final String offsetString =
+        offset != null && !offset.isEmpty()
+        ? simpleDateFormat.format(new Date(Long.valueOf(offset))) : null;
+
+    return this.chunkedQuery.find(alarmIds, limit + 1, new ChunkedAlarmStateHistoryQuery.Chunk() {
+      @Override
+      public List<AlarmStateHistory> find(List<String> alarmIdChunk) {
+        return findByAlarmIds(tenantId, alarmIdChunk, startTimeString, endTimeString,
+                              offsetString, limit);
+      }
+    });
+  }
+
+  private List<AlarmStateHistory> findByAlarmIds(
+      String tenantId,
+      List<String> alarmIds,
+      @Nullable String startTime,
+      @Nullable String endTime,
+      @Nullable String offset,
+      int limit) {
+
     StringBuilder sb = new StringBuilder();
 
     sb.append(" and alarm_id in (");
@@ -197,7 +229,7 @@ public class AlarmStateHistoryVerticaRepoImpl implements AlarmStateHistoryRepo {
 
     }
 
-    if (offset != null && !offset.isEmpty()) {
+    if (offset != null) {
 
       sb.append(" and time_stamp > :offset");
 
@@ -220,8 +252,7 @@ public class AlarmStateHistoryVerticaRepoImpl implements AlarmStateHistoryRepo {
 
         logger.debug("binding startime: {}", startTime);
 
-        // Timestamp will not work in this query for some unknown reason.
-        verticaQuery.bind("startTime", simpleDateFormat.format(new Date(startTime.getMillis())));
+        verticaQuery.bind("startTime", startTime);
 
       }
 
@@ -229,28 +260,28 @@ public class AlarmStateHistoryVerticaRepoImpl implements AlarmStateHistoryRepo {
 
         logger.debug("binding endtime: {}", endTime);
 
-        // Timestamp will not work in this query for some unknown reason.
-        verticaQuery.bind("endTime", simpleDateFormat.format(new Date(endTime.getMillis())));
+        verticaQuery.bind("endTime", endTime);
 
       }
 
-      if (offset != null && !offset.isEmpty()) {
+      if (offset != null) {
 
         logger.debug("binding offset: {}", offset);
 
-        // Timestamp will not work in this query for some unknown reason.
-        String timeStamp = simpleDateFormat.format(new Date(Long.valueOf(offset)));
-
-        verticaQuery.bind("offset", timeStamp);
+        verticaQuery.bind("offset", offset);
 
       }
 
-      DimensionQueries.bindDimensionsToQuery(verticaQuery, dimensions);
-
       for (Map<String, Object> row : verticaQuery.list()) {
 
-        alarmStateHistoryList.add(getAlarmStateHistory(row));
+        AlarmStateHistory alarmStateHistory = getAlarmStateHistory(row);
+
+        // Entries without a parsable timestamp can't be merged across chunks.
+        if (alarmStateHistory != null) {
+
+          alarmStateHistoryList.add(alarmStateHistory);
 
+        }
       }
 
     }
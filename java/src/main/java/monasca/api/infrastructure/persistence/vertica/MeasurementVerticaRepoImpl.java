@@ -13,7 +13,11 @@
  */
 package monasca.api.infrastructure.persistence.vertica;
 
+import monasca.api.ApiConfig;
 import monasca.api.domain.exception.MultipleMetricsException;
+import monasca.api.domain.model.common.SeriesOffset;
+import monasca.api.domain.model.measurement.MeasurementDownsampler;
+import monasca.api.domain.model.measurement.MeasurementHandler;
 import monasca.api.domain.model.measurement.MeasurementRepo;
 import monasca.api.domain.model.measurement.Measurements;
 import monasca.api.infrastructure.persistence.DimensionQueries;
@@ -35,11 +39,13 @@ import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.ResultIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,19 +70,61 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
       + "order by mes.time_stamp ASC "
       + "limit :limit";
 
+  // Only ever fetch two ids, which is enough to tell whether the criteria match more than one
+  // series. Series without measurements in the time range are not counted, the exists stops at
+  // the first measurement of each series.
+  private static final String FIND_DEF_DIMS_IDS_SQL =
+      "select defdims.id "
+      + "from MonMetrics.Definitions def, MonMetrics.DefinitionDimensions defdims "
+      + "where def.id = defdims.definition_id "
+      + "and def.tenant_id = :tenantId "
+      + "%s " // metric name here
+      + "%s " // dimension and clause here
+      + "and exists (select 1 from MonMetrics.Measurements mes "
+      + "where mes.definition_dimensions_id = defdims.id "
+      + "and mes.time_stamp >= :startTime "
+      + "%s) " // end time here
+      + "limit 2";
+
+  private static final String EXPORT_SQL =
+      "select def.name, mes.definition_dimensions_id, defdims.dimension_set_id, "
+      + "mes.time_stamp, mes.value, mes.value_meta "
+      + "from MonMetrics.Measurements mes, MonMetrics.Definitions def, MonMetrics.DefinitionDimensions defdims "
+      + "where mes.definition_dimensions_id = defdims.id "
+      + "and def.id = defdims.definition_id "
+      + "and def.tenant_id = :tenantId "
+      + "and mes.time_stamp >= :startTime "
+      + "%s " // metric name and end time here
+      + "%s " // dimension and clause here
+      + "order by mes.time_stamp ASC";
+
+  // The measurements of the series of one group, in time order.
+  private static final String FIND_GROUP_SQL =
+      "select mes.time_stamp, mes.value, mes.value_meta "
+      + "from MonMetrics.Measurements mes "
+      + "where to_hex(mes.definition_dimensions_id) %s"
+      + "and mes.time_stamp >= :startTime "
+      + "%s " // end time and offset here
+      + "order by mes.time_stamp ASC "
+      + "limit :limit";
+
   private static final String TABLE_TO_JOIN_DIMENSIONS_ON = "defDims";
 
   private final DBI db;
 
+  private final int exportFetchSize;
+
   private final ObjectMapper objectMapper = new ObjectMapper();
 
   private final static TypeReference VALUE_META_TYPE = new TypeReference<Map<String, String>>() {};
 
   @Inject
   public MeasurementVerticaRepoImpl(
-      @Named("vertica") DBI db) {
+      @Named("vertica") DBI db,
+      ApiConfig config) {
 
     this.db = db;
+    this.exportFetchSize = config.measurementExport.fetchSize;
   }
 
   @Override
@@ -88,13 +136,49 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
       @Nullable DateTime endTime,
       @Nullable String offset,
       int limit,
-      Boolean mergeMetricsFlag) throws MultipleMetricsException {
+      Boolean mergeMetricsFlag,
+      @Nullable List<String> groupBy) throws MultipleMetricsException {
 
     try (Handle h = db.open()) {
 
+      if (groupBy != null) {
+
+        return findGrouped(h, tenantId, name, dimensions, startTime, endTime, offset, limit,
+                           groupBy);
+
+      }
+
+      byte[] defDimsId = null;
+
+      if (!Boolean.TRUE.equals(mergeMetricsFlag)) {
+
+        List<byte[]> defDimsIds =
+            findDefDimsIds(h, tenantId, name, dimensions, startTime, endTime, false);
+
+        if (defDimsIds.isEmpty()) {
+
+          return new ArrayList<>();
+
+        }
+
+        if (defDimsIds.size() > 1) {
+
+          throw new MultipleMetricsException(name, dimensions);
+
+        }
+
+        defDimsId = defDimsIds.get(0);
+
+      }
+
       StringBuilder sb = new StringBuilder();
 
-      if (name != null && !name.isEmpty()) {
+      if (defDimsId != null) {
+
+        // The series is already known, so the name and dimension filters are redundant.
+        sb.append(" and mes.definition_dimensions_id = :defDimsId");
+
+      } else if (name != null && !name.isEmpty()) {
 
         sb.append(" and def.name = :name");
 
@@ -115,7 +199,9 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
       String sql =
           String.format(FIND_BY_METRIC_DEF_SQL,
               sb,
-              MetricQueries.buildDimensionAndClause(dimensions, TABLE_TO_JOIN_DIMENSIONS_ON));
+              defDimsId != null
+              ? ""
+              : MetricQueries.buildDimensionAndClause(dimensions, TABLE_TO_JOIN_DIMENSIONS_ON));
 
       Query<Map<String, Object>> query =
           h.createQuery(sql)
@@ -123,11 +209,21 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
               .bind("startTime", new Timestamp(startTime.getMillis()))
               .bind("limit", limit + 1);
 
-      if (name != null && !name.isEmpty()) {
+      if (defDimsId != null) {
 
-        logger.debug("binding name: {}", name);
+        query.bind("defDimsId", defDimsId);
 
-        query.bind("name", name);
+      } else {
+
+        if (name != null && !name.isEmpty()) {
+
+          logger.debug("binding name: {}", name);
+
+          query.bind("name", name);
+
+        }
+
+        DimensionQueries.bindDimensionsToQuery(query, dimensions);
 
       }
 
@@ -147,8 +243,6 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
 
       }
 
-      DimensionQueries.bindDimensionsToQuery(query, dimensions);
-
       List<Map<String, Object>> rows = query.list();
 
       Map<ByteBuffer, Measurements> results = new LinkedHashMap<>();
@@ -167,26 +261,11 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
 
         ByteBuffer defdimsId = ByteBuffer.wrap(defdimsIdBytes);
 
-        String timestamp = DATETIME_FORMATTER.print(((Timestamp) row.get("time_stamp")).getTime());
+        long timestamp = ((Timestamp) row.get("time_stamp")).getTime();
 
         double value = (double) row.get("value");
 
-        String valueMetaString = (String) row.get("value_meta");
-
-        Map<String, String> valueMetaMap = new HashMap<>();
-
-        if (valueMetaString != null && !valueMetaString.isEmpty()) {
-
-          try {
-
-            valueMetaMap = this.objectMapper.readValue(valueMetaString, VALUE_META_TYPE);
-
-          } catch (IOException e) {
-
-            logger.error("failed to parse value metadata: {}", valueMetaString);
-          }
-
-        }
+        Map<String, String> valueMetaMap = parseValueMeta((String) row.get("value_meta"));
 
         Measurements measurements;
 
@@ -205,31 +284,310 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
           if (Boolean.TRUE.equals(mergeMetricsFlag)) {
 
             measurements =
-                new Measurements(metricName, new HashMap<String, String>(),
-                                 new ArrayList<Object[]>());
+                new Measurements(metricName, new HashMap<String, String>());
 
             results.put(defId, measurements);
 
           } else {
 
             measurements =
-                new Measurements(metricName, MetricQueries.dimensionsFor(h, dimSetIdBytes),
-                                 new ArrayList<Object[]>());
+                new Measurements(metricName, MetricQueries.dimensionsFor(h, dimSetIdBytes));
 
             results.put(defdimsId, measurements);
+          }
+        }
 
-            if (results.keySet().size() > 1) {
+        measurements.addMeasurement(timestamp, value, valueMetaMap);
+      }
 
-              throw new MultipleMetricsException(name, dimensions);
+      return new ArrayList<>(results.values());
+    }
+  }
+
+  /**
+   * Finds the measurements of the groups from the offset group on, one group per query until the
+   * page is full. Only the series definitions are listed to number the groups, the measurements
+   * read are those of the groups on the page.
+   */
+  private List<Measurements> findGrouped(
+      Handle h,
+      String tenantId,
+      String name,
+      Map<String, String> dimensions,
+      DateTime startTime,
+      @Nullable DateTime endTime,
+      @Nullable String offset,
+      int limit,
+      List<String> groupBy) {
+
+    List<MetricQueries.SeriesGroup> groups =
+        MetricQueries.findSeriesGroups(h, tenantId, name, dimensions, groupBy);
+
+    SeriesOffset seriesOffset =
+        offset != null && !offset.isEmpty() ? SeriesOffset.parse(offset) : null;
+
+    int index = seriesOffset != null ? seriesOffset.getIndex() : 0;
+
+    // One measurement past the limit tells that there is a next page.
+    int remaining = limit + 1;
+
+    List<Measurements> results = new ArrayList<>();
+
+    for (; index < groups.size() && remaining > 0; index++) {
+
+      MetricQueries.SeriesGroup group = groups.get(index);
+
+      // Only the offset group resumes after the offset, the following ones start over.
+      boolean resume = seriesOffset != null && index == seriesOffset.getIndex();
+
+      StringBuilder sb = new StringBuilder();
+
+      if (endTime != null) {
+
+        sb.append(" and mes.time_stamp <= :endTime");
+
+      }
+
+      if (resume) {
+
+        sb.append(" and mes.time_stamp > :offset");
+
+      }
+
+      String sql =
+          String.format(FIND_GROUP_SQL,
+                        MetricQueries.createDefDimIdInClause(group.defDimsIds),
+                        sb);
+
+      Query<Map<String, Object>> query =
+          h.createQuery(sql)
+              .bind("startTime", new Timestamp(startTime.getMillis()))
+              .bind("limit", remaining);
+
+      if (endTime != null) {
+
+        query.bind("endTime", new Timestamp(endTime.getMillis()));
+
+      }
+
+      if (resume) {
+
+        query.bind("offset", new Timestamp(seriesOffset.getTimestamp().getMillis()));
+
+      }
+
+      Measurements measurements = new Measurements(group.name, group.dimensions);
+
+      measurements.setId(String.valueOf(index));
+
+      for (Map<String, Object> row : query.list()) {
+
+        measurements.addMeasurement(((Timestamp) row.get("time_stamp")).getTime(),
+                                    (double) row.get("value"),
+                                    parseValueMeta((String) row.get("value_meta")));
+      }
+
+      if (measurements.size() > 0) {
+
+        results.add(measurements);
+
+        remaining -= measurements.size();
+
+      }
+    }
+
+    return results;
+  }
+
+  private Map<String, String> parseValueMeta(String valueMetaString) {
+
+    Map<String, String> valueMetaMap = new HashMap<>();
+
+    if (valueMetaString != null && !valueMetaString.isEmpty()) {
+
+      try {
+
+        valueMetaMap = this.objectMapper.readValue(valueMetaString, VALUE_META_TYPE);
+
+      } catch (IOException e) {
+
+        logger.error("failed to parse value metadata: {}", valueMetaString);
+      }
+
+    }
+
+    return valueMetaMap;
+  }
+
+  @Override
+  public List<Measurements> findDownsampled(
+      String tenantId,
+      String name,
+      Map<String, String> dimensions,
+      DateTime startTime,
+      @Nullable DateTime endTime,
+      Boolean mergeMetricsFlag,
+      @Nullable List<String> groupBy,
+      int maxPoints) throws Exception {
+
+    final DateTime end = endTime != null ? endTime : DateTime.now(DateTimeZone.UTC);
+
+    if (!Boolean.TRUE.equals(mergeMetricsFlag) && groupBy == null) {
+
+      try (Handle h = db.open()) {
+
+        // Same end exclusive time range as the export below.
+        if (findDefDimsIds(h, tenantId, name, dimensions, startTime, end, true).size() > 1) {
+
+          throw new MultipleMetricsException(name, dimensions);
 
-            }
-          }
         }
+      }
+    }
+
+    MeasurementDownsampler downsampler =
+        new MeasurementDownsampler(startTime, end, maxPoints, mergeMetricsFlag, groupBy);
+
+    export(tenantId, name, dimensions, startTime, end, downsampler);
+
+    return downsampler.result();
+  }
+
+  @Override
+  public void export(
+      String tenantId,
+      String name,
+      Map<String, String> dimensions,
+      DateTime startTime,
+      @Nullable DateTime endTime,
+      MeasurementHandler handler) throws Exception {
+
+    // Dimensions are looked up on their own connection, the export query holds the other one
+    // until every row has been fetched.
+    try (Handle h = db.open(); Handle dimensionsHandle = db.open()) {
+
+      StringBuilder sb = new StringBuilder();
+
+      if (name != null && !name.isEmpty()) {
+
+        sb.append(" and def.name = :name");
 
-        measurements.addMeasurement(new Object[] {timestamp, value, valueMetaMap});
       }
 
-      return new ArrayList<>(results.values());
+      if (endTime != null) {
+
+        sb.append(" and mes.time_stamp < :endTime");
+
+      }
+
+      String sql =
+          String.format(EXPORT_SQL,
+              sb,
+              MetricQueries.buildDimensionAndClause(dimensions, TABLE_TO_JOIN_DIMENSIONS_ON));
+
+      Query<Map<String, Object>> query =
+          h.createQuery(sql)
+              .bind("tenantId", tenantId)
+              .bind("startTime", new Timestamp(startTime.getMillis()))
+              .setFetchSize(this.exportFetchSize);
+
+      if (name != null && !name.isEmpty()) {
+
+        query.bind("name", name);
+
+      }
+
+      if (endTime != null) {
+
+        query.bind("endTime", new Timestamp(endTime.getMillis()));
+
+      }
+
+      DimensionQueries.bindDimensionsToQuery(query, dimensions);
+
+      Map<ByteBuffer, Map<String, String>> dimensionsBySeries = new HashMap<>();
+
+      try (ResultIterator<Map<String, Object>> rows = query.iterator()) {
+
+        while (rows.hasNext()) {
+
+          Map<String, Object> row = rows.next();
+
+          ByteBuffer defdimsId = ByteBuffer.wrap((byte[]) row.get("definition_dimensions_id"));
+
+          Map<String, String> seriesDimensions = dimensionsBySeries.get(defdimsId);
+
+          if (seriesDimensions == null) {
+
+            seriesDimensions = MetricQueries.dimensionsFor(dimensionsHandle,
+                                                           (byte[]) row.get("dimension_set_id"));
+
+            dimensionsBySeries.put(defdimsId, seriesDimensions);
+
+          }
+
+          String valueMeta = (String) row.get("value_meta");
+
+          handler.handle((String) row.get("name"), seriesDimensions,
+                         ((Timestamp) row.get("time_stamp")).getTime(), (double) row.get("value"),
+                         valueMeta == null || valueMeta.isEmpty() ? null : valueMeta);
+        }
+      }
+    }
+  }
+
+  private List<byte[]> findDefDimsIds(
+      Handle h,
+      String tenantId,
+      String name,
+      Map<String, String> dimensions,
+      DateTime startTime,
+      @Nullable DateTime endTime,
+      boolean endExclusive) {
+
+    String namePart = "";
+
+    if (name != null && !name.isEmpty()) {
+
+      namePart = " and def.name = :name";
+
+    }
+
+    String sql =
+        String.format(FIND_DEF_DIMS_IDS_SQL,
+                      namePart,
+                      MetricQueries.buildDimensionAndClause(dimensions, TABLE_TO_JOIN_DIMENSIONS_ON),
+                      endTime == null ? ""
+                      : endExclusive ? " and mes.time_stamp < :endTime"
+                      : " and mes.time_stamp <= :endTime");
+
+    Query<Map<String, Object>> query =
+        h.createQuery(sql)
+            .bind("tenantId", tenantId)
+            .bind("startTime", new Timestamp(startTime.getMillis()));
+
+    if (name != null && !name.isEmpty()) {
+
+      query.bind("name", name);
+
+    }
+
+    if (endTime != null) {
+
+      query.bind("endTime", new Timestamp(endTime.getMillis()));
+
     }
+
+    DimensionQueries.bindDimensionsToQuery(query, dimensions);
+
+    List<byte[]> defDimsIds = new ArrayList<>();
+
+    for (Map<String, Object> row : query.list()) {
+
+      defDimsIds.add((byte[]) row.get("id"));
+
+    }
+
+    return defDimsIds;
   }
 }
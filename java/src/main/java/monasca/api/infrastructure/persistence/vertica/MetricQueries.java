@@ -14,20 +14,159 @@
 
 package monasca.api.infrastructure.persistence.vertica;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.commons.codec.binary.Hex;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
 
+import monasca.api.infrastructure.persistence.DimensionQueries;
 import monasca.common.persistence.SqlQueries;
 
 /**
  * Vertica utilities for building metric queries.
  */
 final class MetricQueries {
+
+  private static final String FIND_SERIES_SQL =
+      "select defdims.id, def.name, d.name as dname, d.value as dvalue "
+      + "from MonMetrics.Definitions def, MonMetrics.DefinitionDimensions defdims "
+      + "left outer join MonMetrics.Dimensions d on d.dimension_set_id = defdims.dimension_set_id "
+      + "where def.id = defdims.definition_id and def.tenant_id = :tenantId "
+      + "%s " // metric name here
+      + "%s " // dimension and clause here
+      + "order by defdims.id ASC";
+
   private MetricQueries() {}
 
+  /**
+   * Series with the same name and values of the grouped dimensions.
+   */
+  static final class SeriesGroup {
+    final String name;
+    final Map<String, String> dimensions;
+    final List<byte[]> defDimsIds = new ArrayList<>();
+
+    SeriesGroup(String name, Map<String, String> dimensions) {
+      this.name = name;
+      this.dimensions = dimensions;
+    }
+  }
+
+  /**
+   * Finds the series matching the criteria and groups them by the {@code groupBy} dimensions, or
+   * one group per series for "*". The groups are ordered by name and dimension values, or by
+   * definition dimensions id for "*", so their indexes are stable across pages.
+   */
+  static List<SeriesGroup> findSeriesGroups(Handle h, String tenantId, String name,
+                                            Map<String, String> dimensions,
+                                            List<String> groupBy) {
+
+    String sql = String.format(FIND_SERIES_SQL,
+                               name != null && !name.isEmpty() ? " and def.name = :name" : "",
+                               buildDimensionAndClause(dimensions, "defdims"));
+
+    Query<Map<String, Object>> query = h.createQuery(sql).bind("tenantId", tenantId);
+
+    if (name != null && !name.isEmpty()) {
+      query.bind("name", name);
+    }
+
+    DimensionQueries.bindDimensionsToQuery(query, dimensions);
+
+    // Series in definition dimensions id order, keyed by the hex id.
+    Map<String, SeriesGroup> series = new LinkedHashMap<>();
+
+    for (Map<String, Object> row : query.list()) {
+
+      byte[] defDimsId = (byte[]) row.get("id");
+      String hexId = Hex.encodeHexString(defDimsId);
+
+      SeriesGroup serie = series.get(hexId);
+
+      if (serie == null) {
+        serie = new SeriesGroup((String) row.get("name"), new HashMap<String, String>());
+        serie.defDimsIds.add(defDimsId);
+        series.put(hexId, serie);
+      }
+
+      // Series without dimensions have a single row of nulls.
+      if (row.get("dname") != null) {
+        serie.dimensions.put((String) row.get("dname"), (String) row.get("dvalue"));
+      }
+    }
+
+    if (groupBy.contains("*")) {
+      return new ArrayList<>(series.values());
+    }
+
+    // Dimension values are never empty, so the joined key is unambiguous.
+    Map<String, SeriesGroup> groups = new TreeMap<>();
+
+    for (SeriesGroup serie : series.values()) {
+
+      StringBuilder key = new StringBuilder(serie.name);
+      Map<String, String> groupDimensions = new HashMap<>();
+
+      for (String dimensionName : groupBy) {
+        String value = serie.dimensions.get(dimensionName);
+        key.append('\0').append(value == null ? "" : value);
+        if (value != null) {
+          groupDimensions.put(dimensionName, value);
+        }
+      }
+
+      SeriesGroup group = groups.get(key.toString());
+
+      if (group == null) {
+        group = new SeriesGroup(serie.name, groupDimensions);
+        groups.put(key.toString(), group);
+      }
+
+      group.defDimsIds.addAll(serie.defDimsIds);
+    }
+
+    return new ArrayList<>(groups.values());
+  }
+
+  /**
+   * Returns the expression of the index of the group holding the series of the
+   * {@code defDimsIdColumn}, for the groups from {@code firstIndex} on.
+   */
+  static String buildGroupIndexExpression(List<SeriesGroup> groups, int firstIndex,
+                                          String defDimsIdColumn) {
+
+    StringBuilder sb = new StringBuilder("case");
+
+    for (int i = firstIndex; i < groups.size(); i++) {
+      sb.append(" when to_hex(").append(defDimsIdColumn).append(") ")
+        .append(createDefDimIdInClause(groups.get(i).defDimsIds))
+        .append("then ").append(i);
+    }
+
+    return sb.append(" end").toString();
+  }
+
+  /**
+   * Returns the definition dimensions ids of the groups from {@code firstIndex} on.
+   */
+  static List<byte[]> defDimsIdsFrom(List<SeriesGroup> groups, int firstIndex) {
+
+    List<byte[]> defDimsIds = new ArrayList<>();
+
+    for (SeriesGroup group : groups.subList(firstIndex, groups.size())) {
+      defDimsIds.addAll(group.defDimsIds);
+    }
+
+    return defDimsIds;
+  }
+
   static String buildDimensionAndClause(Map<String, String> dimensions, String tableToJoinName) {
 
     StringBuilder sb = null;
@@ -61,7 +200,7 @@ final class MetricQueries {
         + "where" + " dimension_set_id = ?", dimensionSetId);
   }
 
-  static String createDefDimIdInClause(Set<byte[]> defDimIdSet) {
+  static String createDefDimIdInClause(Collection<byte[]> defDimIdSet) {
 
     StringBuilder sb = new StringBuilder("IN ");
 
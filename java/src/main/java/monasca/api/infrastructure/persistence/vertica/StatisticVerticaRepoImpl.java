@@ -13,10 +13,13 @@
  */
 package monasca.api.infrastructure.persistence.vertica;
 
+import monasca.api.ApiConfig;
 import monasca.api.domain.exception.MultipleMetricsException;
+import monasca.api.domain.model.common.SeriesOffset;
 import monasca.api.domain.model.statistic.StatisticRepo;
 import monasca.api.domain.model.statistic.Statistics;
 import monasca.api.infrastructure.persistence.DimensionQueries;
+import monasca.api.infrastructure.persistence.RollupConfiguration;
 
 import org.apache.commons.codec.binary.Hex;
 import org.joda.time.DateTime;
@@ -33,10 +36,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -61,10 +66,13 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
 
   private final DBI db;
 
+  private final List<RollupConfiguration> rollups;
+
   @Inject
-  public StatisticVerticaRepoImpl(@Named("vertica") DBI db) {
+  public StatisticVerticaRepoImpl(@Named("vertica") DBI db, ApiConfig config) {
 
     this.db = db;
+    this.rollups = config.statistics.rollups;
 
   }
 
@@ -79,7 +87,8 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
       int period,
       String offset,
       int limit,
-      Boolean mergeMetricsFlag) throws MultipleMetricsException {
+      Boolean mergeMetricsFlag,
+      @Nullable List<String> groupBy) throws MultipleMetricsException {
 
     List<Statistics> statisticsList = new ArrayList<>();
 
@@ -88,6 +97,13 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
 
     try (Handle h = db.open()) {
 
+      if (groupBy != null) {
+
+        return findGrouped(h, tenantId, name, dimensions, startTime, endTime, statisticsCols,
+                           statisticsColumns, period, offset, limit, groupBy);
+
+      }
+
       Map<byte[], Statistics> byteMap = findDefIds(h, tenantId, name, dimensions);
 
       if (byteMap.isEmpty()) {
@@ -102,9 +118,8 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
 
       }
 
-      List<List<Object>> statisticsListList = new ArrayList<>();
-
-      String sql = createQuery(byteMap.keySet(), period, startTime, endTime, offset, statisticsCols);
+      String sql = createQuery(byteMap.keySet(), period, startTime, endTime, offset, statisticsCols,
+                               rollupFor(period));
 
       logger.debug("vertica sql: {}", sql);
 
@@ -122,18 +137,18 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
 
       List<Map<String, Object>> rows = query.list();
 
-      for (Map<String, Object> row : rows) {
+      // Just use the first entry in the byteMap to get the def name and dimensions.
+      Statistics statistics = byteMap.entrySet().iterator().next().getValue();
 
-        List<Object> statisticsRow = parseRow(row);
+      statistics.setColumns(statisticsColumns);
 
-        statisticsListList.add(statisticsRow);
+      for (Map<String, Object> row : rows) {
 
-      }
+        Timestamp timeStamp = (Timestamp) row.get("time_interval");
 
-      // Just use the first entry in the byteMap to get the def name and dimensions.
-      Statistics statistics = byteMap.entrySet().iterator().next().getValue();
+        statistics.addStatistics(timeStamp.getTime(), parseRow(row, statisticsColumns));
 
-      statistics.setColumns(statisticsColumns);
+      }
 
       if (Boolean.TRUE.equals(mergeMetricsFlag) && byteMap.keySet().size() > 1) {
 
@@ -142,8 +157,6 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
 
       }
 
-      statistics.setStatistics(statisticsListList);
-
       statisticsList.add(statistics);
 
     }
@@ -151,40 +164,123 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
     return statisticsList;
   }
 
-  private List<Object> parseRow(Map<String, Object> row) {
+  /**
+   * Finds the statistics of the groups from the offset group on in a single query, which
+   * aggregates by group index, computed from the definition dimensions id, and period.
+   */
+  private List<Statistics> findGrouped(
+      Handle h,
+      String tenantId,
+      String name,
+      Map<String, String> dimensions,
+      DateTime startTime,
+      DateTime endTime,
+      List<String> statisticsCols,
+      List<String> statisticsColumns,
+      int period,
+      String offset,
+      int limit,
+      List<String> groupBy) {
+
+    List<MetricQueries.SeriesGroup> groups =
+        MetricQueries.findSeriesGroups(h, tenantId, name, dimensions, groupBy);
 
-    List<Object> statisticsRow = new ArrayList<>();
+    SeriesOffset seriesOffset =
+        offset != null && !offset.isEmpty() ? SeriesOffset.parse(offset) : null;
 
-    Double sum = (Double) row.get("sum");
-    Double average = (Double) row.get("avg");
-    Double min = (Double) row.get("min");
-    Double max = (Double) row.get("max");
-    Long count = (Long) row.get("count");
-    Timestamp time_stamp = (Timestamp) row.get("time_interval");
+    int firstIndex = seriesOffset != null ? seriesOffset.getIndex() : 0;
 
-    if (time_stamp != null) {
-      statisticsRow.add(DATETIME_FORMATTER.print(time_stamp.getTime()));
-    }
+    if (firstIndex >= groups.size()) {
+
+      return new ArrayList<>();
 
-    if (average != null) {
-      statisticsRow.add(average);
     }
 
-    if (count != null) {
-      statisticsRow.add(count);
+    String groupIndex =
+        MetricQueries.buildGroupIndexExpression(groups, firstIndex, "definition_dimensions_id");
+    String timeSlice =
+        "Time_slice(time_stamp, " + (period >= 1 ? period : 300) + ", 'SECOND', 'END')";
+
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("SELECT " + groupIndex + " AS group_index, ");
+    RollupConfiguration rollup = rollupFor(period >= 1 ? period : 300);
+
+    sb.append(createColumnsStr(statisticsCols, rollup));
+    sb.append(timeSlice + " AS time_interval");
+    sb.append(" FROM " + tableFor(rollup) + " ");
+    sb.append("WHERE to_hex(definition_dimensions_id) ");
+    sb.append(MetricQueries.createDefDimIdInClause(
+        MetricQueries.defDimsIdsFrom(groups, firstIndex)));
+    sb.append(createWhereClause(startTime, endTime, null, rollup));
+
+    if (seriesOffset != null) {
+
+      // Only the offset group resumes after the offset, the following ones start over.
+      sb.append("AND (time_stamp " + offsetOperator(rollup));
+      sb.append(" :offset OR to_hex(definition_dimensions_id) NOT ");
+      sb.append(MetricQueries.createDefDimIdInClause(groups.get(firstIndex).defDimsIds));
+      sb.append(") ");
+
     }
 
-    if (max != null) {
-      statisticsRow.add(max);
+    sb.append("group by " + groupIndex + ", " + timeSlice);
+    sb.append(" order by group_index, time_interval");
+    sb.append(" limit :limit");
+
+    logger.debug("vertica sql: {}", sb);
+
+    Query<Map<String, Object>> query =
+        h.createQuery(sb.toString())
+            .bind("start_time", startTime)
+            .bind("end_time", endTime)
+            .bind("limit", limit + 1);
+
+    if (seriesOffset != null) {
+      query.bind("offset", new Timestamp(seriesOffset.getTimestamp().getMillis()));
     }
 
-    if (min != null) {
-      statisticsRow.add(min);
+    Map<Integer, Statistics> results = new LinkedHashMap<>();
+
+    for (Map<String, Object> row : query.list()) {
+
+      int index = ((Number) row.get("group_index")).intValue();
+
+      Statistics statistics = results.get(index);
+
+      if (statistics == null) {
+
+        MetricQueries.SeriesGroup group = groups.get(index);
+
+        statistics = new Statistics();
+        statistics.setId(String.valueOf(index));
+        statistics.setName(group.name);
+        statistics.setDimensions(group.dimensions);
+        statistics.setColumns(statisticsColumns);
+
+        results.put(index, statistics);
+
+      }
+
+      Timestamp timeStamp = (Timestamp) row.get("time_interval");
+
+      statistics.addStatistics(timeStamp.getTime(), parseRow(row, statisticsColumns));
+
     }
 
-    if (sum != null) {
-      statisticsRow.add(sum);
+    return new ArrayList<>(results.values());
+  }
+
+  private double[] parseRow(Map<String, Object> row, List<String> statisticsColumns) {
+
+    // The first column is the timestamp, the others are the statistics in the selected order.
+    double[] statisticsRow = new double[statisticsColumns.size() - 1];
+
+    for (int i = 1; i < statisticsColumns.size(); i++) {
+      Number value = (Number) row.get(statisticsColumns.get(i));
+      statisticsRow[i - 1] = value == null ? Double.NaN : value.doubleValue();
     }
+
     return statisticsRow;
 
   }
@@ -284,27 +380,28 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
     return copy;
   }
 
-  private String createQuery(
+  String createQuery(
       Set<byte[]> defDimIdSet,
       int period,
       DateTime startTime,
       DateTime endTime,
       String offset,
-      List<String> statistics) {
+      List<String> statistics,
+      RollupConfiguration rollup) {
 
     StringBuilder sb = new StringBuilder();
 
-    sb.append("SELECT " + createColumnsStr(statistics));
+    sb.append("SELECT " + createColumnsStr(statistics, rollup));
 
     if (period >= 1) {
       sb.append("Time_slice(time_stamp, " + period);
       sb.append(", 'SECOND', 'END') AS time_interval");
     }
 
-    sb.append(" FROM MonMetrics.Measurements ");
+    sb.append(" FROM " + tableFor(rollup) + " ");
     String inClause = MetricQueries.createDefDimIdInClause(defDimIdSet);
     sb.append("WHERE to_hex(definition_dimensions_id) " + inClause);
-    sb.append(createWhereClause(startTime, endTime, offset));
+    sb.append(createWhereClause(startTime, endTime, offset, rollup));
 
     if (period >= 1) {
       sb.append("group by Time_slice(time_stamp, " + period);
@@ -319,7 +416,8 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
   private String createWhereClause(
       DateTime startTime,
       DateTime endTime,
-      String offset) {
+      String offset,
+      RollupConfiguration rollup) {
 
     String s = "";
 
@@ -331,24 +429,85 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
 
     if (offset != null && !offset.isEmpty()) {
 
-      s += " and time_stamp > :offset ";
+      s += " and time_stamp " + offsetOperator(rollup) + " :offset ";
 
     }
 
     return s;
   }
 
+  /**
+   * Compares time stamps to the offset, the end of the last period returned. Rollup rows are
+   * time stamped with the start of their period, so the row starting at the offset belongs to
+   * the next period.
+   */
+  private String offsetOperator(RollupConfiguration rollup) {
+
+    return rollup == null ? ">" : ">=";
+  }
+
   private String createColumnsStr(
-      List<String> statistics) {
+      List<String> statistics,
+      RollupConfiguration rollup) {
 
     StringBuilder sb = new StringBuilder();
 
     for (String statistic : statistics) {
 
+      if (rollup == null) {
+
         sb.append(statistic + "(value) as " + statistic + ", ");
+
+      } else if ("avg".equals(statistic)) {
+
+        // Weighted by the counts, the average of the period averages would not be.
+        sb.append("sum(sum_value) / nullif(sum(count_value), 0) as avg, ");
+
+      } else if ("count".equals(statistic)) {
+
+        sb.append("sum(count_value) as count, ");
+
+      } else {
+
+        sb.append(statistic + "(" + statistic + "_value) as " + statistic + ", ");
+
+      }
     }
 
     return sb.toString();
   }
 
+  /**
+   * Returns the coarsest Vertica rollup whose period divides the {@code period}, or null when the
+   * raw measurements have to be read.
+   */
+  private RollupConfiguration rollupFor(int period) {
+
+    RollupConfiguration coarsest = null;
+
+    if (period < 1) {
+
+      return coarsest;
+
+    }
+
+    for (RollupConfiguration rollup : this.rollups) {
+
+      if (rollup.isVertica() && period % rollup.period == 0
+          && (coarsest == null || rollup.period > coarsest.period)) {
+
+        coarsest = rollup;
+
+      }
+    }
+
+    return coarsest;
+  }
+
+  private String tableFor(RollupConfiguration rollup) {
+
+    return rollup == null ? "MonMetrics.Measurements" : rollup.table;
+
+  }
+
 }
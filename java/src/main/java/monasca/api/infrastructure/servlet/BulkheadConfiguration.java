@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.servlet;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Request bulkhead configuration. Each class of endpoint gets its own concurrency limit so that a
+ * burst of one class can't starve the others of server threads and database connections.
+ */
+public class BulkheadConfiguration {
+  @JsonProperty
+  public Boolean enabled = Boolean.FALSE;
+  /** Measurements, statistics, multi-metric and alarm state history queries. */
+  @JsonProperty
+  public Limits heavyReads = new Limits(8, 16);
+  /** All other GET requests. */
+  @JsonProperty
+  public Limits lightReads = new Limits(32, 64);
+  /** POST, PUT, PATCH and DELETE requests. */
+  @JsonProperty
+  public Limits writes = new Limits(32, 64);
+
+  public static class Limits {
+    /** Requests of the class processed at once. */
+    @JsonProperty
+    public int maxConcurrent;
+    /** Requests of the class allowed to wait for a free slot before failing fast with 503. */
+    @JsonProperty
+    public int maxQueued;
+    /** Milliseconds a queued request waits for a free slot before failing with 503. */
+    @JsonProperty
+    public long maxWaitMillis = 1000;
+
+    public Limits() {}
+
+    public Limits(int maxConcurrent, int maxQueued) {
+      this.maxConcurrent = maxConcurrent;
+      this.maxQueued = maxQueued;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.servlet;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import monasca.api.resource.exception.Exceptions;
+import monasca.api.resource.exception.Exceptions.FaultType;
+
+/**
+ * Limits the number of requests processed at once per class of endpoint: heavy reads
+ * (measurements, statistics and alarm state history), light reads and writes. A request which
+ * finds its class saturated waits in a bounded queue, and is rejected with a 503 once the queue is
+ * full or its wait times out. Active, queued and rejected request metrics are published per class.
+ */
+public class BulkheadFilter implements Filter {
+
+  static final class Bulkhead {
+    final String name;
+    private final Semaphore permits;
+    private final int maxQueued;
+    private final long maxWaitMillis;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Meter rejections;
+
+    Bulkhead(String name, final BulkheadConfiguration.Limits limits, MetricRegistry registry) {
+      this.name = name;
+      this.permits = new Semaphore(limits.maxConcurrent, true);
+      this.maxQueued = limits.maxQueued;
+      this.maxWaitMillis = limits.maxWaitMillis;
+      this.rejections = registry.meter(name(BulkheadFilter.class, name, "rejected"));
+
+      registry.register(name(BulkheadFilter.class, name, "active"), new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return limits.maxConcurrent - permits.availablePermits();
+        }
+      });
+      registry.register(name(BulkheadFilter.class, name, "queued"), new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return queued.get();
+        }
+      });
+    }
+
+    boolean acquire() throws InterruptedException {
+      if (this.permits.tryAcquire()) {
+        return true;
+      }
+
+      if (this.queued.incrementAndGet() > this.maxQueued) {
+        this.queued.decrementAndGet();
+        this.rejections.mark();
+        return false;
+      }
+
+      try {
+        if (this.permits.tryAcquire(this.maxWaitMillis, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+        this.rejections.mark();
+        return false;
+      } finally {
+        this.queued.decrementAndGet();
+      }
+    }
+
+    void release() {
+      this.permits.release();
+    }
+  }
+
+  private final Bulkhead heavyReads;
+  private final Bulkhead lightReads;
+  private final Bulkhead writes;
+
+  public BulkheadFilter(BulkheadConfiguration config, MetricRegistry registry) {
+    this.heavyReads = new Bulkhead("heavy-reads", config.heavyReads, registry);
+    this.lightReads = new Bulkhead("light-reads", config.lightReads, registry);
+    this.writes = new Bulkhead("writes", config.writes, registry);
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {}
+
+  @Override
+  public void destroy() {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    Bulkhead bulkhead = bulkheadFor((HttpServletRequest) request);
+
+    boolean acquired;
+    try {
+      acquired = bulkhead.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      acquired = false;
+    }
+
+    if (!acquired) {
+      HttpServletResponse res = (HttpServletResponse) response;
+      res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      res.setContentType(MediaType.APPLICATION_JSON);
+      res.setHeader("Retry-After", "1");
+      res.getWriter().print(Exceptions.buildLoggedErrorMessage(FaultType.SERVICE_UNAVAILABLE,
+          "Too many concurrent %s requests, please retry later", bulkhead.name));
+      return;
+    }
+
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      bulkhead.release();
+    }
+  }
+
+  Bulkhead bulkheadFor(HttpServletRequest request) {
+    String method = request.getMethod();
+    String path = request.getRequestURI();
+
+    // Multi-metric queries are POSTed but only read.
+    if (path.endsWith("/metrics/query")) {
+      return this.heavyReads;
+    }
+
+    if (!"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method)) {
+      return this.writes;
+    }
+
+    if (path.endsWith("/metrics/measurements") || path.endsWith("/metrics/statistics")
+        || path.endsWith("/metrics/measurements/export")
+        || path.endsWith("/state-history")) {
+      return this.heavyReads;
+    }
+
+    return this.lightReads;
+  }
+}
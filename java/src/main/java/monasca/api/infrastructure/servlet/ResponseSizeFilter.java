@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.servlet;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Counts the response body bytes written per resource. Responses are compressed by the server
+ * gzip handler only after they leave the servlet filters, so these are the uncompressed sizes.
+ * There is no per resource measurement of the compressed bytes, they are only available as the
+ * response sizes of the request log.
+ */
+public class ResponseSizeFilter implements Filter {
+
+  private static final Set<String> RESOURCES = ImmutableSet.of("measurements", "statistics",
+      "metrics", "alarm-state-history", "alarms", "alarm-definitions", "notification-methods",
+      "other");
+
+  private final Map<String, Counter> bytes = new HashMap<>();
+
+  public ResponseSizeFilter(MetricRegistry registry) {
+    for (String resource : RESOURCES) {
+      this.bytes.put(resource,
+          registry.counter(name(ResponseSizeFilter.class, resource, "uncompressed-bytes")));
+    }
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {}
+
+  @Override
+  public void destroy() {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    final Counter counter = this.bytes.get(resourceFor(((HttpServletRequest) request)
+                                                          .getRequestURI()));
+    final CountingResponse countingResponse =
+        new CountingResponse((HttpServletResponse) response, counter);
+
+    chain.doFilter(request, countingResponse);
+    countingResponse.flushWriter();
+  }
+
+  /**
+   * Returns the resource whose byte counter a request to {@code path} updates.
+   */
+  static String resourceFor(String path) {
+    int start = path.indexOf("/v2.0/");
+    if (start < 0) {
+      return "other";
+    }
+
+    String[] segments = path.substring(start + "/v2.0/".length()).split("/");
+
+    if ("metrics".equals(segments[0]) && segments.length > 1
+        && ("measurements".equals(segments[1]) || "statistics".equals(segments[1]))) {
+      return segments[1];
+    }
+    if ("alarms".equals(segments[0]) && path.endsWith("/state-history")) {
+      return "alarm-state-history";
+    }
+
+    return RESOURCES.contains(segments[0]) ? segments[0] : "other";
+  }
+
+  /**
+   * Counts the bytes passed to the output stream of the response, written through as they come.
+   */
+  private static final class CountingResponse extends HttpServletResponseWrapper {
+    private final Counter counter;
+    private ServletOutputStream stream;
+    private PrintWriter writer;
+
+    CountingResponse(HttpServletResponse response, Counter counter) {
+      super(response);
+      this.counter = counter;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (this.writer != null) {
+        throw new IllegalStateException("getWriter() has already been called");
+      }
+      if (this.stream == null) {
+        final ServletOutputStream out = super.getOutputStream();
+        this.stream = new ServletOutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            out.write(b);
+            counter.inc();
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            counter.inc(len);
+          }
+
+          @Override
+          public void flush() throws IOException {
+            out.flush();
+          }
+
+          @Override
+          public void close() throws IOException {
+            out.close();
+          }
+        };
+      }
+      return this.stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (this.writer == null) {
+        if (this.stream != null) {
+          throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        this.writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+                                                             getCharacterEncoding()));
+      }
+      return this.writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      flushWriter();
+      super.flushBuffer();
+    }
+
+    void flushWriter() {
+      if (this.writer != null) {
+        this.writer.flush();
+      }
+    }
+  }
+}
@@ -40,15 +40,19 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
 
 import monasca.api.app.AlarmService;
+import monasca.api.app.command.PatchAlarmsCommand;
 import monasca.api.app.command.UpdateAlarmCommand;
 import monasca.api.app.validation.MetricNameValidation;
 import monasca.api.app.validation.Validation;
 import monasca.api.domain.model.alarm.Alarm;
+import monasca.api.domain.model.alarm.AlarmCount;
+import monasca.api.domain.model.alarm.AlarmPatchResult;
 import monasca.api.domain.model.alarm.AlarmRepo;
 import monasca.api.domain.model.alarmstatehistory.AlarmStateHistory;
 import monasca.api.domain.model.alarmstatehistory.AlarmStateHistoryRepo;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.api.resource.annotation.PATCH;
+import monasca.api.resource.exception.Exceptions;
 import monasca.common.model.alarm.AlarmState;
 
 /**
@@ -188,6 +192,33 @@ public class AlarmResource {
     return Links.paginate(paging_limit, Links.hydrate(alarms, uriInfo), uriInfo);
   }
 
+  @GET
+  @Timed
+  @Path("/count")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Object count(@Context UriInfo uriInfo, @HeaderParam("X-Tenant-Id") String tenantId,
+      @QueryParam("alarm_definition_id") String alarmDefId,
+      @QueryParam("metric_name") String metricName,
+      @QueryParam("metric_dimensions") String metricDimensionsStr,
+      @QueryParam("state") AlarmState state,
+      @QueryParam("lifecycle_state") String lifecycleState,
+      @QueryParam("link") String link,
+      @QueryParam("state_updated_start_time") String stateUpdatedStartStr)
+      throws Exception {
+
+    Map<String, String> metricDimensions =
+        Strings.isNullOrEmpty(metricDimensionsStr) ? null : Validation
+            .parseAndValidateDimensions(metricDimensionsStr);
+    MetricNameValidation.validate(metricName, false);
+    DateTime stateUpdatedStart =
+        Validation.parseAndValidateDate(stateUpdatedStartStr,
+                                        "state_updated_start_time", false);
+
+    final List<AlarmCount> counts = repo.count(tenantId, alarmDefId, metricName, metricDimensions,
+                                               state, lifecycleState, link, stateUpdatedStart);
+    return Links.unpaged(counts, uriInfo);
+  }
+
   @PATCH
   @Timed
   @Path("/{alarm_id}")
@@ -207,6 +238,71 @@ public class AlarmResource {
     return fixAlarmLinks(uriInfo, service.patch(tenantId, alarmId, state, lifecycleState, link));
   }
 
+  /**
+   * Patches the alarms listed in the body, or if none are listed the alarms matching the same
+   * filters as {@link #list}, at most the maximum query limit of them.
+   */
+  @PATCH
+  @Timed
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Object patchAll(@Context UriInfo uriInfo, @HeaderParam("X-Tenant-Id") String tenantId,
+      @QueryParam("alarm_definition_id") String alarmDefId,
+      @QueryParam("metric_name") String metricName,
+      @QueryParam("metric_dimensions") String metricDimensionsStr,
+      @QueryParam("state") AlarmState state,
+      @QueryParam("lifecycle_state") String lifecycleState,
+      @QueryParam("link") String link,
+      @QueryParam("state_updated_start_time") String stateUpdatedStartStr,
+      @Valid PatchAlarmsCommand command) {
+
+    command.validate();
+
+    final int maxAlarms = this.persistUtils.getLimit(null);
+    List<String> alarmIds = command.alarmIds;
+
+    if (alarmIds != null && !alarmIds.isEmpty()) {
+      if (maxAlarms > 0 && alarmIds.size() > maxAlarms) {
+        throw Exceptions.unprocessableEntity("At most %d alarm_ids may be updated at once",
+                                             maxAlarms);
+      }
+    } else {
+      if (alarmDefId == null && metricName == null && metricDimensionsStr == null
+          && state == null && lifecycleState == null && link == null
+          && stateUpdatedStartStr == null) {
+        throw Exceptions.unprocessableEntity("Either alarm_ids or a filter must be given");
+      }
+
+      Map<String, String> metricDimensions =
+          Strings.isNullOrEmpty(metricDimensionsStr) ? null : Validation
+              .parseAndValidateDimensions(metricDimensionsStr);
+      MetricNameValidation.validate(metricName, false);
+      DateTime stateUpdatedStart =
+          Validation.parseAndValidateDate(stateUpdatedStartStr,
+                                          "state_updated_start_time", false);
+
+      alarmIds = repo.findIds(tenantId, alarmDefId, metricName, metricDimensions, state,
+                              lifecycleState, link, stateUpdatedStart,
+                              maxAlarms > 0 ? maxAlarms + 1 : 0);
+
+      if (maxAlarms > 0 && alarmIds.size() > maxAlarms) {
+        throw Exceptions.unprocessableEntity(
+            "More than %d alarms match the filter, narrow it or give alarm_ids", maxAlarms);
+      }
+    }
+
+    final List<AlarmPatchResult> results = service.patchAll(tenantId, alarmIds, command.state,
+                                                            command.lifecycleState, command.link);
+    for (final AlarmPatchResult result : results) {
+      if (result.getAlarm() != null) {
+        Links.hydrate(result.getAlarm().getAlarmDefinition(), uriInfo,
+            AlarmDefinitionResource.ALARM_DEFINITIONS_PATH);
+        Links.hydrate(result.getAlarm(), uriInfo);
+      }
+    }
+    return Links.unpaged(results, uriInfo);
+  }
+
   @PUT
   @Timed
   @Path("/{alarm_id}")
@@ -24,6 +24,8 @@ import com.google.common.base.Preconditions;
 
 import monasca.api.ApiConfig;
 import monasca.api.domain.model.common.Paged;
+import monasca.api.domain.model.common.SeriesOffset;
+import monasca.api.domain.model.common.TimeSeries;
 import monasca.api.domain.model.measurement.Measurements;
 import monasca.api.domain.model.statistic.Statistics;
 import monasca.common.model.domain.common.AbstractEntity;
@@ -196,7 +198,22 @@ public final class Links {
 
   }
 
-  public static Object paginateMeasurements(int limit, List<Measurements> elements, UriInfo uriInfo)
+  /**
+   * Wraps elements which are never paged, such as aggregates, with only a self link.
+   */
+  public static Object unpaged(List<?> elements, UriInfo uriInfo) {
+
+    Paged paged = new Paged();
+
+    paged.links.add(getSelfLink(uriInfo));
+
+    paged.elements = elements != null ? elements : new ArrayList<>();
+
+    return paged;
+
+  }
+
+  public static Paged paginateMeasurements(int limit, List<Measurements> elements, UriInfo uriInfo)
       throws UnsupportedEncodingException {
 
     // Check for paging turned off. Happens if maxQueryLimit is not set or is set to zero.
@@ -216,26 +233,23 @@ public final class Links {
 
       if (m != null) {
 
-        List<Object[]> l = m.getMeasurements();
-
-        if (l.size() > limit) {
+        if (m.size() > limit) {
 
-          String offset = (String) l.get(limit - 1)[0];
+          String offset = Measurements.formatTimestamp(m.timestampAt(limit - 1));
 
           m.setId(offset);
 
           paged.links.add(getNextLink(offset, uriInfo));
 
-          // Truncate the list. Normally this will just truncate one extra element.
-          l = l.subList(0, limit);
-          m.setMeasurements(l);
+          // Truncate the measurements. Normally this will just truncate one extra element.
+          m.truncate(limit);
 
         }
 
         // Check if there are any elements.
-        if (l.size() > 0) {
+        if (m.size() > 0) {
           // Set the id to the last date in the list.
-          m.setId((String) l.get(l.size() - 1)[0]);
+          m.setId(Measurements.formatTimestamp(m.timestampAt(m.size() - 1)));
         }
         paged.elements = elements;
 
@@ -254,7 +268,7 @@ public final class Links {
 
   }
 
-  public static Object paginateStatistics(int limit, List<Statistics> elements, UriInfo uriInfo)
+  public static Paged paginateStatistics(int limit, List<Statistics> elements, UriInfo uriInfo)
       throws UnsupportedEncodingException {
 
     // Check for paging turned off. Happens if maxQueryLimit is not set or is set to zero.
@@ -274,26 +288,23 @@ public final class Links {
 
       if (s != null) {
 
-        List<List<Object>> l = s.getStatistics();
-
-        if (l.size() > limit) {
+        if (s.size() > limit) {
 
-          String offset = (String) l.get(limit - 1).get(0);
+          String offset = Measurements.formatTimestamp(s.timestampAt(limit - 1));
 
           s.setId(offset);
 
           paged.links.add(getNextLink(offset, uriInfo));
 
-          // Truncate the list. Normally this will just truncate one extra element.
-          l = l.subList(0, limit);
-          s.setStatistics(l);
+          // Truncate the statistics. Normally this will just truncate one extra element.
+          s.truncate(limit);
 
         }
 
         // Check if there are any elements.
-        if (l.size() > 0) {
+        if (s.size() > 0) {
           // Set the id to the last date in the list.
-          s.setId((String) l.get(l.size() - 1).get(0));
+          s.setId(Measurements.formatTimestamp(s.timestampAt(s.size() - 1)));
         }
         paged.elements = elements;
 
@@ -312,6 +323,75 @@ public final class Links {
 
   }
 
+  /**
+   * Pages grouped measurements or statistics, whose ids are their group indexes. The {@code limit}
+   * bounds the points across all groups, so a page may end within a group, and the offset of the
+   * next page is the {@link SeriesOffset} of its last point. Each element id is set to the offset
+   * following its last point.
+   */
+  public static Paged paginateGrouped(int limit, List<? extends TimeSeries> elements,
+                                      UriInfo uriInfo) throws UnsupportedEncodingException {
+
+    // Check for paging turned off. Happens if maxQueryLimit is not set or is set to zero.
+    if (limit == 0) {
+      Paged paged = new Paged();
+      paged.elements = elements != null ? elements : new ArrayList<>();
+      return paged;
+    }
+
+    Paged paged = new Paged();
+
+    paged.links.add(getSelfLink(uriInfo));
+
+    List<TimeSeries> page = new ArrayList<>();
+
+    if (elements != null) {
+
+      int remaining = limit;
+
+      for (TimeSeries series : elements) {
+
+        final int index = Integer.parseInt(series.getId());
+
+        if (remaining == 0) {
+
+          // A previous group filled the page, the next one starts after its last point.
+          if (series.size() > 0) {
+            paged.links.add(getNextLink(page.get(page.size() - 1).getId(), uriInfo));
+            break;
+          }
+          continue;
+
+        }
+
+        final boolean full = series.size() > remaining;
+
+        if (full) {
+          // Normally this will just truncate one extra point.
+          series.truncate(remaining);
+        }
+
+        remaining -= series.size();
+
+        if (series.size() > 0) {
+          series.setId(SeriesOffset.format(index, series.timestampAt(series.size() - 1)));
+        }
+
+        page.add(series);
+
+        if (full) {
+          paged.links.add(getNextLink(series.getId(), uriInfo));
+          break;
+        }
+      }
+    }
+
+    paged.elements = page;
+
+    return paged;
+
+  }
+
   private static Link getSelfLink(UriInfo uriInfo) {
 
     Link selfLink = new Link();
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.resource;
+
+import static monasca.api.app.validation.Validation.DEFAULT_ADMIN_ROLE;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.StreamingOutput;
+
+import monasca.api.ApiConfig;
+import monasca.api.app.validation.MetricNameValidation;
+import monasca.api.app.validation.Validation;
+import monasca.api.domain.model.measurement.MeasurementHandler;
+import monasca.api.domain.model.measurement.MeasurementRepo;
+import monasca.api.domain.model.measurement.Measurements;
+
+/**
+ * Measurement export resource implementation. Streams every measurement of the matching series in
+ * a time range as CSV, without paging.
+ */
+@Path("/v2.0/metrics/measurements/export")
+public class MeasurementExportResource {
+  public static final String TEXT_CSV = "text/csv";
+
+  private static final Logger logger = LoggerFactory.getLogger(MeasurementExportResource.class);
+  private static final String HEADER = "name,dimensions,timestamp,value,value_meta";
+
+  private final MeasurementRepo repo;
+  private final String admin_role;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Inject
+  public MeasurementExportResource(ApiConfig config, MeasurementRepo repo) {
+    this.admin_role = (config.middleware == null || config.middleware.adminRole == null)
+                      ? DEFAULT_ADMIN_ROLE : config.middleware.adminRole;
+    this.repo = repo;
+  }
+
+  @GET
+  @Timed
+  @Produces(TEXT_CSV)
+  public StreamingOutput get(
+      @HeaderParam("X-Tenant-Id") String tenantId,
+      @HeaderParam("X-Roles") String roles,
+      @QueryParam("name") final String name,
+      @QueryParam("dimensions") String dimensionsStr,
+      @QueryParam("start_time") String startTimeStr,
+      @QueryParam("end_time") String endTimeStr,
+      @QueryParam("tenant_id") String crossTenantId) throws Exception {
+
+    // Validate query parameters
+    Validation.validateNotNullOrEmpty(name, "name");
+    final DateTime startTime = Validation.parseAndValidateDate(startTimeStr, "start_time", true);
+    final DateTime endTime = Validation.parseAndValidateDate(endTimeStr, "end_time", false);
+    Validation.validateTimes(startTime, endTime);
+    final Map<String, String>
+        dimensions =
+          Strings.isNullOrEmpty(dimensionsStr) ? null : Validation
+              .parseAndValidateDimensions(dimensionsStr);
+    MetricNameValidation.validate(name, true);
+
+    final String queryTenantId =
+        Validation.getQueryProject(roles, crossTenantId, tenantId, admin_role);
+
+    // The response is committed once the first measurements are written, so failures after that
+    // can only abort the stream.
+    return new StreamingOutput() {
+      @Override
+      public void write(OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, Charsets.UTF_8));
+        writer.write(HEADER);
+        writer.write("\r\n");
+
+        try {
+          repo.export(queryTenantId, name, dimensions, startTime, endTime,
+                      new CsvWriter(writer, objectMapper));
+        } catch (IOException e) {
+          throw e;
+        } catch (Exception e) {
+          logger.error("Failed to export measurements of {}", name, e);
+          throw new IOException(e);
+        }
+
+        writer.flush();
+      }
+    };
+  }
+
+  /**
+   * Writes measurements as RFC 4180 CSV records, dimensions as a JSON object.
+   */
+  static class CsvWriter implements MeasurementHandler {
+    private final Writer writer;
+    private final ObjectMapper objectMapper;
+    private Map<String, String> lastDimensions;
+    private String lastDimensionsField;
+
+    CsvWriter(Writer writer, ObjectMapper objectMapper) {
+      this.writer = writer;
+      this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void handle(String name, Map<String, String> dimensions, long timestamp, double value,
+                       @Nullable String valueMeta) throws IOException {
+      // Repos pass the same dimensions for every measurement of a series.
+      if (dimensions != lastDimensions) {
+        lastDimensions = dimensions;
+        lastDimensionsField = escape(objectMapper.writeValueAsString(dimensions));
+      }
+
+      writer.write(escape(name));
+      writer.write(',');
+      writer.write(lastDimensionsField);
+      writer.write(',');
+      writer.write(Measurements.formatTimestamp(timestamp));
+      writer.write(',');
+      writer.write(Double.toString(value));
+      writer.write(',');
+      if (valueMeta != null) {
+        writer.write(escape(valueMeta));
+      }
+      writer.write("\r\n");
+    }
+
+    static String escape(String field) {
+      if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0
+          && field.indexOf('\r') < 0) {
+        return field;
+      }
+      return '"' + field.replace("\"", "\"\"") + '"';
+    }
+  }
+}
@@ -21,6 +21,7 @@ import com.codahale.metrics.annotation.Timed;
 
 import org.joda.time.DateTime;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -37,6 +38,8 @@ import javax.ws.rs.core.UriInfo;
 import monasca.api.app.validation.MetricNameValidation;
 import monasca.api.ApiConfig;
 import monasca.api.app.validation.Validation;
+import monasca.api.domain.model.common.Paged;
+import monasca.api.domain.model.measurement.ColumnarMeasurements;
 import monasca.api.domain.model.measurement.MeasurementRepo;
 import monasca.api.domain.model.measurement.Measurements;
 import monasca.api.infrastructure.persistence.PersistUtils;
@@ -73,7 +76,10 @@ public class MeasurementResource {
       @QueryParam("offset") String offset,
       @QueryParam("limit") String limit,
       @QueryParam("tenant_id") String crossTenantId,
-      @QueryParam("merge_metrics") String mergeMetricsFlag) throws Exception {
+      @QueryParam("merge_metrics") String mergeMetricsFlag,
+      @QueryParam("group_by") String groupByStr,
+      @QueryParam("max_points") String maxPointsStr,
+      @QueryParam("format") String format) throws Exception {
 
     // Validate query parameters
     DateTime startTime = Validation.parseAndValidateDate(startTimeStr, "start_time", true);
@@ -85,20 +91,48 @@ public class MeasurementResource {
               .parseAndValidateDimensions(dimensionsStr);
     MetricNameValidation.validate(name, true);
     Boolean mergeMetricsFlagBool = Validation.validateAndParseMergeMetricsFlag(mergeMetricsFlag);
+    List<String> groupBy = Validation.parseAndValidateGroupBy(groupByStr, mergeMetricsFlagBool);
+    int maxPoints = Validation.parseAndValidateMaxPoints(maxPointsStr);
+    boolean columnar = Validation.validateAndParseColumnarFormat(format);
 
     String queryTenantId = Validation.getQueryProject(roles, crossTenantId, tenantId, admin_role);
 
-    final int paging_limit = this.persistUtils.getLimit(limit);
-    final List<Measurements> resources = repo.find(queryTenantId,
-        name,
-        dimensions,
-        startTime,
-        endTime,
-        offset,
-        paging_limit,
-        mergeMetricsFlagBool
-    );
-    return Links.paginateMeasurements(paging_limit, resources, uriInfo);
+    final Paged paged;
+    if (maxPoints > 0) {
+      // Downsampled over the whole time range, so the result is a single page.
+      paged = (Paged) Links.unpaged(repo.findDownsampled(queryTenantId,
+          name,
+          dimensions,
+          startTime,
+          endTime,
+          mergeMetricsFlagBool,
+          groupBy,
+          maxPoints
+      ), uriInfo);
+    } else {
+      final int paging_limit = this.persistUtils.getLimit(limit);
+      final List<Measurements> resources = repo.find(queryTenantId,
+          name,
+          dimensions,
+          startTime,
+          endTime,
+          offset,
+          paging_limit,
+          mergeMetricsFlagBool,
+          groupBy
+      );
+      paged = groupBy != null
+              ? Links.paginateGrouped(paging_limit, resources, uriInfo)
+              : Links.paginateMeasurements(paging_limit, resources, uriInfo);
+    }
+    if (columnar) {
+      List<ColumnarMeasurements> columnarElements = new ArrayList<>(paged.elements.size());
+      for (Object measurements : paged.elements) {
+        columnarElements.add(new ColumnarMeasurements((Measurements) measurements));
+      }
+      paged.elements = columnarElements;
+    }
+    return paged;
   }
 
 }
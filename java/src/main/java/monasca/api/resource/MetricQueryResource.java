@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.resource;
+
+import static monasca.api.app.validation.Validation.DEFAULT_ADMIN_ROLE;
+
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.joda.time.DateTime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.validation.Valid;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import monasca.api.ApiConfig;
+import monasca.api.app.MetricQueryService;
+import monasca.api.app.command.QueryMetricsCommand;
+import monasca.api.app.validation.Validation;
+import monasca.api.domain.exception.MultipleMetricsException;
+import monasca.api.resource.exception.Exceptions;
+import monasca.api.resource.exception.IllegalArgumentExceptionMapper;
+import monasca.api.resource.exception.MultipleMetricsExceptionMapper;
+import monasca.api.resource.exception.ThrowableExceptionMapper;
+
+/**
+ * Multi-metric query resource implementation. Queries the measurements or statistics of several
+ * metrics in one request, reporting the result or error of each query separately.
+ */
+@Path("/v2.0/metrics/query")
+public class MetricQueryResource {
+
+  private final MetricQueryService service;
+  private final String admin_role;
+  private final int maxQueries;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  /**
+   * Result of one query of a request, either its elements or its error.
+   */
+  public static class QueryResult {
+    public int index;
+    public int status;
+    public List<?> elements;
+    public String nextOffset;
+    public JsonNode error;
+  }
+
+  @Inject
+  public MetricQueryResource(ApiConfig config, MetricQueryService service) {
+    this.admin_role = (config.middleware == null || config.middleware.adminRole == null)
+                      ? DEFAULT_ADMIN_ROLE : config.middleware.adminRole;
+    this.service = service;
+    this.maxQueries = config.metricQuery.maxQueries;
+  }
+
+  @POST
+  @Timed
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Object query(@Context UriInfo uriInfo,
+                      @HeaderParam("X-Tenant-Id") String tenantId,
+                      @HeaderParam("X-Roles") String roles,
+                      @QueryParam("tenant_id") String crossTenantId,
+                      @Valid QueryMetricsCommand command) throws Exception {
+
+    DateTime startTime = Validation.parseAndValidateDate(command.startTime, "start_time", true);
+    DateTime endTime = Validation.parseAndValidateDate(command.endTime, "end_time", false);
+    Validation.validateTimes(startTime, endTime);
+
+    if (command.queries.size() > this.maxQueries) {
+      throw Exceptions.unprocessableEntity("At most %d queries may be sent at once, found %d",
+                                           this.maxQueries, command.queries.size());
+    }
+
+    String queryTenantId = Validation.getQueryProject(roles, crossTenantId, tenantId, admin_role);
+
+    List<MetricQueryService.Result> results =
+        this.service.query(queryTenantId, startTime, endTime, command.queries);
+
+    List<QueryResult> queryResults = new ArrayList<>(results.size());
+
+    for (int i = 0; i < results.size(); i++) {
+      MetricQueryService.Result result = results.get(i);
+      QueryResult queryResult = new QueryResult();
+      queryResult.index = i;
+
+      if (result.exception == null) {
+        queryResult.status = Response.Status.OK.getStatusCode();
+        queryResult.elements = result.elements;
+        queryResult.nextOffset = result.nextOffset;
+      } else {
+        Response response = toResponse(result.exception);
+        queryResult.status = response.getStatus();
+        queryResult.error = this.objectMapper.readTree((String) response.getEntity());
+      }
+
+      queryResults.add(queryResult);
+    }
+
+    return Links.unpaged(queryResults, uriInfo);
+  }
+
+  /**
+   * Returns the response the query failing with {@code exception} would have got on its own.
+   */
+  private static Response toResponse(Exception exception) {
+    if (exception instanceof MultipleMetricsException) {
+      return new MultipleMetricsExceptionMapper().toResponse((MultipleMetricsException) exception);
+    }
+    if (exception instanceof IllegalArgumentException) {
+      return new IllegalArgumentExceptionMapper().toResponse((IllegalArgumentException) exception);
+    }
+    return new ThrowableExceptionMapper<Exception>().toResponse(exception);
+  }
+}
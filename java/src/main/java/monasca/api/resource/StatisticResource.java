@@ -22,6 +22,7 @@ import com.codahale.metrics.annotation.Timed;
 
 import org.joda.time.DateTime;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -39,8 +40,12 @@ import javax.ws.rs.core.UriInfo;
 import monasca.api.app.validation.MetricNameValidation;
 import monasca.api.ApiConfig;
 import monasca.api.app.validation.Validation;
+import monasca.api.domain.model.common.Paged;
+import monasca.api.domain.model.statistic.ColumnarStatistics;
 import monasca.api.domain.model.statistic.StatisticRepo;
+import monasca.api.domain.model.statistic.Statistics;
 import monasca.api.infrastructure.persistence.PersistUtils;
+import monasca.api.infrastructure.persistence.StatisticsConfiguration;
 
 // import monasca.common.util.stats.Statistics;
 
@@ -53,6 +58,7 @@ public class StatisticResource {
   private final String admin_role;
   private final StatisticRepo repo;
   private final PersistUtils persistUtils;
+  private final StatisticsConfiguration statisticsConfig;
 
   @Inject
   public StatisticResource(ApiConfig config, StatisticRepo repo, PersistUtils persistUtils) {
@@ -60,6 +66,8 @@ public class StatisticResource {
                       ? DEFAULT_ADMIN_ROLE : config.middleware.adminRole;
     this.repo = repo;
     this.persistUtils = persistUtils;
+    this.statisticsConfig =
+        config.statistics == null ? new StatisticsConfiguration() : config.statistics;
   }
 
   @GET
@@ -79,7 +87,9 @@ public class StatisticResource {
       @QueryParam("offset") String offset,
       @QueryParam("limit") String limit,
       @QueryParam("tenant_id") String crossTenantId,
-      @QueryParam("merge_metrics") String mergeMetricsFlag) throws Exception {
+      @QueryParam("merge_metrics") String mergeMetricsFlag,
+      @QueryParam("group_by") String groupByStr,
+      @QueryParam("format") String format) throws Exception {
 
     // Validate query parameters
     Validation.validateNotNullOrEmpty(name, "name");
@@ -87,7 +97,9 @@ public class StatisticResource {
     DateTime endTime = Validation.parseAndValidateDate(endTimeStr, "end_time", false);
     Validation.validateTimes(startTime, endTime);
     Validation.validateNotNullOrEmpty(statisticsStr, "statistics");
-    int period = Validation.parseAndValidateNumber(periodStr, "period");
+    int period = Validation.parseAndValidatePeriod(periodStr, startTime, endTime,
+                                                   this.statisticsConfig.autoPeriods,
+                                                   this.statisticsConfig.autoPoints);
     List<String> statistics =
         Validation.parseValidateAndNormalizeStatistics(COMMA_SPLITTER.split(statisticsStr));
     Map<String, String> dimensions =
@@ -95,15 +107,26 @@ public class StatisticResource {
             .parseAndValidateDimensions(dimensionsStr);
     MetricNameValidation.validate(name, true);
     Boolean mergeMetricsFlagBool = Validation.validateAndParseMergeMetricsFlag(mergeMetricsFlag);
+    List<String> groupBy = Validation.parseAndValidateGroupBy(groupByStr, mergeMetricsFlagBool);
+    boolean columnar = Validation.validateAndParseColumnarFormat(format);
 
     String queryTenantId = Validation.getQueryProject(roles, crossTenantId, tenantId, admin_role);
 
-    return Links.paginateStatistics(this.persistUtils.getLimit(limit),
-                                    repo.find(queryTenantId, name, dimensions, startTime, endTime,
-                                              statistics, period, offset,
-                                              this.persistUtils.getLimit(limit),
-                                              mergeMetricsFlagBool),
-                                    uriInfo);
+    final int paging_limit = this.persistUtils.getLimit(limit);
+    List<Statistics> resources = repo.find(queryTenantId, name, dimensions, startTime, endTime,
+                                           statistics, period, offset, paging_limit,
+                                           mergeMetricsFlagBool, groupBy);
+    Paged paged = groupBy != null
+                  ? Links.paginateGrouped(paging_limit, resources, uriInfo)
+                  : Links.paginateStatistics(paging_limit, resources, uriInfo);
+    if (columnar) {
+      List<ColumnarStatistics> columnarElements = new ArrayList<>(paged.elements.size());
+      for (Object stats : paged.elements) {
+        columnarElements.add(new ColumnarStatistics((Statistics) stats));
+      }
+      paged.elements = columnarElements;
+    }
+    return paged;
   }
 
 }
@@ -52,7 +52,8 @@ public final class Exceptions {
     NOT_FOUND(Status.NOT_FOUND, true),
     CONFLICT(Status.CONFLICT, true),
     UNPROCESSABLE_ENTITY(422, true),
-    FORBIDDEN(Status.FORBIDDEN, true);
+    FORBIDDEN(Status.FORBIDDEN, true),
+    SERVICE_UNAVAILABLE(Status.SERVICE_UNAVAILABLE, false);
 
     public final int statusCode;
     public final boolean loggable;
@@ -14,13 +14,21 @@
 
 package monasca.api.app;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
@@ -32,6 +40,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,6 +51,8 @@ import javax.ws.rs.WebApplicationException;
 import kafka.javaapi.producer.Producer;
 import kafka.producer.KeyedMessage;
 
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeMethod;
@@ -50,14 +62,22 @@ import monasca.api.ApiConfig;
 import monasca.api.app.AlarmDefinitionService.SubExpressions;
 import monasca.api.app.command.UpdateAlarmDefinitionCommand;
 import monasca.common.model.alarm.AlarmExpression;
+import monasca.common.model.alarm.AlarmState;
 import monasca.common.model.alarm.AlarmSubExpression;
 import monasca.common.model.event.AlarmDefinitionUpdatedEvent;
+import monasca.common.model.metric.MetricDefinition;
 import monasca.common.util.Serialization;
+import monasca.api.domain.exception.EntityNotFoundException;
+import monasca.api.domain.model.alarm.Alarm;
 import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarm.AlarmUpdate;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDetail;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.domain.model.outbox.OutboxEvent;
 import monasca.api.domain.exception.EntityExistsException;
+import monasca.api.domain.exception.InvalidEntityException;
 
 @Test
 public class AlarmDefinitionServiceTest {
@@ -71,6 +91,7 @@ public class AlarmDefinitionServiceTest {
   ApiConfig config;
   Producer<String, String> producer;
   AlarmDefinitionRepo repo;
+  AlarmRepo alarmRepo;
   NotificationMethodRepo notificationMethodRepo;
 
   @BeforeMethod
@@ -80,9 +101,20 @@ public class AlarmDefinitionServiceTest {
     producer = mock(Producer.class);
     repo = mock(AlarmDefinitionRepo.class);
     notificationMethodRepo = mock(NotificationMethodRepo.class);
-    AlarmRepo alarmRepo = mock(AlarmRepo.class);
+    alarmRepo = mock(AlarmRepo.class);
     service = new AlarmDefinitionService(config, producer, repo, alarmRepo, notificationMethodRepo);
 
+    // The composite read returns what the individual reads stubbed by each test return
+    when(repo.findDetailById(anyString(), anyString())).thenAnswer(
+        new Answer<AlarmDefinitionDetail>() {
+          @Override
+          public AlarmDefinitionDetail answer(InvocationOnMock invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            return new AlarmDefinitionDetail(repo.findById((String) args[0], (String) args[1]),
+                repo.findSubExpressions((String) args[1]));
+          }
+        });
+
     when(
         repo.create(anyString(), anyString(), anyString(), anyString(), anyString(), anyString(),
             any(Map.class), any(List.class), any(List.class), any(List.class), any(List.class)))
@@ -105,7 +137,8 @@ public class AlarmDefinitionServiceTest {
     List<String> okActions = Arrays.asList("2", "3");
     List<String> undeterminedActions = Arrays.asList("3");
 
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existAll(eq(TENANT_ID), anyCollectionOf(String.class)))
+        .thenReturn(Collections.<String>emptyList());
 
     AlarmDefinition alarm =
         service.create(TENANT_ID, "90% CPU", "foo", "LOW", exprStr, AlarmExpression.of(exprStr),
@@ -118,6 +151,20 @@ public class AlarmDefinitionServiceTest {
     verify(repo).create(eq(TENANT_ID), anyString(), eq("90% CPU"), eq("foo"), eq("LOW"), eq(exprStr),
         any(Map.class), eq(matchBy), eq(alarmActions), eq(okActions), eq(undeterminedActions));
     verify(producer).send(any(KeyedMessage.class));
+    verify(notificationMethodRepo, times(1))
+        .existAll(TENANT_ID, new HashSet<>(Arrays.asList("1", "2", "3")));
+  }
+
+  @Test(expectedExceptions = InvalidEntityException.class)
+  public void shouldNotCreateWithMissingAction() {
+    String exprStr = "avg(cpu_utilization{service=hpcs.compute, instance_id=123}) > 90";
+    List<String> alarmActions = Arrays.asList("1", "2");
+
+    when(notificationMethodRepo.existAll(eq(TENANT_ID), anyCollectionOf(String.class)))
+        .thenReturn(Arrays.asList("2"));
+
+    service.create(TENANT_ID, "90% CPU", "foo", "LOW", exprStr, AlarmExpression.of(exprStr),
+        null, alarmActions, null, null);
   }
 
   public void updateFailsDueToMatchBy() {
@@ -431,7 +478,8 @@ public class AlarmDefinitionServiceTest {
 
     when(repo.findById(eq(TENANT_ID), eq(alarmDefId))).thenReturn(oldAlarmDef);
     when(repo.findSubExpressions(eq(alarmDefId))).thenReturn(oldSubExpressions);
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existAll(eq(TENANT_ID), anyCollectionOf(String.class)))
+        .thenReturn(Collections.<String>emptyList());
     return oldAlarmDef;
   }
 
@@ -509,7 +557,8 @@ public class AlarmDefinitionServiceTest {
     when(repo.findById(TENANT_ID, secondAlarmDef.getId())).thenReturn(secondAlarmDef);
     when(repo.findById(TENANT_ID, firstAlarmDef.getId())).thenReturn(firstAlarmDef);
     when(repo.exists(TENANT_ID, "91% CPU")).thenReturn("123");
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existAll(eq(TENANT_ID), anyCollectionOf(String.class)))
+        .thenReturn(Collections.<String>emptyList());
     service.patch(TENANT_ID, secondAlarmDef.getId(), firstAlarmDef.getName(), "foo", "LOW", exprStr, null,
         matchBy, true, alarmActions, okActions, undeterminedActions);
 
@@ -538,7 +587,8 @@ public class AlarmDefinitionServiceTest {
     oldSubExpressions.put("555", AlarmSubExpression.of(EXPR2));
     when(repo.findSubExpressions(eq("234"))).thenReturn(oldSubExpressions);
 
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existAll(eq(TENANT_ID), anyCollectionOf(String.class)))
+        .thenReturn(Collections.<String>emptyList());
     AlarmDefinition alarmPatched = service.patch(TENANT_ID, secondAlarmDef.getId(), "92% CPU", "foo", "LOW", exprStr, null,
         matchBy, true, alarmActions, okActions, undeterminedActions);
     assertEquals(alarmPatched.getName(), "92% CPU");
@@ -573,7 +623,8 @@ public class AlarmDefinitionServiceTest {
     when(repo.findSubExpressions(eq("234"))).thenReturn(oldSubExpressions);
     AlarmExpression alarmExpression = new AlarmExpression(exprStr);
 
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existAll(eq(TENANT_ID), anyCollectionOf(String.class)))
+        .thenReturn(Collections.<String>emptyList());
     AlarmDefinition alarmPatched =
         service.update(TENANT_ID, secondAlarmDef.getId(), alarmExpression, updateCommand);
     assertEquals(alarmPatched.getName(), "92% CPU");
@@ -602,10 +653,121 @@ public class AlarmDefinitionServiceTest {
     when(repo.findById(TENANT_ID, secondAlarmDef.getId())).thenReturn(secondAlarmDef);
     when(repo.findById(TENANT_ID, firstAlarmDef.getId())).thenReturn(firstAlarmDef);
     when(repo.exists(TENANT_ID, "91% CPU")).thenReturn("123");
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existAll(eq(TENANT_ID), anyCollectionOf(String.class)))
+        .thenReturn(Collections.<String>emptyList());
 
     AlarmExpression alarmExpression = new AlarmExpression(exprStr);
     service.update(TENANT_ID, secondAlarmDef.getId(),alarmExpression,updateCommand);
 
   }
+
+  private static AlarmUpdate alarmUpdate(String alarmId) {
+    return new AlarmUpdate(new Alarm(alarmId, "123", "90% CPU", "LOW",
+        Arrays.asList(new MetricDefinition("cpu.idle_perc", null)), AlarmState.OK, null, null,
+        null, null, null), null, true, Collections.<String, AlarmSubExpression>emptyMap());
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldDeleteBeforePublishingEachPage() {
+    config.alarmDeletionBatchSize = 2;
+    when(alarmRepo.findIdsByAlarmDefinition(TENANT_ID, "123", null, 2))
+        .thenReturn(Arrays.asList("1", "2"));
+    when(alarmRepo.findIdsByAlarmDefinition(TENANT_ID, "123", "2", 2))
+        .thenReturn(Arrays.asList("3"));
+    when(alarmRepo.findForUpdate(TENANT_ID, Arrays.asList("1", "2")))
+        .thenReturn(Arrays.asList(alarmUpdate("1"), alarmUpdate("2")));
+    when(alarmRepo.findForUpdate(TENANT_ID, Arrays.asList("3")))
+        .thenReturn(Arrays.asList(alarmUpdate("3")));
+
+    service.delete(TENANT_ID, "123");
+
+    InOrder inOrder = inOrder(producer, alarmRepo, repo);
+    inOrder.verify(alarmRepo).findIdsByAlarmDefinition(TENANT_ID, "123", null, 2);
+    inOrder.verify(alarmRepo).findIdsByAlarmDefinition(TENANT_ID, "123", "2", 2);
+    inOrder.verify(repo).deleteById(TENANT_ID, "123");
+    inOrder.verify(producer).send(argThat(hasSize(1)));
+    inOrder.verify(producer).send(argThat(hasSize(2)));
+    inOrder.verify(producer).send(argThat(hasSize(1)));
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldPageByIdsWhenAlarmsAreDeletedMeanwhile() {
+    config.alarmDeletionBatchSize = 2;
+    when(alarmRepo.findIdsByAlarmDefinition(TENANT_ID, "123", null, 2))
+        .thenReturn(Arrays.asList("1", "2"));
+    when(alarmRepo.findIdsByAlarmDefinition(TENANT_ID, "123", "2", 2))
+        .thenReturn(Arrays.asList("3"));
+    when(alarmRepo.findForUpdate(TENANT_ID, Arrays.asList("1", "2")))
+        .thenReturn(Arrays.asList(alarmUpdate("1")));
+    when(alarmRepo.findForUpdate(TENANT_ID, Arrays.asList("3")))
+        .thenReturn(Arrays.asList(alarmUpdate("3")));
+
+    service.delete(TENANT_ID, "123");
+
+    verify(alarmRepo).findIdsByAlarmDefinition(TENANT_ID, "123", "2", 2);
+    verify(producer, times(3)).send(argThat(hasSize(1)));
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldNotPublishWhenDeleteFails() {
+    when(alarmRepo.findIdsByAlarmDefinition(TENANT_ID, "123", null,
+        config.alarmDeletionBatchSize)).thenReturn(Arrays.asList("1"));
+    when(alarmRepo.findForUpdate(TENANT_ID, Arrays.asList("1")))
+        .thenReturn(Arrays.asList(alarmUpdate("1")));
+    doThrow(new EntityNotFoundException("No alarm definition exists for %s", "123"))
+        .when(repo).deleteById(TENANT_ID, "123");
+
+    try {
+      service.delete(TENANT_ID, "123");
+      fail();
+    } catch (EntityNotFoundException expected) {
+    }
+
+    verify(producer, never()).send(any(List.class));
+    verify(producer, never()).send(any(KeyedMessage.class));
+  }
+
+  private static ArgumentMatcher<List> hasSize(final int size) {
+    return new ArgumentMatcher<List>() {
+      @Override
+      public boolean matches(Object argument) {
+        return argument instanceof List && ((List) argument).size() == size;
+      }
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldWriteDeletedEventsToOutboxPageByPage() {
+    config.outbox.enabled = true;
+    config.alarmDeletionBatchSize = 2;
+    when(alarmRepo.findIdsByAlarmDefinition(TENANT_ID, "123", null, 2))
+        .thenReturn(Arrays.asList("1", "2"));
+    when(alarmRepo.findIdsByAlarmDefinition(TENANT_ID, "123", "2", 2))
+        .thenReturn(Arrays.asList("3"));
+    when(alarmRepo.findForUpdate(TENANT_ID, Arrays.asList("1", "2")))
+        .thenReturn(Arrays.asList(alarmUpdate("1"), alarmUpdate("2")));
+    when(alarmRepo.findForUpdate(TENANT_ID, Arrays.asList("3")))
+        .thenReturn(Arrays.asList(alarmUpdate("3")));
+    final List<Integer> pageSizes = new ArrayList<>();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        Iterator<List<OutboxEvent>> events =
+            (Iterator<List<OutboxEvent>>) invocation.getArguments()[2];
+        while (events.hasNext()) {
+          List<OutboxEvent> page = events.next();
+          assertEquals(page.get(0).getTopic(), config.eventsTopic);
+          pageSizes.add(page.size());
+        }
+        return null;
+      }
+    }).when(repo).deleteById(eq(TENANT_ID), eq("123"), any(Iterator.class));
+
+    service.delete(TENANT_ID, "123");
+
+    assertEquals(pageSizes, Arrays.asList(1, 2, 1));
+    verify(repo, never()).deleteById(TENANT_ID, "123");
+    verify(producer, never()).send(any(List.class));
+    verify(producer, never()).send(any(KeyedMessage.class));
+  }
 }
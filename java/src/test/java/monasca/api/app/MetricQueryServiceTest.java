@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.app;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import monasca.api.ApiConfig;
+import monasca.api.app.command.QueryMetricsCommand.Query;
+import monasca.api.domain.exception.MultipleMetricsException;
+import monasca.api.domain.model.measurement.MeasurementRepo;
+import monasca.api.domain.model.measurement.Measurements;
+import monasca.api.domain.model.statistic.StatisticRepo;
+import monasca.api.domain.model.statistic.Statistics;
+import monasca.api.infrastructure.persistence.PersistUtils;
+
+@Test
+@SuppressWarnings("unchecked")
+public class MetricQueryServiceTest {
+  private static final DateTime START_TIME = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+
+  private MeasurementRepo measurementRepo;
+  private StatisticRepo statisticRepo;
+  private ExecutorService executor;
+  private MetricQueryService service;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    measurementRepo = mock(MeasurementRepo.class);
+    statisticRepo = mock(StatisticRepo.class);
+    executor = Executors.newFixedThreadPool(8);
+
+    ApiConfig config = new ApiConfig();
+    config.metricQuery.parallelism = 2;
+    service = new MetricQueryService(config, measurementRepo, statisticRepo, new PersistUtils(),
+                                     executor);
+  }
+
+  @AfterMethod
+  protected void afterMethod() {
+    executor.shutdownNow();
+  }
+
+  private static Query query(String name, String... statistics) {
+    Query query = new Query();
+    query.name = name;
+    query.statistics = statistics.length == 0 ? null : Arrays.asList(statistics);
+    return query;
+  }
+
+  private static Measurements measurements(String name, int count) {
+    Measurements measurements = new Measurements(name, Collections.<String, String>emptyMap());
+    for (int i = 0; i < count; i++) {
+      measurements.addMeasurement(START_TIME.getMillis() + i * 1000L, i, null);
+    }
+    return measurements;
+  }
+
+  public void shouldReturnResultsInQueryOrder() throws Exception {
+    when(measurementRepo.find(anyString(), eq("cpu"), any(Map.class), any(DateTime.class),
+                              any(DateTime.class), anyString(), anyInt(), anyBoolean(),
+                              any(List.class)))
+        .thenReturn(Arrays.asList(measurements("cpu", 3)));
+    Statistics statistics = new Statistics("mem", null, Arrays.asList("timestamp", "avg"));
+    statistics.addStatistics(START_TIME.getMillis(), new double[] {1});
+    when(statisticRepo.find(anyString(), eq("mem"), any(Map.class), any(DateTime.class),
+                            any(DateTime.class), eq(Arrays.asList("avg")), eq(300), anyString(),
+                            anyInt(), anyBoolean(), any(List.class)))
+        .thenReturn(Arrays.asList(statistics));
+
+    List<MetricQueryService.Result> results =
+        service.query("bob", START_TIME, null, Arrays.asList(query("cpu"), query("mem", "AVG")));
+
+    assertEquals(results.size(), 2);
+    assertEquals(((Measurements) results.get(0).elements.get(0)).getName(), "cpu");
+    assertEquals(((Statistics) results.get(1).elements.get(0)).getName(), "mem");
+    assertNull(results.get(0).nextOffset);
+  }
+
+  public void shouldReportErrorsPerQuery() throws Exception {
+    when(measurementRepo.find(anyString(), eq("cpu"), any(Map.class), any(DateTime.class),
+                              any(DateTime.class), anyString(), anyInt(), anyBoolean(),
+                              any(List.class)))
+        .thenThrow(new MultipleMetricsException("cpu", null));
+    when(measurementRepo.find(anyString(), eq("mem"), any(Map.class), any(DateTime.class),
+                              any(DateTime.class), anyString(), anyInt(), anyBoolean(),
+                              any(List.class)))
+        .thenReturn(Arrays.asList(measurements("mem", 1)));
+
+    List<MetricQueryService.Result> results =
+        service.query("bob", START_TIME, null,
+                      Arrays.asList(query("cpu"), query("mem"), query("mem", "median")));
+
+    assertTrue(results.get(0).exception instanceof MultipleMetricsException);
+    assertNull(results.get(1).exception);
+    assertEquals(results.get(1).elements.size(), 1);
+    assertTrue(results.get(2).exception != null);
+  }
+
+  public void shouldTruncateToLimit() throws Exception {
+    when(measurementRepo.find(anyString(), eq("cpu"), any(Map.class), any(DateTime.class),
+                              any(DateTime.class), anyString(), eq(2), anyBoolean(),
+                              any(List.class)))
+        .thenReturn(Arrays.asList(measurements("cpu", 3)));
+    Query query = query("cpu");
+    query.limit = 2;
+
+    MetricQueryService.Result result =
+        service.query("bob", START_TIME, null, Arrays.asList(query)).get(0);
+
+    assertEquals(((Measurements) result.elements.get(0)).size(), 2);
+    assertEquals(result.nextOffset, "2016-01-01T00:00:01.000Z");
+  }
+
+  public void shouldCapParallelismPerRequest() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+
+    when(measurementRepo.find(anyString(), anyString(), any(Map.class), any(DateTime.class),
+                              any(DateTime.class), anyString(), anyInt(), anyBoolean(),
+                              any(List.class)))
+        .thenAnswer(new Answer<List<Measurements>>() {
+          @Override
+          public List<Measurements> answer(InvocationOnMock invocation) throws Throwable {
+            int now = running.incrementAndGet();
+            synchronized (maxRunning) {
+              maxRunning.set(Math.max(maxRunning.get(), now));
+            }
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return Arrays.asList(measurements((String) invocation.getArguments()[1], 1));
+          }
+        });
+
+    List<Query> queries = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      queries.add(query("metric-" + i));
+    }
+
+    List<MetricQueryService.Result> results = service.query("bob", START_TIME, null, queries);
+
+    assertEquals(results.size(), 10);
+    assertEquals(((Measurements) results.get(9).elements.get(0)).getName(), "metric-9");
+    assertTrue(maxRunning.get() <= 2, "Ran " + maxRunning.get() + " queries at once");
+  }
+}
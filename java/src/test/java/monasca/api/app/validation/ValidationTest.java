@@ -15,11 +15,18 @@
 package monasca.api.app.validation;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.WebApplicationException;
+
 @Test
 public class ValidationTest {
   public void testSimpleParseAndValidateDimensions() {
@@ -35,4 +42,36 @@ public class ValidationTest {
     assertEquals(dimensions.get("aa"), "bb");
     assertEquals(dimensions.get("url"), "http://localhost:8081/healthcheck");
   }
+
+  public void testParseAndValidateGroupBy() {
+    assertNull(Validation.parseAndValidateGroupBy(null, false));
+    assertEquals(Validation.parseAndValidateGroupBy("*", false), Arrays.asList("*"));
+    assertEquals(Validation.parseAndValidateGroupBy("hostname, service", false),
+                 Arrays.asList("hostname", "service"));
+  }
+
+  @Test(expectedExceptions = WebApplicationException.class)
+  public void testGroupByShouldNotBeCombinedWithMergeMetrics() {
+    Validation.parseAndValidateGroupBy("hostname", true);
+  }
+
+  @Test(expectedExceptions = WebApplicationException.class)
+  public void testGroupByShouldNotMixAllWithNames() {
+    Validation.parseAndValidateGroupBy("*,hostname", false);
+  }
+
+  public void testParseAndValidateAutoPeriod() {
+    final DateTime end = new DateTime(2016, 4, 1, 0, 0, DateTimeZone.UTC);
+    final List<Integer> periods = Arrays.asList(60, 300, 900, 3600, 21600, 86400);
+
+    assertEquals(Validation.parseAndValidatePeriod("120", end.minusHours(1), end, periods, 500),
+                 120);
+    assertEquals(Validation.parseAndValidatePeriod("auto", end.minusHours(1), end, periods, 500),
+                 60);
+    assertEquals(Validation.parseAndValidatePeriod("auto", end.minusDays(90), end, periods, 500),
+                 21600);
+    // Beyond the largest period, multiples of it.
+    assertEquals(Validation.parseAndValidatePeriod("auto", end.minusDays(1825), end, periods, 500),
+                 4 * 86400);
+  }
 }
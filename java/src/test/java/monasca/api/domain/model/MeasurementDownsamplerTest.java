@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.annotations.Test;
+
+import monasca.api.domain.model.measurement.MeasurementDownsampler;
+import monasca.api.domain.model.measurement.Measurements;
+
+@Test
+public class MeasurementDownsamplerTest {
+  private static final long START = 1451606400000L;
+  private static final DateTime START_TIME = new DateTime(START, DateTimeZone.UTC);
+  private static final DateTime END_TIME = START_TIME.plusSeconds(10000);
+
+  private static Map<String, String> dimensions(String hostname, String service) {
+    Map<String, String> dimensions = new HashMap<>();
+    dimensions.put("hostname", hostname);
+    dimensions.put("service", service);
+    return dimensions;
+  }
+
+  public void shouldDownsampleWholeRangeKeepingEndsAndSpikes() throws Exception {
+    MeasurementDownsampler downsampler =
+        new MeasurementDownsampler(START_TIME, END_TIME, 10, false, null);
+    Map<String, String> dimensions = dimensions("h1", "compute");
+    for (int i = 0; i < 10000; i++) {
+      double value = i == 5000 ? 100 : i == 8000 ? -50 : 1;
+      downsampler.handle("cpu.idle_perc", dimensions, START + i * 1000L, value,
+                         i == 5000 ? "{\"reason\":\"spike\"}" : null);
+    }
+
+    List<Measurements> result = downsampler.result();
+
+    assertEquals(result.size(), 1);
+    Measurements measurements = result.get(0);
+    assertEquals(measurements.getDimensions(), dimensions);
+    assertTrue(measurements.size() <= 10);
+    assertEquals(measurements.timestampAt(0), START);
+    assertEquals(measurements.timestampAt(measurements.size() - 1), START + 9999 * 1000L);
+    double[] values = measurements.getValues();
+    int spike = -1;
+    boolean dip = false;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == 100) {
+        spike = i;
+      }
+      dip |= values[i] == -50;
+    }
+    assertTrue(spike > 0);
+    assertTrue(dip);
+    assertEquals(measurements.getValueMeta(),
+                 Collections.singletonMap(spike, Collections.singletonMap("reason", "spike")));
+  }
+
+  public void shouldKeepSparseMeasurementsAndGaps() throws Exception {
+    MeasurementDownsampler downsampler =
+        new MeasurementDownsampler(START_TIME, END_TIME, 12, false, null);
+    Map<String, String> dimensions = dimensions("h1", "compute");
+    long[] timestamps = {START, START + 1500000L, START + 2500000L, START + 9000000L};
+    for (long timestamp : timestamps) {
+      downsampler.handle("cpu.idle_perc", dimensions, timestamp, 1, null);
+    }
+
+    assertEquals(downsampler.result().get(0).getTimestamps(), timestamps);
+  }
+
+  public void shouldMergeSeriesReadInSlices() throws Exception {
+    MeasurementDownsampler downsampler =
+        new MeasurementDownsampler(START_TIME, END_TIME, 20, true, null);
+    // Series are read slice after slice, with new dimensions instances each time.
+    for (int slice = 0; slice < 10; slice++) {
+      for (String hostname : Arrays.asList("h1", "h2")) {
+        for (int i = 0; i < 1000; i += 10) {
+          long timestamp = START + (slice * 1000L + i + (hostname.equals("h2") ? 5 : 0)) * 1000L;
+          downsampler.handle("cpu.idle_perc", dimensions(hostname, "compute"), timestamp, i,
+                             null);
+        }
+      }
+    }
+
+    List<Measurements> result = downsampler.result();
+
+    assertEquals(result.size(), 1);
+    Measurements measurements = result.get(0);
+    assertEquals(measurements.getName(), "cpu.idle_perc");
+    assertEquals(measurements.getDimensions(), Collections.emptyMap());
+    assertTrue(measurements.size() <= 20);
+    long[] timestamps = measurements.getTimestamps();
+    for (int i = 1; i < timestamps.length; i++) {
+      assertTrue(timestamps[i - 1] < timestamps[i]);
+    }
+    assertEquals(timestamps[0], START);
+    assertEquals(timestamps[timestamps.length - 1], START + 9995 * 1000L);
+  }
+
+  public void shouldGroupSeriesByDimensions() throws Exception {
+    MeasurementDownsampler downsampler =
+        new MeasurementDownsampler(START_TIME, END_TIME, 10, false,
+                                   Collections.singletonList("service"));
+    downsampler.handle("cpu.idle_perc", dimensions("h1", "storage"), START, 1, null);
+    downsampler.handle("cpu.idle_perc", dimensions("h1", "compute"), START, 2, null);
+    downsampler.handle("cpu.idle_perc", dimensions("h2", "compute"), START + 1000L, 3, null);
+
+    List<Measurements> result = downsampler.result();
+
+    assertEquals(result.size(), 2);
+    assertEquals(result.get(0).getId(), "0");
+    assertEquals(result.get(0).getDimensions(), Collections.singletonMap("service", "compute"));
+    assertEquals(result.get(0).getValues(), new double[] {2, 3});
+    assertEquals(result.get(1).getId(), "1");
+    assertEquals(result.get(1).getDimensions(), Collections.singletonMap("service", "storage"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectBudgetBelowThreePoints() {
+    new MeasurementDownsampler(START_TIME, END_TIME, 2, false, null);
+  }
+}
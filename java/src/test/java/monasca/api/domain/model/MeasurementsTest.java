@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.testng.annotations.Test;
+
+import monasca.api.domain.model.measurement.ColumnarMeasurements;
+import monasca.api.domain.model.measurement.Measurements;
+import monasca.api.domain.model.statistic.ColumnarStatistics;
+import monasca.api.domain.model.statistic.Statistics;
+
+@Test
+public class MeasurementsTest extends AbstractModelTest {
+  private static final Map<String, String> DIMENSIONS = Collections.singletonMap("hostname", "h1");
+
+  private static Measurements measurements() {
+    Measurements measurements = new Measurements("cpu.idle_perc", DIMENSIONS);
+    for (int i = 0; i < 20; i++) {
+      measurements.addMeasurement(1451606400000L + i * 1000L, i,
+                                  i == 3 ? Collections.singletonMap("reason", "spike") : null);
+    }
+    return measurements;
+  }
+
+  public void shouldSerializeMeasurementsAsRows() throws Exception {
+    JsonNode json = MAPPER.readTree(toJson(measurements()));
+
+    assertEquals(json.get("measurements").size(), 20);
+    assertEquals(json.get("measurements").get(0).toString(),
+                 "[\"2016-01-01T00:00:00.000Z\",0.0,{}]");
+    assertEquals(json.get("measurements").get(3).toString(),
+                 "[\"2016-01-01T00:00:03.000Z\",3.0,{\"reason\":\"spike\"}]");
+  }
+
+  public void shouldSerializeMeasurementsAsColumns() throws Exception {
+    JsonNode json = MAPPER.readTree(toJson(new ColumnarMeasurements(measurements())));
+
+    assertEquals(json.get("columns").toString(), "[\"timestamp\",\"value\",\"value_meta\"]");
+    assertEquals(json.get("timestamps").get(1).asLong(), 1451606401000L);
+    assertEquals(json.get("values").get(19).asDouble(), 19.0);
+    assertEquals(json.get("value_meta").toString(), "{\"3\":{\"reason\":\"spike\"}}");
+    assertNull(json.get("measurements"));
+  }
+
+  public void shouldTruncateMeasurements() {
+    Measurements measurements = measurements();
+    measurements.truncate(3);
+
+    assertEquals(measurements.size(), 3);
+    assertTrue(Arrays.equals(measurements.getValues(), new double[] {0, 1, 2}));
+    assertTrue(measurements.getValueMeta().isEmpty());
+    assertEquals(measurements.timestampAt(2), 1451606402000L);
+  }
+
+  public void shouldReadMeasurementRows() {
+    Measurements measurements = new Measurements("cpu.idle_perc", DIMENSIONS);
+    measurements.addMeasurement(
+        new Object[] {"2016-01-01T00:00:00.000Z", 1.5, Collections.emptyMap()});
+
+    assertEquals(measurements, new Measurements("cpu.idle_perc", DIMENSIONS,
+        Arrays.<Object[]>asList(new Object[] {"2016-01-01T00:00:00Z", 1.5, null})));
+    assertTrue(Arrays.equals(measurements.getTimestamps(), new long[] {1451606400000L}));
+  }
+
+  public void shouldSerializeStatisticsAsRowsAndColumns() throws Exception {
+    Statistics statistics =
+        new Statistics("cpu.idle_perc", DIMENSIONS, Arrays.asList("timestamp", "avg", "count"));
+    statistics.addStatistics(1451606400000L, new double[] {1.5, 4});
+    statistics.addStatistics(1451606700000L, new double[] {Double.NaN, 0});
+
+    JsonNode rows = MAPPER.readTree(toJson(statistics));
+    assertEquals(rows.get("statistics").toString(),
+                 "[[\"2016-01-01T00:00:00.000Z\",1.5,4],[\"2016-01-01T00:05:00.000Z\",null,0]]");
+
+    JsonNode columns = MAPPER.readTree(toJson(new ColumnarStatistics(statistics)));
+    assertEquals(columns.get("timestamps").toString(), "[1451606400000,1451606700000]");
+    assertEquals(columns.get("statistics").toString(), "[[1.5,null],[4.0,0.0]]");
+  }
+
+  public void shouldDownsampleKeepingEndsAndSpikes() {
+    Measurements measurements = new Measurements("cpu.idle_perc", DIMENSIONS);
+    for (int i = 0; i < 1000; i++) {
+      double value = i == 500 ? 100 : i == 800 ? -50 : 1;
+      measurements.addMeasurement(1451606400000L + i * 1000L, value,
+                                  i == 500 ? Collections.singletonMap("reason", "spike") : null);
+    }
+
+    measurements.downsample(10);
+
+    assertEquals(measurements.size(), 10);
+    assertEquals(measurements.timestampAt(0), 1451606400000L);
+    assertEquals(measurements.timestampAt(9), 1451606400000L + 999 * 1000L);
+    double[] values = measurements.getValues();
+    int spike = -1;
+    boolean dip = false;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == 100) {
+        spike = i;
+      }
+      dip |= values[i] == -50;
+    }
+    assertTrue(spike > 0);
+    assertTrue(dip);
+    assertEquals(measurements.getValueMeta().keySet(), Collections.singleton(spike));
+  }
+
+  public void shouldNotDownsampleWithinBudget() {
+    Measurements measurements = measurements();
+
+    measurements.downsample(20);
+
+    assertEquals(measurements, measurements());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectBudgetBelowThreePoints() {
+    measurements().downsample(2);
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class AlarmIdIndexTest {
+
+  private static final byte[] DIM_SET_1 = new byte[]{1};
+  private static final byte[] DIM_SET_2 = new byte[]{2};
+
+  private Utils utils;
+  private AlarmIdIndex index;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    utils = mock(Utils.class);
+
+    // Alarm 1 has two metrics, alarm 2 one metric and alarm 3 a metric without dimensions.
+    List<Object[]> rows = Arrays.asList(
+        new Object[]{"1", DIM_SET_1, "service", "compute"},
+        new Object[]{"1", DIM_SET_1, "hostname", "a"},
+        new Object[]{"1", DIM_SET_2, "service", "monitoring"},
+        new Object[]{"1", DIM_SET_2, "hostname", "b"},
+        new Object[]{"2", DIM_SET_1, "service", "compute"},
+        new Object[]{"2", DIM_SET_1, "hostname", "a"},
+        new Object[]{"3", null, null, null});
+    when(utils.findAlarmMetricDimensions("bob")).thenReturn(rows);
+
+    index = new AlarmIdIndex(utils, configuration());
+  }
+
+  private static AlarmIdIndexConfiguration configuration() {
+    AlarmIdIndexConfiguration configuration = new AlarmIdIndexConfiguration();
+    configuration.enabled = true;
+    return configuration;
+  }
+
+  private static Map<String, String> dims(String... keyValues) {
+    Map<String, String> dims = new HashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      dims.put(keyValues[i], keyValues[i + 1]);
+    }
+    return dims;
+  }
+
+  public void shouldFindAllAlarmsWithoutDimensions() {
+    assertEquals(index.findAlarmIds("bob", null), Arrays.asList("1", "2", "3"));
+  }
+
+  public void shouldIntersectDimensions() {
+    assertEquals(index.findAlarmIds("bob", dims("service", "compute", "hostname", "a")),
+                 Arrays.asList("1", "2"));
+    assertEquals(index.findAlarmIds("bob", dims("service", "monitoring")), Arrays.asList("1"));
+  }
+
+  public void shouldRequireDimensionsOnTheSameMetric() {
+    assertTrue(index.findAlarmIds("bob", dims("service", "monitoring", "hostname", "a")).isEmpty());
+  }
+
+  public void shouldFindNothingForUnknownDimension() {
+    assertTrue(index.findAlarmIds("bob", dims("flavor_id", "1")).isEmpty());
+  }
+
+  public void shouldApplyAlarmEventsWithoutReloading() throws Exception {
+    index.findAlarmIds("bob", null);
+    index.findAlarmIds("bob", null);
+    verify(utils, times(1)).findAlarmMetricDimensions("bob");
+
+    index.onEvent("alarm-updated", new ObjectMapper().readTree("{\"tenantId\":\"bob\"}"));
+    index.onEvent("alarm-deleted",
+                  new ObjectMapper().readTree("{\"tenantId\":\"bob\",\"alarmId\":\"2\"}"));
+    index.onEvent("alarm-created", new ObjectMapper().readTree(
+        "{\"tenantId\":\"bob\",\"alarmId\":\"4\",\"alarmMetrics\":["
+        + "{\"name\":\"cpu\",\"dimensions\":{\"service\":\"compute\",\"hostname\":\"c\"}}]}"));
+
+    assertEquals(index.findAlarmIds("bob", null), Arrays.asList("1", "3", "4"));
+    assertEquals(index.findAlarmIds("bob", dims("service", "compute")), Arrays.asList("1", "4"));
+    assertEquals(index.findAlarmIds("bob", dims("hostname", "a")), Arrays.asList("1"));
+    verify(utils, times(1)).findAlarmMetricDimensions("bob");
+  }
+
+  public void shouldReloadInBackgroundWhenAlarmMetricsAreMissing() throws Exception {
+    index = new AlarmIdIndex(utils, configuration(), MoreExecutors.sameThreadExecutor());
+    index.findAlarmIds("bob", null);
+
+    index.onEvent("alarm-created",
+                  new ObjectMapper().readTree("{\"tenantId\":\"bob\",\"alarmId\":\"4\"}"));
+
+    verify(utils, times(2)).findAlarmMetricDimensions("bob");
+  }
+
+  public void shouldReplayEventsAppliedDuringReload() throws Exception {
+    final List<Runnable> reloads = new ArrayList<>();
+    index = new AlarmIdIndex(utils, configuration(), new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        reloads.add(command);
+      }
+    });
+    index.findAlarmIds("bob", null);
+    index.onEvent("alarm-definition-deleted", new ObjectMapper().readTree("{}"));
+    assertEquals(reloads.size(), 1);
+
+    // The deletion arrives after the reload has read rows which still include the alarm.
+    final List<Object[]> staleRows = utils.findAlarmMetricDimensions("bob");
+    when(utils.findAlarmMetricDimensions("bob")).thenAnswer(new Answer<List<Object[]>>() {
+      @Override
+      public List<Object[]> answer(InvocationOnMock invocation) throws Exception {
+        index.onEvent("alarm-deleted",
+                      new ObjectMapper().readTree("{\"tenantId\":\"bob\",\"alarmId\":\"1\"}"));
+        return staleRows;
+      }
+    });
+    reloads.get(0).run();
+
+    assertEquals(index.findAlarmIds("bob", null), Arrays.asList("2", "3"));
+  }
+
+  public void shouldUseDatabaseWhenDisabled() {
+    AlarmIdIndex disabled = new AlarmIdIndex(utils, new AlarmIdIndexConfiguration());
+    disabled.findAlarmIds("bob", dims("service", "compute"));
+    verify(utils).findAlarmIds("bob", dims("service", "compute"));
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.joda.time.DateTime;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import monasca.common.model.alarm.AlarmState;
+
+@Test
+public class AlarmIndexTest {
+
+  private static final byte[] METRIC_1 = new byte[]{1};
+  private static final byte[] METRIC_2 = new byte[]{2};
+  private static final byte[] METRIC_3 = new byte[]{3};
+
+  private Utils utils;
+  private AlarmIndex index;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    utils = mock(Utils.class);
+
+    // Alarm 1 has two metrics, alarm 2 shares one of them and alarm 3 has no dimensions.
+    List<Object[]> rows = Arrays.asList(
+        new Object[]{"3", "def-2", "UNDETERMINED", METRIC_3, "cpu.user_perc", null, null},
+        new Object[]{"1", "def-1", "OK", METRIC_1, "cpu.idle_perc", "service", "compute"},
+        new Object[]{"1", "def-1", "OK", METRIC_1, "cpu.idle_perc", "hostname", "a"},
+        new Object[]{"1", "def-1", "OK", METRIC_2, "cpu.idle_perc", "service", "monitoring"},
+        new Object[]{"1", "def-1", "OK", METRIC_2, "cpu.idle_perc", "hostname", "b"},
+        new Object[]{"2", "def-1", "ALARM", METRIC_1, "cpu.idle_perc", "service", "compute"},
+        new Object[]{"2", "def-1", "ALARM", METRIC_1, "cpu.idle_perc", "hostname", "a"});
+    when(utils.findAlarmIndexRows("bob")).thenReturn(rows);
+
+    index = new AlarmIndex(utils, configuration());
+  }
+
+  private static AlarmIndexConfiguration configuration() {
+    AlarmIndexConfiguration configuration = new AlarmIndexConfiguration();
+    configuration.enabled = true;
+    return configuration;
+  }
+
+  private static Map<String, String> dims(String... keyValues) {
+    Map<String, String> dims = new HashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      dims.put(keyValues[i], keyValues[i + 1]);
+    }
+    return dims;
+  }
+
+  private List<String> find(String alarmDefId, String metricName, Map<String, String> dimensions,
+                            AlarmState state, String offset, int limit) {
+    return index.findAlarmIds("bob", alarmDefId, metricName, dimensions, state, null, null, null,
+                              offset, limit);
+  }
+
+  public void shouldFindAllInIdOrder() {
+    assertEquals(find(null, null, null, null, null, 0), Arrays.asList("1", "2", "3"));
+  }
+
+  public void shouldFilterByStateAndDefinition() {
+    assertEquals(find(null, null, null, AlarmState.ALARM, null, 0), Arrays.asList("2"));
+    assertEquals(find("def-1", null, null, null, null, 0), Arrays.asList("1", "2"));
+    assertTrue(find("def-3", null, null, null, null, 0).isEmpty());
+  }
+
+  public void shouldRequireNameAndDimensionsOnTheSameMetric() {
+    assertEquals(find(null, "cpu.idle_perc", dims("hostname", "a"), null, null, 0),
+                 Arrays.asList("1", "2"));
+    assertEquals(find(null, null, dims("service", "monitoring"), null, null, 0), Arrays.asList("1"));
+    assertTrue(find(null, null, dims("service", "monitoring", "hostname", "a"), null, null, 0)
+                   .isEmpty());
+    assertTrue(find(null, "cpu.user_perc", dims("hostname", "a"), null, null, 0).isEmpty());
+    assertEquals(find(null, "cpu.user_perc", null, null, null, 0), Arrays.asList("3"));
+  }
+
+  public void shouldPageByAlarmId() {
+    assertEquals(find(null, null, null, null, null, 2), Arrays.asList("1", "2"));
+    assertEquals(find(null, null, null, null, "1", 2), Arrays.asList("2", "3"));
+    assertEquals(find(null, null, null, null, "15", 2), Arrays.asList("2", "3"));
+    assertTrue(find(null, null, null, null, "3", 2).isEmpty());
+  }
+
+  public void shouldApplyStateTransitionsAndDeletes() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+
+    index.onEvent("alarm-transitioned", mapper.readTree(
+        "{\"tenantId\":\"bob\",\"alarmId\":\"1\",\"oldState\":\"OK\",\"newState\":\"ALARM\"}"));
+    assertEquals(find(null, null, null, AlarmState.ALARM, null, 0), Arrays.asList("1", "2"));
+
+    index.stateChanged("bob", "2", AlarmState.OK);
+    assertEquals(find(null, null, null, AlarmState.OK, null, 0), Arrays.asList("2"));
+
+    index.onEvent("alarm-deleted", mapper.readTree("{\"tenantId\":\"bob\",\"alarmId\":\"1\"}"));
+    assertEquals(find(null, null, null, null, null, 0), Arrays.asList("2", "3"));
+
+    verify(utils, times(1)).findAlarmIndexRows("bob");
+  }
+
+  public void shouldAddCreatedAlarmsWithoutReloading() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    find(null, null, null, null, null, 0);
+
+    index.onEvent("alarm-created", mapper.readTree(
+        "{\"tenantId\":\"bob\",\"alarmId\":\"15\",\"alarmDefinitionId\":\"def-1\","
+        + "\"alarmMetrics\":[{\"name\":\"cpu.idle_perc\",\"dimensions\":{\"hostname\":\"a\"}}]}"));
+
+    assertEquals(find(null, null, null, null, null, 0), Arrays.asList("1", "15", "2", "3"));
+    assertEquals(find(null, null, null, null, "1", 2), Arrays.asList("15", "2"));
+    assertEquals(find(null, "cpu.idle_perc", dims("hostname", "a"), null, null, 0),
+                 Arrays.asList("1", "15", "2"));
+    assertEquals(find(null, null, null, AlarmState.UNDETERMINED, null, 0),
+                 Arrays.asList("15", "3"));
+
+    index.onEvent("alarm-transitioned", mapper.readTree(
+        "{\"tenantId\":\"bob\",\"alarmId\":\"15\",\"newState\":\"ALARM\"}"));
+    assertEquals(find(null, null, null, AlarmState.ALARM, null, 0), Arrays.asList("15", "2"));
+
+    index.onEvent("alarm-deleted", mapper.readTree("{\"tenantId\":\"bob\",\"alarmId\":\"15\"}"));
+    assertEquals(find(null, null, null, null, null, 0), Arrays.asList("1", "2", "3"));
+
+    verify(utils, times(1)).findAlarmIndexRows("bob");
+  }
+
+  public void shouldRemoveAlarmsOfDeletedDefinition() throws Exception {
+    find(null, null, null, null, null, 0);
+    index.onEvent("alarm-definition-deleted",
+                  new ObjectMapper().readTree("{\"alarmDefinitionId\":\"def-1\"}"));
+    assertEquals(find(null, null, null, null, null, 0), Arrays.asList("3"));
+    verify(utils, times(1)).findAlarmIndexRows("bob");
+  }
+
+  public void shouldReloadInBackgroundAndReplayChanges() throws Exception {
+    final List<Runnable> reloads = new ArrayList<>();
+    index = new AlarmIndex(utils, configuration(), new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        reloads.add(command);
+      }
+    });
+    find(null, null, null, null, null, 0);
+
+    // Without its metrics the alarm can't be indexed from the event.
+    index.onEvent("alarm-created", new ObjectMapper().readTree("{\"tenantId\":\"bob\"}"));
+    assertEquals(reloads.size(), 1);
+    assertEquals(find(null, null, null, null, null, 0), Arrays.asList("1", "2", "3"));
+
+    // The transition arrives after the reload has read rows which still have the old state.
+    final List<Object[]> staleRows = utils.findAlarmIndexRows("bob");
+    when(utils.findAlarmIndexRows("bob")).thenAnswer(new Answer<List<Object[]>>() {
+      @Override
+      public List<Object[]> answer(InvocationOnMock invocation) {
+        index.stateChanged("bob", "3", AlarmState.OK);
+        return staleRows;
+      }
+    });
+    reloads.get(0).run();
+
+    assertEquals(find(null, null, null, AlarmState.OK, null, 0), Arrays.asList("1", "3"));
+  }
+
+  public void shouldNotAnswerUnindexedFilters() {
+    assertNull(index.findAlarmIds("bob", null, null, null, null, "OPEN", null, null, null, 0));
+    assertNull(index.findAlarmIds("bob", null, null, null, null, null, null, DateTime.now(), null,
+                                  0));
+    assertNull(new AlarmIndex(utils, new AlarmIndexConfiguration())
+                   .findAlarmIds("bob", null, null, null, null, null, null, null, null, 0));
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDetail;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.common.model.alarm.AlarmSubExpression;
+
+@Test
+public class CachedAlarmDefinitionRepoTest {
+
+  private AlarmDefinitionRepo delegate;
+  private MetricRegistry registry;
+  private CachedAlarmDefinitionRepo repo;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    delegate = mock(AlarmDefinitionRepo.class);
+    registry = new MetricRegistry();
+    repo = new CachedAlarmDefinitionRepo(delegate, new AlarmDefinitionCacheConfiguration(),
+                                         registry);
+
+    when(delegate.findById("bob", "123")).thenReturn(definition("123", "90% CPU"));
+  }
+
+  private static AlarmDefinition definition(String id, String name) {
+    return new AlarmDefinition(id, name, null, "LOW", "avg(cpu.idle_perc) < 10", null, true,
+                               Arrays.asList("1"), null, null);
+  }
+
+  private long hits() {
+    return registry.meter(MetricRegistry.name(CachedAlarmDefinitionRepo.class, "hits")).getCount();
+  }
+
+  private long misses() {
+    return registry.meter(MetricRegistry.name(CachedAlarmDefinitionRepo.class, "misses"))
+        .getCount();
+  }
+
+  public void shouldReadThrough() {
+    assertEquals(repo.findById("bob", "123").getName(), "90% CPU");
+    assertEquals(repo.findById("bob", "123").getName(), "90% CPU");
+
+    verify(delegate, times(1)).findById("bob", "123");
+    assertEquals(misses(), 1);
+    assertEquals(hits(), 1);
+  }
+
+  public void shouldCacheNameLookupsIncludingAbsence() {
+    when(delegate.exists("bob", "90% CPU")).thenReturn("123");
+
+    assertEquals(repo.exists("bob", "90% CPU"), "123");
+    assertEquals(repo.exists("bob", "90% CPU"), "123");
+    assertNull(repo.exists("bob", "Disk"));
+    assertNull(repo.exists("bob", "Disk"));
+
+    verify(delegate, times(1)).exists("bob", "90% CPU");
+    verify(delegate, times(1)).exists("bob", "Disk");
+  }
+
+  public void shouldCacheSubExpressions() {
+    when(delegate.findSubExpressions("123")).thenReturn(
+        Collections.singletonMap("111", AlarmSubExpression.of("avg(cpu.idle_perc) < 10")));
+
+    assertEquals(repo.findSubExpressions("123").size(), 1);
+    assertEquals(repo.findSubExpressions("123").size(), 1);
+
+    verify(delegate, times(1)).findSubExpressions("123");
+  }
+
+  public void shouldNotShareCachedInstances() {
+    AlarmDefinition first = repo.findById("bob", "123");
+    first.setName("changed");
+    first.getAlarmActions().add("2");
+
+    AlarmDefinition second = repo.findById("bob", "123");
+    assertEquals(second.getName(), "90% CPU");
+    assertEquals(second.getAlarmActions(), Arrays.asList("1"));
+  }
+
+  public void shouldPopulateDefinitionAndSubExpressionsFromDetail() {
+    Map<String, AlarmSubExpression> subExpressions =
+        Collections.singletonMap("111", AlarmSubExpression.of("avg(cpu.idle_perc) < 10"));
+    when(delegate.findDetailById("bob", "123"))
+        .thenReturn(new AlarmDefinitionDetail(definition("123", "90% CPU"), subExpressions));
+
+    assertEquals(repo.findDetailById("bob", "123").getSubExpressions(), subExpressions);
+    assertEquals(repo.findDetailById("bob", "123").getAlarmDefinition().getName(), "90% CPU");
+    assertEquals(repo.findById("bob", "123").getName(), "90% CPU");
+    assertEquals(repo.findSubExpressions("123"), subExpressions);
+
+    verify(delegate, times(1)).findDetailById("bob", "123");
+    verify(delegate, never()).findById("bob", "123");
+    verify(delegate, never()).findSubExpressions("123");
+  }
+
+  public void shouldInvalidateOnUpdate() {
+    repo.findById("bob", "123");
+    repo.findSubExpressions("123");
+
+    repo.update("bob", "123", false, "Changed", null, "avg(cpu.idle_perc) < 10", null, "LOW",
+                true, null, null, null, null, null, null);
+    repo.findById("bob", "123");
+    repo.findSubExpressions("123");
+
+    verify(delegate, times(2)).findById("bob", "123");
+    verify(delegate, times(2)).findSubExpressions("123");
+  }
+
+  public void shouldInvalidateOnDelete() {
+    when(delegate.exists("bob", "90% CPU")).thenReturn("123");
+    repo.exists("bob", "90% CPU");
+
+    repo.deleteById("bob", "123");
+    repo.exists("bob", "90% CPU");
+
+    verify(delegate, times(2)).exists("bob", "90% CPU");
+  }
+
+  public void shouldInvalidateOnEvent() throws Exception {
+    repo.findById("bob", "123");
+
+    repo.onEvent("alarm-updated", new ObjectMapper().readTree("{\"tenantId\":\"bob\"}"));
+    repo.findById("bob", "123");
+    verify(delegate, times(1)).findById("bob", "123");
+
+    repo.onEvent("alarm-definition-updated", new ObjectMapper().readTree(
+        "{\"tenantId\":\"bob\",\"alarmDefinitionId\":\"123\"}"));
+    repo.findById("bob", "123");
+    verify(delegate, times(2)).findById("bob", "123");
+  }
+
+  public void shouldNotCacheAcrossTenants() {
+    when(delegate.findById("jill", "123")).thenReturn(definition("123", "Other"));
+
+    repo.findById("bob", "123");
+    assertEquals(repo.findById("jill", "123").getName(), "Other");
+  }
+
+  /**
+   * Readers running concurrently with updates must never observe a definition older than the last
+   * completed update.
+   */
+  public void shouldNotServeStaleDefinitionsUnderConcurrentUpdates() throws Exception {
+    final AtomicReference<String> stored = new AtomicReference<>("v0");
+
+    when(delegate.findById("bob", "123")).thenAnswer(new Answer<AlarmDefinition>() {
+      @Override
+      public AlarmDefinition answer(InvocationOnMock invocation) throws Throwable {
+        String name = stored.get();
+        // Widen the window between reading the database and populating the cache.
+        Thread.yield();
+        return definition("123", name);
+      }
+    });
+
+    final AtomicBoolean running = new AtomicBoolean(true);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> readers = new ArrayList<>();
+
+    for (int i = 0; i < 4; i++) {
+      readers.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          while (running.get()) {
+            repo.findById("bob", "123");
+          }
+        }
+      }));
+    }
+
+    try {
+      for (int i = 1; i <= 200; i++) {
+        String name = "v" + i;
+        // The database changes before the write returns, readers may still be loading v(i-1).
+        stored.set(name);
+        repo.update("bob", "123", false, name, "", "", null, "", true, null, null, null, null,
+                    null, null);
+
+        assertEquals(repo.findById("bob", "123").getName(), name);
+      }
+    } finally {
+      running.set(false);
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    for (Future<?> reader : readers) {
+      reader.get();
+    }
+  }
+}
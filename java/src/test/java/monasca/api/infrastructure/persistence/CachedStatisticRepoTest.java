@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import monasca.api.domain.model.statistic.StatisticRepo;
+import monasca.api.domain.model.statistic.Statistics;
+
+@Test
+public class CachedStatisticRepoTest {
+
+  private static final long DAY_MILLIS = 86400000L;
+  private static final Map<String, String> DIMENSIONS = ImmutableMap.of("hostname", "h1");
+  private static final List<String> SUM = Arrays.asList("sum");
+
+  private long now;
+  private Clock clock;
+  private MetricRegistry registry;
+  private StatisticsCacheConfiguration configuration;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    now = 1450000012345L;
+    clock = new Clock() {
+      @Override
+      public long getTick() {
+        return now * 1000000;
+      }
+
+      @Override
+      public long getTime() {
+        return now;
+      }
+    };
+    registry = new MetricRegistry();
+    configuration = new StatisticsCacheConfiguration();
+    configuration.ttlSeconds = 600;
+  }
+
+  /**
+   * Sums a measurement per minute, valued by its minute, whether InfluxDB like, with exclusive
+   * bounds and buckets labelled by their start, or Vertica like.
+   */
+  private class Backend implements StatisticRepo {
+    final boolean periodEndTimestamps;
+    final List<DateTime[]> queries = new ArrayList<>();
+    String lastOffset;
+    double bias;
+
+    Backend(boolean periodEndTimestamps) {
+      this.periodEndTimestamps = periodEndTimestamps;
+    }
+
+    @Override
+    public List<Statistics> find(String tenantId, String name, Map<String, String> dimensions,
+                                 DateTime startTime, @Nullable DateTime endTime,
+                                 List<String> statistics, int period, String offset, int limit,
+                                 Boolean mergeMetricsFlag, @Nullable List<String> groupBy) {
+      queries.add(new DateTime[] {startTime, endTime});
+      lastOffset = offset;
+
+      final long periodMillis = period * 1000L;
+      final long start = startTime.getMillis();
+      final long end = endTime != null ? endTime.getMillis() : now;
+      final TreeMap<Long, Double> sums = new TreeMap<>();
+      for (long t = start / 60000 * 60000; t <= end; t += 60000) {
+        final boolean included = periodEndTimestamps
+            ? t >= start && t <= end
+            : t > start && (endTime == null ? t <= end : t < end);
+        if (included) {
+          final long bucket = t / periodMillis * periodMillis;
+          final long label = periodEndTimestamps ? bucket + periodMillis : bucket;
+          final Double sum = sums.get(label);
+          sums.put(label, (sum != null ? sum : 0) + t / 60000 + bias);
+        }
+      }
+
+      final Statistics result =
+          new Statistics(name, dimensions, Arrays.asList("timestamp", "sum"));
+      for (Map.Entry<Long, Double> entry : sums.entrySet()) {
+        result.addStatistics(entry.getKey(), new double[] {entry.getValue()});
+      }
+      return Collections.singletonList(result);
+    }
+  }
+
+  private CachedStatisticRepo repo(Backend backend) {
+    return new CachedStatisticRepo(backend, configuration, backend.periodEndTimestamps, registry,
+                                   clock);
+  }
+
+  private static List<Statistics> find(StatisticRepo repo, long start) throws Exception {
+    return repo.find("bob", "cpu.idle_perc", DIMENSIONS, new DateTime(start, DateTimeZone.UTC),
+                     null, SUM, 300, null, 10000, false, null);
+  }
+
+  private long meter(String name) {
+    return registry.meter(MetricRegistry.name(CachedStatisticRepo.class, name)).getCount();
+  }
+
+  private void assertSplicesPolls(boolean periodEndTimestamps) throws Exception {
+    final Backend backend = new Backend(periodEndTimestamps);
+    final CachedStatisticRepo repo = repo(backend);
+
+    final List<Statistics> cold = find(repo, now - DAY_MILLIS);
+    // Cold, the head, closed and open buckets are queried at once
+    assertEquals(backend.queries.size(), 1);
+    assertEquals(cold.get(0).size(), 289);
+    assertEquals(cold, find(backend, now - DAY_MILLIS));
+    assertEquals(meter("hits"), 0);
+    assertEquals(meter("misses"), 286);
+
+    now += 30000;
+    backend.queries.clear();
+
+    final List<Statistics> polled = find(repo, now - DAY_MILLIS);
+    // The partial head bucket, then the newly closed and open trailing buckets
+    assertEquals(backend.queries.size(), 2);
+    assertTrue(backend.queries.get(1)[0].getMillis() > now - 900000);
+    assertNull(backend.queries.get(1)[1]);
+    assertEquals(polled, find(backend, now - DAY_MILLIS));
+    assertEquals(meter("hits"), 286);
+    assertEquals(meter("misses"), 286 + 1);
+  }
+
+  public void shouldSpliceCachedBucketsLabelledByStart() throws Exception {
+    assertSplicesPolls(false);
+  }
+
+  public void shouldSpliceCachedBucketsLabelledByEnd() throws Exception {
+    assertSplicesPolls(true);
+  }
+
+  public void shouldQueryExpiredBucketsAgain() throws Exception {
+    final Backend backend = new Backend(false);
+    final CachedStatisticRepo repo = repo(backend);
+    find(repo, now - DAY_MILLIS);
+
+    // A late measurement changed every bucket
+    now += configuration.ttlSeconds * 1000 + 1;
+    backend.bias = 1;
+
+    assertEquals(find(repo, now - DAY_MILLIS), find(backend, now - DAY_MILLIS));
+    assertEquals(meter("misses"), 286 + 286);
+  }
+
+  public void shouldCacheOnlyFirstPagesOfAlignedPeriods() throws Exception {
+    final Backend backend = new Backend(false);
+    final CachedStatisticRepo repo = repo(backend);
+    final DateTime start = new DateTime(now - DAY_MILLIS, DateTimeZone.UTC);
+
+    repo.find("bob", "cpu.idle_perc", DIMENSIONS, start, null, SUM, 7, null, 10000, false, null);
+    repo.find("bob", "cpu.idle_perc", DIMENSIONS, start, null, SUM, 300, "2015-12-13T00:00:00Z",
+              10000, false, null);
+    repo.find("bob", "cpu.idle_perc", DIMENSIONS, start, null, SUM, 300, null, 100, false, null);
+
+    assertEquals(backend.queries.size(), 3);
+    for (DateTime[] query : backend.queries) {
+      assertEquals(query[0], start);
+    }
+    assertEquals(meter("hits") + meter("misses"), 0);
+    assertTrue(registry.getGauges().containsKey(
+        MetricRegistry.name(CachedStatisticRepo.class, "hit-ratio")));
+  }
+}
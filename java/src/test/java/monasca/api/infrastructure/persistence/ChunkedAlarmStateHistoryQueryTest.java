@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.annotations.Test;
+
+import monasca.api.domain.model.alarmstatehistory.AlarmStateHistory;
+
+import static org.testng.Assert.assertEquals;
+
+@Test
+public class ChunkedAlarmStateHistoryQueryTest {
+
+  private static AlarmStateHistory history(String alarmId, long millis) {
+    AlarmStateHistory alarmStateHistory = new AlarmStateHistory();
+    alarmStateHistory.setAlarmId(alarmId);
+    alarmStateHistory.setTimestamp(new DateTime(millis, DateTimeZone.UTC));
+    return alarmStateHistory;
+  }
+
+  public void shouldMergeByTimestamp() {
+    List<AlarmStateHistory> merged = ChunkedAlarmStateHistoryQuery.mergeByTimestamp(
+        Arrays.asList(Arrays.asList(history("a", 1), history("a", 4), history("a", 5)),
+                      new ArrayList<AlarmStateHistory>(),
+                      Arrays.asList(history("b", 2), history("b", 3), history("b", 6))), 10);
+
+    assertEquals(merged.size(), 6);
+    for (int i = 0; i < merged.size(); i++) {
+      assertEquals(merged.get(i).getTimestamp().getMillis(), i + 1);
+    }
+  }
+
+  public void shouldStopMergingAtLimit() {
+    List<AlarmStateHistory> merged = ChunkedAlarmStateHistoryQuery.mergeByTimestamp(
+        Arrays.asList(Arrays.asList(history("a", 1), history("a", 4)),
+                      Arrays.asList(history("b", 2), history("b", 3))), 3);
+
+    assertEquals(merged.size(), 3);
+    assertEquals(merged.get(2).getAlarmId(), "b");
+  }
+
+  public void shouldQueryEachChunk() throws Exception {
+    ChunkedAlarmStateHistoryQuery chunkedQuery =
+        new ChunkedAlarmStateHistoryQuery(MoreExecutors.sameThreadExecutor(), 2);
+
+    final List<List<String>> chunks = new ArrayList<>();
+
+    List<AlarmStateHistory> result =
+        chunkedQuery.find(Arrays.asList("1", "2", "3", "4", "5"), 2,
+                          new ChunkedAlarmStateHistoryQuery.Chunk() {
+                            @Override
+                            public List<AlarmStateHistory> find(List<String> alarmIds) {
+                              chunks.add(alarmIds);
+                              List<AlarmStateHistory> found = new ArrayList<>();
+                              for (String alarmId : alarmIds) {
+                                found.add(history(alarmId, Long.parseLong(alarmId) * 10));
+                              }
+                              return found;
+                            }
+                          });
+
+    assertEquals(chunks.size(), 3);
+    assertEquals(chunks.get(2), Arrays.asList("5"));
+    assertEquals(result.size(), 2);
+    assertEquals(result.get(0).getAlarmId(), "1");
+    assertEquals(result.get(1).getAlarmId(), "2");
+  }
+}
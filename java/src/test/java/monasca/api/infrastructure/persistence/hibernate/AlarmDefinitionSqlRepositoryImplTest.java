@@ -23,12 +23,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
 import com.google.common.collect.ImmutableMap;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDetail;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
 import monasca.common.hibernate.db.AlarmActionDb;
 import monasca.common.hibernate.db.AlarmDefinitionDb;
@@ -323,6 +325,26 @@ public class AlarmDefinitionSqlRepositoryImplTest {
     assertTrue(repo.findSubAlarmMetricDefinitions("asdfasdf").isEmpty());
   }
 
+  @Test(groups = "orm")
+  public void shouldFindDetailById() {
+    AlarmDefinitionDetail detail = repo.findDetailById("bob", "234");
+
+    AlarmDefinition alarmDefinition = detail.getAlarmDefinition();
+    AlarmDefinition expected = repo.findById("bob", "234");
+    assertEquals(alarmDefinition.getName(), expected.getName());
+    assertEquals(alarmDefinition.getExpression(), expected.getExpression());
+    assertEquals(alarmDefinition.getMatchBy(), expected.getMatchBy());
+    assertEquals(new HashSet<>(alarmDefinition.getAlarmActions()),
+        new HashSet<>(expected.getAlarmActions()));
+    assertEquals(detail.getSubExpressions(), repo.findSubExpressions("234"));
+    assertEquals(detail.getSubAlarmMetricDefinitions(), repo.findSubAlarmMetricDefinitions("234"));
+  }
+
+  @Test(groups = "orm", expectedExceptions = EntityNotFoundException.class)
+  public void shouldNotFindDetailOfOtherTenant() {
+    repo.findDetailById("jill", "234");
+  }
+
   @Test(groups = "orm")
   public void testExists() {
     assertEquals(repo.exists("bob", "90% CPU"), "123");
@@ -340,31 +362,46 @@ public class AlarmDefinitionSqlRepositoryImplTest {
       fail();
     } catch (EntityNotFoundException expected) {
     }
-    assertEquals(Arrays.asList(alarmDef_234), repo.find("bob", null, null, null, 1));
+    assertEquals(Arrays.asList(alarmDef_234), repo.find("bob", null, null, null, null, 1));
   }
 
   public void shouldFindByDimension() {
     final Map<String, String> dimensions = new HashMap<>();
     dimensions.put("image_id", "888");
 
-    List<AlarmDefinition> result = repo.find("bob", null, dimensions, null, 1);
+    List<AlarmDefinition> result = repo.find("bob", null, dimensions, null, null, 1);
 
     assertEquals(Arrays.asList(alarmDef_123, alarmDef_234), result);
 
     dimensions.clear();
     dimensions.put("device", "1");
-    assertEquals(Arrays.asList(alarmDef_123), repo.find("bob", null, dimensions, null, 1));
+    assertEquals(Arrays.asList(alarmDef_123), repo.find("bob", null, dimensions, null, null, 1));
 
     dimensions.clear();
     dimensions.put("Not real", "AA");
-    assertEquals(0, repo.find("bob", null, dimensions, null, 1).size());
+    assertEquals(0, repo.find("bob", null, dimensions, null, null, 1).size());
+  }
+
+  public void shouldFindSortedByKeyset() {
+    assertEquals(Arrays.asList(alarmDef_234, alarmDef_123),
+        repo.find("bob", null, null, Arrays.asList("name asc"), null, 1));
+    assertEquals(Arrays.asList(alarmDef_123, alarmDef_234),
+        repo.find("bob", null, null, Arrays.asList("name desc"), null, 1));
+    assertEquals(Arrays.asList(alarmDef_123),
+        repo.find("bob", null, null, Arrays.asList("name asc"), "234", 1));
+    assertEquals(0, repo.find("bob", null, null, Arrays.asList("name asc"), "123", 1).size());
+
+    final Map<String, String> dimensions = new HashMap<>();
+    dimensions.put("image_id", "888");
+    assertEquals(Arrays.asList(alarmDef_123),
+        repo.find("bob", null, dimensions, Arrays.asList("name asc"), "234", 1));
   }
 
   public void shouldFindByName() {
     final Map<String, String> dimensions = new HashMap<>();
     dimensions.put("image_id", "888");
 
-    List<AlarmDefinition> result = repo.find("bob", "90% CPU", dimensions, null, 1);
+    List<AlarmDefinition> result = repo.find("bob", "90% CPU", dimensions, null, null, 1);
 
     assertEquals(Arrays.asList(alarmDef_123), result);
 
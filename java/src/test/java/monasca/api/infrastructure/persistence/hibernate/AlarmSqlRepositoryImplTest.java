@@ -20,6 +20,7 @@ import static org.testng.Assert.assertTrue;
 
 import java.sql.Timestamp;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -46,7 +47,11 @@ import org.testng.annotations.Test;
 
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarm.Alarm;
+import monasca.api.domain.model.alarm.AlarmCount;
 import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarm.AlarmUpdate;
+import monasca.api.infrastructure.persistence.AlarmIndex;
+import monasca.api.infrastructure.persistence.AlarmIndexConfiguration;
 import monasca.common.hibernate.db.AlarmDb;
 import monasca.common.hibernate.db.AlarmDefinitionDb;
 import monasca.common.hibernate.db.AlarmMetricDb;
@@ -78,7 +83,8 @@ public class AlarmSqlRepositoryImplTest {
   @BeforeMethod
   protected void setupClass() throws Exception {
     this.sessionFactory = HibernateUtil.getSessionFactory();
-    this.repo = new AlarmSqlRepoImpl(this.sessionFactory);
+    this.repo = new AlarmSqlRepoImpl(this.sessionFactory,
+        new AlarmIndex(null, new AlarmIndexConfiguration()));
     this.prepareData(this.sessionFactory);
 
     this.tx = this.sessionFactory.openSession().beginTransaction();
@@ -395,6 +401,42 @@ public class AlarmSqlRepositoryImplTest {
 
   }
 
+  @Test(groups = "orm")
+  public void shouldCount() {
+    final AlarmCount ok = new AlarmCount("1", "90% CPU", "LOW", AlarmState.OK, "OPEN", 1);
+    final AlarmCount undetermined =
+        new AlarmCount("1", "90% CPU", "LOW", AlarmState.UNDETERMINED, "OPEN", 1);
+    final AlarmCount alarm = new AlarmCount("1", "90% CPU", "LOW", AlarmState.ALARM, null, 1);
+    final AlarmCount compound =
+        new AlarmCount("234", "50% CPU", "LOW", AlarmState.UNDETERMINED, null, 1);
+
+    List<AlarmCount> counts = repo.count(TENANT_ID, null, null, null, null, null, null, null);
+    assertEquals(counts.size(), 4);
+    assertTrue(counts.containsAll(Arrays.asList(ok, undetermined, alarm, compound)));
+
+    assertEquals(repo.count(TENANT_ID, null, null, null, AlarmState.UNDETERMINED, null, null, null).size(), 2);
+
+    assertEquals(repo.count(TENANT_ID, null, "cpu.sys_mem", null, null, null, null, null),
+                 Arrays.asList(compound));
+
+    assertEquals(repo.count(TENANT_ID, null, "cpu.idle_perc", ImmutableMap.<String, String>builder()
+        .put("flavor_id", "222").build(), null, null, null, null), Arrays.asList(alarm, ok));
+
+    assertTrue(repo.count("Not a tenant id", null, null, null, null, null, null, null).isEmpty());
+  }
+
+  @Test(groups = "orm")
+  public void shouldLimitByAlarmsNotMetrics() {
+    // Alarm 1 has two metrics and three dimensions, the limit must still count it once.
+    checkList(repo.find(TENANT_ID, null, null, null, null, null, null, null, null, 1, true), alarm1,
+              alarm2);
+
+    checkList(repo.find(TENANT_ID, null, null, null, null, null, null, null, "2", 1, true),
+              compoundAlarm, alarm3);
+
+    checkList(repo.find(TENANT_ID, null, null, null, null, null, null, null, "3", 1, true));
+  }
+
   @Test(groups = "orm")
   public void shouldFindById() {
 
@@ -447,6 +489,83 @@ public class AlarmSqlRepositoryImplTest {
     assertEquals(unchangedAlarm, newAlarm);
   }
 
+  @Test(groups = "orm")
+  public void shouldFindIds() {
+    assertEquals(repo.findIds(TENANT_ID, null, null, null, null, null, null, null, 0),
+                 Arrays.asList("1", "2", "234111", "3"));
+    assertEquals(repo.findIds(TENANT_ID, "1", null, null, null, null, null, null, 2),
+                 Arrays.asList("1", "2"));
+    assertEquals(repo.findIds(TENANT_ID, null, null, null, AlarmState.ALARM, null, null, null, 0),
+                 Arrays.asList("3"));
+  }
+
+  @Test(groups = "orm")
+  public void shouldFindByAlarmDefinitionInPages() {
+    assertEquals(repo.findIdsByAlarmDefinition(TENANT_ID, "1", null, 2),
+                 Arrays.asList("1", "2"));
+    assertEquals(repo.findIdsByAlarmDefinition(TENANT_ID, "1", "2", 2), Arrays.asList("3"));
+    assertEquals(repo.findIdsByAlarmDefinition(TENANT_ID, "1", "3", 2).size(), 0);
+
+    final List<AlarmUpdate> page = repo.findForUpdate(TENANT_ID, Arrays.asList("1", "2", "9"));
+    assertEquals(page.size(), 2);
+    assertEquals(page.get(0).getAlarm(), alarm1);
+    assertEquals(page.get(1).getAlarm(), alarm2);
+    assertEquals(page.get(0).getSubAlarms().keySet(), Collections.singleton("42"));
+  }
+
+  @Test(groups = "orm")
+  public void shouldUpdateManyInOneTransaction() {
+    final DateTime alarm1StateUpdatedAt = getAlarmStateUpdatedDate("1");
+    final DateTime alarm3StateUpdatedAt = getAlarmStateUpdatedDate("3");
+
+    final List<AlarmUpdate> updates = repo.update(TENANT_ID, Arrays.asList("3", "1", "unknown"),
+                                                  AlarmState.OK, "ACKNOWLEDGED", null);
+
+    assertEquals(updates.size(), 2);
+    assertEquals(updates.get(0).getAlarm(), alarm1);
+    assertEquals(updates.get(1).getAlarm(), alarm3);
+    assertEquals(updates.get(1).getSubAlarms().keySet(), Collections.singleton("44"));
+
+    final Alarm updated1 = repo.findById(TENANT_ID, "1");
+    assertEquals(updated1.getState(), AlarmState.OK);
+    assertEquals(updated1.getLifecycleState(), "ACKNOWLEDGED");
+    assertEquals(updated1.getLink(), alarm1.getLink());
+    assertEquals(getAlarmStateUpdatedDate("1"), alarm1StateUpdatedAt,
+                 "state_updated_at changed without a state change");
+
+    final Alarm updated3 = repo.findById(TENANT_ID, "3");
+    assertEquals(updated3.getState(), AlarmState.OK);
+    assertEquals(updated3.getLifecycleState(), "ACKNOWLEDGED");
+    assertEquals(updated3.getLink(), alarm3.getLink());
+    assertNotEquals(getAlarmStateUpdatedDate("3"), alarm3StateUpdatedAt,
+                    "state_updated_at did not change");
+
+    assertEquals(repo.findById(TENANT_ID, "2"), alarm2);
+  }
+
+  @Test(groups = "orm")
+  public void shouldPatchAndReturnWhatEventsNeed() {
+    final Alarm originalAlarm = repo.findById(TENANT_ID, ALARM_ID);
+    final DateTime originalStateUpdatedAt = getAlarmStateUpdatedDate(ALARM_ID);
+
+    final AlarmUpdate update = repo.update(TENANT_ID, ALARM_ID, true, null, "OPEN", null);
+
+    assertEquals(update.getAlarm(), originalAlarm);
+    assertTrue(update.isActionsEnabled());
+    assertEquals(update.getSubAlarms().size(), 2);
+    assertEquals(update.getSubAlarms().get("4343"),
+                 AlarmSubExpression.of("avg(cpu.sys_mem{service=monitoring}) > 20"));
+    assertEquals(update.getSubAlarms().get("4242"),
+                 AlarmSubExpression.of("avg(cpu.idle_perc{service=monitoring}) < 10"));
+
+    final Alarm patchedAlarm = repo.findById(TENANT_ID, ALARM_ID);
+    assertEquals(patchedAlarm.getState(), originalAlarm.getState());
+    assertEquals(patchedAlarm.getLifecycleState(), "OPEN");
+    assertEquals(patchedAlarm.getLink(), originalAlarm.getLink());
+    assertEquals(getAlarmStateUpdatedDate(ALARM_ID), originalStateUpdatedAt,
+                 "state_updated_at changed without a state change");
+  }
+
   @Test(groups = "orm", expectedExceptions = EntityNotFoundException.class)
   public void shouldUpdateThrowException() {
 
@@ -39,23 +39,7 @@ class HibernateUtil {
 
   static {
     try {
-      Configuration configuration = new Configuration();
-
-      configuration.addAnnotatedClass(AlarmDb.class);
-      configuration.addAnnotatedClass(AlarmDefinitionDb.class);
-      configuration.addAnnotatedClass(AlarmMetricDb.class);
-      configuration.addAnnotatedClass(MetricDefinitionDb.class);
-      configuration.addAnnotatedClass(MetricDefinitionDimensionsDb.class);
-      configuration.addAnnotatedClass(MetricDimensionDb.class);
-      configuration.addAnnotatedClass(SubAlarmDefinitionDb.class);
-      configuration.addAnnotatedClass(SubAlarmDefinitionDimensionDb.class);
-      configuration.addAnnotatedClass(SubAlarmDb.class);
-      configuration.addAnnotatedClass(AlarmActionDb.class);
-      configuration.addAnnotatedClass(NotificationMethodDb.class);
-
-      configuration.setProperties(getHikariH2Properties());
-
-      HibernateUtil.CONFIGURATION = configuration;
+      HibernateUtil.CONFIGURATION = newConfiguration();
     } catch (Throwable ex) {
       // Make sure you log the exception, as it might be swallowed
       System.err.println("Initial SessionFactory creation failed." + ex);
@@ -63,6 +47,26 @@ class HibernateUtil {
     }
   }
 
+  private static Configuration newConfiguration() {
+    Configuration configuration = new Configuration();
+
+    configuration.addAnnotatedClass(AlarmDb.class);
+    configuration.addAnnotatedClass(AlarmDefinitionDb.class);
+    configuration.addAnnotatedClass(AlarmMetricDb.class);
+    configuration.addAnnotatedClass(MetricDefinitionDb.class);
+    configuration.addAnnotatedClass(MetricDefinitionDimensionsDb.class);
+    configuration.addAnnotatedClass(MetricDimensionDb.class);
+    configuration.addAnnotatedClass(SubAlarmDefinitionDb.class);
+    configuration.addAnnotatedClass(SubAlarmDefinitionDimensionDb.class);
+    configuration.addAnnotatedClass(SubAlarmDb.class);
+    configuration.addAnnotatedClass(AlarmActionDb.class);
+    configuration.addAnnotatedClass(NotificationMethodDb.class);
+
+    configuration.setProperties(getHikariH2Properties());
+
+    return configuration;
+  }
+
   private static Properties getHikariPostgresProperties() {
     Properties properties = new Properties();
     properties.put("hibernate.connection.provider_class", "com.zaxxer.hikari.hibernate.HikariConnectionProvider");
@@ -102,11 +106,25 @@ class HibernateUtil {
     properties.put("hibernate.hikari.dataSource.url", "jdbc:h2:mem:mon;MODE=PostgreSQL");
     properties.put("hibernate.hikari.dataSource.user", "sa");
     properties.put("hibernate.hikari.dataSource.password", "");
+    properties.put("hibernate.jdbc.batch_size", "50");
+    properties.put("hibernate.order_inserts", "true");
+    properties.put("hibernate.order_updates", "true");
     return properties;
   }
 
   public static SessionFactory getSessionFactory() throws HibernateException {
-    ServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder().applySettings(CONFIGURATION.getProperties()).build();
-    return CONFIGURATION.buildSessionFactory(serviceRegistry);
+    return buildSessionFactory(CONFIGURATION);
+  }
+
+  public static SessionFactory getCachedSessionFactory(OrmCacheConfiguration cacheConfiguration)
+      throws HibernateException {
+    Configuration configuration = newConfiguration();
+    OrmCache.configure(configuration, cacheConfiguration);
+    return buildSessionFactory(configuration);
+  }
+
+  private static SessionFactory buildSessionFactory(Configuration configuration) {
+    ServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder().applySettings(configuration.getProperties()).build();
+    return configuration.buildSessionFactory(serviceRegistry);
   }
 }
@@ -101,6 +101,14 @@ public class NotificationMethodSqlRepositoryImplTest {
     assertFalse(repo.exists("333", "123"));
   }
 
+  public void shouldFindMissingNotificationMethods() {
+    assertTrue(repo.existAll("444", Arrays.asList("123", "124")).isEmpty());
+    assertEquals(repo.existAll("444", Arrays.asList("123", "1234", "124", "125")),
+                 Arrays.asList("1234", "125"));
+    assertEquals(repo.existAll("333", Arrays.asList("123")), Arrays.asList("123"));
+    assertTrue(repo.existAll("444", Collections.<String>emptyList()).isEmpty());
+  }
+
   @Test(groups = "orm")
   public void shouldFind() {
     List<NotificationMethod> nms1 = repo.find("444", null, 1);
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.hibernate;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.Work;
+import org.joda.time.DateTime;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.domain.model.notificationmethod.NotificationMethodType;
+import monasca.common.hibernate.db.AlarmDefinitionDb;
+import monasca.common.hibernate.db.NotificationMethodDb;
+import monasca.common.model.alarm.AlarmNotificationMethodType;
+import monasca.common.model.alarm.AlarmSeverity;
+
+@Test(groups = "orm")
+public class OrmCacheTest {
+  private SessionFactory sessionFactory;
+  private MetricRegistry registry;
+  private NotificationMethodRepo repo;
+  private AlarmDefinitionRepo alarmDefinitionRepo;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    OrmCacheConfiguration cacheConfiguration = new OrmCacheConfiguration();
+    cacheConfiguration.enabled = true;
+
+    this.sessionFactory = HibernateUtil.getCachedSessionFactory(cacheConfiguration);
+    this.registry = new MetricRegistry();
+    OrmCache.registerMetrics(this.sessionFactory, this.registry);
+    this.repo = new NotificationMethodSqlRepoImpl(this.sessionFactory);
+    this.alarmDefinitionRepo = new AlarmDefinitionSqlRepoImpl(this.sessionFactory);
+
+    Session session = this.sessionFactory.openSession();
+    try {
+      session.beginTransaction();
+      session.save(new NotificationMethodDb("123", "444", "MyEmail",
+          AlarmNotificationMethodType.EMAIL, "a@b", new DateTime(), new DateTime()));
+      for (String id : Arrays.asList("123", "234")) {
+        session.save(new AlarmDefinitionDb(id, "444", "90% CPU " + id, null,
+            "avg(cpu.idle_perc) > 10", AlarmSeverity.LOW, null, true, new DateTime(),
+            new DateTime(), null));
+      }
+      session.getTransaction().commit();
+    } finally {
+      session.close();
+    }
+  }
+
+  @AfterMethod
+  protected void afterMethod() {
+    this.sessionFactory.close();
+    this.sessionFactory = null;
+  }
+
+  private long gauge(String region, String statistic) {
+    return (Long) this.registry.getGauges()
+        .get(MetricRegistry.name(OrmCache.class, region, statistic)).getValue();
+  }
+
+  public void shouldServeRepeatedReadsFromCache() {
+    alarmDefinitionRepo.findById("444", "123");
+    alarmDefinitionRepo.findById("444", "123");
+
+    // Inserts through Hibernate may already have put the definition in the cache
+    assertTrue(gauge(OrmCache.ALARM_DEFINITION_REGION, "misses") <= 1);
+    assertTrue(gauge(OrmCache.ALARM_DEFINITION_REGION, "hits") >= 1);
+  }
+
+  public void shouldSeeUpdatesMadeThroughHibernate() {
+    repo.findById("444", "123");
+
+    repo.update("444", "123", "Changed", NotificationMethodType.EMAIL, "c@d");
+
+    assertEquals(repo.findById("444", "123").getName(), "Changed");
+    assertEquals(repo.findById("444", "123").getAddress(), "c@d");
+  }
+
+  public void shouldSeeNotificationMethodsDeletedElsewhere() {
+    assertTrue(repo.existAll("444", Arrays.asList("123")).isEmpty());
+
+    // Delete the row as another API node would, without going through this session factory
+    Session session = this.sessionFactory.openSession();
+    try {
+      session.doWork(new Work() {
+        @Override
+        public void execute(Connection connection) throws SQLException {
+          try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("delete from notification_method where id = '123'");
+          }
+        }
+      });
+    } finally {
+      session.close();
+    }
+
+    assertEquals(repo.existAll("444", Arrays.asList("123")), Arrays.asList("123"));
+  }
+
+  public void shouldEvictOnlyTheAlarmDefinitionOfTheEvent() throws Exception {
+    alarmDefinitionRepo.findById("444", "123");
+    alarmDefinitionRepo.findById("444", "234");
+    long hits = gauge(OrmCache.ALARM_DEFINITION_REGION, "hits");
+    long misses = gauge(OrmCache.ALARM_DEFINITION_REGION, "misses");
+
+    new OrmCache(this.sessionFactory).onEvent("alarm-definition-updated",
+        new ObjectMapper().readTree("{\"tenantId\":\"444\",\"alarmDefinitionId\":\"123\"}"));
+
+    alarmDefinitionRepo.findById("444", "123");
+    alarmDefinitionRepo.findById("444", "234");
+    assertEquals(gauge(OrmCache.ALARM_DEFINITION_REGION, "misses"), misses + 1);
+    assertEquals(gauge(OrmCache.ALARM_DEFINITION_REGION, "hits"), hits + 1);
+  }
+}
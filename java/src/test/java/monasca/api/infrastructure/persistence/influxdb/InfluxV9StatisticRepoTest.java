@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.influxdb;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.statistic.Statistics;
+import monasca.api.infrastructure.persistence.RollupConfiguration;
+
+@Test
+public class InfluxV9StatisticRepoTest {
+
+  private InfluxV9RepoReader reader;
+  private InfluxV9StatisticRepo repo;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    RollupConfiguration rollup = new RollupConfiguration();
+    rollup.period = 3600;
+    rollup.retentionPolicy = "rollup_1h";
+
+    ApiConfig config = new ApiConfig();
+    config.region = "useast";
+    config.statistics.rollups = Arrays.asList(rollup);
+
+    reader = mock(InfluxV9RepoReader.class);
+    repo = new InfluxV9StatisticRepo(config, reader, new InfluxV9Utils(),
+                                     mock(InfluxV9MetricDefinitionRepo.class));
+  }
+
+  public void shouldAverageRollupsWeightedByTheirCounts() throws Exception {
+    when(reader.read(anyString())).thenReturn(
+        "{\"results\":[{\"series\":[{\"name\":\"cpu.idle_perc\","
+        + "\"columns\":[\"time\",\"avg_sum\",\"avg_count\",\"max\"],"
+        + "\"values\":[[\"2016-01-01T00:00:00Z\",30,3,20],[\"2016-01-01T02:00:00Z\",0,0,0]]}]}]}");
+
+    List<Statistics> statistics = repo.find(
+        "bob", "cpu.idle_perc", null, new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC), null,
+        Arrays.asList("avg", "max"), 7200, null, 10, true, null);
+
+    ArgumentCaptor<String> query = ArgumentCaptor.forClass(String.class);
+    verify(reader).read(query.capture());
+    assertTrue(query.getValue().startsWith(
+        "select sum(\"sum\") as \"avg_sum\",sum(\"count\") as \"avg_count\",max(\"max\") as \"max\""
+        + "  from \"rollup_1h\".\"cpu.idle_perc\" "), query.getValue());
+    assertTrue(query.getValue().contains(" group by time(7200s) fill(0)"), query.getValue());
+
+    assertEquals(statistics.size(), 1);
+    assertEquals(statistics.get(0).getColumns(), Arrays.asList("timestamp", "avg", "max"));
+    double[][] values = statistics.get(0).getColumnValues();
+    assertTrue(Arrays.equals(values[0], new double[] {10, 0}), Arrays.toString(values[0]));
+    assertTrue(Arrays.equals(values[1], new double[] {20, 0}), Arrays.toString(values[1]));
+  }
+}
@@ -17,6 +17,13 @@ package monasca.api.infrastructure.persistence.influxdb;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+
 import org.apache.commons.lang3.StringUtils;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -61,4 +68,31 @@ public class InfluxV9UtilsTest {
     final String offset = "0";
     assertEquals(String.format(" and time > '%1$s'", offset), this.instance.timeOffsetPart(offset));
   }
-}
\ No newline at end of file
+
+  @Test(groups = {"functional", "groupCounts"})
+  public void testGroupCounts() throws Exception {
+    final Series series = new ObjectMapper().readValue(
+        "{\"results\":[{\"series\":["
+        + "{\"name\":\"cpu\",\"tags\":{\"_tenant_id\":\"bob\",\"hostname\":\"h1\"},"
+        + "\"columns\":[\"time\",\"count\"],\"values\":[[\"1970-01-01T00:00:00Z\",12]]},"
+        + "{\"name\":\"cpu\",\"tags\":{\"_tenant_id\":\"bob\",\"hostname\":\"h2\"},"
+        + "\"columns\":[\"time\",\"count\"],\"values\":[[\"1970-01-01T00:00:00Z\",3]]}"
+        + "]}]}", Series.class);
+
+    final Map<Map<String, String>, Long> groups = this.instance.groupCounts(series);
+
+    assertEquals(Arrays.asList(ImmutableMap.of("hostname", "h1"),
+                               ImmutableMap.of("hostname", "h2")),
+                 new ArrayList<>(groups.keySet()));
+    assertEquals(Arrays.asList(12L, 3L), new ArrayList<>(groups.values()));
+  }
+
+  @Test(groups = {"functional", "groupCounts"})
+  public void testGroupDimensions() throws Exception {
+    assertEquals(ImmutableMap.of("service", "compute", "hostname", "h1"),
+                 this.instance.groupDimensions(ImmutableMap.of("service", "compute"),
+                                               ImmutableMap.of("hostname", "h1")));
+    assertEquals(ImmutableMap.of("hostname", "h1"),
+                 this.instance.groupDimensions(null, ImmutableMap.of("hostname", "h1")));
+  }
+}
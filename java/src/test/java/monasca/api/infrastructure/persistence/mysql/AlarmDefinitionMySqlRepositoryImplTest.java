@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -45,6 +46,7 @@ import monasca.common.model.alarm.AlarmSubExpression;
 import monasca.common.model.metric.MetricDefinition;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDetail;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
 
 @Test(groups = "database")
@@ -148,6 +150,43 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
             .map(StringMapper.FIRST).first(), "3");
   }
 
+  public void shouldCreateAndPatchSeveralSubExpressionsAndActions() {
+    Map<String, AlarmSubExpression> subExpressions =
+        ImmutableMap.<String, AlarmSubExpression>builder()
+            .put("4433", AlarmSubExpression.of("avg(hpcs.compute{flavor_id=777, image_id=888}) > 10"))
+            .put("4434", AlarmSubExpression.of("avg(hpcs.disk{device=1}) > 90"))
+            .put("4435", AlarmSubExpression.of("max(hpcs.mem) > 80"))
+            .build();
+
+    repo.create("555", "2345", "Several", null, "LOW",
+        "avg(hpcs.compute{flavor_id=777, image_id=888}) > 10 or avg(hpcs.disk{device=1}) > 90 "
+            + "or max(hpcs.mem) > 80", subExpressions, null, alarmActions, Arrays.asList("1"),
+        Arrays.asList("2"));
+
+    assertEquals(repo.findSubExpressions("2345"), subExpressions);
+    assertEquals(
+        handle.createQuery("select count(*) from sub_alarm_definition_dimension where sub_alarm_definition_id in ('4433', '4434', '4435')")
+            .map(StringMapper.FIRST).first(), "3");
+
+    AlarmSubExpression changed = AlarmSubExpression.of("avg(hpcs.disk{device=1}) > 95");
+    AlarmSubExpression added = AlarmSubExpression.of("min(hpcs.net{if=eth0}) < 1");
+    repo.update("555", "2345", true, "Several", null,
+        "avg(hpcs.disk{device=1}) > 95 or max(hpcs.mem) > 80 or min(hpcs.net{if=eth0}) < 1",
+        null, "LOW", true, Arrays.asList("4433"),
+        Collections.singletonMap("4434", changed), Collections.singletonMap("4436", added),
+        null, Arrays.asList("3", "4"), null);
+
+    Map<String, AlarmSubExpression> updated = repo.findSubExpressions("2345");
+    assertEquals(updated.keySet(), new HashSet<>(Arrays.asList("4434", "4435", "4436")));
+    assertEquals(updated.get("4434"), changed);
+    assertEquals(updated.get("4436"), added);
+
+    AlarmDefinition alarmDef = repo.findById("555", "2345");
+    assertEquals(new HashSet<>(alarmDef.getAlarmActions()), new HashSet<>(alarmActions));
+    assertEquals(new HashSet<>(alarmDef.getOkActions()), new HashSet<>(Arrays.asList("3", "4")));
+    assertEquals(alarmDef.getUndeterminedActions(), Arrays.asList("2"));
+  }
+
   @Test(groups = "database")
   public void shouldUpdate() {
     // This test won't work without the real mysql database so use mini-mon.
@@ -215,6 +254,28 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
     assertTrue(repo.findSubAlarmMetricDefinitions("asdfasdf").isEmpty());
   }
 
+  @Test(groups = "database")
+  public void shouldFindDetailById() {
+    // This test won't work without the real mysql database so use mini-mon.
+    // Warning, this will truncate your mini-mon database
+    db = new DBI("jdbc:mysql://192.168.10.4/mon", "monapi", "password");
+    handle = db.open();
+    repo = new AlarmDefinitionMySqlRepoImpl(db, new PersistUtils());
+    beforeMethod();
+
+    AlarmDefinitionDetail detail = repo.findDetailById("bob", "234");
+
+    assertEquals(detail.getAlarmDefinition(), alarmDef_234);
+    assertEquals(detail.getSubExpressions(), repo.findSubExpressions("234"));
+    assertEquals(detail.getSubAlarmMetricDefinitions(), repo.findSubAlarmMetricDefinitions("234"));
+
+    try {
+      repo.findDetailById("jill", "234");
+      fail();
+    } catch (EntityNotFoundException expected) {
+    }
+  }
+
   @Test(groups = "database")
   public void shouldFindSubExpressions() {
     // This test won't work without the real mysql database so use mini-mon.
@@ -245,36 +306,55 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
   }
 
   public void shouldFind() {
-    assertEquals(Arrays.asList(alarmDef_123, alarmDef_234), repo.find("bob", null, null, null, 1));
+    assertEquals(Arrays.asList(alarmDef_123, alarmDef_234), repo.find("bob", null, null, null, null, 1));
 
     // Make sure it still finds AlarmDefinitions with no notifications
     handle.execute("delete from alarm_action");
     alarmDef_123.setAlarmActions(new ArrayList<String>(0));
     alarmDef_234.setAlarmActions(new ArrayList<String>(0));
-    assertEquals(Arrays.asList(alarmDef_123, alarmDef_234), repo.find("bob", null, null, null, 1));
+    assertEquals(Arrays.asList(alarmDef_123, alarmDef_234), repo.find("bob", null, null, null, null, 1));
 
-    assertEquals(0, repo.find("bill", null, null, null, 1).size());
+    assertEquals(0, repo.find("bill", null, null, null, null, 1).size());
   }
 
   public void shouldFindByDimension() {
     final Map<String, String> dimensions = new HashMap<>();
     dimensions.put("image_id", "888");
     assertEquals(Arrays.asList(alarmDef_123, alarmDef_234),
-        repo.find("bob", null, dimensions, null, 1));
+        repo.find("bob", null, dimensions, null, null, 1));
 
     dimensions.clear();
     dimensions.put("device", "1");
-    assertEquals(Arrays.asList(alarmDef_123), repo.find("bob", null, dimensions, null, 1));
+    assertEquals(Arrays.asList(alarmDef_123), repo.find("bob", null, dimensions, null, null, 1));
 
     dimensions.clear();
     dimensions.put("Not real", "AA");
-    assertEquals(0, repo.find("bob", null, dimensions, null, 1).size());
+    assertEquals(0, repo.find("bob", null, dimensions, null, null, 1).size());
+  }
+
+  public void shouldFindSortedByKeyset() {
+    assertEquals(Arrays.asList(alarmDef_234, alarmDef_123),
+        repo.find("bob", null, null, Arrays.asList("name asc"), null, 1));
+    assertEquals(Arrays.asList(alarmDef_123, alarmDef_234),
+        repo.find("bob", null, null, Arrays.asList("name desc"), null, 1));
+    assertEquals(Arrays.asList(alarmDef_123),
+        repo.find("bob", null, null, Arrays.asList("name asc"), "234", 1));
+    assertEquals(0, repo.find("bob", null, null, Arrays.asList("name asc"), "123", 1).size());
+
+    // Both were created at once, the id breaks the tie in the direction of the last column
+    assertEquals(Arrays.asList(alarmDef_123),
+        repo.find("bob", null, null, Arrays.asList("created_at desc"), "234", 1));
+
+    final Map<String, String> dimensions = new HashMap<>();
+    dimensions.put("image_id", "888");
+    assertEquals(Arrays.asList(alarmDef_123),
+        repo.find("bob", null, dimensions, Arrays.asList("name asc"), "234", 1));
   }
 
   public void shouldFindByName() {
-    assertEquals(Arrays.asList(alarmDef_123), repo.find("bob", "90% CPU", null, null, 1));
+    assertEquals(Arrays.asList(alarmDef_123), repo.find("bob", "90% CPU", null, null, null, 1));
 
-    assertEquals(0, repo.find("bob", "Does not exist", null, null, 1).size());
+    assertEquals(0, repo.find("bob", "Does not exist", null, null, null, 1).size());
   }
 
   public void shouldDeleteById() {
@@ -285,6 +365,6 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
       fail();
     } catch (EntityNotFoundException expected) {
     }
-    assertEquals(Arrays.asList(alarmDef_234), repo.find("bob", null, null, null, 1));
+    assertEquals(Arrays.asList(alarmDef_234), repo.find("bob", null, null, null, null, 1));
   }
 }
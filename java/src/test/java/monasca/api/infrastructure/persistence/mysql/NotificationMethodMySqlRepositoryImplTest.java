@@ -21,6 +21,7 @@ import static org.testng.Assert.fail;
 
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import monasca.api.domain.exception.EntityExistsException;
@@ -80,6 +81,14 @@ public class NotificationMethodMySqlRepositoryImplTest {
     assertFalse(repo.exists("333", "123"));
   }
 
+  public void shouldFindMissingNotificationMethods() {
+    assertTrue(repo.existAll("444", Arrays.asList("123", "124")).isEmpty());
+    assertEquals(repo.existAll("444", Arrays.asList("123", "1234", "124", "125")),
+                 Arrays.asList("1234", "125"));
+    assertEquals(repo.existAll("333", Arrays.asList("123")), Arrays.asList("123"));
+    assertTrue(repo.existAll("444", Collections.<String>emptyList()).isEmpty());
+  }
+
   public void shouldFindById() {
     NotificationMethod nm = repo.findById("444", "123");
 
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.mysql;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import monasca.api.domain.model.outbox.OutboxEvent;
+import monasca.api.domain.model.outbox.OutboxRepo;
+
+@Test(groups = "database")
+public class OutboxMySqlRepoImplTest {
+  private DBI db;
+  private Handle handle;
+  private OutboxMySqlRepoImpl repo;
+
+  @BeforeClass
+  protected void beforeClass() throws Exception {
+    db = new DBI("jdbc:h2:mem:outbox;MODE=MySQL");
+    handle = db.open();
+    handle.execute("create table event_outbox (id bigint auto_increment primary key, "
+        + "topic varchar(255) not null, message_key varchar(255), payload longtext not null, "
+        + "created_at datetime not null, claimed_by varchar(36), claimed_at datetime)");
+    repo = new OutboxMySqlRepoImpl(db);
+  }
+
+  @AfterClass
+  protected void afterClass() {
+    handle.close();
+  }
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    handle.execute("truncate table event_outbox");
+  }
+
+  private void append(String... payloads) {
+    List<OutboxEvent> events = new ArrayList<>();
+    for (String payload : payloads) {
+      events.add(new OutboxEvent("events", "0", payload));
+    }
+    OutboxMySqlRepoImpl.append(handle, events);
+  }
+
+  private long count() {
+    return handle.createQuery("select count(*) from event_outbox").mapTo(Long.class).first();
+  }
+
+  public void shouldRelayOldestEventsFirstAndDeleteThem() {
+    append("a", "b", "c");
+
+    final List<String> published = new ArrayList<>();
+    OutboxRepo.Publisher publisher = new OutboxRepo.Publisher() {
+      @Override
+      public void publish(List<OutboxEvent> events) {
+        for (OutboxEvent event : events) {
+          published.add(event.getPayload());
+        }
+      }
+    };
+
+    assertEquals(repo.relay(2, 60, publisher), 2);
+    assertEquals(published, Arrays.asList("a", "b"));
+    assertEquals(count(), 1);
+
+    assertEquals(repo.relay(2, 60, publisher), 1);
+    assertEquals(repo.relay(2, 60, publisher), 0);
+    assertEquals(published, Arrays.asList("a", "b", "c"));
+    assertEquals(count(), 0);
+  }
+
+  public void shouldKeepEventsWhenPublishingFails() {
+    append("a");
+
+    try {
+      repo.relay(10, 60, new OutboxRepo.Publisher() {
+        @Override
+        public void publish(List<OutboxEvent> events) {
+          throw new IllegalStateException("kafka down");
+        }
+      });
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+
+    assertEquals(count(), 1);
+
+    // Released, the events are relayed again without waiting for the lease to expire
+    assertEquals(repo.relay(10, 60, new OutboxRepo.Publisher() {
+      @Override
+      public void publish(List<OutboxEvent> events) {
+      }
+    }), 1);
+    assertEquals(count(), 0);
+  }
+
+  public void shouldNotRelayEventsClaimedByAnotherRelay() {
+    append("a", "b");
+
+    final OutboxRepo.Publisher ignoring = new OutboxRepo.Publisher() {
+      @Override
+      public void publish(List<OutboxEvent> events) {
+      }
+    };
+
+    // Another relay finds the events claimed while they are being published
+    assertEquals(repo.relay(10, 60, new OutboxRepo.Publisher() {
+      @Override
+      public void publish(List<OutboxEvent> events) {
+        assertEquals(repo.relay(10, 60, ignoring), 0);
+      }
+    }), 2);
+    assertEquals(count(), 0);
+
+    // A relay which never returned lost its claim once the lease expired
+    append("c");
+    handle.execute("update event_outbox set claimed_by = 'lost', claimed_at = ?",
+                   new Timestamp(System.currentTimeMillis() - 120000));
+    assertEquals(repo.relay(10, 60, ignoring), 1);
+    assertEquals(count(), 0);
+  }
+}
@@ -14,6 +14,8 @@
 
 package monasca.api.infrastructure.persistence.vertica;
 
+import monasca.api.ApiConfig;
+import monasca.api.domain.exception.MultipleMetricsException;
 import monasca.api.domain.model.measurement.MeasurementRepo;
 import monasca.api.domain.model.measurement.Measurements;
 
@@ -42,7 +44,7 @@ public class MeasurementVerticaRepositoryImplTest {
     Class.forName("com.vertica.jdbc.Driver");
     db = new DBI("jdbc:vertica://192.168.10.4/mon", "dbadmin", "password");
     handle = db.open();
-    repo = new MeasurementVerticaRepoImpl(db);
+    repo = new MeasurementVerticaRepoImpl(db, new ApiConfig());
   }
 
   @AfterClass
@@ -83,12 +85,22 @@ public class MeasurementVerticaRepositoryImplTest {
         .execute("insert into MonMetrics.Measurements (definition_dimensions_id, time_stamp, value) values ('/3', '2014-01-01 00:00:00', 4)");
     handle
         .execute("insert into MonMetrics.Measurements (definition_dimensions_id, time_stamp, value) values ('/3', '2014-01-01 00:01:00', 8)");
+
+    handle.execute("insert into MonMetrics.Definitions values ('/2', 'mem_usage', 'bob', '1')");
+    handle.execute("insert into MonMetrics.Dimensions values ('/9', 'hostname', 'a')");
+    handle.execute("insert into MonMetrics.Dimensions values ('/10', 'hostname', 'b')");
+    handle.execute("insert into MonMetrics.DefinitionDimensions values ('/4', '/2', '/9')");
+    handle.execute("insert into MonMetrics.DefinitionDimensions values ('/5', '/2', '/10')");
+    handle
+        .execute("insert into MonMetrics.Measurements (definition_dimensions_id, time_stamp, value) values ('/4', '2014-01-01 00:00:00', 20)");
+    handle
+        .execute("insert into MonMetrics.Measurements (definition_dimensions_id, time_stamp, value) values ('/5', '2013-06-01 00:00:00', 30)");
   }
 
   public void shouldFindWithoutDimensions() throws Exception {
     Collection<Measurements> measurements =
         repo.find("bob", "cpu_utilization", null, new DateTime(2014, 1, 1, 0, 0, 0), null, null, 1,
-                  false);
+                  false, null);
     assertEquals(measurements.size(), 3);
   }
 
@@ -99,12 +111,39 @@ public class MeasurementVerticaRepositoryImplTest {
 
     Collection<Measurements> measurements =
         repo.find("bob", "cpu_utilization", dims, new DateTime(2014, 1, 1, 0, 0), null, null, 1,
-                  false);
+                  false, null);
     assertEquals(measurements.size(), 2);
 
     dims.put("flavor_id", "2");
     measurements = repo.find("bob", "cpu_utilization", dims, new DateTime(2014, 1, 1, 0, 0), null, null, 1,
-                             false);
+                             false, null);
+    assertEquals(measurements.size(), 1);
+  }
+
+  @Test(expectedExceptions = MultipleMetricsException.class)
+  public void shouldThrowForMultipleSeriesWithoutMerge() throws Exception {
+    Map<String, String> dims = new HashMap<>();
+    dims.put("service", "compute");
+
+    repo.find("bob", "cpu_utilization", dims, new DateTime(2014, 1, 1, 0, 0), null, null, 1,
+              false, null);
+  }
+
+  public void shouldIgnoreSeriesWithoutMeasurementsInTimeRange() throws Exception {
+    Collection<Measurements> measurements =
+        repo.find("bob", "mem_usage", null, new DateTime(2014, 1, 1, 0, 0), null, null, 1,
+                  false, null);
     assertEquals(measurements.size(), 1);
+    assertEquals(measurements.iterator().next().getDimensions().get("hostname"), "a");
+  }
+
+  public void shouldFindNothingForUnknownSeries() throws Exception {
+    Map<String, String> dims = new HashMap<>();
+    dims.put("flavor_id", "3");
+
+    Collection<Measurements> measurements =
+        repo.find("bob", "cpu_utilization", dims, new DateTime(2014, 1, 1, 0, 0), null, null, 1,
+                  false, null);
+    assertEquals(measurements.size(), 0);
   }
 }
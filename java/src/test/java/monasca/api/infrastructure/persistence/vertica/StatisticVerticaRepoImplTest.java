@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.vertica;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.skife.jdbi.v2.DBI;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import monasca.api.ApiConfig;
+import monasca.api.infrastructure.persistence.RollupConfiguration;
+
+@Test
+public class StatisticVerticaRepoImplTest {
+
+  private static final Set<byte[]> DEF_DIM_IDS = Collections.singleton(new byte[] {1, 2});
+  private static final DateTime START = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+
+  private StatisticVerticaRepoImpl repo;
+  private RollupConfiguration rollup;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    repo = new StatisticVerticaRepoImpl(mock(DBI.class), new ApiConfig());
+
+    rollup = new RollupConfiguration();
+    rollup.period = 3600;
+    rollup.table = "MonMetrics.Measurements_1h";
+  }
+
+  public void shouldAggregateRollupColumns() {
+    String sql = repo.createQuery(DEF_DIM_IDS, 7200, START, null, null,
+                                  Arrays.asList("avg", "count", "max"), rollup);
+
+    assertTrue(sql.startsWith("SELECT sum(sum_value) / nullif(sum(count_value), 0) as avg, "
+                              + "sum(count_value) as count, max(max_value) as max, "
+                              + "Time_slice(time_stamp, 7200, 'SECOND', 'END') AS time_interval"),
+               sql);
+    assertTrue(sql.contains(" FROM MonMetrics.Measurements_1h WHERE "), sql);
+  }
+
+  public void shouldIncludeTheRollupRowStartingAtTheOffset() {
+    String sql = repo.createQuery(DEF_DIM_IDS, 3600, START, null, "2016-01-01T05:00:00.000Z",
+                                  Arrays.asList("avg"), rollup);
+
+    assertTrue(sql.contains(" and time_stamp >= :offset "), sql);
+  }
+
+  public void shouldExcludeTheRawMeasurementsAtTheOffset() {
+    String sql = repo.createQuery(DEF_DIM_IDS, 3600, START, null, "2016-01-01T05:00:00.000Z",
+                                  Arrays.asList("avg"), null);
+
+    assertTrue(sql.startsWith("SELECT avg(value) as avg, "), sql);
+    assertTrue(sql.contains(" FROM MonMetrics.Measurements WHERE "), sql);
+    assertTrue(sql.contains(" and time_stamp > :offset "), sql);
+  }
+}
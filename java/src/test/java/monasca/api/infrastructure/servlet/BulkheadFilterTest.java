@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.servlet;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class BulkheadFilterTest {
+
+  private MetricRegistry registry;
+  private BulkheadFilter filter;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    BulkheadConfiguration config = new BulkheadConfiguration();
+    config.heavyReads = new BulkheadConfiguration.Limits(1, 0);
+    registry = new MetricRegistry();
+    filter = new BulkheadFilter(config, registry);
+  }
+
+  private static HttpServletRequest request(String method, String uri) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getMethod()).thenReturn(method);
+    when(request.getRequestURI()).thenReturn(uri);
+    return request;
+  }
+
+  public void shouldClassifyRequests() {
+    assertEquals(filter.bulkheadFor(request("GET", "/v2.0/metrics/statistics")).name,
+                 "heavy-reads");
+    assertEquals(filter.bulkheadFor(request("GET", "/v2.0/alarms/state-history")).name,
+                 "heavy-reads");
+    assertEquals(filter.bulkheadFor(request("GET", "/v2.0/metrics/measurements/export")).name,
+                 "heavy-reads");
+    assertEquals(filter.bulkheadFor(request("GET", "/v2.0/alarms")).name, "light-reads");
+    assertEquals(filter.bulkheadFor(request("POST", "/v2.0/metrics")).name, "writes");
+    assertEquals(filter.bulkheadFor(request("POST", "/v2.0/metrics/query")).name, "heavy-reads");
+  }
+
+  public void shouldRejectWhenSaturated() throws Exception {
+    BulkheadFilter.Bulkhead heavyReads =
+        filter.bulkheadFor(request("GET", "/v2.0/metrics/measurements"));
+    assertTrue(heavyReads.acquire());
+
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+    FilterChain chain = mock(FilterChain.class);
+    HttpServletRequest request = request("GET", "/v2.0/metrics/measurements");
+
+    filter.doFilter(request, response, chain);
+
+    verify(chain, never()).doFilter(request, response);
+    verify(response).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    assertEquals(registry.meter(MetricRegistry.name(BulkheadFilter.class, "heavy-reads",
+                                                    "rejected")).getCount(), 1);
+
+    heavyReads.release();
+    filter.doFilter(request, response, chain);
+    verify(chain).doFilter(request, response);
+    assertTrue(heavyReads.acquire());
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.servlet;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class ResponseSizeFilterTest {
+
+  private MetricRegistry registry;
+  private ResponseSizeFilter filter;
+  private ByteArrayOutputStream sent;
+  private HttpServletResponse response;
+
+  @BeforeMethod
+  protected void beforeMethod() throws IOException {
+    registry = new MetricRegistry();
+    filter = new ResponseSizeFilter(registry);
+
+    sent = new ByteArrayOutputStream();
+    response = mock(HttpServletResponse.class);
+    when(response.getCharacterEncoding()).thenReturn("UTF-8");
+    when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        sent.write(b);
+      }
+    });
+  }
+
+  private static HttpServletRequest request(String uri) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getRequestURI()).thenReturn(uri);
+    return request;
+  }
+
+  private long counter(String resource) {
+    return registry.counter(MetricRegistry.name(ResponseSizeFilter.class, resource,
+                                                "uncompressed-bytes")).getCount();
+  }
+
+  public void shouldClassifyResources() {
+    assertEquals(ResponseSizeFilter.resourceFor("/v2.0/metrics/statistics"), "statistics");
+    assertEquals(ResponseSizeFilter.resourceFor("/v2.0/metrics"), "metrics");
+    assertEquals(ResponseSizeFilter.resourceFor("/v2.0/alarms/123/state-history"),
+                 "alarm-state-history");
+    assertEquals(ResponseSizeFilter.resourceFor("/v2.0/alarms"), "alarms");
+    assertEquals(ResponseSizeFilter.resourceFor("/v2.0/unknown"), "other");
+  }
+
+  public void shouldCountBytesWrittenPerResource() throws Exception {
+    FilterChain chain = mock(FilterChain.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ServletResponse res = (ServletResponse) invocation.getArguments()[1];
+        // Written in pieces, as a streamed response would be
+        res.getOutputStream().write("{\"elements\":".getBytes("UTF-8"));
+        res.getOutputStream().flush();
+        res.getOutputStream().write("[]}".getBytes("UTF-8"));
+        return null;
+      }
+    }).when(chain).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+
+    filter.doFilter(request("/v2.0/metrics/measurements"), response, chain);
+
+    assertEquals(sent.toString("UTF-8"), "{\"elements\":[]}");
+    assertEquals(counter("measurements"), 15);
+    assertEquals(counter("statistics"), 0);
+  }
+
+  public void shouldCountBytesWrittenThroughWriter() throws Exception {
+    FilterChain chain = mock(FilterChain.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((ServletResponse) invocation.getArguments()[1]).getWriter().write("{\"error\":{}}");
+        return null;
+      }
+    }).when(chain).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+
+    filter.doFilter(request("/v2.0/alarms"), response, chain);
+
+    assertEquals(sent.toString("UTF-8"), "{\"error\":{}}");
+    assertEquals(counter("alarms"), 12);
+  }
+}
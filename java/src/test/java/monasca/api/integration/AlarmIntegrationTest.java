@@ -50,6 +50,8 @@ import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
 import monasca.api.domain.model.alarmstatehistory.AlarmStateHistoryRepo;
+import monasca.api.infrastructure.persistence.AlarmIndex;
+import monasca.api.infrastructure.persistence.AlarmIndexConfiguration;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.api.infrastructure.persistence.mysql.AlarmDefinitionMySqlRepoImpl;
 import monasca.api.infrastructure.persistence.mysql.AlarmMySqlRepoImpl;
@@ -86,7 +88,8 @@ public class AlarmIntegrationTest extends AbstractMonApiResourceTest {
 
     repo = new AlarmDefinitionMySqlRepoImpl(mysqlDb, new PersistUtils());
     service =
-        new AlarmDefinitionService(config, producer, repo, new AlarmMySqlRepoImpl(mysqlDb, new PersistUtils()),
+        new AlarmDefinitionService(config, producer, repo, new AlarmMySqlRepoImpl(mysqlDb, new PersistUtils(),
+            new AlarmIndex(null, new AlarmIndexConfiguration())),
             new NotificationMethodMySqlRepoImpl(mysqlDb, new PersistUtils()));
     addResources(new AlarmDefinitionResource(service, repo, new PersistUtils()));
   }
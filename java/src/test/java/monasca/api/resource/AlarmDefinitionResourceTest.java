@@ -16,6 +16,7 @@ package monasca.api.resource;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
@@ -85,7 +86,7 @@ public class AlarmDefinitionResourceTest extends AbstractMonApiResourceTest {
 
     repo = mock(AlarmDefinitionRepo.class);
     when(repo.findById(eq("abc"), eq("123"))).thenReturn(alarm);
-    when(repo.find(anyString(), anyString(), (Map<String, String>) anyMap(), anyString(), anyInt())).thenReturn(
+    when(repo.find(anyString(), anyString(), (Map<String, String>) anyMap(), (List<String>) anyList(), anyString(), anyInt())).thenReturn(
         Arrays.asList(alarmItem));
 
     addResources(new AlarmDefinitionResource(service, repo, new PersistUtils()));
@@ -275,7 +276,7 @@ public class AlarmDefinitionResourceTest extends AbstractMonApiResourceTest {
 
     assertEquals(alarms, Arrays.asList(alarmItem));
 
-    verify(repo).find(eq("abc"), anyString(), (Map<String, String>) anyMap(), anyString(), anyInt());
+    verify(repo).find(eq("abc"), anyString(), (Map<String, String>) anyMap(), (List<String>) anyList(), anyString(), anyInt());
   }
 
   @SuppressWarnings("unchecked")
@@ -306,8 +307,25 @@ public class AlarmDefinitionResourceTest extends AbstractMonApiResourceTest {
     List<AlarmDefinition> alarms = Arrays.asList(ad);
 
     assertEquals(alarms, Arrays.asList(alarmItem));
-    verify(repo).find(eq("abc"), eq("foo bar baz"), (Map<String, String>) anyMap(), anyString(),
-                      anyInt());
+    verify(repo).find(eq("abc"), eq("foo bar baz"), (Map<String, String>) anyMap(),
+                      (List<String>) anyList(), anyString(), anyInt());
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldListSortedBy() {
+    client().resource("/v2.0/alarm-definitions?sort_by=" + "name%20desc,created_at")
+        .header("X-Tenant-Id", "abc").get(Paged.class);
+
+    verify(repo).find(eq("abc"), anyString(), (Map<String, String>) anyMap(),
+                      eq(Arrays.asList("name desc", "created_at asc")), anyString(), anyInt());
+  }
+
+  public void should422OnListSortedByInvalidField() {
+    ClientResponse response = client().resource("/v2.0/alarm-definitions?sort_by=expression")
+        .header("X-Tenant-Id", "abc").get(ClientResponse.class);
+
+    ErrorMessages.assertThat(response.getEntity(String.class)).matches("unprocessable_entity", 422,
+        "sort_by field 'expression' must be one of [id, name, created_at, updated_at]");
   }
 
   public void shouldGet() {
@@ -352,7 +370,7 @@ public class AlarmDefinitionResourceTest extends AbstractMonApiResourceTest {
   public void should500OnInternalException() {
     doThrow(new RuntimeException("")).when(repo).find(anyString(), anyString(),
 
-        (Map<String, String>) anyObject(), anyString(), anyInt());
+        (Map<String, String>) anyObject(), (List<String>) anyList(), anyString(), anyInt());
 
     try {
       client().resource("/v2.0/alarm-definitions").header("X-Tenant-Id", "abc").get(List.class);
@@ -16,16 +16,24 @@ package monasca.api.resource;
 
 import monasca.api.domain.model.alarm.Alarm;
 import monasca.api.domain.model.common.Link;
+import monasca.api.domain.model.common.Paged;
+import monasca.api.domain.model.common.SeriesOffset;
+import monasca.api.domain.model.measurement.Measurements;
 import monasca.common.model.alarm.AlarmState;
 import static org.testng.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
 import org.joda.time.DateTime;
 import org.testng.annotations.Test;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import javax.ws.rs.core.UriInfo;
 
@@ -71,4 +79,67 @@ public class LinksTest {
         + AlarmDefinitionResource.ALARM_DEFINITIONS_PATH.substring(1) + "/"
         + alarmDefinitionId));
   }
+
+  private static UriInfo measurementsUriInfo() throws URISyntaxException {
+    final UriInfo uriInfo = mock(UriInfo.class);
+    when(uriInfo.getRequestUri()).thenReturn(
+        new URI("http://localhost/v2.0/metrics/measurements?group_by=*"));
+    when(uriInfo.getAbsolutePath()).thenReturn(
+        new URI("http://localhost/v2.0/metrics/measurements"));
+    when(uriInfo.getQueryParameters()).thenReturn(new MultivaluedMapImpl());
+    return uriInfo;
+  }
+
+  private static Measurements group(int index, int size) {
+    final Measurements measurements =
+        new Measurements("cpu", Collections.singletonMap("hostname", "host" + index));
+    measurements.setId(String.valueOf(index));
+    for (int i = 0; i < size; i++) {
+      measurements.addMeasurement(i * 1000L, i, null);
+    }
+    return measurements;
+  }
+
+  public void shouldPaginateGroupsWithinGroup() throws Exception {
+    final List<Measurements> groups = Arrays.asList(group(4, 2), group(5, 2), group(6, 2));
+
+    final Paged paged = Links.paginateGrouped(3, groups, measurementsUriInfo());
+
+    assertEquals(paged.elements.size(), 2);
+    assertEquals(groups.get(0).getId(), "4_1970-01-01T00:00:01.000Z");
+    assertEquals(groups.get(1).size(), 1);
+    assertEquals(groups.get(1).getId(), "5_1970-01-01T00:00:00.000Z");
+    assertEquals(paged.links.get(1).href, "http://localhost/v2.0/metrics/measurements?offset="
+                                          + "5_1970-01-01T00%3A00%3A00.000Z");
+  }
+
+  public void shouldPaginateGroupsAtGroupBoundary() throws Exception {
+    final List<Measurements> groups = Arrays.asList(group(0, 2), group(1, 2), group(2, 1));
+
+    final Paged paged = Links.paginateGrouped(4, groups, measurementsUriInfo());
+
+    assertEquals(paged.elements.size(), 2);
+    assertEquals(paged.links.get(1).href, "http://localhost/v2.0/metrics/measurements?offset="
+                                          + "1_1970-01-01T00%3A00%3A01.000Z");
+  }
+
+  public void shouldNotLinkLastPageOfGroups() throws Exception {
+    final Paged paged =
+        Links.paginateGrouped(4, Arrays.asList(group(0, 2), group(1, 2)), measurementsUriInfo());
+
+    assertEquals(paged.elements.size(), 2);
+    assertEquals(paged.links.size(), 1);
+  }
+
+  public void shouldParseSeriesOffset() {
+    final SeriesOffset offset = SeriesOffset.parse(SeriesOffset.format(12, 1000L));
+
+    assertEquals(offset.getIndex(), 12);
+    assertEquals(offset.getTimestamp().getMillis(), 1000L);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectOffsetWithoutSeriesIndex() {
+    SeriesOffset.parse("2016-01-01T00:00:00.000Z");
+  }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016 Hewlett-Packard Development Company, L.P.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.resource;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.testng.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.Test;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.measurement.MeasurementHandler;
+import monasca.api.domain.model.measurement.MeasurementRepo;
+
+import com.sun.jersey.api.client.ClientResponse;
+
+@Test
+public class MeasurementExportResourceTest extends AbstractMonApiResourceTest {
+  private MeasurementRepo repo;
+
+  @Override
+  protected void setupResources() throws Exception {
+    super.setupResources();
+
+    repo = mock(MeasurementRepo.class);
+    addResources(new MeasurementExportResource(new ApiConfig(), repo));
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldStreamCsv() throws Exception {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        MeasurementHandler handler = (MeasurementHandler) invocation.getArguments()[5];
+        Map<String, String> dimensions = Collections.singletonMap("hostname", "h1");
+        handler.handle("cpu.idle_perc", dimensions, 1451606400000L, 97.5, null);
+        handler.handle("cpu.idle_perc", dimensions, 1451606460000L, 12.0,
+                       "{\"reason\":\"spike, build\"}");
+        return null;
+      }
+    }).when(repo).export(eq("abc"), eq("cpu.idle_perc"), any(Map.class),
+                         any(DateTime.class), (DateTime) isNull(), any(MeasurementHandler.class));
+
+    ClientResponse response =
+        client()
+            .resource(
+                "/v2.0/metrics/measurements/export?name=cpu.idle_perc&dimensions=hostname:h1&start_time=2016-01-01T00:00:00Z")
+            .header("X-Tenant-Id", "abc").get(ClientResponse.class);
+
+    assertEquals(response.getStatus(), 200);
+    assertEquals(response.getEntity(String.class),
+                 "name,dimensions,timestamp,value,value_meta\r\n"
+                 + "cpu.idle_perc,\"{\"\"hostname\"\":\"\"h1\"\"}\",2016-01-01T00:00:00.000Z,97.5,\r\n"
+                 + "cpu.idle_perc,\"{\"\"hostname\"\":\"\"h1\"\"}\",2016-01-01T00:01:00.000Z,12.0,"
+                 + "\"{\"\"reason\"\":\"\"spike, build\"\"}\"\r\n");
+  }
+
+  public void shouldRequireStartTime() throws Exception {
+    ClientResponse response =
+        client().resource("/v2.0/metrics/measurements/export?name=cpu.idle_perc")
+            .header("X-Tenant-Id", "abc").get(ClientResponse.class);
+
+    assertEquals(response.getStatus(), 422);
+    verifyZeroInteractions(repo);
+  }
+}
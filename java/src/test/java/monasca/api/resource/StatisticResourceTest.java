@@ -58,7 +58,7 @@ public class StatisticResourceTest extends AbstractMonApiResourceTest {
         .header("X-Tenant-Id", "abc").get(ClientResponse.class);
     verify(statisticRepo).find(anyString(), anyString(), any(Map.class), any(DateTime.class),
         any(DateTime.class), any(List.class), anyInt(), any(String.class), anyInt(),
-        anyBoolean());
+        anyBoolean(), any(List.class));
   }
 
   public void queryShouldThrowOnInvalidDateFormat() throws Exception {
@@ -96,4 +96,13 @@ public class StatisticResourceTest extends AbstractMonApiResourceTest {
             .header("X-Tenant-Id", "abc").get(ClientResponse.class);
     assertEquals(response.getStatus(), 422);
   }
+
+  public void queryShouldThrowOnInvalidFormat() throws Exception {
+    ClientResponse response =
+        client()
+            .resource(
+                "/v2.0/metrics/statistics?name=cpu_utilization&start_time=2013-11-20T18:43Z&statistics=avg&format=xml")
+            .header("X-Tenant-Id", "abc").get(ClientResponse.class);
+    assertEquals(response.getStatus(), 422);
+  }
 }